@@ -13,11 +13,18 @@ import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.MessageDigest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -50,6 +57,11 @@ import org.slf4j.LoggerFactory;
  * level and format of the mipmap
  * (e.g. /groups/saalfeld/generated-mipmaps/groups/saalfeld/raw-data/stack-1/file1.tif_level_2_mipmap.jpg).
  *
+ * By default, each missing level is generated by reading (and decoding) the previous level's file.
+ * When in-memory cascading is enabled, the level zero image and mask are decoded once and then
+ * repeatedly down-sampled in memory so that every missing level is written in a single pass
+ * without re-reading any generated files.
+ *
  * @author Eric Trautman
  */
 public class MipmapGenerator {
@@ -76,38 +88,64 @@ public class MipmapGenerator {
                 final MipmapGenerator mipmapGenerator = new MipmapGenerator(params.getRootDirectory(),
                                                                             params.getFormat(),
                                                                             params.getQuality(),
-                                                                            params.consolidateMasks());
+                                                                            params.consolidateMasks(),
+                                                                            params.cascadeLevelsInMemory());
 
                 final int mipmapLevel = params.getMipmapLevel();
                 final boolean forceBoxCalculation =  params.forceBoxCalculation();
                 final List<TileSpec> tileSpecs = params.getTileSpecs();
+                final int numberOfThreads = params.getNumberOfThreads();
 
-                long timeOfLastProgressLog = System.currentTimeMillis();
-                TileSpec updatedTileSpec;
-                outputFile = params.getOutputFile();
-                outputStream = new FileOutputStream(outputFile);
-                outputStream.write("[\n".getBytes());
-                for (final TileSpec tileSpec : tileSpecs) {
+                final List<Future<TileSpec>> updatedTileSpecFutures = new ArrayList<>(tileSpecs.size());
+                final ExecutorService executorService =
+                        numberOfThreads > 1 ? Executors.newFixedThreadPool(numberOfThreads) : null;
 
-                    if (mipmapLevel > 0) {
-                        mipmapGenerator.generateMissingMipmapFiles(tileSpec, mipmapLevel);
-                    }
+                try {
 
-                    updatedTileSpec = deriveBoundingBox(tileSpec,
-                                                        tileSpec.getMeshCellSize(),
-                                                        forceBoxCalculation);
+                    long timeOfLastProgressLog = System.currentTimeMillis();
+                    TileSpec updatedTileSpec;
+                    outputFile = params.getOutputFile();
+                    outputStream = new FileOutputStream(outputFile);
+                    outputStream.write("[\n".getBytes());
+
+                    if (executorService != null) {
+                        for (final TileSpec tileSpec : tileSpecs) {
+                            updatedTileSpecFutures.add(
+                                    executorService.submit(() -> updateTileSpec(mipmapGenerator,
+                                                                                tileSpec,
+                                                                                mipmapLevel,
+                                                                                forceBoxCalculation)));
+                        }
+                    }
 
-                    if (tileCount != 0) {
-                        outputStream.write(",\n".getBytes());
+                    for (int i = 0; i < tileSpecs.size(); i++) {
+
+                        if (executorService == null) {
+                            updatedTileSpec = updateTileSpec(mipmapGenerator,
+                                                             tileSpecs.get(i),
+                                                             mipmapLevel,
+                                                             forceBoxCalculation);
+                        } else {
+                            updatedTileSpec = updatedTileSpecFutures.get(i).get();
+                        }
+
+                        if (tileCount != 0) {
+                            outputStream.write(",\n".getBytes());
+                        }
+                        outputStream.write(updatedTileSpec.toJson().getBytes());
+                        tileCount++;
+                        if ((System.currentTimeMillis() - timeOfLastProgressLog) > 10000) {
+                            LOG.info("main: updated tile {} of {}", tileCount, tileSpecs.size());
+                            timeOfLastProgressLog = System.currentTimeMillis();
+                        }
                     }
-                    outputStream.write(updatedTileSpec.toJson().getBytes());
-                    tileCount++;
-                    if ((System.currentTimeMillis() - timeOfLastProgressLog) > 10000) {
-                        LOG.info("main: updated tile {} of {}", tileCount, tileSpecs.size());
-                        timeOfLastProgressLog = System.currentTimeMillis();
+                    outputStream.write("\n]".getBytes());
+
+                } finally {
+                    if (executorService != null) {
+                        executorService.shutdownNow();
                     }
                 }
-                outputStream.write("\n]".getBytes());
 
                 LOG.info("main: updated {} tile specs and saved to {}", tileCount, outputFile);
             }
@@ -131,6 +169,7 @@ public class MipmapGenerator {
     private final String format;
     private final float jpegQuality;
     private final boolean consolidateMasks;
+    private final boolean cascadeLevelsInMemory;
     private MessageDigest messageDigest;
     private Map<String, File> sourceDigestToMaskMipmapBaseFileMap;
 
@@ -146,10 +185,29 @@ public class MipmapGenerator {
                            final String format,
                            final float jpegQuality,
                            final boolean consolidateMasks) {
+        this(rootDirectory, format, jpegQuality, consolidateMasks, false);
+    }
+
+    /**
+     * Constructs a generator for use with a specific base path.
+     *
+     * @param  rootDirectory          the root directory for all generated mipmap files.
+     * @param  format                 the format for all generated mipmap files.
+     * @param  jpegQuality            the jpg quality factor (0.0 to 1.0) which is only used when generating jpg mipmaps.
+     * @param  consolidateMasks       if true, consolidate equivalent zipped TrakEM2 mask files.
+     * @param  cascadeLevelsInMemory  if true, decode level zero sources once and down-sample all missing levels
+     *                                in memory; otherwise generate each level from the previous level's file.
+     */
+    public MipmapGenerator(final File rootDirectory,
+                           final String format,
+                           final float jpegQuality,
+                           final boolean consolidateMasks,
+                           final boolean cascadeLevelsInMemory) {
         this.rootDirectory = rootDirectory;
         this.format = format;
         this.jpegQuality = jpegQuality;
         this.consolidateMasks = consolidateMasks;
+        this.cascadeLevelsInMemory = cascadeLevelsInMemory;
 
         if (consolidateMasks) {
             try {
@@ -164,6 +222,7 @@ public class MipmapGenerator {
     /**
      * Examines the specified tile specification and generates any missing image and/or mask mipmaps
      * for all levels less than or equal to the specified greatest level.
+     * When levels are cascaded in memory, this method may be called concurrently for different tiles.
      *
      * @param  tileSpec             the source tile specification which must include at least a
      *                              level zero image mipmap.
@@ -192,19 +251,16 @@ public class MipmapGenerator {
             File maskMipmapBaseFile = null;
             final boolean hasMask = imageAndMask.hasMask();
             if (hasMask) {
+                maskMipmapBaseFile = getMaskMipmapBaseFile(imageAndMask.getMaskUrl());
+            }
 
-                maskMipmapBaseFile = getMipmapBaseFile(imageAndMask.getMaskUrl(), true);
-
-                if (consolidateMasks) {
-                    final File sourceMaskFile = getFileForUrlString(imageAndMask.getMaskUrl());
-                    final String sourceDigest = getDigest(sourceMaskFile);
-                    if (sourceDigestToMaskMipmapBaseFileMap.containsKey(sourceDigest)) {
-                        maskMipmapBaseFile = sourceDigestToMaskMipmapBaseFileMap.get(sourceDigest);
-                    } else {
-                        sourceDigestToMaskMipmapBaseFileMap.put(sourceDigest, maskMipmapBaseFile);
-                    }
-                }
-
+            if (cascadeLevelsInMemory) {
+                cascadeMissingMipmapFiles(channelSpec,
+                                          imageAndMask,
+                                          imageMipmapBaseFile,
+                                          maskMipmapBaseFile,
+                                          greatestMipmapLevel);
+                continue;
             }
 
             File imageMipmapFile;
@@ -270,6 +326,132 @@ public class MipmapGenerator {
         return new File(mipmapBaseDirectory, sourceFile.getName());
     }
 
+    /**
+     * @return the base path for all level mipmaps generated for the specified mask,
+     *         consolidating equivalent masks if that option is enabled.
+     */
+    private synchronized File getMaskMipmapBaseFile(final String levelZeroMaskUrl)
+            throws IOException {
+
+        File maskMipmapBaseFile = getMipmapBaseFile(levelZeroMaskUrl, true);
+
+        if (consolidateMasks) {
+            final File sourceMaskFile = getFileForUrlString(levelZeroMaskUrl);
+            final String sourceDigest = getDigest(sourceMaskFile);
+            if (sourceDigestToMaskMipmapBaseFileMap.containsKey(sourceDigest)) {
+                maskMipmapBaseFile = sourceDigestToMaskMipmapBaseFileMap.get(sourceDigest);
+            } else {
+                sourceDigestToMaskMipmapBaseFileMap.put(sourceDigest, maskMipmapBaseFile);
+            }
+        }
+
+        return maskMipmapBaseFile;
+    }
+
+    /**
+     * Generates all missing mipmap levels for the specified channel by decoding its level zero
+     * image and mask (only if some of their level files are missing) and then down-sampling
+     * them in memory one level at a time.
+     */
+    private void cascadeMissingMipmapFiles(final ChannelSpec channelSpec,
+                                           final ImageAndMask levelZeroImageAndMask,
+                                           final File imageMipmapBaseFile,
+                                           final File maskMipmapBaseFile,
+                                           final int greatestMipmapLevel)
+            throws IOException {
+
+        final boolean hasMask = (maskMipmapBaseFile != null);
+
+        boolean isImageLoadNeeded = false;
+        boolean isMaskLoadNeeded = false;
+        for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+            if (! channelSpec.hasMipmap(mipmapLevel)) {
+                if (! getMipmapFile(imageMipmapBaseFile, mipmapLevel).exists()) {
+                    isImageLoadNeeded = true;
+                }
+                if (hasMask && (! getMipmapFile(maskMipmapBaseFile, mipmapLevel).exists())) {
+                    isMaskLoadNeeded = true;
+                }
+            }
+        }
+
+        ImageProcessor imageProcessor =
+                isImageLoadNeeded ? loadImageProcessor(levelZeroImageAndMask.getImageUrl()) : null;
+        ImageProcessor maskProcessor =
+                isMaskLoadNeeded ? loadImageProcessor(levelZeroImageAndMask.getMaskUrl()) : null;
+
+        File imageMipmapFile;
+        File maskMipmapFile;
+        for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+
+            if (imageProcessor != null) {
+                imageProcessor = Downsampler.downsampleImageProcessor(imageProcessor, 1);
+            }
+            if (maskProcessor != null) {
+                maskProcessor = Downsampler.downsampleImageProcessor(maskProcessor, 1);
+            }
+
+            if (! channelSpec.hasMipmap(mipmapLevel)) {
+
+                imageMipmapFile = getMipmapFile(imageMipmapBaseFile, mipmapLevel);
+                if (imageProcessor != null) {
+                    writeMipmapFile(imageProcessor, imageMipmapFile);
+                }
+
+                if (hasMask) {
+                    maskMipmapFile = getMipmapFile(maskMipmapBaseFile, mipmapLevel);
+                    if (maskProcessor != null) {
+                        writeMipmapFile(maskProcessor, maskMipmapFile);
+                    }
+                } else {
+                    maskMipmapFile = null;
+                }
+
+                channelSpec.putMipmap(mipmapLevel, new ImageAndMask(imageMipmapFile, maskMipmapFile));
+            }
+        }
+    }
+
+    private ImageProcessor loadImageProcessor(final String sourceUrl)
+            throws IllegalArgumentException {
+        final ImagePlus sourceImagePlus = Utils.openImagePlusUrl(sourceUrl);
+        if (sourceImagePlus == null) {
+            throw new IllegalArgumentException("failed to load '" + sourceUrl + "' for scaling");
+        }
+        return sourceImagePlus.getProcessor();
+    }
+
+    /**
+     * Writes the specified pixels to the target file if it does not already exist.
+     * Data is written to a temporary file that is then moved into place so that concurrent
+     * generators (e.g. for tiles with consolidated masks) never see partially written files.
+     */
+    private void writeMipmapFile(final ImageProcessor imageProcessor,
+                                 final File targetMipmapFile)
+            throws IOException {
+
+        if (! targetMipmapFile.exists()) {
+
+            // temporary file names must be unique across processes (e.g. cluster jobs sharing mask mipmaps)
+            final File absoluteTargetFile = targetMipmapFile.getAbsoluteFile();
+            final Path tempPath = Files.createTempFile(absoluteTargetFile.getParentFile().toPath(),
+                                                       absoluteTargetFile.getName() + ".",
+                                                       ".tmp");
+            try {
+                try (final FileOutputStream outputStream = new FileOutputStream(tempPath.toFile())) {
+                    final ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream);
+                    Utils.writeImage(imageProcessor.getBufferedImage(), format, false, jpegQuality,
+                                     imageOutputStream);
+                }
+
+                Files.move(tempPath, absoluteTargetFile.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+    }
+
     private File getFileForUrlString(final String url) {
         final URI uri = Utils.convertPathOrUriStringToUri(url);
         return new File(uri);
@@ -403,6 +585,21 @@ public class MipmapGenerator {
         Utils.writeImage(downSampledImage, format, false, jpegQuality, imageOutputStream);
     }
 
+    private static TileSpec updateTileSpec(final MipmapGenerator mipmapGenerator,
+                                           final TileSpec tileSpec,
+                                           final int mipmapLevel,
+                                           final boolean forceBoxCalculation)
+            throws IOException {
+
+        if (mipmapLevel > 0) {
+            mipmapGenerator.generateMissingMipmapFiles(tileSpec, mipmapLevel);
+        }
+
+        return deriveBoundingBox(tileSpec,
+                                 tileSpec.getMeshCellSize(),
+                                 forceBoxCalculation);
+    }
+
     private static TileSpec deriveBoundingBox(final TileSpec tileSpec,
                                               final double meshCellSize,
                                               final boolean force) {
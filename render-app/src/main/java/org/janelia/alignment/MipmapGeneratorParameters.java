@@ -64,6 +64,12 @@ public class MipmapGeneratorParameters {
     @Parameter(names = "--force_box", description = "Force calculation of tile bounding box attributes", required = false)
     private final boolean forceBoxCalculation;
 
+    @Parameter(names = "--cascade_in_memory", description = "Decode level zero sources once and down-sample all missing levels in memory", required = false)
+    private final boolean cascadeLevelsInMemory;
+
+    @Parameter(names = "--threads", description = "Number of tiles to process concurrently (requires --cascade_in_memory, default is 1)", required = false)
+    private final int numberOfThreads;
+
     /** List of tile specifications parsed from --url or deserialized directly from json. */
     private List<TileSpec> tileSpecs;
 
@@ -90,6 +96,8 @@ public class MipmapGeneratorParameters {
         this.outputFileName = null;
         this.consolidateMasks = false;
         this.forceBoxCalculation = false;
+        this.cascadeLevelsInMemory = false;
+        this.numberOfThreads = 1;
 
         this.tileSpecs = new ArrayList<>();
         this.transformIdToSpecMap = new HashMap<>();
@@ -239,6 +247,14 @@ public class MipmapGeneratorParameters {
         return forceBoxCalculation;
     }
 
+    public boolean cascadeLevelsInMemory() {
+        return cascadeLevelsInMemory;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
     public boolean hasTileSpecs() {
         return ((tileSpecs != null) && (tileSpecs.size() > 0));
     }
@@ -291,6 +307,14 @@ public class MipmapGeneratorParameters {
             throw new IllegalArgumentException("quality (" + quality + ") should be between 0.0 and 1.0");
         }
 
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("number of threads (" + numberOfThreads + ") should be greater than 0");
+        }
+
+        if ((numberOfThreads > 1) && (! cascadeLevelsInMemory)) {
+            throw new IllegalArgumentException("multiple threads can only be used when cascading levels in memory");
+        }
+
         final File outputFile = getOutputFile();
         if (outputFile.exists()) {
             if (! rootDirectory.canWrite()) {
@@ -327,6 +351,8 @@ public class MipmapGeneratorParameters {
                ", url='" + url + '\'' +
                ", outputFileName='" + outputFileName + '\'' +
                ", consolidateMasks=" + consolidateMasks +
+               ", cascadeLevelsInMemory=" + cascadeLevelsInMemory +
+               ", numberOfThreads=" + numberOfThreads +
                ", numberOfTileSpecs=" + numberOfTileSpecs() +
                ", initialized=" + initialized +
                '}';
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
 import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.InvertibleCoordinateTransform;
 import mpicbg.models.NoninvertibleModelException;
@@ -28,6 +29,8 @@ import mpicbg.models.PointMatch;
 import mpicbg.trakem2.util.Pair;
 import mpicbg.util.Util;
 
+import org.janelia.alignment.transform.AffineWarpFieldTransform;
+
 /**
  *
  * Triangular transformation mesh.
@@ -101,6 +104,44 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
         pq[3][i] = point[1];
     }
 
+    final static protected void setSourcePoint(final int i, final double[][] pq, final double x, final double y) {
+        pq[0][i] = x;
+        pq[1][i] = y;
+    }
+
+    final static protected int addTriangleIndexes(final int[] triangles, final int t, final int i1, final int i2, final int i3) {
+        triangles[t] = i1;
+        triangles[t + 1] = i2;
+        triangles[t + 2] = i3;
+        return t + 3;
+    }
+
+    /**
+     * Transforms all specified locations in place.
+     * Warp field transforms (including those nested in transform lists) are applied in bulk
+     * and every other transform is applied point by point.
+     * Since each transform in a list is applied to all points before the next transform,
+     * results are identical to applying the list to each point.
+     */
+    final static protected void applyToAllInPlace(final CoordinateTransform t, final double[] xs, final double[] ys) {
+        if (t instanceof AffineWarpFieldTransform) {
+            ((AffineWarpFieldTransform) t).applyInPlace(xs, ys);
+        } else if (t instanceof CoordinateTransformList) {
+            for (final CoordinateTransform listTransform : ((CoordinateTransformList<?>) t).getList(null)) {
+                applyToAllInPlace(listTransform, xs, ys);
+            }
+        } else {
+            final double[] point = new double[2];
+            for (int i = 0; i < xs.length; i++) {
+                point[0] = xs[i];
+                point[1] = ys[i];
+                t.applyInPlace(point);
+                xs[i] = point[0];
+                ys[i] = point[1];
+            }
+        }
+    }
+
     final static protected void addTriangle(
             final ArrayList< Pair< AffineModel2D, double[][] > > av,
             final double[][] pq,
@@ -128,7 +169,10 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
         final int numYs = Math.max(2, numY);
 
         final double[][] pq = new double[4][numXs * numYs + (numXs - 1) * (numYs - 1)];
-        final double[] pTemp = new double[2];
+
+        // triangles are only created after all vertices have been transformed (in bulk)
+        final int[] triangles = new int[3 * (numYs - 1) * (4 * numXs - 4)];
+        int t3 = 0;
 
         this.width = width;
         this.height = height;
@@ -142,7 +186,7 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
 
             final double xip = xi * dx;
 
-            addPointMatch(i, pq, pTemp, t, xip, 0);
+            setSourcePoint(i, pq, xip, 0);
 
             ++i;
         }
@@ -154,12 +198,12 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
             // odd row
             double yip = yi * dy - dy / 2;
 
-            addPointMatch(i, pq, pTemp, t, dx - dx / 2, yip);
+            setSourcePoint(i, pq, dx - dx / 2, yip);
 
 			i1 = i - numXs;
 			i2 = i1 + 1;
 
-			addTriangle(av, pq, i1, i2, i);
+			t3 = addTriangleIndexes(triangles, t3, i1, i2, i);
 
 			++i;
 
@@ -167,14 +211,14 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
 			{
 				final double xip = xi * dx - dx / 2;
 
-				addPointMatch(i, pq, pTemp, t, xip, yip);
+				setSourcePoint(i, pq, xip, yip);
 
 				i1 = i - numXs;
 				i2 = i1 + 1;
 				i3 = i - 1;
 
-				addTriangle(av, pq, i1, i2, i);
-				addTriangle(av, pq, i1, i, i3);
+				t3 = addTriangleIndexes(triangles, t3, i1, i2, i);
+				t3 = addTriangleIndexes(triangles, t3, i1, i, i3);
 
 				++i;
 			}
@@ -182,12 +226,12 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
 			// even row
 			yip = yi * dy;
 
-			addPointMatch(i, pq, pTemp, t, 0, yip);
+			setSourcePoint(i, pq, 0, yip);
 
 			i1 = i - numXs + 1;
 			i2 = i1 - numXs;
 
-			addTriangle(av, pq, i2, i1, i);
+			t3 = addTriangleIndexes(triangles, t3, i2, i1, i);
 
 			++i;
 
@@ -195,30 +239,38 @@ public class RenderTransformMesh implements InvertibleCoordinateTransform
 			{
 				final double xip = xi * dx;
 
-				addPointMatch(i, pq, pTemp, t, xip, yip);
+				setSourcePoint(i, pq, xip, yip);
 
 				i1 = i - numXs;
 				i2 = i1 + 1;
 				i3 = i - 1;
 
-				addTriangle(av, pq, i1, i, i3);
-				addTriangle(av, pq, i1, i2, i);
+				t3 = addTriangleIndexes(triangles, t3, i1, i, i3);
+				t3 = addTriangleIndexes(triangles, t3, i1, i2, i);
 
 				++i;
 			}
 
-			addPointMatch(i, pq, pTemp, t, width - 1, yip);
+			setSourcePoint(i, pq, width - 1, yip);
 
 			i1 = i - numXs;
 			i2 = i1 - numXs + 1;
 			i3 = i - 1;
 
-			addTriangle(av, pq, i3, i1, i);
-			addTriangle(av, pq, i1, i2, i);
+			t3 = addTriangleIndexes(triangles, t3, i3, i1, i);
+			t3 = addTriangleIndexes(triangles, t3, i1, i2, i);
 
 			++i;
 		}
 
+        System.arraycopy(pq[0], 0, pq[2], 0, i);
+        System.arraycopy(pq[1], 0, pq[3], 0, i);
+        applyToAllInPlace(t, pq[2], pq[3]);
+
+        for (int j = 0; j < t3; j += 3) {
+            addTriangle(av, pq, triangles[j], triangles[j + 1], triangles[j + 2]);
+        }
+
         min = new double[]{pq[2][0], pq[3][0]};
         max = new double[]{pq[2][0], pq[3][0]};
 
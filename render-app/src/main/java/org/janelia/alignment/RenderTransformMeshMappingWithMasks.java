@@ -18,7 +18,10 @@ package org.janelia.alignment;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.trakem2.util.Pair;
@@ -31,6 +34,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Specialized {@link mpicbg.ij.TransformMapping} for {@link PixelMapper} instances
  * that calculates transforms once and then applies them to all channels and masks in one go.
+ *
+ * Multi-threaded mapping splits the target into horizontal row bands that are mapped concurrently
+ * by a long-lived executor shared by all mapping instances in the JVM (see {@link #setMappingExecutor}).
+ * Each target pixel is owned by exactly one band and triangles are always mapped in mesh order,
+ * so results do not depend upon the number of threads used.
  */
 public class RenderTransformMeshMappingWithMasks {
 
@@ -48,56 +56,97 @@ public class RenderTransformMeshMappingWithMasks {
                           final int numThreads) {
 
         final ArrayList<Pair<AffineModel2D, double[][]>> av = transform.getAV();
-        if (numThreads > 1) {
-            final AtomicInteger i = new AtomicInteger(0);
-            final ArrayList<Thread> threads = new ArrayList<>(numThreads);
-            for (int k = 0; k < numThreads; ++k) {
-                final Thread mtt = new MapTriangleThread(i, av, pixelMapper);
-                threads.add(mtt);
-                mtt.start();
+        final int targetHeight = pixelMapper.getTargetHeight();
+        final int numberOfBands = Math.min(numThreads, targetHeight);
+
+        if (numberOfBands > 1) {
+
+            final ExecutorService executor = getMappingExecutor();
+            final List<Future<?>> bandFutures = new ArrayList<>(numberOfBands - 1);
+
+            // the calling thread maps the first band while the executor handles the remaining bands
+            for (int band = 1; band < numberOfBands; band++) {
+                final int bandMinY = getBandStart(band, numberOfBands, targetHeight);
+                final int bandMaxY = getBandStart(band + 1, numberOfBands, targetHeight) - 1;
+                bandFutures.add(executor.submit(() -> mapBand(av, pixelMapper, bandMinY, bandMaxY)));
             }
-            for (final Thread mtt : threads) {
+
+            mapBand(av, pixelMapper, 0, getBandStart(1, numberOfBands, targetHeight) - 1);
+
+            for (final Future<?> bandFuture : bandFutures) {
                 try {
-                    mtt.join();
+                    bandFuture.get();
                 } catch (final InterruptedException e) {
-                    LOG.warn("ignoring exception", e);
+                    bandFutures.forEach(f -> f.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while mapping row bands", e);
+                } catch (final ExecutionException e) {
+                    bandFutures.forEach(f -> f.cancel(true));
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("failed to map row band", cause);
                 }
             }
+
         } else {
-            for (final Pair<AffineModel2D, double[][]> triangle : av) {
-                mapTriangle(triangle, pixelMapper);
-            }
+            mapBand(av, pixelMapper, 0, targetHeight - 1);
         }
     }
 
-    private static final class MapTriangleThread extends Thread {
-        private final AtomicInteger i;
-        private final List<Pair<AffineModel2D, double[][]>> triangles;
-        private final PixelMapper pixelMapper;
-
-        MapTriangleThread(final AtomicInteger i,
-                          final List<Pair<AffineModel2D, double[][]>> triangles,
-                          final PixelMapper pixelMapper) {
-            this.i = i;
-            this.triangles = triangles;
-            this.pixelMapper = pixelMapper;
-        }
+    /**
+     * Replaces the executor used for all subsequent multi-threaded mapping in this JVM.
+     * Callers remain responsible for shutting down any executor they provide.
+     *
+     * @param  mappingExecutor  long-lived executor for row band mapping tasks
+     *                          (specify null to restore the default shared fork-join pool).
+     */
+    public static void setMappingExecutor(final ExecutorService mappingExecutor) {
+        sharedMappingExecutor = mappingExecutor;
+    }
 
-        @Override
-        final public void run() {
-            int k = i.getAndIncrement();
-            while (!isInterrupted() && k < triangles.size()) {
-                mapTriangle(triangles.get(k), pixelMapper);
-                k = i.getAndIncrement();
-            }
+    /**
+     * @return the executor currently used for multi-threaded mapping.
+     */
+    public static ExecutorService getMappingExecutor() {
+        final ExecutorService executor = sharedMappingExecutor;
+        return executor == null ? DEFAULT_MAPPING_EXECUTOR : executor;
+    }
+
+    /**
+     * @return first target row of the specified band when the target is split into equal sized bands.
+     */
+    private static int getBandStart(final int band,
+                                    final int numberOfBands,
+                                    final int targetHeight) {
+        return (int) (((long) band * targetHeight) / numberOfBands);
+    }
+
+    private static void mapBand(final List<Pair<AffineModel2D, double[][]>> triangles,
+                                final PixelMapper pixelMapper,
+                                final int bandMinY,
+                                final int bandMaxY) {
+        for (final Pair<AffineModel2D, double[][]> triangle : triangles) {
+            mapTriangle(triangle, pixelMapper, bandMinY, bandMaxY);
         }
     }
 
+    /**
+     * Maps all target pixels covered by the specified triangle within the specified row band.
+     *
+     * Rows are rasterized as spans whose end points are derived from the triangle edges and then
+     * verified with {@link RenderTransformMesh#isInTargetTriangle} so that pixel coverage is identical
+     * to testing each pixel in the triangle's bounding box.  Source coordinates are derived with the
+     * same operations as {@link AffineModel2D#applyInverseInPlace}, but the row terms are only
+     * calculated once per row.
+     */
     private static void mapTriangle(final Pair<AffineModel2D, double[][]> ai,
-                                    final PixelMapper pixelMapper) {
+                                    final PixelMapper pixelMapper,
+                                    final int bandMinY,
+                                    final int bandMaxY) {
 
         final int w = pixelMapper.getTargetWidth() - 1;
-        final int h = pixelMapper.getTargetHeight() - 1;
 
         final double[][] pq = ai.b;
 
@@ -106,58 +155,167 @@ public class RenderTransformMeshMappingWithMasks {
         RenderTransformMesh.calculateTargetBoundingBox(pq, min, max);
 
         final int minX = Math.max(0, Util.roundPos(min[0]));
-        final int minY = Math.max(0, Util.roundPos(min[1]));
+        final int minY = Math.max(bandMinY, Util.roundPos(min[1]));
         final int maxX = Math.min(w, Util.roundPos(max[0]));
-        final int maxY = Math.min(h, Util.roundPos(max[1]));
+        final int maxY = Math.min(bandMaxY, Util.roundPos(max[1]));
 
-        final double[] source = new double[2];
-
-        if (pixelMapper.isMappingInterpolated()) {
-
-            for (int targetY = minY; targetY <= maxY; ++targetY) {
-                for (int targetX = minX; targetX <= maxX; ++targetX) {
+        if ((minX > maxX) || (minY > maxY)) {
+            return;
+        }
 
-                    if (RenderTransformMesh.isInTargetTriangle(pq, targetX, targetY)) {
+        // check invertibility once per triangle instead of once per pixel
+        final double[] probe = new double[] { minX, minY };
+        try {
+            ai.a.applyInverseInPlace(probe);
+        } catch (final Exception e) {
+            LOG.warn("ignoring exception", e);
+            return;
+        }
 
-                        source[0] = targetX;
-                        source[1] = targetY;
+        final double[] inverse = new double[6];
+        ai.a.createInverse().toArray(inverse);
+        final double i00 = inverse[0];
+        final double i10 = inverse[1];
+        final double i01 = inverse[2];
+        final double i11 = inverse[3];
+        final double i02 = inverse[4];
+        final double i12 = inverse[5];
+
+        final boolean isMappingInterpolated = pixelMapper.isMappingInterpolated();
+        final boolean hasFiniteVertices = hasFiniteTargetVertices(pq);
+        final int[] span = new int[2];
+
+        for (int targetY = minY; targetY <= maxY; ++targetY) {
+
+            final double rowX = targetY * i01;
+            final double rowY = targetY * i11;
+
+            if (hasFiniteVertices && findTargetSpan(pq, targetY, minX, maxX, span)) {
+
+                for (int targetX = span[0]; targetX <= span[1]; ++targetX) {
+                    mapPixel(pixelMapper,
+                             isMappingInterpolated,
+                             targetX * i00 + rowX + i02,
+                             targetX * i10 + rowY + i12,
+                             targetX,
+                             targetY);
+                }
 
-                        try {
-                            ai.a.applyInverseInPlace(source);
-                        } catch (final Exception e) {
-                            LOG.warn("ignoring exception", e);
-                            continue;
-                        }
+            } else {
 
-                        pixelMapper.mapInterpolated(source[0], source[1], targetX, targetY);
+                // rows without a reliable span estimate (e.g. bounding box rows that only touch a vertex)
+                for (int targetX = minX; targetX <= maxX; ++targetX) {
+                    if (RenderTransformMesh.isInTargetTriangle(pq, targetX, targetY)) {
+                        mapPixel(pixelMapper,
+                                 isMappingInterpolated,
+                                 targetX * i00 + rowX + i02,
+                                 targetX * i10 + rowY + i12,
+                                 targetX,
+                                 targetY);
                     }
                 }
+
             }
+        }
+    }
 
+    private static void mapPixel(final PixelMapper pixelMapper,
+                                 final boolean isMappingInterpolated,
+                                 final double sourceX,
+                                 final double sourceY,
+                                 final int targetX,
+                                 final int targetY) {
+        if (isMappingInterpolated) {
+            pixelMapper.mapInterpolated(sourceX, sourceY, targetX, targetY);
         } else {
+            pixelMapper.map(sourceX, sourceY, targetX, targetY);
+        }
+    }
 
-            for (int targetY = minY; targetY <= maxY; ++targetY) {
-                for (int targetX = minX; targetX <= maxX; ++targetX) {
-
-                    if (RenderTransformMesh.isInTargetTriangle(pq, targetX, targetY)) {
-
-                        source[0] = targetX;
-                        source[1] = targetY;
-
-                        try {
-                            ai.a.applyInverseInPlace(source);
-                        } catch (final Exception e) {
-                            LOG.warn("ignoring exception", e);
-                            continue;
-                        }
+    private static boolean hasFiniteTargetVertices(final double[][] pq) {
+        for (int i = 0; i < 3; i++) {
+            if (Double.isNaN(pq[2][i]) || Double.isInfinite(pq[2][i]) ||
+                Double.isNaN(pq[3][i]) || Double.isInfinite(pq[3][i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                        pixelMapper.map(source[0], source[1], targetX, targetY);
-                    }
+    /**
+     * Finds the first and last pixels in the specified target row that are covered by a triangle.
+     * The span is estimated by intersecting the row with the triangle edges and then adjusted
+     * so that its end points agree with {@link RenderTransformMesh#isInTargetTriangle}.
+     *
+     * @param  pq         triangle vertices.
+     * @param  targetY    target row.
+     * @param  minX       minimum target x for the span.
+     * @param  maxX       maximum target x for the span.
+     * @param  span       array for returning span start (index 0) and end (index 1).
+     *
+     * @return true if a span was found; false if the row cannot be estimated or is not covered.
+     */
+    static boolean findTargetSpan(final double[][] pq,
+                                  final int targetY,
+                                  final int minX,
+                                  final int maxX,
+                                  final int[] span) {
+
+        final double[] xs = pq[2];
+        final double[] ys = pq[3];
+
+        double left = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < 3; i++) {
+            final int j = (i + 1) % 3;
+            final double x0 = xs[i];
+            final double y0 = ys[i];
+            final double x1 = xs[j];
+            final double y1 = ys[j];
+            if (((y0 <= targetY) && (targetY <= y1)) || ((y1 <= targetY) && (targetY <= y0))) {
+                if (y0 == y1) {
+                    left = Math.min(left, Math.min(x0, x1));
+                    right = Math.max(right, Math.max(x0, x1));
+                } else {
+                    final double x = x0 + ((targetY - y0) * (x1 - x0) / (y1 - y0));
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
                 }
             }
+        }
+
+        if (left > right) {
+            return false;
+        }
+
+        int start = (int) Math.max(minX, Math.min(maxX, Math.ceil(left)));
+        int end = (int) Math.max(minX, Math.min(maxX, Math.floor(right)));
 
+        while ((start > minX) && RenderTransformMesh.isInTargetTriangle(pq, start - 1, targetY)) {
+            start--;
+        }
+        while ((end < maxX) && RenderTransformMesh.isInTargetTriangle(pq, end + 1, targetY)) {
+            end++;
         }
+        while ((start <= end) && (! RenderTransformMesh.isInTargetTriangle(pq, start, targetY))) {
+            start++;
+        }
+        while ((end >= start) && (! RenderTransformMesh.isInTargetTriangle(pq, end, targetY))) {
+            end--;
+        }
+
+        span[0] = start;
+        span[1] = end;
+
+        return true;
     }
 
+    /** Default executor shared by all mapping instances, sized to the number of processors in the JVM. */
+    private static final ExecutorService DEFAULT_MAPPING_EXECUTOR =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static volatile ExecutorService sharedMappingExecutor = null;
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderTransformMeshMappingWithMasks.class);
 }
@@ -20,6 +20,9 @@ public class MultiChannelWithAlphaMapper
     protected final List<Double> sourceMaxMaskIntensityList;
     protected final List<Double> targetMaxMaskIntensityList;
 
+    private final double[] sourceMaxMaskIntensities;
+    private final double[] targetMaxMaskIntensities;
+
     public MultiChannelWithAlphaMapper(final ChannelMap sourceChannels,
                                        final ChannelMap targetChannels,
                                        final boolean isMappingInterpolated) {
@@ -36,6 +39,16 @@ public class MultiChannelWithAlphaMapper
             this.targetMaxMaskIntensityList.add(target.mask.getMax());
         }
 
+        this.sourceMaxMaskIntensities = new double[sourceMaxMaskIntensityList.size()];
+        for (int i = 0; i < sourceMaxMaskIntensities.length; i++) {
+            this.sourceMaxMaskIntensities[i] = sourceMaxMaskIntensityList.get(i);
+        }
+
+        this.targetMaxMaskIntensities = new double[targetMaxMaskIntensityList.size()];
+        for (int i = 0; i < targetMaxMaskIntensities.length; i++) {
+            this.targetMaxMaskIntensities[i] = targetMaxMaskIntensityList.get(i);
+        }
+
         if (isMappingInterpolated) {
             for (final ImageProcessorWithMasks normalizedSource : normalizedSourceList) {
                 normalizedSource.mask.setInterpolationMethod(ImageProcessor.BILINEAR);
@@ -59,10 +72,10 @@ public class MultiChannelWithAlphaMapper
             setBlendedIntensity(targetX,
                                 targetY,
                                 targetList.get(i),
-                                targetMaxMaskIntensityList.get(i),
+                                targetMaxMaskIntensities[i],
                                 normalizedSource.ip.getf(roundedSourceX, roundedSourceY),
                                 normalizedSource.mask.getf(roundedSourceX, roundedSourceY),
-                                sourceMaxMaskIntensityList.get(i));
+                                sourceMaxMaskIntensities[i]);
         }
 
     }
@@ -79,10 +92,10 @@ public class MultiChannelWithAlphaMapper
             setBlendedIntensity(targetX,
                                 targetY,
                                 targetList.get(i),
-                                targetMaxMaskIntensityList.get(i),
+                                targetMaxMaskIntensities[i],
                                 normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY),
                                 normalizedSource.mask.getInterpolatedPixel(sourceX, sourceY),
-                                sourceMaxMaskIntensityList.get(i));
+                                sourceMaxMaskIntensities[i]);
         }
     }
 
@@ -98,14 +111,17 @@ public class MultiChannelWithAlphaMapper
         final double targetIntensity = target.ip.getf(targetX, targetY);
         final double targetAlpha = target.mask.getf(targetX, targetY) / targetMaxMaskIntensity;
 
-        final double[] blendedIntensityAndAlpha =
-                SingleChannelWithAlphaMapper.getBlendedIntensityAndAlpha(sourceIntensity,
-                                                                         sourceAlpha,
-                                                                         targetIntensity,
-                                                                         targetAlpha);
-
-        target.ip.setf(targetX, targetY, (float) blendedIntensityAndAlpha[0]);
-        target.mask.setf(targetX, targetY, (float) (blendedIntensityAndAlpha[1] * targetMaxMaskIntensity));
+        final double blendedAlpha =
+                SingleChannelWithAlphaMapper.getBlendedAlpha(sourceAlpha, targetIntensity, targetAlpha);
+        final double blendedIntensity =
+                SingleChannelWithAlphaMapper.getBlendedIntensity(sourceIntensity,
+                                                                 sourceAlpha,
+                                                                 targetIntensity,
+                                                                 targetAlpha,
+                                                                 blendedAlpha);
+
+        target.ip.setf(targetX, targetY, (float) blendedIntensity);
+        target.mask.setf(targetX, targetY, (float) (blendedAlpha * targetMaxMaskIntensity));
     }
 
 
@@ -0,0 +1,97 @@
+package org.janelia.alignment.mapper;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import static mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+/**
+ * Alpha blending mapper for the common render case of float intensities with byte masks.
+ * Pixels are read and written directly from/to the backing arrays of the source and target processors
+ * (avoiding virtual processor calls and per pixel allocations) but are blended exactly like
+ * {@link SingleChannelWithAlphaMapper}.
+ *
+ * Use {@link #isSupported} to determine whether this mapper can be used for a source and target.
+ *
+ * @author Eric Trautman
+ */
+public class SingleChannelFloatWithAlphaMapper
+        extends SingleChannelWithAlphaMapper {
+
+    private final float[] sourcePixels;
+    private final byte[] sourceMaskPixels;
+    private final int sourceWidth;
+
+    private final float[] targetPixels;
+    private final byte[] targetMaskPixels;
+    private final int targetWidth;
+
+    public SingleChannelFloatWithAlphaMapper(final ImageProcessorWithMasks source,
+                                             final ImageProcessorWithMasks target,
+                                             final boolean isMappingInterpolated)
+            throws IllegalArgumentException {
+
+        super(source, target, isMappingInterpolated);
+
+        if (! isSupported(source, target)) {
+            throw new IllegalArgumentException("source and target must have float pixels with byte masks");
+        }
+
+        this.sourcePixels = (float[]) normalizedSource.ip.getPixels();
+        this.sourceMaskPixels = (byte[]) normalizedSource.mask.getPixels();
+        this.sourceWidth = normalizedSource.ip.getWidth();
+
+        this.targetPixels = (float[]) target.ip.getPixels();
+        this.targetMaskPixels = (byte[]) target.mask.getPixels();
+        this.targetWidth = target.ip.getWidth();
+    }
+
+    /**
+     * @return true if the specified source and target can be mapped by this class; otherwise false.
+     *         Sources are always normalized to float for float targets, so only the masks of the source
+     *         and the target pixel types need to be checked.
+     */
+    public static boolean isSupported(final ImageProcessorWithMasks source,
+                                      final ImageProcessorWithMasks target) {
+        return (source.mask instanceof ByteProcessor) &&
+               (target.ip instanceof FloatProcessor) &&
+               (target.mask instanceof ByteProcessor);
+    }
+
+    @Override
+    public void map(final double sourceX,
+                    final double sourceY,
+                    final int targetX,
+                    final int targetY) {
+
+        final int sourceIndex = ((int) Math.round(sourceY) * sourceWidth) + (int) Math.round(sourceX);
+
+        setBlendedIntensity(targetX,
+                            targetY,
+                            sourcePixels[sourceIndex],
+                            sourceMaskPixels[sourceIndex] & 0xff);
+    }
+
+    @Override
+    public void setBlendedIntensity(final int targetX,
+                                    final int targetY,
+                                    final double sourceIntensity,
+                                    final double sourceMaskIntensity) {
+
+        final int targetIndex = (targetY * targetWidth) + targetX;
+
+        final double sourceAlpha = sourceMaskIntensity / sourceMaxMaskIntensity;
+        final double targetIntensity = targetPixels[targetIndex];
+        final double targetAlpha = (targetMaskPixels[targetIndex] & 0xff) / targetMaxMaskIntensity;
+
+        final double blendedAlpha = getBlendedAlpha(sourceAlpha, targetIntensity, targetAlpha);
+        final double blendedIntensity =
+                getBlendedIntensity(sourceIntensity, sourceAlpha, targetIntensity, targetAlpha, blendedAlpha);
+
+        targetPixels[targetIndex] = (float) blendedIntensity;
+
+        // same float to byte conversion as ByteProcessor.setf
+        targetMaskPixels[targetIndex] = (byte) (float) (blendedAlpha * targetMaxMaskIntensity);
+    }
+
+}
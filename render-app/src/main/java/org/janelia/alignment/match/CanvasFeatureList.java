@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -16,13 +17,34 @@ import org.janelia.alignment.util.FileUtil;
 /**
  * List of features along with the rendering context used to produce them for a canvas.
  *
- * Includes {@link #writeToStorage(File, CanvasFeatureList)} and {@link #readFromStorage(File, CanvasId)} methods
+ * Includes {@link #writeToStorage(File, CanvasFeatureList, StorageFormat)} and
+ * {@link #readFromStorage(File, CanvasId, StorageFormat)} methods
  * to facilitate persistence to and retrieval from a file system.
  *
  * @author Eric Trautman
  */
 public class CanvasFeatureList implements Serializable {
 
+    /** Supported persisted feature list formats. */
+    public enum StorageFormat {
+
+        /** Gzipped JSON (original format). */
+        JSON(".features.json.gz"),
+
+        /** Fixed size binary records (see {@link CanvasFeatureListBinaryFormat}). */
+        BINARY(".features.bin");
+
+        private final String fileSuffix;
+
+        StorageFormat(final String fileSuffix) {
+            this.fileSuffix = fileSuffix;
+        }
+
+        public String getFileSuffix() {
+            return fileSuffix;
+        }
+    }
+
     private final CanvasId canvasId;
     private final String renderParametersUrl;
     private final Double renderScale;
@@ -62,6 +84,10 @@ public class CanvasFeatureList implements Serializable {
         return renderScale;
     }
 
+    Double getNullableRenderScale() {
+        return renderScale;
+    }
+
     public Integer getClipWidth() {
         return clipWidth;
     }
@@ -82,7 +108,7 @@ public class CanvasFeatureList implements Serializable {
      * @param  rootDirectory  root directory for all features extracted in a particular run.
      * @param  canvasId       identifies the desired canvas.
      *
-     * @return persisted feature list for the specified canvas.
+     * @return persisted feature list for the specified canvas (JSON files are preferred if both formats exist).
      *
      * @throws IOException
      *   if the canvas feature storage file cannot be found or parsed.
@@ -90,13 +116,39 @@ public class CanvasFeatureList implements Serializable {
     public static CanvasFeatureList readFromStorage(final File rootDirectory,
                                                     final CanvasId canvasId)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasId);
-        final Reader reader = new FileUtil().getExtensionBasedReader(path.toString());
-        return JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+        return readFromStorage(rootDirectory, canvasId, StorageFormat.JSON);
+    }
+
+    /**
+     * @param  rootDirectory    root directory for all features extracted in a particular run.
+     * @param  canvasId         identifies the desired canvas.
+     * @param  preferredFormat  format to read if features for the canvas have been persisted in both formats.
+     *
+     * @return persisted feature list for the specified canvas.
+     *
+     * @throws IOException
+     *   if the canvas feature storage file cannot be found or parsed.
+     */
+    public static CanvasFeatureList readFromStorage(final File rootDirectory,
+                                                    final CanvasId canvasId,
+                                                    final StorageFormat preferredFormat)
+            throws IOException {
+
+        final Path path = findStoragePath(rootDirectory, canvasId, preferredFormat);
+
+        final CanvasFeatureList canvasFeatureList;
+        if (path.toString().endsWith(StorageFormat.BINARY.getFileSuffix())) {
+            canvasFeatureList = CanvasFeatureListBinaryFormat.read(path);
+        } else {
+            final Reader reader = new FileUtil().getExtensionBasedReader(path.toString());
+            canvasFeatureList = JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+        }
+
+        return canvasFeatureList;
     }
 
     /**
-     * Persists the specified feature data to disk (see {@link #getStoragePath(File, CanvasId)}).
+     * Persists the specified feature data to disk in JSON format (see {@link #getStoragePath(File, CanvasId)}).
      *
      * @param  rootDirectory      root directory for all features extracted in the current run.
      * @param  canvasFeatureList  feature data to persist.
@@ -107,13 +159,34 @@ public class CanvasFeatureList implements Serializable {
     public static void writeToStorage(final File rootDirectory,
                                       final CanvasFeatureList canvasFeatureList)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId);
+        writeToStorage(rootDirectory, canvasFeatureList, StorageFormat.JSON);
+    }
+
+    /**
+     * Persists the specified feature data to disk (see {@link #getStoragePath(File, CanvasId, StorageFormat)}).
+     *
+     * @param  rootDirectory      root directory for all features extracted in the current run.
+     * @param  canvasFeatureList  feature data to persist.
+     * @param  format             storage format.
+     *
+     * @throws IOException
+     *   if the feature data cannot be persisted.
+     */
+    public static void writeToStorage(final File rootDirectory,
+                                      final CanvasFeatureList canvasFeatureList,
+                                      final StorageFormat format)
+            throws IOException {
+        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId, format);
         FileUtil.ensureWritableDirectory(path.getParent().toFile());
-        FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        if (StorageFormat.BINARY.equals(format)) {
+            CanvasFeatureListBinaryFormat.write(canvasFeatureList, path);
+        } else {
+            FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        }
     }
 
     /**
-     * Builds a standard storage path for the specified canvas of the form:
+     * Builds a standard JSON storage path for the specified canvas of the form:
      * [root]/[canvas_group_id]/[canvas_id].features.json.gz
      *
      * @param  rootDirectory  root directory for all features extracted in a particular run.
@@ -123,13 +196,57 @@ public class CanvasFeatureList implements Serializable {
      */
     public static Path getStoragePath(final File rootDirectory,
                                       final CanvasId canvasId) {
+        return getStoragePath(rootDirectory, canvasId, StorageFormat.JSON);
+    }
+
+    /**
+     * Builds a standard storage path for the specified canvas of the form:
+     * [root]/[canvas_group_id]/[canvas_id][format_suffix]
+     *
+     * @param  rootDirectory  root directory for all features extracted in a particular run.
+     * @param  canvasId       the current canvas.
+     * @param  format         storage format.
+     *
+     * @return standard storage path for the specified canvas' feature data.
+     */
+    public static Path getStoragePath(final File rootDirectory,
+                                      final CanvasId canvasId,
+                                      final StorageFormat format) {
         String name = canvasId.getId();
         if (canvasId.getRelativePosition() != null) {
             name = name + "__" + canvasId.getRelativePosition();
         }
         return Paths.get(rootDirectory.getAbsolutePath(),
                          canvasId.getGroupId(),
-                         name + ".features.json.gz");
+                         name + format.getFileSuffix());
+    }
+
+    /**
+     * @param  rootDirectory    root directory for all features extracted in a particular run.
+     * @param  canvasId         the current canvas.
+     * @param  preferredFormat  format to use if features for the canvas have been persisted in multiple formats.
+     *
+     * @return storage path for the preferred format if it exists,
+     *         otherwise the storage path for any other existing format,
+     *         otherwise (nothing has been stored) the storage path for the preferred format.
+     */
+    public static Path findStoragePath(final File rootDirectory,
+                                        final CanvasId canvasId,
+                                        final StorageFormat preferredFormat) {
+        final Path preferredPath = getStoragePath(rootDirectory, canvasId, preferredFormat);
+        Path path = preferredPath;
+        if (! Files.exists(preferredPath)) {
+            for (final StorageFormat format : StorageFormat.values()) {
+                if (! format.equals(preferredFormat)) {
+                    final Path otherPath = getStoragePath(rootDirectory, canvasId, format);
+                    if (Files.exists(otherPath)) {
+                        path = otherPath;
+                        break;
+                    }
+                }
+            }
+        }
+        return path;
     }
 
 }
@@ -0,0 +1,243 @@
+package org.janelia.alignment.match;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+
+/**
+ * Compact binary file representation for a {@link CanvasFeatureList}.
+ *
+ * JSON feature lists spend most of their parse time converting decimal descriptor text.
+ * This format stores each feature as a fixed size record of packed little-endian values,
+ * so feature files can be memory-mapped and decoded with a few bulk copies per feature.
+ *
+ * <pre>
+ *   file:    magic (4 bytes "RFEA"), version (int), header, record*
+ *   header:  canvasId JSON, renderParametersUrl (strings),
+ *            renderScale (double, NaN if null), clipWidth, clipHeight (ints, -1 if null),
+ *            featureCount, locationDimensions, descriptorLength (ints)
+ *   record:  location[locationDimensions], scale, orientation (doubles),
+ *            descriptor[descriptorLength] (floats)
+ *   string:  UTF-8 byte length (int, -1 if null), UTF-8 bytes
+ * </pre>
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureListBinaryFormat {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Writes the specified feature list to a binary file.
+     * Data is written to a temporary file that is then moved to the specified path,
+     * so readers never see partially written files.
+     *
+     * @param  canvasFeatureList  feature list to write.
+     * @param  path               path of file to write.
+     *
+     * @throws IllegalArgumentException
+     *   if the features do not all have the same number of location dimensions and descriptor values.
+     *
+     * @throws IOException
+     *   if the file cannot be written.
+     */
+    public static void write(final CanvasFeatureList canvasFeatureList,
+                             final Path path)
+            throws IllegalArgumentException, IOException {
+
+        final List<Feature> featureList = canvasFeatureList.getFeatureList();
+
+        int locationDimensions = 2;
+        int descriptorLength = 0;
+        if (featureList.size() > 0) {
+            locationDimensions = featureList.get(0).location.length;
+            descriptorLength = featureList.get(0).descriptor.length;
+        }
+
+        for (final Feature feature : featureList) {
+            if ((feature.location.length != locationDimensions) || (feature.descriptor.length != descriptorLength)) {
+                throw new IllegalArgumentException(
+                        "all features for " + canvasFeatureList.getCanvasId() +
+                        " must have the same number of location dimensions and descriptor values");
+            }
+        }
+
+        final CanvasId canvasId = canvasFeatureList.getCanvasId();
+        final byte[] canvasIdJson = toBytes(canvasId == null ? null : canvasId.toJson());
+        final byte[] renderParametersUrl = toBytes(canvasFeatureList.getRenderParametersUrl());
+
+        final int recordLength = getRecordLength(locationDimensions, descriptorLength);
+        final long fileLength = MAGIC.length + 4 +
+                                stringLength(canvasIdJson) + stringLength(renderParametersUrl) +
+                                8 + 4 + 4 + 4 + 4 + 4 +
+                                ((long) recordLength * featureList.size());
+
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many features (" + featureList.size() +
+                                               ") for " + canvasFeatureList.getCanvasId());
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) fileLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        putString(buffer, canvasIdJson);
+        putString(buffer, renderParametersUrl);
+        final Double renderScale = canvasFeatureList.getNullableRenderScale();
+        buffer.putDouble(renderScale == null ? Double.NaN : renderScale);
+        putInteger(buffer, canvasFeatureList.getClipWidth());
+        putInteger(buffer, canvasFeatureList.getClipHeight());
+        buffer.putInt(featureList.size());
+        buffer.putInt(locationDimensions);
+        buffer.putInt(descriptorLength);
+
+        for (final Feature feature : featureList) {
+            buffer.asDoubleBuffer().put(feature.location);
+            buffer.position(buffer.position() + (locationDimensions * 8));
+            buffer.putDouble(feature.scale);
+            buffer.putDouble(feature.orientation);
+            buffer.asFloatBuffer().put(feature.descriptor);
+            buffer.position(buffer.position() + (descriptorLength * 4));
+        }
+
+        // use a unique temporary file in the target directory so that concurrent writers
+        // of the same canvas never share a partially written file
+        final Path absolutePath = path.toAbsolutePath();
+        final Path tmpPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName() + ".", ".tmp");
+        try {
+            Files.write(tmpPath, buffer.array());
+            Files.move(tmpPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * @param  path  path of (memory-mapped) file to read.
+     *
+     * @return feature list read from the specified binary file.
+     *
+     * @throws IOException
+     *   if the file cannot be read or is improperly formatted.
+     */
+    public static CanvasFeatureList read(final Path path)
+            throws IOException {
+
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException(path + " does not contain binary canvas features");
+                }
+            }
+
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported binary canvas features version " + version + " in " + path);
+            }
+
+            final String canvasIdJson = getString(buffer);
+            final CanvasId canvasId = canvasIdJson == null ? null : CanvasId.fromJson(canvasIdJson);
+            final String renderParametersUrl = getString(buffer);
+            final double renderScale = buffer.getDouble();
+            final Integer clipWidth = getInteger(buffer);
+            final Integer clipHeight = getInteger(buffer);
+            final int featureCount = buffer.getInt();
+            final int locationDimensions = buffer.getInt();
+            final int descriptorLength = buffer.getInt();
+
+            if ((featureCount < 0) || (locationDimensions < 0) || (descriptorLength < 0) ||
+                (((long) featureCount * getRecordLength(locationDimensions, descriptorLength)) != buffer.remaining())) {
+                throw new IOException("invalid binary canvas features header in " + path);
+            }
+
+            final List<Feature> featureList = new ArrayList<>(featureCount);
+            for (int i = 0; i < featureCount; i++) {
+                final double[] location = new double[locationDimensions];
+                buffer.asDoubleBuffer().get(location);
+                buffer.position(buffer.position() + (locationDimensions * 8));
+                final double scale = buffer.getDouble();
+                final double orientation = buffer.getDouble();
+                final float[] descriptor = new float[descriptorLength];
+                buffer.asFloatBuffer().get(descriptor);
+                buffer.position(buffer.position() + (descriptorLength * 4));
+                featureList.add(new Feature(scale, orientation, location, descriptor));
+            }
+
+            return new CanvasFeatureList(canvasId,
+                                         renderParametersUrl,
+                                         Double.isNaN(renderScale) ? null : renderScale,
+                                         clipWidth,
+                                         clipHeight,
+                                         featureList);
+
+        } catch (final RuntimeException e) {
+            throw new IOException("failed to parse binary canvas features in " + path, e);
+        }
+    }
+
+    private static int getRecordLength(final int locationDimensions,
+                                       final int descriptorLength) {
+        return ((locationDimensions + 2) * 8) + (descriptorLength * 4);
+    }
+
+    private static byte[] toBytes(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringLength(final byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(final ByteBuffer buffer,
+                                  final byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        String value = null;
+        if (length >= 0) {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void putInteger(final ByteBuffer buffer,
+                                   final Integer value) {
+        buffer.putInt(value == null ? -1 : value);
+    }
+
+    private static Integer getInteger(final ByteBuffer buffer) {
+        final int value = buffer.getInt();
+        return value < 0 ? null : value;
+    }
+
+    private static final byte[] MAGIC = { 'R', 'F', 'E', 'A' };
+}
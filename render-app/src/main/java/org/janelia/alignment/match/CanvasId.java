@@ -171,6 +171,10 @@ public class CanvasId
         return JSON_HELPER.toJson(this);
     }
 
+    public static CanvasId fromJson(final String json) {
+        return JSON_HELPER.fromJson(json);
+    }
+
     private static final JsonUtils.Helper<CanvasId> JSON_HELPER =
             new JsonUtils.Helper<>(CanvasId.class);
 
@@ -0,0 +1,108 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utilities for ordering canvas pairs so that pairs sharing canvases are grouped together.
+ *
+ * Pair lists are typically split into contiguous slices (e.g. by Spark's parallelize) for distributed
+ * processing.  When pairs that share a canvas land in different slices, data for the canvas
+ * (e.g. features) must be loaded or derived once for each slice.  Ordering pairs with a breadth first
+ * traversal of the pair graph keeps each canvas's pairs (and its neighbors' pairs) close together,
+ * so contiguous slices cover compact neighborhoods and most canvases are only needed by one slice.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairLocalityHelper {
+
+    /**
+     * @param  pairs  pairs to order.
+     *
+     * @return list containing the specified pairs ordered by a breadth first traversal of the pair graph
+     *         (traversals are started from the least unvisited canvas, so layers are visited in group order).
+     */
+    public static List<OrderedCanvasIdPair> orderForLocality(final Collection<OrderedCanvasIdPair> pairs) {
+
+        final Map<CanvasId, List<OrderedCanvasIdPair>> canvasToPairsMap = new HashMap<>(pairs.size());
+        for (final OrderedCanvasIdPair pair : pairs) {
+            canvasToPairsMap.computeIfAbsent(pair.getP(), p -> new ArrayList<>()).add(pair);
+            canvasToPairsMap.computeIfAbsent(pair.getQ(), q -> new ArrayList<>()).add(pair);
+        }
+
+        final List<CanvasId> sortedCanvasIds = new ArrayList<>(canvasToPairsMap.keySet());
+        Collections.sort(sortedCanvasIds);
+
+        final List<OrderedCanvasIdPair> orderedPairs = new ArrayList<>(pairs.size());
+        final Set<CanvasId> queuedCanvasIds = new HashSet<>(sortedCanvasIds.size() * 2);
+        final Set<CanvasId> visitedCanvasIds = new HashSet<>(sortedCanvasIds.size() * 2);
+        final Deque<CanvasId> queue = new ArrayDeque<>();
+
+        for (final CanvasId startCanvasId : sortedCanvasIds) {
+
+            if (queuedCanvasIds.add(startCanvasId)) {
+                queue.add(startCanvasId);
+            }
+
+            while (! queue.isEmpty()) {
+
+                final CanvasId canvasId = queue.remove();
+                visitedCanvasIds.add(canvasId);
+
+                // pairs with previously visited canvases have already been added
+                for (final OrderedCanvasIdPair pair : canvasToPairsMap.get(canvasId)) {
+                    final CanvasId otherCanvasId = canvasId.equals(pair.getP()) ? pair.getQ() : pair.getP();
+                    if (! visitedCanvasIds.contains(otherCanvasId)) {
+                        orderedPairs.add(pair);
+                        if (queuedCanvasIds.add(otherCanvasId)) {
+                            queue.add(otherCanvasId);
+                        }
+                    }
+                }
+            }
+        }
+
+        return orderedPairs;
+    }
+
+    /**
+     * @param  pairs           list of pairs.
+     * @param  numberOfSlices  number of contiguous (equally sized) slices the list will be split into.
+     *
+     * @return the average number of slices that need data for each canvas in the list.
+     */
+    public static double getAverageSlicesPerCanvas(final List<OrderedCanvasIdPair> pairs,
+                                                   final int numberOfSlices) {
+
+        final Set<CanvasId> allCanvasIds = new HashSet<>(pairs.size());
+        long canvasSliceCount = 0;
+
+        final Set<CanvasId> sliceCanvasIds = new HashSet<>();
+        for (int slice = 0; slice < numberOfSlices; slice++) {
+
+            // same boundaries as Spark's ParallelCollectionRDD slicing
+            final int fromIndex = (int) (((long) slice * pairs.size()) / numberOfSlices);
+            final int toIndex = (int) (((long) (slice + 1) * pairs.size()) / numberOfSlices);
+
+            sliceCanvasIds.clear();
+            for (final OrderedCanvasIdPair pair : pairs.subList(fromIndex, toIndex)) {
+                sliceCanvasIds.add(pair.getP());
+                sliceCanvasIds.add(pair.getQ());
+            }
+
+            canvasSliceCount += sliceCanvasIds.size();
+            allCanvasIds.addAll(sliceCanvasIds);
+        }
+
+        return allCanvasIds.size() == 0 ? 0.0 : (double) canvasSliceCount / allCanvasIds.size();
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Union-find (disjoint set) structure for identifying connected canvas clusters.
+ *
+ * Each canvas is interned to an integer index when it is first seen, so connections can be streamed in
+ * (e.g. from a query that only returns canvas ids) without retaining any match data.
+ * Find operations are iterative (with path halving) and unions are by size,
+ * so very large clusters can be processed without deep recursion.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdUnionFind {
+
+    private final Map<CanvasId, Integer> canvasIdToIndexMap;
+    private final List<CanvasId> canvasIds;
+    private final Map<String, String> internedGroupIds;
+    private int[] parents;
+    private int[] sizes;
+
+    public CanvasIdUnionFind() {
+        this.canvasIdToIndexMap = new HashMap<>();
+        this.canvasIds = new ArrayList<>();
+        this.internedGroupIds = new HashMap<>();
+        this.parents = new int[INITIAL_CAPACITY];
+        this.sizes = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return number of distinct canvases that have been added.
+     */
+    public int getCanvasCount() {
+        return canvasIds.size();
+    }
+
+    /**
+     * Connects the specified matched canvases.
+     */
+    public void addConnection(final CanvasMatches matches) {
+        addConnection(matches.getpGroupId(), matches.getpId(), matches.getqGroupId(), matches.getqId());
+    }
+
+    /**
+     * Connects the specified canvases.
+     */
+    public void addConnection(final String pGroupId,
+                              final String pId,
+                              final String qGroupId,
+                              final String qId) {
+
+        final int pRoot = findRoot(getIndex(pGroupId, pId));
+        final int qRoot = findRoot(getIndex(qGroupId, qId));
+
+        if (pRoot != qRoot) {
+            // attach the smaller tree to the larger one to keep trees shallow
+            if (sizes[pRoot] < sizes[qRoot]) {
+                parents[pRoot] = qRoot;
+                sizes[qRoot] += sizes[pRoot];
+            } else {
+                parents[qRoot] = pRoot;
+                sizes[pRoot] += sizes[qRoot];
+            }
+        }
+    }
+
+    /**
+     * @return list of connected canvas sets sorted by size (largest to smallest).
+     */
+    public List<Set<CanvasId>> getSortedConnectedCanvasIdSets() {
+
+        final int canvasCount = canvasIds.size();
+
+        final int[] rootToSetIndex = new int[canvasCount];
+        Arrays.fill(rootToSetIndex, -1);
+
+        final List<Set<CanvasId>> connectedSets = new ArrayList<>();
+
+        for (int index = 0; index < canvasCount; index++) {
+            final int root = findRoot(index);
+            if (rootToSetIndex[root] == -1) {
+                rootToSetIndex[root] = connectedSets.size();
+                connectedSets.add(new HashSet<>(sizes[root] * 2));
+            }
+            connectedSets.get(rootToSetIndex[root]).add(canvasIds.get(index));
+        }
+
+        connectedSets.sort((s1, s2) -> Integer.compare(s2.size(), s1.size()));
+
+        return connectedSets;
+    }
+
+    private int getIndex(final String groupId,
+                         final String id) {
+
+        final String internedGroupId = internedGroupIds.computeIfAbsent(groupId, g -> g);
+        final CanvasId canvasId = new CanvasId(internedGroupId, id);
+
+        Integer index = canvasIdToIndexMap.get(canvasId);
+
+        if (index == null) {
+            index = canvasIds.size();
+            if (index == parents.length) {
+                final int newCapacity = parents.length * 2;
+                parents = Arrays.copyOf(parents, newCapacity);
+                sizes = Arrays.copyOf(sizes, newCapacity);
+            }
+            parents[index] = index;
+            sizes[index] = 1;
+            canvasIds.add(canvasId);
+            canvasIdToIndexMap.put(canvasId, index);
+        }
+
+        return index;
+    }
+
+    private int findRoot(final int index) {
+        int current = index;
+        while (parents[current] != current) {
+            parents[current] = parents[parents[current]];
+            current = parents[current];
+        }
+        return current;
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -87,6 +87,25 @@ public class CanvasMatches implements Serializable, Comparable<CanvasMatches> {
         normalize();
     }
 
+    /**
+     * Restores previously normalized matches (e.g. from a binary stream) without re-normalizing them.
+     */
+    CanvasMatches(final String pGroupId,
+                  final String pId,
+                  final String qGroupId,
+                  final String qId,
+                  final ConsensusSetData consensusSetData,
+                  final Matches matches,
+                  final Integer matchCount) {
+        this.pGroupId = pGroupId;
+        this.pId = pId;
+        this.qGroupId = qGroupId;
+        this.qId = qId;
+        this.consensusSetData = consensusSetData;
+        this.matches = matches;
+        this.matchCount = matchCount;
+    }
+
     /**
      * Ensures that for any two canvases (tiles), the source (p) and target (q) are consistently assigned.
      * This is done by using lexicographic ordering of the group and canvas ids.
@@ -0,0 +1,370 @@
+package org.janelia.alignment.match;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary representation for streams of {@link CanvasMatches}.
+ *
+ * JSON match lists spend most of their size (and most of their parse time) on decimal
+ * coordinate text.  This format instead stores coordinates and weights as packed little-endian
+ * doubles, so a client can decode a large match list with a few bulk copies.
+ *
+ * <pre>
+ *   stream: magic (4 bytes "RMAT"), version (int), record*, end marker (byte 0)
+ *   record: record marker (byte 1), record length (int), record body
+ *   body:   pGroupId, pId, qGroupId, qId (strings),
+ *           consensus flag (byte), [ index (int), originalPId, originalQId (strings) ],
+ *           matchCount (int, -1 if null),
+ *           matches flag (byte), [ dimensions (int), count (int),
+ *                                  p[dimensions][count], q[dimensions][count], w[count] (doubles) ]
+ *   string: UTF-8 byte length (int, -1 if null), UTF-8 bytes
+ * </pre>
+ *
+ * All multi-byte values are little-endian.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesBinaryFormat {
+
+    /** Media type used to negotiate this format for HTTP requests. */
+    public static final String MEDIA_TYPE = "application/x-canvas-matches";
+
+    public static final int VERSION = 1;
+
+    /**
+     * Writes a list of matches in binary format.
+     *
+     * @param  canvasMatchesList  matches to write.
+     * @param  outputStream       target stream (will be flushed but not closed).
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public static void writeAll(final List<CanvasMatches> canvasMatchesList,
+                                final OutputStream outputStream)
+            throws IOException {
+        final Writer writer = new Writer(outputStream);
+        for (final CanvasMatches canvasMatches : canvasMatchesList) {
+            writer.write(canvasMatches);
+        }
+        writer.finish();
+    }
+
+    /**
+     * @param  inputStream  stream containing binary formatted matches (will not be closed).
+     *
+     * @return all matches read from the specified stream.
+     *
+     * @throws IOException
+     *   if the data cannot be read or is improperly formatted.
+     */
+    public static List<CanvasMatches> readAll(final InputStream inputStream)
+            throws IOException {
+        final List<CanvasMatches> list = new ArrayList<>();
+        final Reader reader = new Reader(inputStream);
+        for (CanvasMatches canvasMatches = reader.next(); canvasMatches != null; canvasMatches = reader.next()) {
+            list.add(canvasMatches);
+        }
+        return list;
+    }
+
+    /**
+     * Incrementally writes matches to a stream.
+     * The stream header is written when the first record is written (or when the writer is finished).
+     */
+    public static class Writer {
+
+        private final OutputStream outputStream;
+        private ByteBuffer buffer;
+        private boolean isHeaderWritten;
+
+        public Writer(final OutputStream outputStream) {
+            this.outputStream = outputStream;
+            this.buffer = allocate(DEFAULT_BUFFER_SIZE);
+            this.isHeaderWritten = false;
+        }
+
+        public void write(final CanvasMatches canvasMatches)
+                throws IOException {
+
+            writeHeaderIfNecessary();
+
+            final byte[] pGroupId = toBytes(canvasMatches.getpGroupId());
+            final byte[] pId = toBytes(canvasMatches.getpId());
+            final byte[] qGroupId = toBytes(canvasMatches.getqGroupId());
+            final byte[] qId = toBytes(canvasMatches.getqId());
+
+            final ConsensusSetData consensusSetData = canvasMatches.getConsensusSetData();
+            byte[] originalPId = null;
+            byte[] originalQId = null;
+            int bodyLength = stringLength(pGroupId) + stringLength(pId) + stringLength(qGroupId) +
+                             stringLength(qId) + 1 + 4 + 1;
+            if (consensusSetData != null) {
+                originalPId = toBytes(consensusSetData.getOriginalPId());
+                originalQId = toBytes(consensusSetData.getOriginalQId());
+                bodyLength += 4 + stringLength(originalPId) + stringLength(originalQId);
+            }
+
+            final Matches matches = canvasMatches.getMatches();
+            int dimensions = 0;
+            int count = 0;
+            if (matches != null) {
+                dimensions = matches.getPs().length;
+                count = matches.getWs().length;
+                bodyLength += 4 + 4 + (((2 * dimensions) + 1) * count * 8);
+            }
+
+            ensureCapacity(1 + 4 + bodyLength);
+
+            buffer.put(RECORD_MARKER);
+            buffer.putInt(bodyLength);
+
+            putString(pGroupId);
+            putString(pId);
+            putString(qGroupId);
+            putString(qId);
+
+            if (consensusSetData == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                final Integer index = consensusSetData.getIndex();
+                buffer.putInt(index == null ? -1 : index);
+                putString(originalPId);
+                putString(originalQId);
+            }
+
+            final Integer matchCount = canvasMatches.getMatchCount();
+            buffer.putInt(matchCount == null ? -1 : matchCount);
+
+            if (matches == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                buffer.putInt(dimensions);
+                buffer.putInt(count);
+                for (final double[] p : matches.getPs()) {
+                    putDoubles(p);
+                }
+                for (final double[] q : matches.getQs()) {
+                    putDoubles(q);
+                }
+                putDoubles(matches.getWs());
+            }
+
+            flushBuffer();
+        }
+
+        /**
+         * Writes the end of stream marker and flushes the underlying stream.
+         */
+        public void finish()
+                throws IOException {
+            writeHeaderIfNecessary();
+            buffer.put(END_MARKER);
+            flushBuffer();
+            outputStream.flush();
+        }
+
+        private void writeHeaderIfNecessary()
+                throws IOException {
+            if (! isHeaderWritten) {
+                buffer.put(MAGIC);
+                buffer.putInt(VERSION);
+                flushBuffer();
+                isHeaderWritten = true;
+            }
+        }
+
+        private void ensureCapacity(final int length) {
+            if (buffer.capacity() < length) {
+                buffer = allocate(length);
+            }
+        }
+
+        private void putString(final byte[] bytes) {
+            if (bytes == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private void putDoubles(final double[] values) {
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + (values.length * 8));
+        }
+
+        private void flushBuffer()
+                throws IOException {
+            outputStream.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        private static byte[] toBytes(final String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int stringLength(final byte[] bytes) {
+            return 4 + (bytes == null ? 0 : bytes.length);
+        }
+    }
+
+    /**
+     * Incrementally reads matches from a stream.
+     */
+    public static class Reader {
+
+        private final InputStream inputStream;
+        private ByteBuffer buffer;
+        private boolean isHeaderRead;
+        private boolean isFinished;
+
+        public Reader(final InputStream inputStream) {
+            this.inputStream = inputStream;
+            this.buffer = allocate(DEFAULT_BUFFER_SIZE);
+            this.isHeaderRead = false;
+            this.isFinished = false;
+        }
+
+        /**
+         * @return the next matches in the stream or null if the end of the stream has been reached.
+         *
+         * @throws IOException
+         *   if the data cannot be read or is improperly formatted.
+         */
+        public CanvasMatches next()
+                throws IOException {
+
+            if (! isHeaderRead) {
+                readHeader();
+            }
+
+            if (isFinished) {
+                return null;
+            }
+
+            fill(1);
+            final byte marker = buffer.get();
+            if (marker == END_MARKER) {
+                isFinished = true;
+                return null;
+            } else if (marker != RECORD_MARKER) {
+                throw new IOException("invalid canvas matches record marker " + marker);
+            }
+
+            fill(4);
+            final int bodyLength = buffer.getInt();
+            if (bodyLength < 0) {
+                throw new IOException("invalid canvas matches record length " + bodyLength);
+            }
+            fill(bodyLength);
+
+            final String pGroupId = getString();
+            final String pId = getString();
+            final String qGroupId = getString();
+            final String qId = getString();
+
+            ConsensusSetData consensusSetData = null;
+            if (buffer.get() != 0) {
+                final int index = buffer.getInt();
+                consensusSetData = new ConsensusSetData(index < 0 ? null : index, getString(), getString());
+            }
+
+            final int matchCount = buffer.getInt();
+
+            Matches matches = null;
+            if (buffer.get() != 0) {
+                final int dimensions = buffer.getInt();
+                final int count = buffer.getInt();
+                final double[][] p = new double[dimensions][];
+                final double[][] q = new double[dimensions][];
+                for (int d = 0; d < dimensions; d++) {
+                    p[d] = getDoubles(count);
+                }
+                for (int d = 0; d < dimensions; d++) {
+                    q[d] = getDoubles(count);
+                }
+                matches = new Matches(p, q, getDoubles(count));
+            }
+
+            return new CanvasMatches(pGroupId, pId, qGroupId, qId,
+                                     consensusSetData,
+                                     matches,
+                                     matchCount < 0 ? null : matchCount);
+        }
+
+        private void readHeader()
+                throws IOException {
+            fill(MAGIC.length + 4);
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("stream does not contain binary canvas matches");
+                }
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported binary canvas matches version " + version);
+            }
+            isHeaderRead = true;
+        }
+
+        /**
+         * Reads exactly the specified number of bytes into the (cleared) buffer.
+         */
+        private void fill(final int length)
+                throws IOException {
+            if (buffer.capacity() < length) {
+                buffer = allocate(length);
+            }
+            final byte[] array = buffer.array();
+            int offset = 0;
+            while (offset < length) {
+                final int bytesRead = inputStream.read(array, offset, length - offset);
+                if (bytesRead < 0) {
+                    throw new EOFException("binary canvas matches stream ended unexpectedly");
+                }
+                offset += bytesRead;
+            }
+            buffer.clear();
+            buffer.limit(length);
+        }
+
+        private String getString() {
+            final int length = buffer.getInt();
+            String value = null;
+            if (length >= 0) {
+                value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            return value;
+        }
+
+        private double[] getDoubles(final int count) {
+            final double[] values = new double[count];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + (count * 8));
+            return values;
+        }
+    }
+
+    private static ByteBuffer allocate(final int capacity) {
+        return ByteBuffer.allocate(Math.max(capacity, DEFAULT_BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = { 'R', 'M', 'A', 'T' };
+    private static final byte RECORD_MARKER = 1;
+    private static final byte END_MARKER = 0;
+}
@@ -2,11 +2,8 @@ package org.janelia.alignment.match;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -20,34 +17,15 @@ public class SortedConnectedCanvasIdClusters
     private final List<Set<CanvasId>> sortedConnectedCanvasIdSets;
 
     public SortedConnectedCanvasIdClusters(final List<CanvasMatches> matchesList) {
+        this(buildUnionFind(matchesList));
+    }
 
-        final Map<CanvasId, Set<CanvasId>> connectionsMap = new HashMap<>();
-
-        Set<CanvasId> pSet;
-        Set<CanvasId> qSet;
-
-        for (final CanvasMatches matches : matchesList) {
-            final CanvasId pCanvasId = new CanvasId(matches.getpGroupId(), matches.getpId());
-            final CanvasId qCanvasId = new CanvasId(matches.getqGroupId(), matches.getqId());
-
-            pSet = connectionsMap.computeIfAbsent(pCanvasId, k -> new HashSet<>());
-            pSet.add(qCanvasId);
-
-            qSet = connectionsMap.computeIfAbsent(qCanvasId, k -> new HashSet<>());
-            qSet.add(pCanvasId);
-        }
-
-        this.sortedConnectedCanvasIdSets = new ArrayList<>();
-
-        while (connectionsMap.size() > 0) {
-            @SuppressWarnings("OptionalGetWithoutIsPresent")
-            final CanvasId canvasId = connectionsMap.keySet().stream().findFirst().get();
-            final Set<CanvasId> connectedTileSet = new HashSet<>();
-            addConnectedCanvases(canvasId, connectionsMap, connectedTileSet);
-            sortedConnectedCanvasIdSets.add(connectedTileSet);
-        }
-
-        sortedConnectedCanvasIdSets.sort((s1, s2) -> Integer.compare(s2.size(), s1.size()));
+    /**
+     * @param  unionFind  connections for all canvases to be clustered
+     *                    (use this to stream connections instead of loading full match lists).
+     */
+    public SortedConnectedCanvasIdClusters(final CanvasIdUnionFind unionFind) {
+        this.sortedConnectedCanvasIdSets = unionFind.getSortedConnectedCanvasIdSets();
     }
 
     public List<Set<String>> getSortedConnectedTileIdSets() {
@@ -75,24 +53,10 @@ public class SortedConnectedCanvasIdClusters
         return size() + " clusters with sizes " + getClusterSizes();
     }
 
-    private void addConnectedCanvases(final CanvasId canvasId,
-                                      final Map<CanvasId, Set<CanvasId>> connectionsMap,
-                                      final Set<CanvasId> connectedTileSet) {
-
-        final boolean isNewConnection = connectedTileSet.add(canvasId);
-
-        if (isNewConnection) {
-
-            final Set<CanvasId> connectedCanvasIds = connectionsMap.remove(canvasId);
-
-            if (connectedCanvasIds != null) {
-                for (final CanvasId connectedCanvasId : connectedCanvasIds) {
-                    addConnectedCanvases(connectedCanvasId, connectionsMap, connectedTileSet);
-                }
-            }
-
-        }
+    private static CanvasIdUnionFind buildUnionFind(final List<CanvasMatches> matchesList) {
+        final CanvasIdUnionFind unionFind = new CanvasIdUnionFind();
+        matchesList.forEach(unionFind::addConnection);
+        return unionFind;
     }
 
-
 }
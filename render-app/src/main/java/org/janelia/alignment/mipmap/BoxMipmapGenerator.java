@@ -379,6 +379,51 @@ public class BoxMipmapGenerator {
         }
     }
 
+    /**
+     * Combines the (up to) 4 specified source images and down-samples the result by 50%.
+     *
+     * @param  upperLeft   upper left source image (or null if missing).
+     * @param  upperRight  upper right source image (or null if missing).
+     * @param  lowerLeft   lower left source image (or null if missing).
+     * @param  lowerRight  lower right source image (or null if missing).
+     * @param  boxWidth    width of each source image.
+     * @param  boxHeight   height of each source image.
+     *
+     * @return down-sampled image with the same dimensions as each source image.
+     */
+    static BufferedImage buildScaledImage(final BufferedImage upperLeft,
+                                          final BufferedImage upperRight,
+                                          final BufferedImage lowerLeft,
+                                          final BufferedImage lowerRight,
+                                          final int boxWidth,
+                                          final int boxHeight) {
+
+        final BufferedImage fourTileImage =
+                new BufferedImage(boxWidth * 2, boxHeight * 2, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D fourTileGraphics = fourTileImage.createGraphics();
+        drawImage(upperLeft, 0, 0, fourTileGraphics);
+        drawImage(upperRight, boxWidth, 0, fourTileGraphics);
+        drawImage(lowerLeft, 0, boxHeight, fourTileGraphics);
+        drawImage(lowerRight, boxWidth, boxHeight, fourTileGraphics);
+        fourTileGraphics.dispose();
+
+        final ImagePlus fourTileImagePlus = new ImagePlus("", fourTileImage);
+
+        final ImageProcessor downSampledImageProcessor =
+                Downsampler.downsampleImageProcessor(fourTileImagePlus.getProcessor());
+
+        return downSampledImageProcessor.getBufferedImage();
+    }
+
+    private static void drawImage(final BufferedImage sourceImage,
+                                  final int x,
+                                  final int y,
+                                  final Graphics2D fourTileGraphics) {
+        if (sourceImage != null) {
+            fourTileGraphics.drawImage(sourceImage, x, y, null);
+        }
+    }
+
     /**
      * Utility to ensure that all parent directories are created for the specified file.
      *
@@ -451,32 +496,18 @@ public class BoxMipmapGenerator {
         void saveScaledFile(final File scaledFile)
                 throws IOException {
 
-            final BufferedImage fourTileImage =
-                    new BufferedImage(boxWidth * 2, boxHeight * 2, BufferedImage.TYPE_INT_ARGB);
-            final Graphics2D fourTileGraphics = fourTileImage.createGraphics();
-            drawImage(upperLeft, 0, 0, fourTileGraphics);
-            drawImage(upperRight, boxWidth, 0, fourTileGraphics);
-            drawImage(lowerLeft, 0, boxHeight, fourTileGraphics);
-            drawImage(lowerRight, boxWidth, boxHeight, fourTileGraphics);
-
-            final ImagePlus fourTileImagePlus = new ImagePlus("", fourTileImage);
+            final BufferedImage scaledImage = buildScaledImage(openImage(upperLeft),
+                                                               openImage(upperRight),
+                                                               openImage(lowerLeft),
+                                                               openImage(lowerRight),
+                                                               boxWidth,
+                                                               boxHeight);
 
-            final ImageProcessor downSampledImageProcessor =
-                    Downsampler.downsampleImageProcessor(fourTileImagePlus.getProcessor());
-
-            saveImage(downSampledImageProcessor.getBufferedImage(), scaledFile, isLabel, format);
-
-            fourTileGraphics.dispose();
+            saveImage(scaledImage, scaledFile, isLabel, format);
         }
 
-        private void drawImage(final File file,
-                               final int x,
-                               final int y,
-                               final Graphics2D fourTileGraphics) {
-            if (file != null) {
-                final BufferedImage sourceImage = Utils.openImage(file.getAbsolutePath());
-                fourTileGraphics.drawImage(sourceImage, x, y, null);
-            }
+        private BufferedImage openImage(final File file) {
+            return file == null ? null : Utils.openImage(file.getAbsolutePath());
         }
 
     }
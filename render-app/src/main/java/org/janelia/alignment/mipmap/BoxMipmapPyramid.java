@@ -0,0 +1,384 @@
+package org.janelia.alignment.mipmap;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming alternative to iteratively calling {@link BoxMipmapGenerator#generateNextLevel()}.
+ *
+ * Level 0 box images are added in row order as they are rendered and are kept in a bounded
+ * in-memory quad buffer.  As soon as all four children of a quad are known, the quad is
+ * down-sampled, the scaled image is written to disk, and the scaled image is passed on
+ * to the next level's buffer.  Each level is written once and never re-read from disk.
+ *
+ * Each level only buffers the quads for its current pair of rows, so memory use is capped by
+ * the width (row band) of the layer rather than by the layer's total area.
+ * Non-label images are buffered in the same 8-bit gray form that {@link BoxMipmapGenerator#saveImage}
+ * persists so that scaled results match those produced from re-read files.
+ * Callers must mark each level 0 row complete (via {@link #completeLevelZeroRow})
+ * so that partially populated quads can be flushed.
+ *
+ * @author Eric Trautman
+ */
+public class BoxMipmapPyramid {
+
+    private final int z;
+    private final boolean isLabel;
+    private final String format;
+    private final int boxWidth;
+    private final int boxHeight;
+    private final File boxDirectory;
+    private final int maxLevel;
+    private final boolean forceGeneration;
+
+    private final List<QuadBuffer> quadBuffers;                  // source level -> buffer
+    private final List<BoxMipmapGenerator> scaledLevelGenerators; // (scaled level - 1) -> generator
+
+    private int bufferedBoxCount;
+    private int maxBufferedBoxCount;
+
+    /**
+     * Basic constructor.
+     *
+     * @param  z                 z value for the layer being processed.
+     * @param  isLabel           indicates that the images are labels and not standard images.
+     * @param  format            format of all generated image files.
+     * @param  boxWidth          width for all generated image files.
+     * @param  boxHeight         height for all generated image files.
+     * @param  boxDirectory      parent directory for all generated image files.
+     * @param  maxLevel          maximum scaling level to generate.
+     * @param  firstRow          number of level 0 row (0-based) containing upper left box in layer.
+     * @param  lastRow           number of level 0 row (0-based) containing bottom right box in layer.
+     * @param  firstColumn       number of level 0 column (0-based) containing upper left box in layer.
+     * @param  lastColumn        number of level 0 column (0-based) containing bottom right box in layer.
+     * @param  forceGeneration   indicates whether existing scaled images should be overwritten.
+     */
+    public BoxMipmapPyramid(final int z,
+                            final boolean isLabel,
+                            final String format,
+                            final int boxWidth,
+                            final int boxHeight,
+                            final File boxDirectory,
+                            final int maxLevel,
+                            final int firstRow,
+                            final int lastRow,
+                            final int firstColumn,
+                            final int lastColumn,
+                            final boolean forceGeneration) {
+
+        if (maxLevel < 1) {
+            throw new IllegalArgumentException("maxLevel must be greater than 0");
+        }
+
+        this.z = z;
+        this.isLabel = isLabel;
+        this.format = format;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.boxDirectory = boxDirectory;
+        this.maxLevel = maxLevel;
+        this.forceGeneration = forceGeneration;
+
+        this.quadBuffers = new ArrayList<>(maxLevel);
+        this.scaledLevelGenerators = new ArrayList<>(maxLevel);
+
+        int levelFirstRow = firstRow;
+        int levelLastRow = lastRow;
+        int levelFirstColumn = firstColumn;
+        int levelLastColumn = lastColumn;
+        for (int level = 0; level < maxLevel; level++) {
+
+            quadBuffers.add(new QuadBuffer(level, levelLastRow, levelLastColumn));
+
+            levelFirstRow = levelFirstRow / 2;
+            levelLastRow = levelLastRow / 2;
+            levelFirstColumn = levelFirstColumn / 2;
+            levelLastColumn = levelLastColumn / 2;
+
+            scaledLevelGenerators.add(new BoxMipmapGenerator(z,
+                                                             isLabel,
+                                                             format,
+                                                             boxWidth,
+                                                             boxHeight,
+                                                             boxDirectory,
+                                                             level + 1,
+                                                             levelFirstRow,
+                                                             levelLastRow,
+                                                             levelFirstColumn,
+                                                             levelLastColumn,
+                                                             forceGeneration));
+        }
+
+        this.bufferedBoxCount = 0;
+        this.maxBufferedBoxCount = 0;
+    }
+
+    /**
+     * Adds a rendered level 0 box image to this pyramid.
+     * Boxes must be added in row order, but may be added in any column order within a row.
+     * Empty boxes do not need to be added.
+     *
+     * @param  row     level 0 row for the box.
+     * @param  column  level 0 column for the box.
+     * @param  image   rendered box image.
+     *
+     * @throws IOException
+     *   if any scaled images cannot be saved.
+     */
+    public void addLevelZeroBox(final int row,
+                                final int column,
+                                final BufferedImage image)
+            throws IOException {
+        quadBuffers.get(0).add(row, column, image);
+    }
+
+    /**
+     * Marks the specified level 0 row as complete, flushing any partially populated quads
+     * that can no longer receive children.
+     *
+     * @param  row  level 0 row that has been completely added.
+     *
+     * @throws IOException
+     *   if any scaled images cannot be saved.
+     */
+    public void completeLevelZeroRow(final int row)
+            throws IOException {
+        quadBuffers.get(0).completeRow(row);
+    }
+
+    /**
+     * @param  level  scaled level (1 to maxLevel).
+     *
+     * @return generator containing the files written for the specified level
+     *         (can be used to generate an overview).
+     *
+     * @throws IllegalArgumentException
+     *   if the level is out of range.
+     *
+     * @throws IllegalStateException
+     *   if this pyramid still has buffered images (because rows have not been completed).
+     */
+    public BoxMipmapGenerator getLevelGenerator(final int level)
+            throws IllegalArgumentException, IllegalStateException {
+
+        if ((level < 1) || (level > maxLevel)) {
+            throw new IllegalArgumentException("level must be between 1 and " + maxLevel);
+        }
+
+        if (bufferedBoxCount > 0) {
+            throw new IllegalStateException(bufferedBoxCount + " boxes are still buffered for z " + z +
+                                            ", make sure all level 0 rows have been completed");
+        }
+
+        return scaledLevelGenerators.get(level - 1);
+    }
+
+    /**
+     * @return the largest number of box images simultaneously held in this pyramid's buffers.
+     */
+    public int getMaxBufferedBoxCount() {
+        return maxBufferedBoxCount;
+    }
+
+    /**
+     * Buffer for the pending quads in the current pair of rows for one source level.
+     */
+    private class QuadBuffer {
+
+        private final int sourceLevel;
+        private final int lastSourceRow;
+        private final int lastSourceColumn;
+        private final Map<Integer, Quad> scaledColumnToQuad;
+
+        QuadBuffer(final int sourceLevel,
+                   final int lastSourceRow,
+                   final int lastSourceColumn) {
+            this.sourceLevel = sourceLevel;
+            this.lastSourceRow = lastSourceRow;
+            this.lastSourceColumn = lastSourceColumn;
+            this.scaledColumnToQuad = new TreeMap<>();
+        }
+
+        void add(final int sourceRow,
+                 final int sourceColumn,
+                 final BufferedImage image)
+                throws IOException {
+
+            if (image == null) {
+                return;
+            }
+
+            final BufferedImage storedImage = toStoredImage(image);
+
+            final int scaledRow = sourceRow / 2;
+            final int scaledColumn = sourceColumn / 2;
+
+            Quad quad = scaledColumnToQuad.get(scaledColumn);
+            if (quad == null) {
+                quad = new Quad(scaledRow, scaledColumn);
+                scaledColumnToQuad.put(scaledColumn, quad);
+            } else if (quad.scaledRow != scaledRow) {
+                throw new IllegalStateException(
+                        "level " + sourceLevel + " row " + sourceRow + " added before row " + (quad.scaledRow * 2) +
+                        " was completed for z " + z);
+            }
+
+            quad.set(sourceRow % 2, sourceColumn % 2, storedImage);
+            updateBufferedBoxCount(1);
+
+            if (quad.isComplete(lastSourceRow, lastSourceColumn)) {
+                scaledColumnToQuad.remove(scaledColumn);
+                reduce(quad);
+            }
+        }
+
+        void completeRow(final int sourceRow)
+                throws IOException {
+
+            if ((sourceRow % 2 == 1) || (sourceRow >= lastSourceRow)) {
+
+                final int scaledRow = sourceRow / 2;
+
+                for (final Quad quad : new ArrayList<>(scaledColumnToQuad.values())) {
+                    if (quad.scaledRow == scaledRow) {
+                        scaledColumnToQuad.remove(quad.scaledColumn);
+                        reduce(quad);
+                    }
+                }
+
+                final int scaledLevel = sourceLevel + 1;
+                if (scaledLevel < maxLevel) {
+                    quadBuffers.get(scaledLevel).completeRow(scaledRow);
+                }
+            }
+        }
+
+        private void reduce(final Quad quad)
+                throws IOException {
+
+            final int scaledLevel = sourceLevel + 1;
+
+            final BufferedImage scaledImage =
+                    BoxMipmapGenerator.buildScaledImage(quad.upperLeft,
+                                                        quad.upperRight,
+                                                        quad.lowerLeft,
+                                                        quad.lowerRight,
+                                                        boxWidth,
+                                                        boxHeight);
+
+            updateBufferedBoxCount(-quad.getImageCount());
+
+            final File scaledFile = BoxMipmapGenerator.getImageFile(format,
+                                                                    boxDirectory,
+                                                                    scaledLevel,
+                                                                    z,
+                                                                    quad.scaledRow,
+                                                                    quad.scaledColumn);
+
+            if (forceGeneration || (! scaledFile.exists())) {
+                BoxMipmapGenerator.saveImage(scaledImage, scaledFile, isLabel, format);
+            } else {
+                LOG.debug("{} already generated", scaledFile.getAbsolutePath());
+            }
+
+            scaledLevelGenerators.get(sourceLevel).addSource(quad.scaledRow, quad.scaledColumn, scaledFile);
+
+            if (scaledLevel < maxLevel) {
+                quadBuffers.get(scaledLevel).add(quad.scaledRow, quad.scaledColumn, scaledImage);
+            }
+        }
+
+    }
+
+    /**
+     * @return the form of the specified image that is persisted to disk.
+     */
+    private BufferedImage toStoredImage(final BufferedImage image) {
+        final BufferedImage storedImage;
+        if (isLabel || (image.getType() == BufferedImage.TYPE_BYTE_GRAY)) {
+            storedImage = image;
+        } else {
+            storedImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            final Graphics2D graphics = storedImage.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+        }
+        return storedImage;
+    }
+
+    private void updateBufferedBoxCount(final int delta) {
+        bufferedBoxCount += delta;
+        if (bufferedBoxCount > maxBufferedBoxCount) {
+            maxBufferedBoxCount = bufferedBoxCount;
+        }
+    }
+
+    /**
+     * Container for the (up to) 4 source images used to generate a down-sampled mipmap.
+     */
+    private static class Quad {
+
+        private final int scaledRow;
+        private final int scaledColumn;
+
+        private BufferedImage upperLeft;
+        private BufferedImage upperRight;
+        private BufferedImage lowerLeft;
+        private BufferedImage lowerRight;
+
+        Quad(final int scaledRow,
+             final int scaledColumn) {
+            this.scaledRow = scaledRow;
+            this.scaledColumn = scaledColumn;
+        }
+
+        void set(final int rowOffset,
+                 final int columnOffset,
+                 final BufferedImage image) {
+            if (rowOffset == 0) {
+                if (columnOffset == 0) {
+                    upperLeft = image;
+                } else {
+                    upperRight = image;
+                }
+            } else if (columnOffset == 0) {
+                lowerLeft = image;
+            } else {
+                lowerRight = image;
+            }
+        }
+
+        int getImageCount() {
+            int count = 0;
+            for (final BufferedImage image : new BufferedImage[] {upperLeft, upperRight, lowerLeft, lowerRight}) {
+                if (image != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return true if every child position within the source bounds has an image.
+         */
+        boolean isComplete(final int lastSourceRow,
+                           final int lastSourceColumn) {
+            final boolean hasSecondRow = (scaledRow * 2) + 1 <= lastSourceRow;
+            final boolean hasSecondColumn = (scaledColumn * 2) + 1 <= lastSourceColumn;
+            return (upperLeft != null) &&
+                   ((upperRight != null) || (! hasSecondColumn)) &&
+                   (((lowerLeft != null) && ((lowerRight != null) || (! hasSecondColumn))) || (! hasSecondRow));
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoxMipmapPyramid.class);
+}
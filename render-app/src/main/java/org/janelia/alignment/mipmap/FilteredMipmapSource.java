@@ -1,11 +1,17 @@
 package org.janelia.alignment.mipmap;
 
+import ij.process.ImageProcessor;
+
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
 
 import org.janelia.alignment.ChannelMap;
 import org.janelia.alignment.filter.Filter;
+import org.janelia.alignment.filter.FilterSpec;
+import org.janelia.alignment.util.ImageProcessorCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +19,10 @@ import org.slf4j.LoggerFactory;
  * A {@link MipmapSource} implementation that filters the pixels of
  * another {@link MipmapSource} using a list of {@link Filter filters}.
  *
+ * When constructed with a cache and source cache key, filtered pixels are cached
+ * (keyed by source, mipmap level, and canonical filter list) so that repeated requests
+ * for the same source data only need to run the (often expensive) filters once.
+ *
  * @author Eric Trautman
  */
 public class FilteredMipmapSource
@@ -21,13 +31,41 @@ public class FilteredMipmapSource
     private final String sourceName;
     private final MipmapSource source;
     private final List<Filter> filterList;
+    private final ImageProcessorCache imageProcessorCache;
+    private final String sourceCacheKey;
+    private final String filterCacheKey;
 
     public FilteredMipmapSource(final String sourceName,
                                 final MipmapSource source,
                                 final List<Filter> filterList) {
+        this(sourceName, source, filterList, null, null);
+    }
+
+    /**
+     * @param  sourceName           name of this source.
+     * @param  source               source of unfiltered pixels.
+     * @param  filterList           filters to apply to the source pixels.
+     * @param  imageProcessorCache  cache for filtered pixels (or null if caching is not desired).
+     * @param  sourceCacheKey       key that uniquely identifies the unfiltered source pixels
+     *                              (or null if caching is not desired).
+     */
+    public FilteredMipmapSource(final String sourceName,
+                                final MipmapSource source,
+                                final List<Filter> filterList,
+                                final ImageProcessorCache imageProcessorCache,
+                                final String sourceCacheKey) {
         this.sourceName = sourceName;
         this.source = source;
         this.filterList = filterList;
+        if ((imageProcessorCache == null) || (sourceCacheKey == null)) {
+            this.imageProcessorCache = null;
+            this.sourceCacheKey = null;
+            this.filterCacheKey = null;
+        } else {
+            this.imageProcessorCache = imageProcessorCache;
+            this.sourceCacheKey = sourceCacheKey;
+            this.filterCacheKey = getCanonicalFilterKey(filterList);
+        }
     }
 
     @Override
@@ -57,10 +95,25 @@ public class FilteredMipmapSource
 
         final long filterStart = System.currentTimeMillis();
 
-        for (final ImageProcessorWithMasks channel : channels.values()) {
-            for (final Filter filter : filterList) {
-                filter.process(channel.ip, mipmapScale);
+        if (imageProcessorCache == null) {
+
+            for (final ImageProcessorWithMasks channel : channels.values()) {
+                filter(channel.ip, mipmapScale);
             }
+
+        } else {
+
+            // replacing values for existing names does not structurally modify the channel map
+            for (final String channelName : channels.names()) {
+                final ImageProcessorWithMasks channel = channels.get(channelName);
+                final ImageProcessor filteredProcessor =
+                        imageProcessorCache.getFiltered(sourceCacheKey + "::" + channelName,
+                                                        mipmapLevel,
+                                                        filterCacheKey,
+                                                        () -> filter(channel.ip, mipmapScale));
+                channels.put(channelName, new ImageProcessorWithMasks(filteredProcessor, channel.mask, null));
+            }
+
         }
 
         final long filterStop = System.currentTimeMillis();
@@ -73,6 +126,30 @@ public class FilteredMipmapSource
         return channels;
     }
 
+    private ImageProcessor filter(final ImageProcessor ip,
+                                  final double mipmapScale) {
+        for (final Filter filter : filterList) {
+            filter.process(ip, mipmapScale);
+        }
+        return ip;
+    }
+
+    /**
+     * @return a canonical string representation of the specified filters
+     *         (class names with parameters sorted by name) that is suitable for use as a cache key.
+     */
+    static String getCanonicalFilterKey(final List<Filter> filterList) {
+        final StringBuilder sb = new StringBuilder(256);
+        for (final Filter filter : filterList) {
+            final FilterSpec filterSpec = FilterSpec.forFilter(filter);
+            sb.append(filterSpec.getClassName());
+            final Map<String, String> parameters = filterSpec.getParameters();
+            sb.append(parameters == null ? "{}" : new TreeMap<>(parameters).toString());
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(FilteredMipmapSource.class);
 
 }
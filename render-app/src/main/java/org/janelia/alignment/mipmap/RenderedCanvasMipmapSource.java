@@ -3,9 +3,18 @@ package org.janelia.alignment.mipmap;
 import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.models.CoordinateTransform;
@@ -13,6 +22,7 @@ import mpicbg.models.CoordinateTransformList;
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
 
 import org.janelia.alignment.ChannelMap;
+import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.RenderTransformMesh;
 import org.janelia.alignment.RenderTransformMeshMappingWithMasks;
@@ -22,9 +32,11 @@ import org.janelia.alignment.mapper.MultiChannelMapper;
 import org.janelia.alignment.mapper.MultiChannelWithAlphaMapper;
 import org.janelia.alignment.mapper.MultiChannelWithBinaryMaskMapper;
 import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelFloatWithAlphaMapper;
 import org.janelia.alignment.mapper.SingleChannelMapper;
 import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
 import org.janelia.alignment.mapper.SingleChannelWithBinaryMaskMapper;
+import org.janelia.alignment.spec.ChannelSpec;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.slf4j.Logger;
@@ -92,7 +104,8 @@ public class RenderedCanvasMipmapSource
      * @param  fullScaleHeight         canvas height at mipmap level 0.
      * @param  meshCellSize            desired size of a mesh cell (triangle) in pixels.
      * @param  levelZeroScale          scale factor for transformed components at mipmap level 0 of this canvas.
-     * @param  numberOfMappingThreads  number of threads to use for pixel mapping.
+     * @param  numberOfMappingThreads  number of threads to use for pixel mapping
+     *                                 (values greater than 1 also enable concurrent loading and meshing of sources).
      * @param  skipInterpolation       enable sloppy but fast rendering by skipping interpolation.
      * @param  hasMasks                true if this canvas contains at least one source with a mask.
      * @param  binaryMask              render only 100% opaque pixels.
@@ -158,6 +171,23 @@ public class RenderedCanvasMipmapSource
                                        null));
         }
 
+        if ((numberOfMappingThreads > 1) && (canvasList.size() > 1) &&
+            (! (Thread.currentThread() instanceof TilePreparationThread))) {
+            mapCanvasesInParallel(mipmapLevel, levelScale, targetChannels);
+        } else {
+            mapCanvasesSerially(mipmapLevel, levelScale, targetChannels);
+        }
+
+        return targetChannels;
+    }
+
+    /**
+     * Loads, meshes, and maps each canvas one after another on the calling thread.
+     */
+    private void mapCanvasesSerially(final int mipmapLevel,
+                                     final double levelScale,
+                                     final ChannelMap targetChannels) {
+
         long totalScaleDerivationTime = 0;
 
         for (final TransformableCanvas canvas : canvasList) {
@@ -169,12 +199,7 @@ public class RenderedCanvasMipmapSource
 
             final MipmapSource source = canvas.getSource();
 
-            final double averageScale = Utils.sampleAverageScale(renderTransformList,
-                                                                 source.getFullScaleWidth(),
-                                                                 source.getFullScaleHeight(),
-                                                                 meshCellSize);
-
-            final int componentMipmapLevel = Utils.bestMipmapLevel(averageScale);
+            final int componentMipmapLevel = deriveComponentMipmapLevel(source, renderTransformList, meshCellSize);
 
             totalScaleDerivationTime += (System.currentTimeMillis() - scaleDerivationStart);
 
@@ -189,11 +214,103 @@ public class RenderedCanvasMipmapSource
                       targetChannels);
         }
 
-        LOG.debug("getChannels: deriving average scale for {} canvases took {} milliseconds",
+        LOG.debug("mapCanvasesSerially: deriving average scale for {} canvases took {} milliseconds",
                   canvasList.size(),
                   totalScaleDerivationTime);
+    }
 
-        return targetChannels;
+    /**
+     * Loads source pixels and builds meshes for up to {@link #numberOfMappingThreads} canvases
+     * concurrently on the shared tile preparation pool while mapping already prepared canvases
+     * on the calling thread.  Canvases are always mapped in list order, so blended results
+     * are identical to those produced by {@link #mapCanvasesSerially}.
+     */
+    private void mapCanvasesInParallel(final int mipmapLevel,
+                                       final double levelScale,
+                                       final ChannelMap targetChannels) {
+
+        final long parallelStart = System.currentTimeMillis();
+
+        final Iterator<TransformableCanvas> canvasIterator = canvasList.iterator();
+        final Deque<Future<PreparedCanvas>> pendingCanvases = new ArrayDeque<>(numberOfMappingThreads);
+
+        long totalPreparationTime = 0;
+        long totalMappingTime = 0;
+
+        try {
+
+            while (canvasIterator.hasNext() && (pendingCanvases.size() < numberOfMappingThreads)) {
+                pendingCanvases.add(submitPreparation(canvasIterator.next(), mipmapLevel, levelScale));
+            }
+
+            while (pendingCanvases.size() > 0) {
+
+                final PreparedCanvas preparedCanvas = pendingCanvases.removeFirst().get();
+
+                if (canvasIterator.hasNext()) {
+                    pendingCanvases.add(submitPreparation(canvasIterator.next(), mipmapLevel, levelScale));
+                }
+
+                totalPreparationTime += preparedCanvas.preparationTime;
+
+                final long mapStart = System.currentTimeMillis();
+
+                mapPreparedPixels(preparedCanvas,
+                                  hasMasks,
+                                  binaryMask,
+                                  numberOfMappingThreads,
+                                  skipInterpolation,
+                                  targetChannels);
+
+                totalMappingTime += (System.currentTimeMillis() - mapStart);
+            }
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while rendering " + canvasName, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException("failed to prepare canvas for " + canvasName, cause);
+        } finally {
+            for (final Future<PreparedCanvas> pendingCanvas : pendingCanvases) {
+                pendingCanvas.cancel(true);
+            }
+        }
+
+        LOG.debug("mapCanvasesInParallel: rendering {} canvases took {} milliseconds (prepare:{}, map:{})",
+                  canvasList.size(),
+                  System.currentTimeMillis() - parallelStart,
+                  totalPreparationTime,
+                  totalMappingTime);
+    }
+
+    private Future<PreparedCanvas> submitPreparation(final TransformableCanvas canvas,
+                                                     final int mipmapLevel,
+                                                     final double levelScale) {
+        return TILE_PREPARATION_POOL.submit(() -> {
+
+            final long preparationStart = System.currentTimeMillis();
+
+            final CoordinateTransformList<CoordinateTransform> renderTransformList =
+                    addRenderScaleAndOffset(canvas.getTransformList(), levelZeroScale, levelScale, x, y);
+
+            final MipmapSource source = canvas.getSource();
+
+            final int componentMipmapLevel = deriveComponentMipmapLevel(source, renderTransformList, meshCellSize);
+
+            final PreparedCanvas preparedCanvas = prepareCanvas(source,
+                                                                componentMipmapLevel,
+                                                                renderTransformList,
+                                                                meshCellSize,
+                                                                hasMasks);
+
+            preparedCanvas.preparationTime = System.currentTimeMillis() - preparationStart;
+
+            return preparedCanvas;
+        });
     }
 
     /**
@@ -207,12 +324,15 @@ public class RenderedCanvasMipmapSource
         final List<TransformableCanvas> canvasList = new ArrayList<>(renderParameters.numberOfTileSpecs());
 
         MipmapSource source;
+        List<ChannelSpec> channelSpecList;
         for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
 
+            channelSpecList = tileSpec.getChannels(channelNames);
+
             source = new UrlMipmapSource("tile '" + tileSpec.getTileId() + "'",
                                          tileSpec.getWidth(),
                                          tileSpec.getHeight(),
-                                         tileSpec.getChannels(channelNames),
+                                         channelSpecList,
                                          renderParameters.getMinIntensity(),
                                          renderParameters.getMaxIntensity(),
                                          renderParameters.excludeMask(),
@@ -221,7 +341,9 @@ public class RenderedCanvasMipmapSource
             if (renderParameters.hasFilters()) {
                 source = new FilteredMipmapSource("filtered " + source.getSourceName(),
                                                   source,
-                                                  renderParameters.getFilters());
+                                                  renderParameters.getFilters(),
+                                                  imageProcessorCache,
+                                                  buildFilteredSourceCacheKey(channelSpecList, renderParameters));
             }
 
             canvasList.add(new TransformableCanvas(source, tileSpec.getTransforms().getNewInstanceAsList()));
@@ -230,6 +352,36 @@ public class RenderedCanvasMipmapSource
         return canvasList;
     }
 
+    /**
+     * @return key that identifies the unfiltered pixels loaded by a {@link UrlMipmapSource}
+     *         built with the specified parameters (or null if the source pixels cannot be identified).
+     */
+    private static String buildFilteredSourceCacheKey(final List<ChannelSpec> channelSpecList,
+                                                      final RenderParameters renderParameters) {
+        String key = null;
+        if ((channelSpecList != null) && (channelSpecList.size() > 0)) {
+            final StringBuilder sb = new StringBuilder(256);
+            sb.append(renderParameters.getMinIntensity()).append(',').append(renderParameters.getMaxIntensity());
+            for (final ChannelSpec channelSpec : channelSpecList) {
+                final Map.Entry<Integer, ImageAndMask> firstMipmapEntry = channelSpec.getFirstMipmapEntry();
+                if (firstMipmapEntry == null) {
+                    return null;
+                }
+                final ImageAndMask imageAndMask = firstMipmapEntry.getValue();
+                sb.append('|').append(channelSpec.getName());
+                sb.append(',').append(imageAndMask.getImageUrl());
+                if (! renderParameters.excludeMask()) {
+                    sb.append(',').append(imageAndMask.getMaskUrl());
+                }
+                sb.append(',').append(channelSpec.getMinIntensity());
+                sb.append(',').append(channelSpec.getMaxIntensity());
+                sb.append(',').append(channelSpec.is16Bit());
+            }
+            key = sb.toString();
+        }
+        return key;
+    }
+
     /**
      * Modifies the specified full scale transform list for the current render context by
      * adding a transform for bounding box offset, scale, and an area offset (for scaled mipmaps).
@@ -325,16 +477,98 @@ public class RenderedCanvasMipmapSource
                                  final boolean skipInterpolation,
                                  final ChannelMap targetChannels) {
 
+        final PreparedCanvas preparedCanvas = prepareCanvas(source,
+                                                            mipmapLevel,
+                                                            renderTransformList,
+                                                            meshCellSize,
+                                                            canvasHasMasks);
+
+        mapPreparedPixels(preparedCanvas,
+                          canvasHasMasks,
+                          binaryMask,
+                          numberOfMappingThreads,
+                          skipInterpolation,
+                          targetChannels);
+    }
+
+    /**
+     * @return the best mipmap level of the specified source for the specified render transforms.
+     */
+    private static int deriveComponentMipmapLevel(final MipmapSource source,
+                                                  final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                                                  final double meshCellSize) {
+
+        final double averageScale = Utils.sampleAverageScale(renderTransformList,
+                                                             source.getFullScaleWidth(),
+                                                             source.getFullScaleHeight(),
+                                                             meshCellSize);
+
+        return Utils.bestMipmapLevel(averageScale);
+    }
+
+    /**
+     * Loads source pixel data and creates the render mesh for a source.
+     * This work does not touch the target channels, so it can safely be run concurrently for different sources.
+     *
+     * @return prepared source data (with a null mesh if the source does not have any channels).
+     */
+    private static PreparedCanvas prepareCanvas(final MipmapSource source,
+                                                final int mipmapLevel,
+                                                final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                                                final double meshCellSize,
+                                                final boolean canvasHasMasks) {
+
+        final long loadStart = System.currentTimeMillis();
+
         final ChannelMap sourceChannels = source.getChannels(mipmapLevel);
 
+        final long loadStop = System.currentTimeMillis();
+
+        RenderTransformMesh mesh = null;
+
         if (sourceChannels.size() > 0) {
 
-            final long mapStart = System.currentTimeMillis();
+            if (canvasHasMasks) {
+                // add empty (inverted) source mask for each channel if it does not already exist
+                for (final ImageProcessorWithMasks sourceChannel : sourceChannels.values()) {
+                    if (sourceChannel.mask == null) {
+                        sourceChannel.mask = new ByteProcessor(sourceChannel.ip.getWidth(),
+                                                               sourceChannel.ip.getHeight());
+                        sourceChannel.mask.invert();
+                    }
+                }
+            }
 
             // all channels should have same size, so we only need to look at the first channel
             final ImageProcessorWithMasks firstChannel = sourceChannels.getFirstChannel();
-            final int mipmapWidth = firstChannel.ip.getWidth();
-            final int mipmapHeight = firstChannel.ip.getHeight();
+
+            mesh = createRenderMesh(mipmapLevel,
+                                    renderTransformList,
+                                    source.getFullScaleWidth(),
+                                    meshCellSize,
+                                    firstChannel.ip.getWidth(),
+                                    firstChannel.ip.getHeight());
+        }
+
+        return new PreparedCanvas(source, sourceChannels, mesh, loadStop - loadStart, System.currentTimeMillis() - loadStop);
+    }
+
+    /**
+     * Maps previously prepared source pixels to the target channels.
+     */
+    private static void mapPreparedPixels(final PreparedCanvas preparedCanvas,
+                                          final boolean canvasHasMasks,
+                                          final boolean binaryMask,
+                                          final int numberOfMappingThreads,
+                                          final boolean skipInterpolation,
+                                          final ChannelMap targetChannels) {
+
+        final MipmapSource source = preparedCanvas.source;
+        final ChannelMap sourceChannels = preparedCanvas.sourceChannels;
+
+        if (preparedCanvas.mesh != null) {
+
+            final long mapStart = System.currentTimeMillis();
 
             if (canvasHasMasks) {
                 // add target mask for each channel if it does not already exist
@@ -344,15 +578,6 @@ public class RenderedCanvasMipmapSource
                                                                targetChannel.ip.getHeight());
                     }
                 }
-
-                // add empty (inverted) source mask for each channel if it does not already exist
-                for (final ImageProcessorWithMasks sourceChannel : sourceChannels.values()) {
-                    if (sourceChannel.mask == null) {
-                        sourceChannel.mask = new ByteProcessor(sourceChannel.ip.getWidth(),
-                                                               sourceChannel.ip.getHeight());
-                        sourceChannel.mask.invert();
-                    }
-                }
             }
 
             final PixelMapper tilePixelMapper = getPixelMapper(sourceChannels,
@@ -362,16 +587,8 @@ public class RenderedCanvasMipmapSource
                                                                targetChannels);
             if (tilePixelMapper != null) {
 
-                final RenderTransformMesh mesh = createRenderMesh(mipmapLevel,
-                                                                  renderTransformList,
-                                                                  source.getFullScaleWidth(),
-                                                                  meshCellSize,
-                                                                  mipmapWidth,
-                                                                  mipmapHeight);
-
-                final long meshCreationStop = System.currentTimeMillis();
-
-                final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+                final RenderTransformMeshMappingWithMasks mapping =
+                        new RenderTransformMeshMappingWithMasks(preparedCanvas.mesh);
 
                 final String mapType = skipInterpolation ? "" : " interpolated";
                 mapping.map(tilePixelMapper, numberOfMappingThreads);
@@ -385,12 +602,13 @@ public class RenderedCanvasMipmapSource
 
                 final long mapStop = System.currentTimeMillis();
 
-                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (mesh:{}, map{}:{})",
+                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (load:{}, mesh:{}, map{}:{})",
                           source.getSourceName(),
-                          mapStop - mapStart,
-                          meshCreationStop - mapStart,
+                          preparedCanvas.loadTime + preparedCanvas.meshCreationTime + (mapStop - mapStart),
+                          preparedCanvas.loadTime,
+                          preparedCanvas.meshCreationTime,
                           mapType,
-                          mapStop - meshCreationStop);
+                          mapStop - mapStart);
             }
 
         } else {
@@ -443,6 +661,10 @@ public class RenderedCanvasMipmapSource
                         tilePixelMapper = new SingleChannelWithBinaryMaskMapper(sourceChannel,
                                                                                 targetChannel,
                                                                                 (! skipInterpolation));
+                    } else if (SingleChannelFloatWithAlphaMapper.isSupported(sourceChannel, targetChannel)) {
+                        tilePixelMapper = new SingleChannelFloatWithAlphaMapper(sourceChannel,
+                                                                                targetChannel,
+                                                                                (! skipInterpolation));
                     } else {
                         tilePixelMapper = new SingleChannelWithAlphaMapper(sourceChannel,
                                                                            targetChannel,
@@ -466,6 +688,54 @@ public class RenderedCanvasMipmapSource
         return tilePixelMapper;
     }
 
+    /**
+     * Source pixel data and render mesh that are ready to be mapped to a target.
+     */
+    private static class PreparedCanvas {
+
+        private final MipmapSource source;
+        private final ChannelMap sourceChannels;
+        private final RenderTransformMesh mesh;
+        private final long loadTime;
+        private final long meshCreationTime;
+        private long preparationTime;
+
+        PreparedCanvas(final MipmapSource source,
+                       final ChannelMap sourceChannels,
+                       final RenderTransformMesh mesh,
+                       final long loadTime,
+                       final long meshCreationTime) {
+            this.source = source;
+            this.sourceChannels = sourceChannels;
+            this.mesh = mesh;
+            this.loadTime = loadTime;
+            this.meshCreationTime = meshCreationTime;
+            this.preparationTime = loadTime + meshCreationTime;
+        }
+    }
+
+    /**
+     * Marker thread class used to identify tile preparation work so that nested canvases
+     * (canvases composed of other rendered canvases) are prepared serially instead of
+     * blocking pool threads while waiting for other pool work.
+     */
+    private static class TilePreparationThread extends Thread {
+        TilePreparationThread(final Runnable runnable,
+                              final String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+
+    private static final AtomicInteger TILE_PREPARATION_THREAD_COUNT = new AtomicInteger(0);
+
+    /** Pool shared by all canvases in the JVM for concurrently loading sources and building meshes. */
+    private static final ExecutorService TILE_PREPARATION_POOL =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                         runnable -> new TilePreparationThread(
+                                                 runnable,
+                                                 "tile-preparation-" + TILE_PREPARATION_THREAD_COUNT.incrementAndGet()));
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderedCanvasMipmapSource.class);
 
 }
@@ -0,0 +1,816 @@
+package org.janelia.alignment.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mpicbg.models.AffineModel2D;
+
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.match.ModelType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process sparse linear least-squares solver for globally aligning tiles connected by point matches.
+ *
+ * <p>
+ * Each tile is parameterized by a linear model (see {@link #SparseAffineSolver}) relative to its center
+ * (which keeps the normal equations well conditioned) and the solver minimizes
+ * the weighted squared distance between matched points after transformation plus a regularization term
+ * that penalizes deviation from each tile's starting model.  Tile models and match constraints are
+ * assembled into the block sparse normal equations which are then solved with a block Jacobi
+ * preconditioned conjugate gradient that distributes its work across a configurable number of threads.
+ * </p>
+ *
+ * <p>
+ * Tiles and matches must be added from a single thread before calling {@link #solve}.
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class SparseAffineSolver {
+
+    private final ModelType modelType;
+    private final int blockSize;
+    private final double[] regularization;
+
+    private final Map<String, TileData> tileIdToDataMap;
+    private final List<TileData> tileList;
+
+    private int matchedPairCount;
+    private int iterationCount;
+    private double relativeResidual;
+
+    /**
+     * Constructs an empty solver.
+     *
+     * <ul>
+     *     <li>{@link ModelType#TRANSLATION} only solves for translations (linear part of starting model is kept),</li>
+     *     <li>{@link ModelType#SIMILARITY} solves for similarity models,</li>
+     *     <li>{@link ModelType#RIGID} solves for similarity models and then removes their scale, and</li>
+     *     <li>{@link ModelType#AFFINE} solves for full affine models.</li>
+     * </ul>
+     *
+     * @param  modelType          type of model to solve for.
+     * @param  lambda             weight for deviation of each (non-translation) model parameter
+     *                            from its starting value.
+     * @param  translationLambda  weight for deviation of each translation parameter from its starting value
+     *                            (may be 0 if at least one tile is fixed).
+     *
+     * @throws IllegalArgumentException
+     *   if the model type is not supported or a weight is negative.
+     */
+    public SparseAffineSolver(final ModelType modelType,
+                              final double lambda,
+                              final double translationLambda)
+            throws IllegalArgumentException {
+
+        if ((lambda < 0) || (translationLambda < 0)) {
+            throw new IllegalArgumentException("regularization weights must not be negative");
+        }
+
+        this.modelType = modelType;
+
+        final int[] translationIndexes;
+        switch (modelType) {
+            case TRANSLATION:
+                this.blockSize = 2;
+                translationIndexes = new int[] { 0, 1 };
+                break;
+            case RIGID:
+            case SIMILARITY:
+                this.blockSize = 4;
+                translationIndexes = new int[] { 2, 3 };
+                break;
+            case AFFINE:
+                this.blockSize = 6;
+                translationIndexes = new int[] { 2, 5 };
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported model type " + modelType);
+        }
+
+        this.regularization = new double[this.blockSize];
+        Arrays.fill(this.regularization, lambda);
+        for (final int i : translationIndexes) {
+            this.regularization[i] = translationLambda;
+        }
+
+        this.tileIdToDataMap = new HashMap<>();
+        this.tileList = new ArrayList<>();
+        this.matchedPairCount = 0;
+        this.iterationCount = 0;
+        this.relativeResidual = Double.NaN;
+    }
+
+    public int getTileCount() {
+        return tileList.size();
+    }
+
+    public int getMatchedPairCount() {
+        return matchedPairCount;
+    }
+
+    /**
+     * @return number of conjugate gradient iterations performed by the last solve.
+     */
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * @return relative residual norm (|b - Ax| / |b|) after the last solve.
+     */
+    public double getRelativeResidual() {
+        return relativeResidual;
+    }
+
+    /**
+     * Adds a tile to the problem.
+     *
+     * @param  tileId         tile identifier (matched against {@link CanvasMatches} p and q ids).
+     * @param  startingModel  starting model for the tile (also used as regularization target).
+     * @param  centerX        x coordinate of the tile's center (in local tile coordinates).
+     * @param  centerY        y coordinate of the tile's center (in local tile coordinates).
+     * @param  isFixed        indicates whether the tile's model should remain unchanged.
+     *
+     * @throws IllegalArgumentException
+     *   if the tile has already been added.
+     */
+    public void addTile(final String tileId,
+                        final AffineModel2D startingModel,
+                        final double centerX,
+                        final double centerY,
+                        final boolean isFixed)
+            throws IllegalArgumentException {
+
+        if (tileIdToDataMap.containsKey(tileId)) {
+            throw new IllegalArgumentException("tile " + tileId + " has already been added");
+        }
+
+        final TileData tileData = new TileData(tileList.size(), tileId, startingModel, centerX, centerY, isFixed);
+        tileIdToDataMap.put(tileId, tileData);
+        tileList.add(tileData);
+    }
+
+    /**
+     * Adds the constraints for the specified matches to the problem.
+     *
+     * @param  canvasMatches  matches between two tiles
+     *                        (p and q coordinates are local to the p and q tiles respectively).
+     *
+     * @return true if the matches were added; false if one or both tiles have not been added to this solver.
+     */
+    public boolean addMatches(final CanvasMatches canvasMatches) {
+
+        final TileData p = tileIdToDataMap.get(canvasMatches.getpId());
+        final TileData q = tileIdToDataMap.get(canvasMatches.getqId());
+
+        if ((p == null) || (q == null) || (p == q)) {
+            return false;
+        }
+
+        final Matches matches = canvasMatches.getMatches();
+        final double[][] ps = matches.getPs();
+        final double[][] qs = matches.getQs();
+        final double[] ws = matches.getWs();
+
+        final double[] jxp = new double[blockSize];
+        final double[] jyp = new double[blockSize];
+        final double[] cp = new double[2];
+        final double[] jxq = new double[blockSize];
+        final double[] jyq = new double[blockSize];
+        final double[] cq = new double[2];
+
+        for (int i = 0; i < ws.length; i++) {
+            setJacobian(p, ps[0][i], ps[1][i], jxp, jyp, cp);
+            setJacobian(q, qs[0][i], qs[1][i], jxq, jyq, cq);
+            addResidual(p, jxp, cp[0], q, jxq, cq[0], ws[i]);
+            addResidual(p, jyp, cp[1], q, jyq, cq[1], ws[i]);
+        }
+
+        matchedPairCount++;
+
+        return true;
+    }
+
+    /**
+     * Solves the assembled problem.
+     *
+     * @param  tolerance        solving stops once the relative residual norm drops below this value.
+     * @param  maxIterations    maximum number of conjugate gradient iterations.
+     * @param  numberOfThreads  number of threads to use for solving.
+     *
+     * @return map of tile ids to solved models (in the order tiles were added).
+     *
+     * @throws IllegalStateException
+     *   if the problem is under-constrained or solving fails.
+     */
+    public Map<String, AffineModel2D> solve(final double tolerance,
+                                            final int maxIterations,
+                                            final int numberOfThreads)
+            throws IllegalStateException {
+
+        LOG.info("solve: entry, solving {} {} tiles connected by {} matched pairs with {} threads",
+                 tileList.size(), modelType, matchedPairCount, numberOfThreads);
+
+        final long startTime = System.currentTimeMillis();
+
+        final BlockSparseSystem system = buildSystem();
+
+        final ExecutorService executorService =
+                numberOfThreads > 1 ? Executors.newFixedThreadPool(numberOfThreads) : null;
+
+        try {
+            final RowRangeRunner runner = new RowRangeRunner(executorService,
+                                                             tileList.size(),
+                                                             numberOfThreads);
+            system.solve(runner, tolerance, maxIterations);
+        } finally {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+        }
+
+        final Map<String, AffineModel2D> tileIdToModelMap = new LinkedHashMap<>(tileList.size() * 2);
+        final double[] parameters = new double[blockSize];
+        for (final TileData tileData : tileList) {
+            System.arraycopy(system.x, tileData.index * blockSize, parameters, 0, blockSize);
+            tileIdToModelMap.put(tileData.tileId, buildModel(tileData, parameters));
+        }
+
+        LOG.info("solve: exit, {} iterations took {}ms, relativeResidual={}",
+                 iterationCount, (System.currentTimeMillis() - startTime), relativeResidual);
+
+        return tileIdToModelMap;
+    }
+
+    /**
+     * Sets the Jacobian rows and constant terms for the transformed x and y coordinates of the
+     * specified local tile point.
+     */
+    private void setJacobian(final TileData tile,
+                             final double localX,
+                             final double localY,
+                             final double[] jx,
+                             final double[] jy,
+                             final double[] c) {
+        final double x = localX - tile.centerX;
+        final double y = localY - tile.centerY;
+        switch (modelType) {
+            case TRANSLATION:
+                jx[0] = 1; jx[1] = 0;
+                jy[0] = 0; jy[1] = 1;
+                c[0] = tile.startingModel[0] * x + tile.startingModel[2] * y;
+                c[1] = tile.startingModel[1] * x + tile.startingModel[3] * y;
+                break;
+            case RIGID:
+            case SIMILARITY:
+                jx[0] = x; jx[1] = -y; jx[2] = 1; jx[3] = 0;
+                jy[0] = y; jy[1] = x;  jy[2] = 0; jy[3] = 1;
+                c[0] = 0;
+                c[1] = 0;
+                break;
+            default:
+                jx[0] = x; jx[1] = y; jx[2] = 1; jx[3] = 0; jx[4] = 0; jx[5] = 0;
+                jy[0] = 0; jy[1] = 0; jy[2] = 0; jy[3] = x; jy[4] = y; jy[5] = 1;
+                c[0] = 0;
+                c[1] = 0;
+        }
+    }
+
+    /**
+     * Adds the normal equation terms for the weighted residual (jp * up + cp) - (jq * uq + cq).
+     * Fixed tile parameters are treated as constants.
+     */
+    private void addResidual(final TileData p,
+                             final double[] jp,
+                             final double cp,
+                             final TileData q,
+                             final double[] jq,
+                             final double cq,
+                             final double w) {
+
+        if (p.isFixed && q.isFixed) {
+            return;
+        }
+
+        double d = cp - cq;
+        if (p.isFixed) {
+            d += dot(jp, p.startingParameters);
+        }
+        if (q.isFixed) {
+            d -= dot(jq, q.startingParameters);
+        }
+
+        if (! p.isFixed) {
+            addOuterProduct(p.getBlock(p.index), jp, jp, w);
+            addScaled(p.rhs, jp, -w * d);
+        }
+
+        if (! q.isFixed) {
+            addOuterProduct(q.getBlock(q.index), jq, jq, w);
+            addScaled(q.rhs, jq, w * d);
+        }
+
+        if (! (p.isFixed || q.isFixed)) {
+            addOuterProduct(p.getBlock(q.index), jp, jq, -w);
+            addOuterProduct(q.getBlock(p.index), jq, jp, -w);
+        }
+    }
+
+    private BlockSparseSystem buildSystem()
+            throws IllegalStateException {
+
+        final int tileCount = tileList.size();
+        final int blockLength = blockSize * blockSize;
+
+        int blockCount = 0;
+        for (final TileData tileData : tileList) {
+            blockCount += tileData.isFixed ? 1 : Math.max(1, tileData.blocks.size());
+        }
+
+        final BlockSparseSystem system = new BlockSparseSystem(tileCount, blockSize, blockCount);
+
+        int blockIndex = 0;
+        for (final TileData tileData : tileList) {
+
+            final int row = tileData.index;
+            final int rowOffset = row * blockSize;
+            system.rowStart[row] = blockIndex;
+
+            System.arraycopy(tileData.startingParameters, 0, system.x, rowOffset, blockSize);
+
+            if (tileData.isFixed) {
+
+                // identity row keeps fixed parameters at their starting values
+                for (int i = 0; i < blockSize; i++) {
+                    system.values[blockIndex * blockLength + (i * blockSize) + i] = 1.0;
+                }
+                System.arraycopy(tileData.startingParameters, 0, system.b, rowOffset, blockSize);
+                system.columns[blockIndex] = row;
+                blockIndex++;
+
+            } else {
+
+                final double[] diagonalBlock = tileData.getBlock(row);
+                for (int i = 0; i < blockSize; i++) {
+                    diagonalBlock[(i * blockSize) + i] += regularization[i];
+                    system.b[rowOffset + i] = tileData.rhs[i] +
+                                              (regularization[i] * tileData.startingParameters[i]);
+                }
+
+                final Integer[] sortedColumns = tileData.blocks.keySet().toArray(new Integer[0]);
+                Arrays.sort(sortedColumns);
+                for (final Integer column : sortedColumns) {
+                    System.arraycopy(tileData.blocks.get(column), 0,
+                                     system.values, blockIndex * blockLength, blockLength);
+                    system.columns[blockIndex] = column;
+                    blockIndex++;
+                }
+
+            }
+
+            if (! invertBlock(system.values, system.rowStart[row], system.columns, row,
+                              blockSize, system.inverseDiagonal, row * blockLength)) {
+                throw new IllegalStateException(
+                        "tile " + tileData.tileId + " is under-constrained, " +
+                        "add matches or increase regularization");
+            }
+
+            // release assembly data as soon as it has been copied
+            tileData.blocks = null;
+        }
+
+        system.rowStart[tileCount] = blockIndex;
+
+        return system;
+    }
+
+    private AffineModel2D buildModel(final TileData tileData,
+                                     final double[] u) {
+
+        final double[] m = tileData.startingModel;
+        final double m00, m10, m01, m11, centerTx, centerTy;
+
+        switch (modelType) {
+            case TRANSLATION:
+                m00 = m[0]; m10 = m[1]; m01 = m[2]; m11 = m[3]; centerTx = u[0]; centerTy = u[1];
+                break;
+            case RIGID:
+                final double scale = Math.sqrt((u[0] * u[0]) + (u[1] * u[1]));
+                m00 = u[0] / scale; m10 = u[1] / scale; m01 = -m10; m11 = m00; centerTx = u[2]; centerTy = u[3];
+                break;
+            case SIMILARITY:
+                m00 = u[0]; m10 = u[1]; m01 = -u[1]; m11 = u[0]; centerTx = u[2]; centerTy = u[3];
+                break;
+            default:
+                m00 = u[0]; m10 = u[3]; m01 = u[1]; m11 = u[4]; centerTx = u[2]; centerTy = u[5];
+        }
+
+        // convert translation of tile center back to translation of tile origin
+        final AffineModel2D model = new AffineModel2D();
+        model.set(m00, m10, m01, m11,
+                  centerTx - (m00 * tileData.centerX) - (m01 * tileData.centerY),
+                  centerTy - (m10 * tileData.centerX) - (m11 * tileData.centerY));
+
+        return model;
+    }
+
+    private static double dot(final double[] a,
+                              final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static void addScaled(final double[] target,
+                                  final double[] v,
+                                  final double scale) {
+        for (int i = 0; i < v.length; i++) {
+            target[i] += scale * v[i];
+        }
+    }
+
+    private static void addOuterProduct(final double[] block,
+                                        final double[] a,
+                                        final double[] b,
+                                        final double scale) {
+        final int n = a.length;
+        for (int i = 0; i < n; i++) {
+            final double sa = scale * a[i];
+            if (sa != 0) {
+                for (int j = 0; j < n; j++) {
+                    block[(i * n) + j] += sa * b[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Inverts the diagonal block of the specified row using Gauss-Jordan elimination with partial pivoting.
+     *
+     * @return false if the block is singular.
+     */
+    private static boolean invertBlock(final double[] values,
+                                       final int rowStart,
+                                       final int[] columns,
+                                       final int row,
+                                       final int n,
+                                       final double[] inverse,
+                                       final int inverseOffset) {
+
+        int diagonalIndex = rowStart;
+        while (columns[diagonalIndex] != row) {
+            diagonalIndex++;
+        }
+
+        final double[] a = Arrays.copyOfRange(values, diagonalIndex * n * n, (diagonalIndex + 1) * n * n);
+        final double[] inv = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            inv[(i * n) + i] = 1.0;
+        }
+
+        double maxAbs = 0;
+        for (final double v : a) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        final double epsilon = maxAbs * 1e-14;
+
+        for (int col = 0; col < n; col++) {
+
+            int pivot = col;
+            for (int i = col + 1; i < n; i++) {
+                if (Math.abs(a[(i * n) + col]) > Math.abs(a[(pivot * n) + col])) {
+                    pivot = i;
+                }
+            }
+
+            if (Math.abs(a[(pivot * n) + col]) <= epsilon) {
+                return false;
+            }
+
+            if (pivot != col) {
+                swapRows(a, n, pivot, col);
+                swapRows(inv, n, pivot, col);
+            }
+
+            final double scale = 1.0 / a[(col * n) + col];
+            for (int j = 0; j < n; j++) {
+                a[(col * n) + j] *= scale;
+                inv[(col * n) + j] *= scale;
+            }
+
+            for (int i = 0; i < n; i++) {
+                final double factor = a[(i * n) + col];
+                if ((i != col) && (factor != 0)) {
+                    for (int j = 0; j < n; j++) {
+                        a[(i * n) + j] -= factor * a[(col * n) + j];
+                        inv[(i * n) + j] -= factor * inv[(col * n) + j];
+                    }
+                }
+            }
+        }
+
+        System.arraycopy(inv, 0, inverse, inverseOffset, n * n);
+
+        return true;
+    }
+
+    private static void swapRows(final double[] a,
+                                 final int n,
+                                 final int row1,
+                                 final int row2) {
+        for (int j = 0; j < n; j++) {
+            final double tmp = a[(row1 * n) + j];
+            a[(row1 * n) + j] = a[(row2 * n) + j];
+            a[(row2 * n) + j] = tmp;
+        }
+    }
+
+    /**
+     * Assembly data for one tile.
+     */
+    private class TileData {
+
+        private final int index;
+        private final String tileId;
+        private final boolean isFixed;
+        private final double centerX;
+        private final double centerY;
+        /** starting model values in {@link AffineModel2D#toArray} order. */
+        private final double[] startingModel;
+        private final double[] startingParameters;
+        private final double[] rhs;
+        private Map<Integer, double[]> blocks;
+
+        private TileData(final int index,
+                         final String tileId,
+                         final AffineModel2D startingModel,
+                         final double centerX,
+                         final double centerY,
+                         final boolean isFixed) {
+
+            this.index = index;
+            this.tileId = tileId;
+            this.isFixed = isFixed;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.startingModel = new double[6];
+            startingModel.toArray(this.startingModel);
+
+            // toArray order is m00, m10, m01, m11, m02, m12
+            final double[] m = this.startingModel;
+            final double centerTx = (m[0] * centerX) + (m[2] * centerY) + m[4];
+            final double centerTy = (m[1] * centerX) + (m[3] * centerY) + m[5];
+            switch (modelType) {
+                case TRANSLATION:
+                    this.startingParameters = new double[] { centerTx, centerTy };
+                    break;
+                case RIGID:
+                case SIMILARITY:
+                    this.startingParameters = new double[] {
+                            (m[0] + m[3]) / 2.0, (m[1] - m[2]) / 2.0, centerTx, centerTy
+                    };
+                    break;
+                default:
+                    this.startingParameters = new double[] { m[0], m[2], centerTx, m[1], m[3], centerTy };
+            }
+
+            this.rhs = new double[blockSize];
+            this.blocks = new HashMap<>();
+        }
+
+        private double[] getBlock(final int column) {
+            return blocks.computeIfAbsent(column, c -> new double[blockSize * blockSize]);
+        }
+    }
+
+    /**
+     * Block compressed sparse row representation of the normal equations along with
+     * the preconditioned conjugate gradient state.
+     */
+    private class BlockSparseSystem {
+
+        private final int rowCount;
+        private final int n;
+        private final int[] rowStart;
+        private final int[] columns;
+        private final double[] values;
+        private final double[] inverseDiagonal;
+        private final double[] b;
+        private final double[] x;
+
+        private BlockSparseSystem(final int rowCount,
+                                  final int n,
+                                  final int blockCount) {
+            this.rowCount = rowCount;
+            this.n = n;
+            this.rowStart = new int[rowCount + 1];
+            this.columns = new int[blockCount];
+            this.values = new double[blockCount * n * n];
+            this.inverseDiagonal = new double[rowCount * n * n];
+            this.b = new double[rowCount * n];
+            this.x = new double[rowCount * n];
+        }
+
+        private void solve(final RowRangeRunner runner,
+                           final double tolerance,
+                           final int maxIterations) {
+
+            final int length = rowCount * n;
+            final double[] r = new double[length];
+            final double[] z = new double[length];
+            final double[] p = new double[length];
+            final double[] ap = new double[length];
+
+            double[] sums = runner.run(2, (fromRow, toRow, partialSums) -> {
+                multiply(x, r, fromRow, toRow);
+                for (int i = fromRow * n; i < toRow * n; i++) {
+                    r[i] = b[i] - r[i];
+                }
+                precondition(r, z, fromRow, toRow);
+                for (int i = fromRow * n; i < toRow * n; i++) {
+                    p[i] = z[i];
+                    partialSums[0] += r[i] * z[i];
+                    partialSums[1] += r[i] * r[i];
+                }
+            });
+
+            double rz = sums[0];
+            double bNorm = Math.sqrt(dot(b, b));
+            if (bNorm == 0) {
+                bNorm = 1.0;
+            }
+
+            iterationCount = 0;
+            relativeResidual = Math.sqrt(sums[1]) / bNorm;
+
+            while ((relativeResidual > tolerance) && (iterationCount < maxIterations)) {
+
+                sums = runner.run(1, (fromRow, toRow, partialSums) -> {
+                    multiply(p, ap, fromRow, toRow);
+                    for (int i = fromRow * n; i < toRow * n; i++) {
+                        partialSums[0] += p[i] * ap[i];
+                    }
+                });
+
+                if (sums[0] <= 0) {
+                    throw new IllegalStateException("normal equations are not positive definite, " +
+                                                    "check that the problem is sufficiently constrained");
+                }
+
+                final double alpha = rz / sums[0];
+
+                sums = runner.run(2, (fromRow, toRow, partialSums) -> {
+                    for (int i = fromRow * n; i < toRow * n; i++) {
+                        x[i] += alpha * p[i];
+                        r[i] -= alpha * ap[i];
+                    }
+                    precondition(r, z, fromRow, toRow);
+                    for (int i = fromRow * n; i < toRow * n; i++) {
+                        partialSums[0] += r[i] * z[i];
+                        partialSums[1] += r[i] * r[i];
+                    }
+                });
+
+                final double beta = sums[0] / rz;
+                rz = sums[0];
+
+                runner.run(0, (fromRow, toRow, partialSums) -> {
+                    for (int i = fromRow * n; i < toRow * n; i++) {
+                        p[i] = z[i] + (beta * p[i]);
+                    }
+                });
+
+                iterationCount++;
+                relativeResidual = Math.sqrt(sums[1]) / bNorm;
+
+                if (iterationCount % 100 == 0) {
+                    LOG.debug("solve: iteration {}, relativeResidual={}", iterationCount, relativeResidual);
+                }
+            }
+        }
+
+        /** Sets result = A * v for the specified block rows. */
+        private void multiply(final double[] v,
+                              final double[] result,
+                              final int fromRow,
+                              final int toRow) {
+            final int blockLength = n * n;
+            for (int row = fromRow; row < toRow; row++) {
+                final int rowOffset = row * n;
+                Arrays.fill(result, rowOffset, rowOffset + n, 0.0);
+                for (int blockIndex = rowStart[row]; blockIndex < rowStart[row + 1]; blockIndex++) {
+                    final int valueOffset = blockIndex * blockLength;
+                    final int columnOffset = columns[blockIndex] * n;
+                    for (int i = 0; i < n; i++) {
+                        double sum = 0;
+                        for (int j = 0; j < n; j++) {
+                            sum += values[valueOffset + (i * n) + j] * v[columnOffset + j];
+                        }
+                        result[rowOffset + i] += sum;
+                    }
+                }
+            }
+        }
+
+        /** Sets result = M^-1 * v (block Jacobi) for the specified block rows. */
+        private void precondition(final double[] v,
+                                  final double[] result,
+                                  final int fromRow,
+                                  final int toRow) {
+            final int blockLength = n * n;
+            for (int row = fromRow; row < toRow; row++) {
+                final int rowOffset = row * n;
+                final int inverseOffset = row * blockLength;
+                for (int i = 0; i < n; i++) {
+                    double sum = 0;
+                    for (int j = 0; j < n; j++) {
+                        sum += inverseDiagonal[inverseOffset + (i * n) + j] * v[rowOffset + j];
+                    }
+                    result[rowOffset + i] = sum;
+                }
+            }
+        }
+
+    }
+
+    private interface RowRangeTask {
+        void run(final int fromRow,
+                 final int toRow,
+                 final double[] partialSums);
+    }
+
+    /**
+     * Splits block rows into ranges and runs tasks for each range (concurrently when an executor is available),
+     * combining any partial sums produced by the tasks.
+     */
+    private static class RowRangeRunner {
+
+        private final ExecutorService executorService;
+        private final int[] rangeStarts;
+
+        private RowRangeRunner(final ExecutorService executorService,
+                               final int rowCount,
+                               final int numberOfThreads) {
+            this.executorService = executorService;
+            final int rangeCount = executorService == null ? 1 : Math.max(1, Math.min(rowCount, numberOfThreads * 4));
+            this.rangeStarts = new int[rangeCount + 1];
+            for (int i = 0; i <= rangeCount; i++) {
+                this.rangeStarts[i] = (int) (((long) rowCount * i) / rangeCount);
+            }
+        }
+
+        private double[] run(final int sumCount,
+                             final RowRangeTask task) {
+
+            final double[] sums = new double[sumCount];
+            final int rangeCount = rangeStarts.length - 1;
+
+            if (executorService == null) {
+
+                task.run(rangeStarts[0], rangeStarts[rangeCount], sums);
+
+            } else {
+
+                final List<Future<double[]>> futures = new ArrayList<>(rangeCount);
+                for (int i = 0; i < rangeCount; i++) {
+                    final int fromRow = rangeStarts[i];
+                    final int toRow = rangeStarts[i + 1];
+                    futures.add(executorService.submit(() -> {
+                        final double[] partialSums = new double[sumCount];
+                        task.run(fromRow, toRow, partialSums);
+                        return partialSums;
+                    }));
+                }
+
+                try {
+                    for (final Future<double[]> future : futures) {
+                        final double[] partialSums = future.get();
+                        for (int i = 0; i < sumCount; i++) {
+                            sums[i] += partialSums[i];
+                        }
+                    }
+                } catch (final InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException("failed to run solver task", e);
+                }
+            }
+
+            return sums;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SparseAffineSolver.class);
+}
@@ -102,9 +102,28 @@ public class LeafTransformSpec extends TransformSpec {
         flattenedList.addSpec(this);
     }
 
+    /**
+     * Builds instances from the {@link TransformInstanceCache#SHARED_CACHE shared cache} for large data strings
+     * so that expensive parsing only happens once per distinct transform.
+     */
     protected CoordinateTransform buildInstance()
             throws IllegalArgumentException {
 
+        final TransformInstanceCache cache = TransformInstanceCache.SHARED_CACHE;
+
+        final CoordinateTransform instance;
+        if ((className != null) && cache.isCacheable(dataString)) {
+            instance = cache.getCopy(className, dataString, this::buildUncachedInstance);
+        } else {
+            instance = buildUncachedInstance();
+        }
+
+        return instance;
+    }
+
+    private mpicbg.trakem2.transform.CoordinateTransform buildUncachedInstance()
+            throws IllegalArgumentException {
+
         final mpicbg.trakem2.transform.CoordinateTransform ct = newInstance();
         if (dataString == null) {
             throw new IllegalArgumentException("no dataString defined for leaf transform spec with id '" +
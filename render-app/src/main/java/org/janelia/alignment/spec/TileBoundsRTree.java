@@ -10,6 +10,7 @@ import com.github.davidmoten.rtree.geometry.Rectangle;
 import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -86,6 +87,52 @@ public class TileBoundsRTree {
         return convertResultsToList(searchResults);
     }
 
+    /**
+     * @return all tiles whose bounds intersect (or touch) the specified bounding box sorted by tileId
+     *         (the same tiles and order returned by the service's box render parameters queries).
+     *         Tree search results are rechecked with double precision since the tree stores float bounds.
+     */
+    public List<TileBounds> findTilesIntersectingBox(final double minX,
+                                                     final double minY,
+                                                     final double maxX,
+                                                     final double maxY) {
+
+        final List<TileBounds> candidates = findTilesInBox(minX - 1, minY - 1, maxX + 1, maxY + 1);
+        final List<TileBounds> matchingTiles = new ArrayList<>(candidates.size());
+        for (final TileBounds tileBounds : candidates) {
+            if ((tileBounds.getMinX() <= maxX) && (tileBounds.getMaxX() >= minX) &&
+                (tileBounds.getMinY() <= maxY) && (tileBounds.getMaxY() >= minY)) {
+                matchingTiles.add(tileBounds);
+            }
+        }
+
+        matchingTiles.sort(Comparator.comparing(TileBounds::getTileId));
+
+        return matchingTiles;
+    }
+
+    /**
+     * @return all tiles whose bounds contain the specified point sorted by tileId
+     *         (the same order used for rendering and for spatial tile spec queries).
+     *         Tree search results are rechecked with double precision since the tree stores float bounds.
+     */
+    public List<TileBounds> findTilesContainingPoint(final double x,
+                                                     final double y) {
+
+        final List<TileBounds> candidates = findTilesInBox(x - 1, y - 1, x + 1, y + 1);
+        final List<TileBounds> matchingTiles = new ArrayList<>(candidates.size());
+        for (final TileBounds tileBounds : candidates) {
+            if ((tileBounds.getMinX() <= x) && (tileBounds.getMaxX() >= x) &&
+                (tileBounds.getMinY() <= y) && (tileBounds.getMaxY() >= y)) {
+                matchingTiles.add(tileBounds);
+            }
+        }
+
+        matchingTiles.sort(Comparator.comparing(TileBounds::getTileId));
+
+        return matchingTiles;
+    }
+
     /**
      * @return all tiles that intersect the specified circle.
      */
@@ -8,7 +8,11 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.models.CoordinateTransformMesh;
 import mpicbg.models.NoninvertibleModelException;
 
 import org.janelia.alignment.json.JsonUtils;
@@ -116,6 +120,30 @@ public class TileCoordinates implements Serializable {
             final double x,
             final double y)
             throws IllegalStateException {
+        return getLocalCoordinates(tileSpecList, x, y, null);
+    }
+
+    /**
+     * @param  tileSpecList  list of tiles that contain the specified point
+     *                       (order of list is assumed to be the same order used for rendering).
+     *
+     * @param  x             x coordinate.
+     * @param  y             y coordinate.
+     *
+     * @param  tileIdToMesh  map of previously built tile meshes to reuse (and to update with any newly built meshes)
+     *                       or null if meshes should not be reused.
+     *
+     * @return a local {@link TileCoordinates} instance with the inverse of the specified world point.
+     *
+     * @throws IllegalStateException
+     *   if the specified point cannot be inverted for any of the specified tiles.
+     */
+    public static List<TileCoordinates> getLocalCoordinates(
+            final List<TileSpec> tileSpecList,
+            final double x,
+            final double y,
+            final Map<String, CoordinateTransformMesh> tileIdToMesh)
+            throws IllegalStateException {
 
 
         final List<TileCoordinates> tileCoordinatesList = new ArrayList<>();
@@ -124,7 +152,11 @@ public class TileCoordinates implements Serializable {
         TileCoordinates tileCoordinates;
         for (final TileSpec tileSpec : tileSpecList) {
             try {
-                local = tileSpec.getLocalCoordinates(x, y, tileSpec.getMeshCellSize());
+                if (tileIdToMesh == null) {
+                    local = tileSpec.getLocalCoordinates(x, y, tileSpec.getMeshCellSize());
+                } else {
+                    local = tileSpec.getLocalCoordinates(x, y, getMesh(tileSpec, tileIdToMesh));
+                }
                 tileCoordinates = buildLocalInstance(tileSpec.getTileId(), local);
                 tileCoordinatesList.add(tileCoordinates);
             } catch (final NoninvertibleModelException e) {
@@ -155,6 +187,19 @@ public class TileCoordinates implements Serializable {
         return tileCoordinatesList;
     }
 
+    private static CoordinateTransformMesh getMesh(final TileSpec tileSpec,
+                                                   final Map<String, CoordinateTransformMesh> tileIdToMesh) {
+        CoordinateTransformMesh mesh = null;
+        if (tileSpec.hasTransforms()) {
+            mesh = tileIdToMesh.get(tileSpec.getTileId());
+            if (mesh == null) {
+                mesh = tileSpec.getCoordinateTransformMesh(tileSpec.getMeshCellSize());
+                tileIdToMesh.put(tileSpec.getTileId(), mesh);
+            }
+        }
+        return mesh;
+    }
+
     public static TileCoordinates getWorldCoordinates(final TileSpec tileSpec,
                                                       final double x,
                                                       final double y) {
@@ -162,6 +207,18 @@ public class TileCoordinates implements Serializable {
         return buildWorldInstance(tileSpec.getTileId(), world);
     }
 
+    /**
+     * @return world coordinates for the specified local coordinates derived with
+     *         a previously built transform list for the tile (or null if the tile has no transforms).
+     */
+    public static TileCoordinates getWorldCoordinates(final TileSpec tileSpec,
+                                                      final CoordinateTransformList<CoordinateTransform> ctl,
+                                                      final double x,
+                                                      final double y) {
+        final double[] world = tileSpec.getWorldCoordinates(x, y, ctl);
+        return buildWorldInstance(tileSpec.getTileId(), world);
+    }
+
     public String toJson() {
         return JSON_HELPER.toJson(this);
     }
@@ -341,11 +341,28 @@ public class TileSpec implements Serializable {
      * @return world coordinates (x, y, z) for the specified local coordinates.
      */
     public double[] getWorldCoordinates(final double x, final double y) {
+        final CoordinateTransformList<CoordinateTransform> ctl = hasTransforms() ? getTransformList() : null;
+        return getWorldCoordinates(x, y, ctl);
+    }
+
+    /**
+     * Transforms a local coordinate with a previously built transform list,
+     * allowing one list to be reused for many points in the same tile.
+     *
+     * @param  x    local x coordinate to transform into world coordinate.
+     * @param  y    local y coordinate to transform into world coordinate.
+     * @param  ctl  list built by {@link #getTransformList} for this tile
+     *              (or null if this tile has no transforms).
+     *
+     * @return world coordinates (x, y, z) for the specified local coordinates.
+     */
+    public double[] getWorldCoordinates(final double x,
+                                        final double y,
+                                        final CoordinateTransformList<CoordinateTransform> ctl) {
         final double[] worldCoordinates;
         final double[] w = new double[] {x, y};
 
-        if (hasTransforms()) {
-            final CoordinateTransformList<CoordinateTransform> ctl = getTransformList();
+        if (ctl != null) {
             ctl.applyInPlace(w);
         }
 
@@ -373,10 +390,32 @@ public class TileSpec implements Serializable {
     public double[] getLocalCoordinates(final double x, final double y, final double meshCellSize)
             throws IllegalStateException, NoninvertibleModelException {
 
+        final CoordinateTransformMesh mesh = hasTransforms() ? getCoordinateTransformMesh(meshCellSize) : null;
+        return getLocalCoordinates(x, y, mesh);
+    }
+
+    /**
+     * Inversely transforms a world coordinate with a previously built mesh,
+     * allowing one mesh to be reused for many points in the same tile.
+     *
+     * @param  x     world x coordinate to inversely transform into local coordinate.
+     * @param  y     world y coordinate to inversely transform into local coordinate.
+     * @param  mesh  mesh built by {@link #getCoordinateTransformMesh} for this tile
+     *               (or null if this tile has no transforms).
+     *
+     * @return local coordinates (x, y, z) for the specified world coordinates.
+     *
+     * @throws NoninvertibleModelException
+     *   if this tile's transforms cannot be inverted for the specified point.
+     */
+    public double[] getLocalCoordinates(final double x,
+                                        final double y,
+                                        final CoordinateTransformMesh mesh)
+            throws NoninvertibleModelException {
+
         final double[] localCoordinates;
         final double[] l = new double[] {x, y};
-        if (hasTransforms()) {
-            final CoordinateTransformMesh mesh = getCoordinateTransformMesh(meshCellSize);
+        if (mesh != null) {
             mesh.applyInverseInPlace(l);
         }
 
@@ -0,0 +1,160 @@
+package org.janelia.alignment.spec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import mpicbg.trakem2.transform.CoordinateTransform;
+
+/**
+ * Cache of parsed {@link CoordinateTransform} prototypes keyed by transform class name and data string.
+ * Parsing large data strings (e.g. for polynomial or thin plate spline transforms) is expensive and the same
+ * transforms are typically rebuilt for every render, bounding box derivation, and coordinate mapping of a tile.
+ * Cached prototypes are never handed out directly; callers always receive a {@link CoordinateTransform#copy copy}
+ * so that instances remain distinct and thread safe.
+ *
+ * The cache is bounded by the total length of the cached data strings and is thread safe.
+ * Data strings shorter than {@link #DEFAULT_MIN_DATA_STRING_LENGTH} (e.g. simple affine transforms)
+ * are cheap to parse and are not cached.
+ *
+ * @author Eric Trautman
+ */
+public class TransformInstanceCache {
+
+    /** Default minimum data string length for cached transforms. */
+    public static final int DEFAULT_MIN_DATA_STRING_LENGTH = 256;
+
+    /** Default maximum total number of data string characters for cached transforms (roughly 100MB). */
+    public static final long DEFAULT_MAX_DATA_STRING_CHARACTERS = 50 * 1000000;
+
+    /** Cache instance shared by all {@link LeafTransformSpec} instances in the JVM. */
+    public static final TransformInstanceCache SHARED_CACHE =
+            new TransformInstanceCache(DEFAULT_MIN_DATA_STRING_LENGTH, DEFAULT_MAX_DATA_STRING_CHARACTERS);
+
+    private final int minDataStringLength;
+    private final long maxDataStringCharacters;
+    private final Cache<CacheKey, CoordinateTransform> cache;
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  minDataStringLength      minimum data string length for transforms to be cached.
+     * @param  maxDataStringCharacters  maximum total number of data string characters for all cached transforms.
+     */
+    public TransformInstanceCache(final int minDataStringLength,
+                                  final long maxDataStringCharacters) {
+        this.minDataStringLength = minDataStringLength;
+        this.maxDataStringCharacters = maxDataStringCharacters;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxDataStringCharacters)
+                .weigher((CacheKey key, CoordinateTransform value) -> key.dataString.length())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return true if transforms with the specified data string should be cached; otherwise false.
+     */
+    public boolean isCacheable(final String dataString) {
+        return (dataString != null) && (dataString.length() >= minDataStringLength);
+    }
+
+    /**
+     * @param  className   name of the transform class.
+     * @param  dataString  data string for the transform.
+     * @param  loader      function for creating (and initializing) a new prototype when one is not cached.
+     *
+     * @return a copy of the cached prototype for the specified class name and data string.
+     *         If the prototype is not already cached, it will be created with the loader and cached.
+     *
+     * @throws IllegalArgumentException
+     *   if the prototype cannot be created.
+     */
+    public CoordinateTransform getCopy(final String className,
+                                       final String dataString,
+                                       final Callable<CoordinateTransform> loader)
+            throws IllegalArgumentException {
+
+        final CoordinateTransform prototype;
+        try {
+            prototype = cache.get(new CacheKey(className, dataString), loader);
+        } catch (final ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            }
+            throw new IllegalArgumentException("failed to create instance of transform class '" + className + "'",
+                                               cause);
+        }
+
+        return prototype.copy();
+    }
+
+    /**
+     * @return the number of entries currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", minDataStringLength: " + minDataStringLength +
+               ", maxDataStringCharacters: " + maxDataStringCharacters +
+               ", stats: " + getStats() +
+               '}';
+    }
+
+    /**
+     * Key that combines a transform's class name with its data string.
+     */
+    private static class CacheKey {
+
+        private final String className;
+        private final String dataString;
+
+        CacheKey(final String className,
+                 final String dataString) {
+            this.className = className;
+            this.dataString = dataString;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CacheKey that = (CacheKey) o;
+            return className.equals(that.className) && dataString.equals(that.dataString);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * className.hashCode()) + dataString.hashCode();
+        }
+    }
+
+}
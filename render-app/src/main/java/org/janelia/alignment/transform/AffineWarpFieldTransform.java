@@ -16,6 +16,9 @@ import net.imglib2.view.composite.RealComposite;
 /**
  * Transform that utilizes an {@link AffineWarpField}.
  *
+ * Warp field accessors are maintained per thread, so a single instance can safely be shared by
+ * parallel mesh mapping and coordinate threads.
+ *
  * @author Eric Trautman
  */
 public class AffineWarpFieldTransform
@@ -26,8 +29,8 @@ public class AffineWarpFieldTransform
     private double[] locationOffsets;
     private AffineWarpField affineWarpField;
 
-    // ImgLib2 accessor for warp field
-    private RealRandomAccess<RealComposite<DoubleType>> warpFieldAccessor;
+    // ImgLib2 accessors for warp field (accessors are stateful, so each thread needs its own)
+    private ThreadLocal<RealRandomAccess<RealComposite<DoubleType>>> warpFieldAccessors;
 
     /**
      * This constructor applies identity transform to entire space with no offset.
@@ -65,23 +68,41 @@ public class AffineWarpFieldTransform
 
     @Override
     public void applyInPlace(final double[] location) {
+        final RealRandomAccess<RealComposite<DoubleType>> warpFieldAccessor = warpFieldAccessors.get();
+        final double[] warpFieldLocation = new double[2];
+        applyInPlace(warpFieldAccessor, warpFieldLocation, location);
+    }
 
-        final double[] warpFieldLocation = { location[0] - locationOffsets[0], location[1] - locationOffsets[1] };
+    /**
+     * Applies this transform to a batch of locations,
+     * looking up the thread's warp field accessor only once for the entire batch.
+     *
+     * @param  xs  x coordinates of the locations (transformed in place).
+     * @param  ys  y coordinates of the locations (transformed in place).
+     *
+     * @throws IllegalArgumentException
+     *   if the coordinate arrays have different lengths.
+     */
+    public void applyInPlace(final double[] xs,
+                             final double[] ys)
+            throws IllegalArgumentException {
 
-        warpFieldAccessor.setPosition(warpFieldLocation);
-        final RealComposite<DoubleType> coefficients = warpFieldAccessor.get();
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("xs length (" + xs.length +
+                                               ") differs from ys length (" + ys.length + ")");
+        }
 
-        final double m00 = coefficients.get(0).getRealDouble();
-        final double m10 = coefficients.get(1).getRealDouble();
-        final double m01 = coefficients.get(2).getRealDouble();
-        final double m11 = coefficients.get(3).getRealDouble();
-        final double m02 = coefficients.get(4).getRealDouble();
-        final double m12 = coefficients.get(5).getRealDouble();
+        final RealRandomAccess<RealComposite<DoubleType>> warpFieldAccessor = warpFieldAccessors.get();
+        final double[] warpFieldLocation = new double[2];
+        final double[] location = new double[2];
 
-        // stolen from AffineModel2D.applyInPlace
-        final double l0 = location[0];
-        location[0] = l0 * m00 + location[1] * m01 + m02;
-        location[1] = l0 * m10 + location[1] * m11 + m12;
+        for (int i = 0; i < xs.length; i++) {
+            location[0] = xs[i];
+            location[1] = ys[i];
+            applyInPlace(warpFieldAccessor, warpFieldLocation, location);
+            xs[i] = location[0];
+            ys[i] = location[1];
+        }
     }
 
     /**
@@ -199,6 +220,7 @@ public class AffineWarpFieldTransform
 
         final double[] warpFieldLocation = { location[0] - locationOffsets[0], location[1] - locationOffsets[1] };
 
+        final RealRandomAccess<RealComposite<DoubleType>> warpFieldAccessor = warpFieldAccessors.get();
         warpFieldAccessor.setPosition(warpFieldLocation);
         final RealComposite<DoubleType> coefficients = warpFieldAccessor.get();
 
@@ -251,14 +273,43 @@ public class AffineWarpFieldTransform
                 "}";
     }
 
+    private void applyInPlace(final RealRandomAccess<RealComposite<DoubleType>> warpFieldAccessor,
+                              final double[] warpFieldLocation,
+                              final double[] location) {
+
+        warpFieldLocation[0] = location[0] - locationOffsets[0];
+        warpFieldLocation[1] = location[1] - locationOffsets[1];
+
+        warpFieldAccessor.setPosition(warpFieldLocation);
+        final RealComposite<DoubleType> coefficients = warpFieldAccessor.get();
+
+        final double m00 = coefficients.get(0).getRealDouble();
+        final double m10 = coefficients.get(1).getRealDouble();
+        final double m01 = coefficients.get(2).getRealDouble();
+        final double m11 = coefficients.get(3).getRealDouble();
+        final double m02 = coefficients.get(4).getRealDouble();
+        final double m12 = coefficients.get(5).getRealDouble();
+
+        // stolen from AffineModel2D.applyInPlace
+        final double l0 = location[0];
+        location[0] = l0 * m00 + location[1] * m01 + m02;
+        location[1] = l0 * m10 + location[1] * m11 + m12;
+    }
+
     private void setWarpFieldAccessor() throws IllegalArgumentException {
-        // set accessor and validate interpolator factory instance
+        // validate interpolator factory instance with the first accessor
+        final RealRandomAccess<RealComposite<DoubleType>> validatedAccessor;
         try {
-            warpFieldAccessor = affineWarpField.getAccessor();
+            validatedAccessor = affineWarpField.getAccessor();
         } catch (final Exception e) {
             final String factoryClassName = affineWarpField.getInterpolatorFactory().getClass().getCanonicalName();
             throw new IllegalArgumentException("interpolator factory class '" + factoryClassName + "' does not implement required interface", e);
         }
+
+        // replace any accessors created for a previous warp field
+        final AffineWarpField field = affineWarpField;
+        warpFieldAccessors = ThreadLocal.withInitial(field::getAccessor);
+        warpFieldAccessors.set(validatedAccessor);
     }
 
     /**
@@ -10,6 +10,10 @@ import ij.ImagePlus;
 import ij.io.Opener;
 import ij.process.ImageProcessor;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
 import javax.annotation.Nullable;
 
 import mpicbg.trakem2.util.Downsampler;
@@ -25,6 +29,10 @@ import org.slf4j.LoggerFactory;
  * Cache instances are thread safe and do not depend upon garbage collection or independent threads to evict
  * stale entries, making the instances safer for use in application servers.
  *
+ * In addition to decoded (raw) pixels, a cache can also hold filtered versions of those pixels
+ * (see {@link #getFiltered}).  Filtered entries share the same weight budget as raw entries
+ * but their hit and miss counts are tracked separately (see {@link #getFilteredStats}).
+ *
  * For gory details about the cache implementation, see
  * <a href="https://code.google.com/p/guava-libraries/wiki/CachesExplained">
  *     https://code.google.com/p/guava-libraries/wiki/CachesExplained
@@ -46,6 +54,10 @@ public class ImageProcessorCache {
 
     private final LoadingCache<CacheKey, ImageProcessor> cache;
 
+    private final AtomicLong filteredHitCount;
+    private final AtomicLong filteredMissCount;
+    private final AtomicLong filteredLoadTime;
+
     /**
      * Constructs an instance with default parameters.
      */
@@ -76,6 +88,9 @@ public class ImageProcessorCache {
         this.maximumNumberOfCachedKilobytes = maximumNumberOfCachedPixels / 1000;
         this.recordStats = recordStats;
         this.cacheOriginalsForDownSampledImages = cacheOriginalsForDownSampledImages;
+        this.filteredHitCount = new AtomicLong();
+        this.filteredMissCount = new AtomicLong();
+        this.filteredLoadTime = new AtomicLong();
 
         final Weigher<CacheKey, ImageProcessor> weigher =
                 (key, value) -> {
@@ -145,7 +160,7 @@ public class ImageProcessorCache {
                               final boolean convertTo16Bit)
             throws IllegalArgumentException {
 
-        final CacheKey key = new CacheKey(url, downSampleLevels, isMask,convertTo16Bit);
+        final CacheKey key = new CacheKey(url, downSampleLevels, isMask, convertTo16Bit, null);
         final ImageProcessor imageProcessor;
         try {
             imageProcessor = cache.get(key);
@@ -155,6 +170,51 @@ public class ImageProcessorCache {
         return imageProcessor.duplicate();
     }
 
+    /**
+     * @param  sourceKey       key identifying the unfiltered source pixels (e.g. image url and intensity range).
+     *
+     * @param  mipmapLevel     mipmap level of the source pixels.
+     *
+     * @param  filterKey       canonical representation of the filters applied to the source pixels.
+     *
+     * @param  filteredLoader  function that loads and filters the source pixels when they are not already cached.
+     *
+     * @return a duplicate instance of the cached filtered image processor for the specified keys.
+     *         If the filtered processor is not already cached, it will be loaded into the cache.
+     *
+     * @throws IllegalArgumentException
+     *   if the filtered image cannot be loaded.
+     */
+    public ImageProcessor getFiltered(final String sourceKey,
+                                      final int mipmapLevel,
+                                      final String filterKey,
+                                      final Supplier<ImageProcessor> filteredLoader)
+            throws IllegalArgumentException {
+
+        final CacheKey key = new CacheKey(sourceKey, mipmapLevel, false, false, filterKey);
+        final boolean[] wasLoaded = { false };
+        final ImageProcessor imageProcessor;
+        try {
+            imageProcessor = cache.get(key, () -> {
+                wasLoaded[0] = true;
+                final long loadStart = System.nanoTime();
+                final ImageProcessor filteredProcessor = filteredLoader.get();
+                filteredLoadTime.addAndGet(System.nanoTime() - loadStart);
+                return filteredProcessor;
+            });
+        } catch (final Throwable t) {
+            throw new IllegalArgumentException("failed to retrieve " + key + " from cache", t);
+        }
+
+        if (wasLoaded[0]) {
+            filteredMissCount.incrementAndGet();
+        } else {
+            filteredHitCount.incrementAndGet();
+        }
+
+        return imageProcessor.duplicate();
+    }
+
     /**
      * @return the number of entries currently in this cache.
      */
@@ -177,12 +237,23 @@ public class ImageProcessorCache {
         return cache.stats();
     }
 
+    /**
+     * @return a current snapshot of hit and miss statistics for filtered entries only
+     *         (filtered requests are also included in the overall {@link #getStats() cache statistics}).
+     */
+    public CacheStats getFilteredStats() {
+        final long missCount = filteredMissCount.get();
+        return new CacheStats(filteredHitCount.get(), missCount, missCount, 0, filteredLoadTime.get(), 0);
+    }
+
     @Override
     public String toString() {
         return "{numberOfEntries: " + size() +
                ", maximumNumberOfCachedKilobytes: " + maximumNumberOfCachedKilobytes +
                ", recordStats: " + recordStats +
                ", cacheOriginalsForDownSampledImages: " + cacheOriginalsForDownSampledImages +
+               ", filteredHitCount: " + filteredHitCount.get() +
+               ", filteredMissCount: " + filteredMissCount.get() +
                '}';
     }
 
@@ -232,7 +303,7 @@ public class ImageProcessorCache {
 
         // if we need to down sample, see if source image is already cached before trying to load it
         if (downSampleLevels > 0) {
-            imageProcessor = cache.getIfPresent(new CacheKey(url, 0, isMask,convertTo16Bit));
+            imageProcessor = cache.getIfPresent(new CacheKey(url, 0, isMask, convertTo16Bit, null));
         }
 
         // load the image as needed
@@ -264,7 +335,7 @@ public class ImageProcessorCache {
                     LOG.debug("loadImageProcessor: caching level 0 for {}", url);
                 }
 
-                cache.put(new CacheKey(url, 0, isMask,convertTo16Bit), imageProcessor);
+                cache.put(new CacheKey(url, 0, isMask, convertTo16Bit, null), imageProcessor);
             }
 
         }
@@ -281,7 +352,8 @@ public class ImageProcessorCache {
     }
 
     /**
-     * Key that combines an image's url with its down sample levels.
+     * Key that combines an image's url with its down sample levels
+     * (and the filters applied to it for filtered entries).
      */
     private class CacheKey {
 
@@ -289,11 +361,13 @@ public class ImageProcessorCache {
         private final int downSampleLevels;
         private final boolean isMask;
         private final boolean convertTo16Bit;
+        private final String filterKey;
 
         CacheKey(final String url,
                  final int downSampleLevels,
                  final boolean isMask,
-                 final boolean convertTo16Bit) {
+                 final boolean convertTo16Bit,
+                 final String filterKey) {
 
             this.url = url;
 
@@ -305,6 +379,7 @@ public class ImageProcessorCache {
 
             this.isMask = isMask;
             this.convertTo16Bit = convertTo16Bit;
+            this.filterKey = filterKey;
         }
 
         public String getUri() {
@@ -323,7 +398,8 @@ public class ImageProcessorCache {
 
         @Override
         public String toString() {
-            return "{url: '" + url + "', downSampleLevels: " + downSampleLevels + ", isMask: " + isMask + ", convertTo16Bit:" + convertTo16Bit +  '}';
+            return "{url: '" + url + "', downSampleLevels: " + downSampleLevels + ", isMask: " + isMask + ", convertTo16Bit:" + convertTo16Bit +
+                   (filterKey == null ? "" : ", filterKey: '" + filterKey + "'") + '}';
         }
 
         @Override
@@ -334,7 +410,8 @@ public class ImageProcessorCache {
                     final CacheKey that = (CacheKey) o;
                     result = this.url.equals(that.url) &&
                              (this.downSampleLevels == that.downSampleLevels) &&
-                             (this.convertTo16Bit == that.convertTo16Bit);
+                             (this.convertTo16Bit == that.convertTo16Bit) &&
+                             Objects.equals(this.filterKey, that.filterKey);
                 } else {
                     result = false;
                 }
@@ -346,6 +423,7 @@ public class ImageProcessorCache {
         public int hashCode() {
             int result = url.hashCode();
             result = 31 * result + downSampleLevels;
+            result = 31 * result + Objects.hashCode(filterKey);
             return result;
         }
     }
@@ -60,6 +60,15 @@ public class MipmapGeneratorTest {
 
     @Test
     public void testGenerateMissingMipmapFiles() throws Exception {
+        validateGenerateMissingMipmapFiles(false);
+    }
+
+    @Test
+    public void testCascadeMissingMipmapFilesInMemory() throws Exception {
+        validateGenerateMissingMipmapFiles(true);
+    }
+
+    private void validateGenerateMissingMipmapFiles(final boolean cascadeLevelsInMemory) throws Exception {
         final File parametersFile = new File("src/test/resources/mipmap-test/generator_parameters.json");
         final MipmapGeneratorParameters parameters = MipmapGeneratorParameters.parseJson(parametersFile);
         parameters.initializeDerivedValues();
@@ -71,7 +80,8 @@ public class MipmapGeneratorTest {
         final MipmapGenerator mipmapGenerator = new MipmapGenerator(baseMipmapDirectory,
                                                                     parameters.getFormat(),
                                                                     parameters.getQuality(),
-                                                                    true);
+                                                                    true,
+                                                                    cascadeLevelsInMemory);
         ImageAndMask consolidatedLevel1imageAndMask = null;
         ImageAndMask consolidatedLevel2imageAndMask = null;
         TileSpec tileSpec;
@@ -92,6 +102,12 @@ public class MipmapGeneratorTest {
             Assert.assertTrue("updated tile spec is missing level 2 mipmap", channelSpec.hasMipmap(2));
             Assert.assertFalse("updated tile spec should not have level 3 mipmap", channelSpec.hasMipmap(3));
 
+            for (int level = 1; level < 3; level++) {
+                final ImageAndMask imageAndMask = channelSpec.getMipmap(level);
+                Assert.assertTrue("level " + level + " image file missing for tile " + i,
+                                  new File(imageAndMask.getImageFilePath()).exists());
+            }
+
             // Consolidation Test:
             // -  Tiles 0 and 1 (with zipped masks) should have the same (consolidated) level 1 and level 2 masks.
             // -  Tile 2 (with unzipped mask) should also have same (consolidated) level 1 and level 2 masks.
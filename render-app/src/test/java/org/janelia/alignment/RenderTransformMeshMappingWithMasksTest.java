@@ -0,0 +1,297 @@
+package org.janelia.alignment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.trakem2.util.Pair;
+import mpicbg.util.Util;
+
+import org.janelia.alignment.mapper.PixelMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderTransformMeshMappingWithMasks} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderTransformMeshMappingWithMasksTest {
+
+    private static final int TARGET_WIDTH = 420;
+    private static final int TARGET_HEIGHT = 380;
+
+    @Test
+    public void testScanlineMappingMatchesPerPixelMapping() {
+
+        for (final boolean isMappingInterpolated : new boolean[] { false, true }) {
+
+            final RenderTransformMesh mesh = buildMesh();
+
+            final RecordingPixelMapper expectedMapper = new RecordingPixelMapper(isMappingInterpolated);
+            mapEachPixelInBoundingBoxes(mesh, expectedMapper);
+
+            final RecordingPixelMapper actualMapper = new RecordingPixelMapper(isMappingInterpolated);
+            new RenderTransformMeshMappingWithMasks(mesh).map(actualMapper, 1);
+
+            final String context = "isMappingInterpolated " + isMappingInterpolated + ": ";
+
+            Assert.assertTrue(context + "nothing was mapped", expectedMapper.targets.size() > 0);
+            Assert.assertEquals(context + "target pixels differ", expectedMapper.targets, actualMapper.targets);
+            Assert.assertEquals(context + "invalid number of source coordinates",
+                                expectedMapper.sources.size(), actualMapper.sources.size());
+
+            for (int i = 0; i < expectedMapper.sources.size(); i++) {
+                Assert.assertEquals(context + "source coordinate " + i + " differs",
+                                    expectedMapper.sources.get(i), actualMapper.sources.get(i), 1e-9);
+            }
+        }
+
+    }
+
+    @Test
+    public void testMultiThreadedMappingCoverage() {
+
+        final RenderTransformMesh mesh = buildMesh();
+
+        final CountingPixelMapper singleThreadMapper = new CountingPixelMapper();
+        new RenderTransformMeshMappingWithMasks(mesh).map(singleThreadMapper, 1);
+
+        final CountingPixelMapper multiThreadMapper = new CountingPixelMapper();
+        new RenderTransformMeshMappingWithMasks(mesh).map(multiThreadMapper, 5);
+
+        Assert.assertArrayEquals("multi-threaded coverage differs from single-threaded coverage",
+                                 singleThreadMapper.counts, multiThreadMapper.counts);
+    }
+
+    @Test
+    public void testMultiThreadedMappingMatchesSingleThreadedMapping() {
+
+        for (final boolean isMappingInterpolated : new boolean[] { false, true }) {
+
+            final RenderTransformMesh mesh = buildMesh();
+
+            final SourceImagePixelMapper singleThreadMapper = new SourceImagePixelMapper(isMappingInterpolated);
+            new RenderTransformMeshMappingWithMasks(mesh).map(singleThreadMapper, 1);
+
+            for (final int numberOfThreads : new int[] { 2, 3, 7 }) {
+
+                final SourceImagePixelMapper multiThreadMapper = new SourceImagePixelMapper(isMappingInterpolated);
+                new RenderTransformMeshMappingWithMasks(mesh).map(multiThreadMapper, numberOfThreads);
+
+                final String context = "isMappingInterpolated " + isMappingInterpolated +
+                                       ", numberOfThreads " + numberOfThreads + ": ";
+
+                Assert.assertArrayEquals(context + "mapped source x values differ",
+                                         singleThreadMapper.sourceX, multiThreadMapper.sourceX, 0.0);
+                Assert.assertArrayEquals(context + "mapped source y values differ",
+                                         singleThreadMapper.sourceY, multiThreadMapper.sourceY, 0.0);
+            }
+        }
+    }
+
+    private static RenderTransformMesh buildMesh() {
+
+        final AffineModel2D rotateAndScale = new AffineModel2D();
+        rotateAndScale.set(0.9, 0.3, -0.25, 1.1, 35.3, 12.7);
+
+        final CoordinateTransform wave = new CoordinateTransform() {
+            @Override
+            public double[] apply(final double[] location) {
+                final double[] transformed = location.clone();
+                applyInPlace(transformed);
+                return transformed;
+            }
+
+            @Override
+            public void applyInPlace(final double[] location) {
+                location[0] += 4.0 * Math.sin(location[1] / 23.0);
+                location[1] += 3.0 * Math.cos(location[0] / 17.0);
+            }
+        };
+
+        final CoordinateTransformList<CoordinateTransform> transformList = new CoordinateTransformList<>();
+        transformList.add(rotateAndScale);
+        transformList.add(wave);
+
+        final RenderTransformMesh mesh = new RenderTransformMesh(transformList, 12, 300, 280);
+        mesh.updateAffines();
+
+        return mesh;
+    }
+
+    /**
+     * Reference implementation that tests every pixel in each triangle's bounding box.
+     */
+    private static void mapEachPixelInBoundingBoxes(final RenderTransformMesh mesh,
+                                                    final PixelMapper pixelMapper) {
+
+        final int w = pixelMapper.getTargetWidth() - 1;
+        final int h = pixelMapper.getTargetHeight() - 1;
+
+        for (final Pair<AffineModel2D, double[][]> ai : mesh.getAV()) {
+
+            final double[][] pq = ai.b;
+
+            final double[] min = new double[2];
+            final double[] max = new double[2];
+            RenderTransformMesh.calculateTargetBoundingBox(pq, min, max);
+
+            final int minX = Math.max(0, Util.roundPos(min[0]));
+            final int minY = Math.max(0, Util.roundPos(min[1]));
+            final int maxX = Math.min(w, Util.roundPos(max[0]));
+            final int maxY = Math.min(h, Util.roundPos(max[1]));
+
+            final double[] source = new double[2];
+
+            for (int targetY = minY; targetY <= maxY; ++targetY) {
+                for (int targetX = minX; targetX <= maxX; ++targetX) {
+                    if (RenderTransformMesh.isInTargetTriangle(pq, targetX, targetY)) {
+                        source[0] = targetX;
+                        source[1] = targetY;
+                        try {
+                            ai.a.applyInverseInPlace(source);
+                        } catch (final Exception e) {
+                            continue;
+                        }
+                        pixelMapper.map(source[0], source[1], targetX, targetY);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class RecordingPixelMapper implements PixelMapper {
+
+        private final boolean isMappingInterpolated;
+        private final List<Integer> targets;
+        private final List<Double> sources;
+
+        RecordingPixelMapper(final boolean isMappingInterpolated) {
+            this.isMappingInterpolated = isMappingInterpolated;
+            this.targets = new ArrayList<>();
+            this.sources = new ArrayList<>();
+        }
+
+        @Override
+        public int getTargetWidth() {
+            return TARGET_WIDTH;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return TARGET_HEIGHT;
+        }
+
+        @Override
+        public boolean isMappingInterpolated() {
+            return isMappingInterpolated;
+        }
+
+        @Override
+        public void map(final double sourceX,
+                        final double sourceY,
+                        final int targetX,
+                        final int targetY) {
+            targets.add((targetY * TARGET_WIDTH) + targetX);
+            sources.add(sourceX);
+            sources.add(sourceY);
+        }
+
+        @Override
+        public void mapInterpolated(final double sourceX,
+                                    final double sourceY,
+                                    final int targetX,
+                                    final int targetY) {
+            map(sourceX, sourceY, targetX, targetY);
+        }
+    }
+
+    /**
+     * Renders the source coordinates mapped to each target pixel, so later triangles overwrite earlier ones
+     * just like they do when rendering a real source image.
+     */
+    private static class SourceImagePixelMapper implements PixelMapper {
+
+        private final boolean isMappingInterpolated;
+        private final double[] sourceX = new double[TARGET_WIDTH * TARGET_HEIGHT];
+        private final double[] sourceY = new double[TARGET_WIDTH * TARGET_HEIGHT];
+
+        SourceImagePixelMapper(final boolean isMappingInterpolated) {
+            this.isMappingInterpolated = isMappingInterpolated;
+        }
+
+        @Override
+        public int getTargetWidth() {
+            return TARGET_WIDTH;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return TARGET_HEIGHT;
+        }
+
+        @Override
+        public boolean isMappingInterpolated() {
+            return isMappingInterpolated;
+        }
+
+        @Override
+        public void map(final double sourceX,
+                        final double sourceY,
+                        final int targetX,
+                        final int targetY) {
+            final int index = (targetY * TARGET_WIDTH) + targetX;
+            this.sourceX[index] = sourceX;
+            this.sourceY[index] = sourceY;
+        }
+
+        @Override
+        public void mapInterpolated(final double sourceX,
+                                    final double sourceY,
+                                    final int targetX,
+                                    final int targetY) {
+            map(sourceX, sourceY, targetX, targetY);
+        }
+    }
+
+    private static class CountingPixelMapper implements PixelMapper {
+
+        private final int[] counts = new int[TARGET_WIDTH * TARGET_HEIGHT];
+
+        @Override
+        public int getTargetWidth() {
+            return TARGET_WIDTH;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return TARGET_HEIGHT;
+        }
+
+        @Override
+        public boolean isMappingInterpolated() {
+            return false;
+        }
+
+        @Override
+        public void map(final double sourceX,
+                        final double sourceY,
+                        final int targetX,
+                        final int targetY) {
+            // each target pixel is owned by exactly one row band, so no synchronization is needed
+            counts[(targetY * TARGET_WIDTH) + targetX]++;
+        }
+
+        @Override
+        public void mapInterpolated(final double sourceX,
+                                    final double sourceY,
+                                    final int targetX,
+                                    final int targetY) {
+            map(sourceX, sourceY, targetX, targetY);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.janelia.alignment.mapper;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.util.Random;
+
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SingleChannelFloatWithAlphaMapper} class.
+ *
+ * @author Eric Trautman
+ */
+public class SingleChannelFloatWithAlphaMapperTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    public void testMappingMatchesGenericAlphaMapper() {
+
+        for (final boolean isMappingInterpolated : new boolean[] { false, true }) {
+
+            final ImageProcessorWithMasks source = buildChannel(1);
+
+            final ImageProcessorWithMasks expectedTarget = buildChannel(2);
+            final ImageProcessorWithMasks actualTarget = buildChannel(2);
+
+            Assert.assertTrue("float channels with byte masks should be supported",
+                              SingleChannelFloatWithAlphaMapper.isSupported(source, actualTarget));
+
+            final PixelMapper expectedMapper =
+                    new SingleChannelWithAlphaMapper(source, expectedTarget, isMappingInterpolated);
+            final PixelMapper actualMapper =
+                    new SingleChannelFloatWithAlphaMapper(source, actualTarget, isMappingInterpolated);
+
+            final Random random = new Random(3);
+            for (int targetY = 0; targetY < SIZE; targetY++) {
+                for (int targetX = 0; targetX < SIZE; targetX++) {
+                    final double sourceX = random.nextDouble() * (SIZE - 1);
+                    final double sourceY = random.nextDouble() * (SIZE - 1);
+                    if (isMappingInterpolated) {
+                        expectedMapper.mapInterpolated(sourceX, sourceY, targetX, targetY);
+                        actualMapper.mapInterpolated(sourceX, sourceY, targetX, targetY);
+                    } else {
+                        expectedMapper.map(sourceX, sourceY, targetX, targetY);
+                        actualMapper.map(sourceX, sourceY, targetX, targetY);
+                    }
+                }
+            }
+
+            final String context = "isMappingInterpolated " + isMappingInterpolated + ": ";
+            Assert.assertArrayEquals(context + "intensities differ",
+                                     (float[]) expectedTarget.ip.getPixels(),
+                                     (float[]) actualTarget.ip.getPixels(),
+                                     0.0f);
+            Assert.assertArrayEquals(context + "mask values differ",
+                                     (byte[]) expectedTarget.mask.getPixels(),
+                                     (byte[]) actualTarget.mask.getPixels());
+        }
+    }
+
+    private static ImageProcessorWithMasks buildChannel(final long seed) {
+        final Random random = new Random(seed);
+        final FloatProcessor ip = new FloatProcessor(SIZE, SIZE);
+        final ByteProcessor mask = new ByteProcessor(SIZE, SIZE);
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            // leave some pixels empty to exercise the zero target intensity blending case
+            ip.setf(i, (i % 7 == 0) ? 0.0f : random.nextFloat() * 255.0f);
+            mask.set(i, random.nextInt(256));
+        }
+        return new ImageProcessorWithMasks(ip, mask, null);
+    }
+
+}
@@ -84,5 +84,62 @@ public class CanvasFeatureListTest {
                             featureList.size(), storedCanvasFeatureList.getFeatureList().size());
     }
 
+    @Test
+    public void testBinaryWriteRead() throws Exception {
+
+        final List<Feature> featureList = new ArrayList<>();
+        featureList.add(new Feature(0.1, 0.2, new double[] {0.3, 0.4}, new float[] {0.5f, 0.6f, 0.7f}));
+        featureList.add(new Feature(1.1, 1.2, new double[] {1.3, 1.4}, new float[] {1.5f, 1.6f, 1.7f}));
+
+        final CanvasId canvasId = new CanvasId("testGroup", "testId", MontageRelativePosition.LEFT);
+        canvasId.setClipOffsets(1000, 800, 200, null);
+
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId,
+                                                                          "http://foo.com/render-parameters",
+                                                                          0.4,
+                                                                          200,
+                                                                          null,
+                                                                          featureList);
+
+        CanvasFeatureList.writeToStorage(rootFeatureListDirectory,
+                                         canvasFeatureList,
+                                         CanvasFeatureList.StorageFormat.BINARY);
+
+        // JSON is preferred but only binary data exists, so binary data should be loaded
+        final CanvasFeatureList storedCanvasFeatureList =
+                CanvasFeatureList.readFromStorage(rootFeatureListDirectory, canvasId);
+
+        Assert.assertEquals("invalid stored canvasId",
+                            canvasId, storedCanvasFeatureList.getCanvasId());
+        Assert.assertArrayEquals("invalid stored clip offsets",
+                                 canvasId.getClipOffsets(), storedCanvasFeatureList.getCanvasId().getClipOffsets(),
+                                 0.0);
+        Assert.assertEquals("invalid stored render parameters URL",
+                            canvasFeatureList.getRenderParametersUrl(),
+                            storedCanvasFeatureList.getRenderParametersUrl());
+        Assert.assertEquals("invalid stored render scale",
+                            canvasFeatureList.getRenderScale(), storedCanvasFeatureList.getRenderScale(), 0.0);
+        Assert.assertEquals("invalid stored clip width",
+                            canvasFeatureList.getClipWidth(), storedCanvasFeatureList.getClipWidth());
+        Assert.assertNull("invalid stored clip height",
+                          storedCanvasFeatureList.getClipHeight());
+
+        final List<Feature> storedFeatureList = storedCanvasFeatureList.getFeatureList();
+        Assert.assertEquals("invalid number of stored features",
+                            featureList.size(), storedFeatureList.size());
+
+        for (int i = 0; i < featureList.size(); i++) {
+            final Feature feature = featureList.get(i);
+            final Feature storedFeature = storedFeatureList.get(i);
+            Assert.assertEquals("invalid scale for feature " + i, feature.scale, storedFeature.scale, 0.0);
+            Assert.assertEquals("invalid orientation for feature " + i,
+                                feature.orientation, storedFeature.orientation, 0.0);
+            Assert.assertArrayEquals("invalid location for feature " + i,
+                                     feature.location, storedFeature.location, 0.0);
+            Assert.assertArrayEquals("invalid descriptor for feature " + i,
+                                     feature.descriptor, storedFeature.descriptor, 0.0f);
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureListTest.class);
 }
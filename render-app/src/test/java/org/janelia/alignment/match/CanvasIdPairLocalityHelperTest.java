@@ -0,0 +1,90 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasIdPairLocalityHelper} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairLocalityHelperTest {
+
+    @Test
+    public void testOrderForLocality() throws Exception {
+
+        final List<OrderedCanvasIdPair> sortedPairs = new ArrayList<>(buildPairs(6, 20));
+        final List<OrderedCanvasIdPair> orderedPairs = CanvasIdPairLocalityHelper.orderForLocality(sortedPairs);
+
+        Assert.assertEquals("invalid number of ordered pairs", sortedPairs.size(), orderedPairs.size());
+        Assert.assertEquals("ordered pairs differ from original pairs",
+                            new HashSet<>(sortedPairs), new HashSet<>(orderedPairs));
+
+        final int numberOfSlices = 40;
+        final double sortedSlicesPerCanvas =
+                CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(sortedPairs, numberOfSlices);
+        final double orderedSlicesPerCanvas =
+                CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(orderedPairs, numberOfSlices);
+
+        Assert.assertTrue("ordered pairs (" + orderedSlicesPerCanvas +
+                          " slices per canvas) should be more local than sorted pairs (" +
+                          sortedSlicesPerCanvas + " slices per canvas)",
+                          orderedSlicesPerCanvas < sortedSlicesPerCanvas);
+    }
+
+    @Test
+    public void testGetAverageSlicesPerCanvas() throws Exception {
+
+        final CanvasId a = new CanvasId("1.0", "a");
+        final CanvasId b = new CanvasId("1.0", "b");
+        final CanvasId c = new CanvasId("1.0", "c");
+
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        pairs.add(new OrderedCanvasIdPair(a, b));
+        pairs.add(new OrderedCanvasIdPair(b, c));
+
+        Assert.assertEquals("invalid value for one slice",
+                            1.0, CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(pairs, 1), 0.0001);
+
+        // b is needed by both slices
+        Assert.assertEquals("invalid value for two slices",
+                            4.0 / 3.0, CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(pairs, 2), 0.0001);
+    }
+
+    private TreeSet<OrderedCanvasIdPair> buildPairs(final int layerCount,
+                                                    final int tilesPerSide) {
+
+        final TreeSet<OrderedCanvasIdPair> pairs = new TreeSet<>();
+
+        for (int z = 1; z <= layerCount; z++) {
+            for (int row = 0; row < tilesPerSide; row++) {
+                for (int column = 0; column < tilesPerSide; column++) {
+                    final CanvasId canvasId = getCanvasId(z, row, column);
+                    if (column + 1 < tilesPerSide) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, getCanvasId(z, row, column + 1)));
+                    }
+                    if (row + 1 < tilesPerSide) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, getCanvasId(z, row + 1, column)));
+                    }
+                    if (z < layerCount) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, getCanvasId(z + 1, row, column)));
+                    }
+                }
+            }
+        }
+
+        return pairs;
+    }
+
+    private CanvasId getCanvasId(final int z,
+                                 final int row,
+                                 final int column) {
+        return new CanvasId(z + ".0", String.format("%d.%03d.%03d", z, row, column));
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.janelia.alignment.match;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasMatchesBinaryFormat} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesBinaryFormatTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        final CanvasMatches withDetails = new CanvasMatches("1.0", "tile-a", "2.0", "tile-b",
+                                                            new Matches(new double[][] {{1.1, 2.2, 3.3}, {4.4, 5.5, 6.6}},
+                                                                        new double[][] {{7.7, 8.8, 9.9}, {0.1, 0.2, 0.3}},
+                                                                        new double[] {1.0, 0.5, 0.25}));
+
+        final CanvasMatches withConsensusSet = new CanvasMatches("1.0", "tile-c", "1.0", "tile-d",
+                                                                 new Matches(new double[][] {{1.0}, {2.0}},
+                                                                             new double[][] {{3.0}, {4.0}},
+                                                                             new double[] {1.0}));
+        withConsensusSet.setConsensusSetIndex(1);
+
+        // mimics matches retrieved with excludeMatchDetails
+        final CanvasMatches withoutDetails =
+                CanvasMatches.fromJson("{\"pGroupId\": \"1.0\", \"pId\": \"tile-ü\", " +
+                                       "\"qGroupId\": \"3.0\", \"qId\": \"tile-f\", \"matchCount\": 12}");
+
+        final List<CanvasMatches> list = Arrays.asList(withDetails, withConsensusSet, withoutDetails);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CanvasMatchesBinaryFormat.writeAll(list, outputStream);
+
+        final List<CanvasMatches> parsedList =
+                CanvasMatchesBinaryFormat.readAll(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        Assert.assertEquals("invalid number of matches parsed", list.size(), parsedList.size());
+
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertEquals("matches " + i + " differ after round trip",
+                                list.get(i).toJson(), parsedList.get(i).toJson());
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CanvasMatchesBinaryFormat.writeAll(new ArrayList<>(), outputStream);
+
+        final List<CanvasMatches> parsedList =
+                CanvasMatchesBinaryFormat.readAll(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        Assert.assertEquals("empty stream should produce empty list", 0, parsedList.size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedStream() throws Exception {
+
+        final CanvasMatches canvasMatches = new CanvasMatches("1.0", "tile-a", "2.0", "tile-b",
+                                                              new Matches(new double[][] {{1.0}, {2.0}},
+                                                                          new double[][] {{3.0}, {4.0}},
+                                                                          new double[] {1.0}));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CanvasMatchesBinaryFormat.writeAll(Arrays.asList(canvasMatches, canvasMatches), outputStream);
+
+        final byte[] bytes = outputStream.toByteArray();
+        CanvasMatchesBinaryFormat.readAll(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 20)));
+    }
+
+}
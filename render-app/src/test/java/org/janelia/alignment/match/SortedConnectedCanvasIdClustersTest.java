@@ -0,0 +1,69 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SortedConnectedCanvasIdClusters} class.
+ *
+ * @author Eric Trautman
+ */
+public class SortedConnectedCanvasIdClustersTest {
+
+    @Test
+    public void testClusters() {
+
+        final List<CanvasMatches> matchesList = new ArrayList<>();
+        matchesList.add(buildMatches("1.0", "tileA", "1.0", "tileB"));
+        matchesList.add(buildMatches("1.0", "tileB", "1.0", "tileC"));
+        matchesList.add(buildMatches("1.0", "tileD", "1.0", "tileE"));
+        matchesList.add(buildMatches("1.0", "tileC", "1.0", "tileA"));
+        matchesList.add(buildMatches("1.0", "tileF", "1.0", "tileG"));
+        matchesList.add(buildMatches("1.0", "tileG", "1.0", "tileE"));
+        matchesList.add(buildMatches("1.0", "tileH", "1.0", "tileI"));
+
+        final SortedConnectedCanvasIdClusters clusters = new SortedConnectedCanvasIdClusters(matchesList);
+
+        Assert.assertEquals("invalid cluster sizes", Arrays.asList(4, 3, 2), clusters.getClusterSizes());
+
+        final List<Set<String>> tileIdSets = clusters.getSortedConnectedTileIdSets();
+        Assert.assertTrue("tileD missing from largest cluster", tileIdSets.get(0).contains("tileD"));
+        Assert.assertTrue("tileC missing from second cluster", tileIdSets.get(1).contains("tileC"));
+        Assert.assertTrue("tileI missing from smallest cluster", tileIdSets.get(2).contains("tileI"));
+    }
+
+    @Test
+    public void testLongChain() {
+
+        // a chain this long overflowed the stack when clusters were found recursively
+        final int tileCount = 200_000;
+
+        final CanvasIdUnionFind unionFind = new CanvasIdUnionFind();
+        for (int i = 1; i < tileCount; i++) {
+            unionFind.addConnection("1.0", "tile" + (i - 1), "1.0", "tile" + i);
+        }
+        unionFind.addConnection("1.0", "isolatedP", "1.0", "isolatedQ");
+
+        Assert.assertEquals("invalid canvas count", tileCount + 2, unionFind.getCanvasCount());
+
+        final SortedConnectedCanvasIdClusters clusters = new SortedConnectedCanvasIdClusters(unionFind);
+
+        Assert.assertEquals("invalid cluster sizes", Arrays.asList(tileCount, 2), clusters.getClusterSizes());
+    }
+
+    private static CanvasMatches buildMatches(final String pGroupId,
+                                              final String pId,
+                                              final String qGroupId,
+                                              final String qId) {
+        return new CanvasMatches(pGroupId, pId, qGroupId, qId,
+                                 new Matches(new double[][]{{1}, {2}},
+                                             new double[][]{{3}, {4}},
+                                             new double[]{1}));
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.janelia.alignment.mipmap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoxMipmapPyramid} class.
+ *
+ * @author Eric Trautman
+ */
+public class BoxMipmapPyramidTest {
+
+    private File testDirectory;
+    private final int z = 7;
+    private final int boxWidth = 64;
+    private final int boxHeight = 64;
+    private final int lastRow = 4;
+    private final int lastColumn = 6;
+    private final int maxLevel = 3;
+
+    @Before
+    public void setup() throws Exception {
+        final SimpleDateFormat TIMESTAMP = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+        final String timestamp = TIMESTAMP.format(new Date());
+        testDirectory = new File("test-pyramid-" + timestamp).getCanonicalFile();
+        if (! testDirectory.mkdirs()) {
+            throw new IllegalStateException("failed to create " + testDirectory.getAbsolutePath());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(testDirectory);
+    }
+
+    @Test
+    public void testPyramidMatchesIterativeGeneration() throws Exception {
+
+        final File iterativeDirectory = new File(testDirectory, "iterative");
+        final File streamedDirectory = new File(testDirectory, "streamed");
+
+        BoxMipmapGenerator boxMipmapGenerator = new BoxMipmapGenerator(z, false, Utils.PNG_FORMAT,
+                                                                       boxWidth, boxHeight, iterativeDirectory,
+                                                                       0, 0, lastRow, 0, lastColumn,
+                                                                       false);
+
+        final BoxMipmapPyramid pyramid = new BoxMipmapPyramid(z, false, Utils.PNG_FORMAT,
+                                                              boxWidth, boxHeight, streamedDirectory,
+                                                              maxLevel, 0, lastRow, 0, lastColumn,
+                                                              false);
+
+        int boxCount = 0;
+        for (int row = 0; row <= lastRow; row++) {
+            for (int column = 0; column <= lastColumn; column++) {
+                if (isEmpty(row, column)) {
+                    continue;
+                }
+                final BufferedImage image = buildBoxImage(row, column);
+                final File file = BoxMipmapGenerator.getImageFile(Utils.PNG_FORMAT, iterativeDirectory,
+                                                                  0, z, row, column);
+                BoxMipmapGenerator.saveImage(image, file, false, Utils.PNG_FORMAT);
+                boxMipmapGenerator.addSource(row, column, file);
+                pyramid.addLevelZeroBox(row, column, image);
+                boxCount++;
+            }
+            pyramid.completeLevelZeroRow(row);
+        }
+
+        for (int level = 1; level <= maxLevel; level++) {
+
+            boxMipmapGenerator = boxMipmapGenerator.generateNextLevel();
+
+            final BoxMipmapGenerator streamedGenerator = pyramid.getLevelGenerator(level);
+            Assert.assertEquals("invalid source level for streamed generator",
+                                level, streamedGenerator.getSourceLevel());
+
+            final int levelLastRow = lastRow >> level;
+            final int levelLastColumn = lastColumn >> level;
+
+            for (int row = 0; row <= levelLastRow; row++) {
+                for (int column = 0; column <= levelLastColumn; column++) {
+
+                    final File iterativeFile = BoxMipmapGenerator.getImageFile(Utils.PNG_FORMAT, iterativeDirectory,
+                                                                               level, z, row, column);
+                    final File streamedFile = BoxMipmapGenerator.getImageFile(Utils.PNG_FORMAT, streamedDirectory,
+                                                                              level, z, row, column);
+
+                    Assert.assertEquals("existence differs for level " + level + " row " + row + " column " + column,
+                                        iterativeFile.exists(), streamedFile.exists());
+
+                    if (iterativeFile.exists()) {
+                        assertSamePixels(iterativeFile, streamedFile);
+                    }
+                }
+            }
+        }
+
+        Assert.assertTrue("too many boxes buffered (" + pyramid.getMaxBufferedBoxCount() + ")",
+                          pyramid.getMaxBufferedBoxCount() < boxCount);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testIncompleteRows() throws Exception {
+
+        final BoxMipmapPyramid pyramid = new BoxMipmapPyramid(z, false, Utils.PNG_FORMAT,
+                                                              boxWidth, boxHeight, testDirectory,
+                                                              1, 0, lastRow, 0, lastColumn,
+                                                              false);
+
+        pyramid.addLevelZeroBox(0, 0, buildBoxImage(0, 0));
+        pyramid.getLevelGenerator(1);
+    }
+
+    private boolean isEmpty(final int row,
+                            final int column) {
+        return (row == 1) && (column == 3);
+    }
+
+    private BufferedImage buildBoxImage(final int row,
+                                        final int column) {
+        final BufferedImage image = new BufferedImage(boxWidth, boxHeight, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(row * 40, column * 30, 200));
+        graphics.fillRect(0, 0, boxWidth, boxHeight);
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(row * 5, column * 5, 10, 10);
+        graphics.dispose();
+        return image;
+    }
+
+    private void assertSamePixels(final File expectedFile,
+                                  final File actualFile) {
+        final BufferedImage expected = Utils.openImage(expectedFile.getAbsolutePath());
+        final BufferedImage actual = Utils.openImage(actualFile.getAbsolutePath());
+        Assert.assertEquals("width differs for " + actualFile, expected.getWidth(), actual.getWidth());
+        Assert.assertEquals("height differs for " + actualFile, expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                Assert.assertEquals("pixel (" + x + "," + y + ") differs for " + actualFile,
+                                    expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+}
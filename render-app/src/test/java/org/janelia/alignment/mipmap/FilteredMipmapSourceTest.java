@@ -0,0 +1,120 @@
+package org.janelia.alignment.mipmap;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.janelia.alignment.ChannelMap;
+import org.janelia.alignment.filter.Filter;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FilteredMipmapSource} class.
+ *
+ * @author Eric Trautman
+ */
+public class FilteredMipmapSourceTest {
+
+    @Test
+    public void testCachedFiltering() throws Exception {
+
+        final ImageProcessorCache cache = new ImageProcessorCache(1_000_000, true, false);
+        final CountingFilter filter = new CountingFilter();
+        final List<Filter> filterList = Collections.singletonList(filter);
+
+        final FilteredMipmapSource filteredSource =
+                new FilteredMipmapSource("test", new ConstantMipmapSource(), filterList, cache, "source-a");
+
+        for (int i = 0; i < 3; i++) {
+            final ChannelMap channels = filteredSource.getChannels(0);
+            Assert.assertEquals("invalid filtered pixel value for request " + i,
+                                11, channels.getFirstChannel().ip.get(0));
+        }
+
+        Assert.assertEquals("filter should only be applied once", 1, filter.processCount);
+        Assert.assertEquals("invalid filtered hit count", 2, cache.getFilteredStats().hitCount());
+        Assert.assertEquals("invalid filtered miss count", 1, cache.getFilteredStats().missCount());
+
+        filteredSource.getChannels(1);
+
+        Assert.assertEquals("filter should be applied for different level", 2, filter.processCount);
+
+        final FilteredMipmapSource uncachedSource =
+                new FilteredMipmapSource("test", new ConstantMipmapSource(), filterList);
+        uncachedSource.getChannels(0);
+        uncachedSource.getChannels(0);
+
+        Assert.assertEquals("filter should be applied for every uncached request", 4, filter.processCount);
+    }
+
+    @Test
+    public void testCanonicalFilterKey() throws Exception {
+
+        final String key = FilteredMipmapSource.getCanonicalFilterKey(Collections.singletonList(new CountingFilter()));
+
+        Assert.assertEquals("invalid key",
+                            CountingFilter.class.getName() + "{a=1, b=2};", key);
+    }
+
+    private static class ConstantMipmapSource
+            implements MipmapSource {
+
+        @Override
+        public String getSourceName() {
+            return "constant";
+        }
+
+        @Override
+        public int getFullScaleWidth() {
+            return 10;
+        }
+
+        @Override
+        public int getFullScaleHeight() {
+            return 10;
+        }
+
+        @Override
+        public ChannelMap getChannels(final int mipmapLevel) throws IllegalArgumentException {
+            final ByteProcessor ip = new ByteProcessor(10, 10);
+            ip.set(1);
+            return new ChannelMap("default", new ImageProcessorWithMasks(ip, null, null));
+        }
+    }
+
+    private static class CountingFilter
+            implements Filter {
+
+        private int processCount = 0;
+
+        @Override
+        public void init(final Map<String, String> params) {
+        }
+
+        @Override
+        public Map<String, String> toParametersMap() {
+            // insertion order intentionally differs from canonical (sorted) order
+            final Map<String, String> map = new HashMap<>();
+            map.put("b", "2");
+            map.put("a", "1");
+            return map;
+        }
+
+        @Override
+        public ImageProcessor process(final ImageProcessor ip,
+                                      final double scale) {
+            processCount++;
+            ip.add(10);
+            return ip;
+        }
+    }
+
+}
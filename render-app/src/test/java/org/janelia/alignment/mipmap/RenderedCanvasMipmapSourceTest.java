@@ -0,0 +1,113 @@
+package org.janelia.alignment.mipmap;
+
+import ij.process.FloatProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.models.TranslationModel2D;
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.janelia.alignment.ChannelMap;
+import org.janelia.alignment.TransformableCanvas;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderedCanvasMipmapSource} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderedCanvasMipmapSourceTest {
+
+    private static final String CHANNEL_NAME = "test";
+    private static final int TILE_SIZE = 100;
+
+    @Test
+    public void testParallelRenderMatchesSerialRender() {
+
+        for (final boolean hasMasks : new boolean[] { false, true }) {
+
+            final float[] serialPixels = renderOverlappingTiles(1, hasMasks);
+            final float[] parallelPixels = renderOverlappingTiles(4, hasMasks);
+
+            Assert.assertArrayEquals("parallel pixels differ from serial pixels for hasMasks " + hasMasks,
+                                     serialPixels, parallelPixels, 0.0f);
+        }
+
+    }
+
+    private float[] renderOverlappingTiles(final int numberOfThreads,
+                                           final boolean hasMasks) {
+
+        final List<TransformableCanvas> canvasList = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            final TranslationModel2D translation = new TranslationModel2D();
+            translation.set(i * 17.0, i * 11.0);
+            final CoordinateTransformList<CoordinateTransform> transformList = new CoordinateTransformList<>();
+            transformList.add(translation);
+            canvasList.add(new TransformableCanvas(new ConstantTileSource(i + 1), transformList));
+        }
+
+        final Set<String> channelNames = Collections.singleton(CHANNEL_NAME);
+        final RenderedCanvasMipmapSource canvas = new RenderedCanvasMipmapSource("canvas",
+                                                                                 channelNames,
+                                                                                 canvasList,
+                                                                                 0,
+                                                                                 0,
+                                                                                 300,
+                                                                                 250,
+                                                                                 64,
+                                                                                 1.0,
+                                                                                 numberOfThreads,
+                                                                                 true,
+                                                                                 hasMasks,
+                                                                                 false);
+
+        final ChannelMap channels = canvas.getChannels(0);
+        final ImageProcessorWithMasks channel = channels.get(CHANNEL_NAME);
+
+        return (float[]) channel.ip.getPixels();
+    }
+
+    /**
+     * Source with a distinct constant intensity so that compositing order is visible in overlapping areas.
+     */
+    private static class ConstantTileSource implements MipmapSource {
+
+        private final float intensity;
+
+        ConstantTileSource(final float intensity) {
+            this.intensity = intensity;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "tile " + intensity;
+        }
+
+        @Override
+        public int getFullScaleWidth() {
+            return TILE_SIZE;
+        }
+
+        @Override
+        public int getFullScaleHeight() {
+            return TILE_SIZE;
+        }
+
+        @Override
+        public ChannelMap getChannels(final int mipmapLevel)
+                throws IllegalArgumentException {
+            final FloatProcessor ip = new FloatProcessor(TILE_SIZE, TILE_SIZE);
+            ip.setValue(intensity);
+            ip.fill();
+            return new ChannelMap(CHANNEL_NAME, new ImageProcessorWithMasks(ip, null, null));
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package org.janelia.alignment.solver;
+
+import java.util.Map;
+
+import mpicbg.models.AffineModel2D;
+
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.match.ModelType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SparseAffineSolver} class.
+ *
+ * @author Eric Trautman
+ */
+public class SparseAffineSolverTest {
+
+    private static final int ROWS = 3;
+    private static final int COLUMNS = 4;
+    private static final double TILE_CENTER = 500.0;
+
+    @Test
+    public void testAffineSolveWithFixedTile() throws Exception {
+
+        final AffineModel2D[] expectedModels = buildExpectedModels(true);
+
+        final SparseAffineSolver solver = new SparseAffineSolver(ModelType.AFFINE, 0.0, 0.0);
+        for (int i = 0; i < expectedModels.length; i++) {
+            final AffineModel2D startingModel = i == 0 ? expectedModels[0] : new AffineModel2D();
+            solver.addTile(getTileId(i), startingModel, TILE_CENTER, TILE_CENTER, (i == 0));
+        }
+
+        addGridMatches(solver, expectedModels);
+
+        Assert.assertFalse("matches for unknown tiles should be ignored",
+                           solver.addMatches(buildMatches("missing", expectedModels[0],
+                                                          getTileId(0), expectedModels[0])));
+
+        final Map<String, AffineModel2D> solvedModels = solver.solve(1e-12, 1000, 3);
+
+        Assert.assertTrue("solver did not converge, relativeResidual is " + solver.getRelativeResidual(),
+                          solver.getRelativeResidual() <= 1e-12);
+
+        for (int i = 0; i < expectedModels.length; i++) {
+            assertSameModel(getTileId(i), expectedModels[i], solvedModels.get(getTileId(i)), 1e-6);
+        }
+    }
+
+    @Test
+    public void testTranslationSolveWithRegularization() throws Exception {
+
+        final AffineModel2D[] expectedModels = buildExpectedModels(false);
+
+        final SparseAffineSolver solver = new SparseAffineSolver(ModelType.TRANSLATION, 0.0, 1e-9);
+        for (int i = 0; i < expectedModels.length; i++) {
+            solver.addTile(getTileId(i), new AffineModel2D(), TILE_CENTER, TILE_CENTER, false);
+        }
+
+        addGridMatches(solver, expectedModels);
+
+        final Map<String, AffineModel2D> solvedModels = solver.solve(1e-12, 1000, 1);
+
+        // without a fixed tile, only relative positions are determined
+        final double[] origin = getTranslation(solvedModels.get(getTileId(0)));
+        for (int i = 0; i < expectedModels.length; i++) {
+            final double[] expected = getTranslation(expectedModels[i]);
+            final double[] actual = getTranslation(solvedModels.get(getTileId(i)));
+            Assert.assertEquals("invalid x translation for tile " + i, expected[0], actual[0] - origin[0], 1e-3);
+            Assert.assertEquals("invalid y translation for tile " + i, expected[1], actual[1] - origin[1], 1e-3);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnderConstrainedTile() throws Exception {
+        final SparseAffineSolver solver = new SparseAffineSolver(ModelType.AFFINE, 0.0, 0.0);
+        solver.addTile("a", new AffineModel2D(), TILE_CENTER, TILE_CENTER, true);
+        solver.addTile("b", new AffineModel2D(), TILE_CENTER, TILE_CENTER, false);
+        solver.solve(1e-6, 100, 1);
+    }
+
+    private static String getTileId(final int index) {
+        return "tile-" + index;
+    }
+
+    private static AffineModel2D[] buildExpectedModels(final boolean includeLinearChanges) {
+        final AffineModel2D[] models = new AffineModel2D[ROWS * COLUMNS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                final int i = (row * COLUMNS) + column;
+                final double skew = includeLinearChanges ? 0.01 * i : 0.0;
+                final double scale = includeLinearChanges ? 1.0 + (0.005 * i) : 1.0;
+                models[i] = new AffineModel2D();
+                models[i].set(scale, skew, -skew, scale, (column * 900.0) + (row * 7.0), (row * 900.0) - (column * 5.0));
+            }
+        }
+        return models;
+    }
+
+    private static void addGridMatches(final SparseAffineSolver solver,
+                                       final AffineModel2D[] models)
+            throws Exception {
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                final int i = (row * COLUMNS) + column;
+                if (column + 1 < COLUMNS) {
+                    Assert.assertTrue("failed to add matches",
+                                      solver.addMatches(buildMatches(getTileId(i), models[i],
+                                                                     getTileId(i + 1), models[i + 1])));
+                }
+                if (row + 1 < ROWS) {
+                    Assert.assertTrue("failed to add matches",
+                                      solver.addMatches(buildMatches(getTileId(i), models[i],
+                                                                     getTileId(i + COLUMNS), models[i + COLUMNS])));
+                }
+            }
+        }
+    }
+
+    private static CanvasMatches buildMatches(final String pId,
+                                              final AffineModel2D pModel,
+                                              final String qId,
+                                              final AffineModel2D qModel)
+            throws Exception {
+
+        final double[][] ps = new double[2][9];
+        final double[][] qs = new double[2][9];
+        final double[] ws = new double[9];
+
+        for (int i = 0; i < ws.length; i++) {
+            final double[] world = { 850.0 + (i % 3) * 25.0, 850.0 + (i / 3) * 25.0 };
+            final double[] p = pModel.applyInverse(world.clone());
+            final double[] q = qModel.applyInverse(world.clone());
+            ps[0][i] = p[0];
+            ps[1][i] = p[1];
+            qs[0][i] = q[0];
+            qs[1][i] = q[1];
+            ws[i] = 1.0;
+        }
+
+        return new CanvasMatches("1.0", pId, "1.0", qId, new Matches(ps, qs, ws));
+    }
+
+    private static double[] getTranslation(final AffineModel2D model) {
+        return model.apply(new double[] { 0.0, 0.0 });
+    }
+
+    private static void assertSameModel(final String context,
+                                        final AffineModel2D expected,
+                                        final AffineModel2D actual,
+                                        final double delta) {
+        final double[] expectedValues = new double[6];
+        final double[] actualValues = new double[6];
+        expected.toArray(expectedValues);
+        actual.toArray(actualValues);
+        Assert.assertArrayEquals("invalid model for " + context, expectedValues, actualValues, delta);
+    }
+
+}
@@ -2,6 +2,7 @@ package org.janelia.alignment.spec;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -55,6 +56,57 @@ public class TileBoundsRTreeTest {
 
     }
 
+    @Test
+    public void testFindTilesContainingPoint()
+            throws Exception {
+
+        final Set<String> expectedTileIds = new HashSet<>(Arrays.asList(getTileId(0, z),
+                                                                        getTileId(1, z),
+                                                                        getTileId(3, z),
+                                                                        getTileId(4, z)));
+
+        final List<TileBounds> tilesWithOverlapPoint = tree.findTilesContainingPoint(10.0, 10.0);
+        validateSearchResults("overlap point search", tilesWithOverlapPoint, expectedTileIds);
+
+        for (int i = 1; i < tilesWithOverlapPoint.size(); i++) {
+            Assert.assertTrue("results are not sorted by tileId: " + tilesWithOverlapPoint,
+                              tilesWithOverlapPoint.get(i - 1).getTileId().compareTo(
+                                      tilesWithOverlapPoint.get(i).getTileId()) < 0);
+        }
+
+        final List<TileBounds> tilesWithInteriorPoint = tree.findTilesContainingPoint(5.0, 5.0);
+        validateSearchResults("interior point search",
+                              tilesWithInteriorPoint,
+                              new HashSet<>(Collections.singletonList(getTileId(0, z))));
+
+        final List<TileBounds> tilesWithOutsidePoint = tree.findTilesContainingPoint(28.5, 5.0);
+        validateSearchResults("outside point search", tilesWithOutsidePoint, new HashSet<>());
+    }
+
+    @Test
+    public void testFindTilesIntersectingBox()
+            throws Exception {
+
+        final List<TileBounds> touchingTiles = tree.findTilesIntersectingBox(19.0, 0.0, 25.0, 5.0);
+        Assert.assertEquals("invalid touching box results",
+                            Arrays.asList(getTileId(1, z), getTileId(2, z)),
+                            getTileIds(touchingTiles));
+
+        final List<TileBounds> interiorTiles = tree.findTilesIntersectingBox(19.5, 0.0, 25.0, 5.0);
+        Assert.assertEquals("invalid interior box results",
+                            Collections.singletonList(getTileId(2, z)),
+                            getTileIds(interiorTiles));
+
+        final List<TileBounds> outsideTiles = tree.findTilesIntersectingBox(28.5, 0.0, 40.0, 5.0);
+        Assert.assertEquals("invalid outside box results", 0, outsideTiles.size());
+    }
+
+    private List<String> getTileIds(final List<TileBounds> tileBoundsList) {
+        final List<String> tileIds = new ArrayList<>(tileBoundsList.size());
+        tileBoundsList.forEach(tileBounds -> tileIds.add(tileBounds.getTileId()));
+        return tileIds;
+    }
+
     @Test
     public void testGetCircleNeighbors()
             throws Exception {
@@ -0,0 +1,60 @@
+package org.janelia.alignment.spec;
+
+import com.google.common.cache.CacheStats;
+
+import mpicbg.trakem2.transform.AffineModel2D;
+import mpicbg.trakem2.transform.CoordinateTransform;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TransformInstanceCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class TransformInstanceCacheTest {
+
+    @Test
+    public void testGetCopy() throws Exception {
+
+        final TransformInstanceCache cache = new TransformInstanceCache(1, 1000);
+        final String className = AffineModel2D.class.getName();
+        final String dataString = "1 0 0 1 10 20";
+
+        final CoordinateTransform first = cache.getCopy(className, dataString, () -> newAffine(dataString));
+        final CoordinateTransform second = cache.getCopy(className, dataString, () -> newAffine(dataString));
+
+        Assert.assertNotSame("copies should be distinct instances", first, second);
+        Assert.assertEquals("invalid data for first copy", dataString, first.toDataString());
+        Assert.assertEquals("invalid data for second copy", dataString, second.toDataString());
+
+        cache.getCopy(className, "1 0 0 1 30 40", () -> newAffine("1 0 0 1 30 40"));
+
+        final CacheStats stats = cache.getStats();
+        Assert.assertEquals("invalid number of entries", 2, cache.size());
+        Assert.assertEquals("invalid hit count", 1, stats.hitCount());
+        Assert.assertEquals("invalid miss count", 2, stats.missCount());
+    }
+
+    @Test
+    public void testIsCacheable() throws Exception {
+        final TransformInstanceCache cache = new TransformInstanceCache(10, 1000);
+        Assert.assertFalse("null data should not be cacheable", cache.isCacheable(null));
+        Assert.assertFalse("short data should not be cacheable", cache.isCacheable("1 0 0 1"));
+        Assert.assertTrue("long data should be cacheable", cache.isCacheable("1 0 0 1 10 20"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetCopyWithBadData() throws Exception {
+        final TransformInstanceCache cache = new TransformInstanceCache(1, 1000);
+        cache.getCopy(AffineModel2D.class.getName(), "bad", () -> newAffine("bad"));
+    }
+
+    private static CoordinateTransform newAffine(final String dataString) {
+        final AffineModel2D affine = new AffineModel2D();
+        affine.init(dataString);
+        return affine;
+    }
+
+}
@@ -17,7 +17,12 @@
 package org.janelia.alignment.transform;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.spec.LeafTransformSpec;
@@ -111,6 +116,62 @@ public class AffineWarpFieldTransformTest {
 
     }
 
+    @Test
+    public void testBulkAndConcurrentApply() throws Exception {
+
+        final AffineWarpFieldTransform transform = new AffineWarpFieldTransform();
+        transform.init("50000.0 60000.0 100.0 100.0 2 2 net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory none " +
+                       "1.0 1.1 0.9 1.0   0.0 0.1 0.0 0.05   0.0 0.0 0.2 0.0   1.0 0.95 1.0 1.05   11.0 3.0 7.0 0.0   22.0 0.0 5.0 9.0");
+
+        final int numberOfPoints = 500;
+        final double[] xs = new double[numberOfPoints];
+        final double[] ys = new double[numberOfPoints];
+        final double[][] expected = new double[numberOfPoints][];
+        for (int i = 0; i < numberOfPoints; i++) {
+            xs[i] = 49990.0 + (i % 25) * 5.0;
+            ys[i] = 59990.0 + (i / 25) * 6.0;
+            expected[i] = transform.apply(new double[] { xs[i], ys[i] });
+        }
+
+        transform.applyInPlace(xs, ys);
+
+        for (int i = 0; i < numberOfPoints; i++) {
+            Assert.assertEquals("invalid bulk x result for point " + i, expected[i][0], xs[i], 0.0);
+            Assert.assertEquals("invalid bulk y result for point " + i, expected[i][1], ys[i], 0.0);
+        }
+
+        final int numberOfThreads = 4;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < numberOfThreads; t++) {
+            final int threadOffset = t;
+            futures.add(executorService.submit(() -> {
+                int mismatchCount = 0;
+                for (int pass = 0; pass < 50; pass++) {
+                    for (int i = threadOffset; i < numberOfPoints; i += numberOfThreads) {
+                        final double[] location = {
+                                49990.0 + (i % 25) * 5.0,
+                                59990.0 + (i / 25) * 6.0
+                        };
+                        transform.applyInPlace(location);
+                        if ((location[0] != expected[i][0]) || (location[1] != expected[i][1])) {
+                            mismatchCount++;
+                        }
+                    }
+                }
+                return mismatchCount;
+            }));
+        }
+
+        int totalMismatchCount = 0;
+        for (final Future<Integer> future : futures) {
+            totalMismatchCount += future.get();
+        }
+        executorService.shutdown();
+
+        Assert.assertEquals("concurrent results differ from sequential results", 0, totalMismatchCount);
+    }
+
     public static void main(final String[] args)
             throws Exception {
 
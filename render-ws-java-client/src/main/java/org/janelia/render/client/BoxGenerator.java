@@ -7,18 +7,25 @@ import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.filter.FilterSpec;
 import org.janelia.alignment.mipmap.BoxMipmapGenerator;
+import org.janelia.alignment.mipmap.BoxMipmapPyramid;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
@@ -32,8 +39,12 @@ import org.slf4j.LoggerFactory;
 /**
  * Utility for rendering uniform (but arbitrarily sized) boxes (derived tiles) to disk for one or more layers.
  *
+ * The resolved tiles for each layer are retrieved once and indexed locally so that the
+ * render parameters for every box can be assembled without additional web service requests.
  * An {@link ArgbRenderer} instance is first used to produce the full scale (level 0) boxes.
  * {@link BoxMipmapGenerator} instances are then used to produce any requested down-sampled mipmaps.
+ * When streaming is requested, a {@link BoxMipmapPyramid} is instead used to down-sample
+ * boxes in memory as soon as they are rendered.
  *
  * All generated images have the same dimensions and pixel count and are stored within a
  * CATMAID LargeDataTileSource directory structure that looks like this:
@@ -60,6 +71,7 @@ public class BoxGenerator implements Serializable {
     private final File boxDirectory;
     private final File emptyImageFile;
     private final Bounds stackBounds;
+    private final StackMetaData stackMetaData;
 
     private transient RenderDataClient rdc;
 
@@ -127,7 +139,7 @@ public class BoxGenerator implements Serializable {
                     "renderGroup (1-n) must be specified when numberOfRenderGroups are specified");
         }
 
-        final StackMetaData stackMetaData = getRenderDataClient().getStackMetaData(this.stack);
+        this.stackMetaData = getRenderDataClient().getStackMetaData(this.stack);
         final StackStats stats = stackMetaData.getStats();
         if (stats == null) {
             throw new IllegalArgumentException("missing bounds for stack " + this.stack +
@@ -189,27 +201,30 @@ public class BoxGenerator implements Serializable {
             boxBounds.setRenderGroup(boxParameters.renderGroup, boxParameters.numberOfRenderGroups, boxParameters.maxLevel);
         }
 
-        final int tileCount;
-        final ImageProcessorCache imageProcessorCache;
-        if (boxParameters.label) {
+        // retrieve all tile specs for layer once so that box render parameters can be assembled locally
+        // (and so that label imageUrls can be consistently mapped to label colors, allowing label runs
+        //  to be resumed after failures)
 
-            // retrieve all tile specs for layer so that imageUrls can be consistently mapped to label colors
-            // (this allows label runs to be resumed after failures)
+        final ResolvedTileSpecCollection resolvedTiles = getRenderDataClient().getResolvedTiles(stack, z);
+        final int tileCount = resolvedTiles.getTileCount();
+
+        final List<FilterSpec> filterSpecs;
+        if (boxParameters.filterListName == null) {
+            filterSpecs = null;
+        } else {
+            filterSpecs = getRenderDataClient().getNamedFilterSpecLists().getFilterList(boxParameters.filterListName);
+        }
 
-            final ResolvedTileSpecCollection resolvedTiles = getRenderDataClient().getResolvedTiles(stack, z);
-            tileCount = resolvedTiles.getTileCount();
+        final LayerTiles layerTiles = new LayerTiles(z, resolvedTiles.getTileSpecs(), filterSpecs);
 
+        final ImageProcessorCache imageProcessorCache;
+        if (boxParameters.label) {
             imageProcessorCache = new LabelImageProcessorCache(ImageProcessorCache.DEFAULT_MAX_CACHED_PIXELS,
                                                                true,
                                                                false,
                                                                resolvedTiles.getTileSpecs());
-
         } else {
-
-            final List<TileBounds> tileBoundsList = getRenderDataClient().getTileBounds(stack, z);
-            tileCount = tileBoundsList.size();
             imageProcessorCache = new ImageProcessorCache();
-
         }
 
         LOG.info("generateBoxesForZ: {}, layerBounds={}, boxBounds={}, tileCount={}",
@@ -227,6 +242,24 @@ public class BoxGenerator implements Serializable {
                                                                        boxBounds.getFirstColumn(),
                                                                        boxBounds.getLastColumn(),
                                                                        boxParameters.forceGeneration);
+        final BoxMipmapPyramid boxMipmapPyramid;
+        if (boxParameters.streamMipmaps && (boxParameters.maxLevel > 0)) {
+            boxMipmapPyramid = new BoxMipmapPyramid(z.intValue(),
+                                                    boxParameters.label,
+                                                    format,
+                                                    boxWidth,
+                                                    boxHeight,
+                                                    boxDirectory,
+                                                    boxParameters.maxLevel,
+                                                    boxBounds.getFirstRow(),
+                                                    boxBounds.getLastRow(),
+                                                    boxBounds.getFirstColumn(),
+                                                    boxBounds.getLastColumn(),
+                                                    boxParameters.forceGeneration);
+        } else {
+            boxMipmapPyramid = null;
+        }
+
         final IGridPaths iGridPaths;
         if (boxParameters.createIGrid) {
             iGridPaths = new IGridPaths(boxBounds.getNumberOfRows(), boxBounds.getNumberOfColumns());
@@ -237,10 +270,17 @@ public class BoxGenerator implements Serializable {
         generateLevelZero(z,
                           boxBounds,
                           tileCount,
+                          layerTiles,
                           imageProcessorCache,
                           boxMipmapGenerator,
+                          boxMipmapPyramid,
                           iGridPaths);
 
+        if (boxMipmapPyramid != null) {
+            LOG.info("generateBoxesForZ: {}, streamed mipmaps with at most {} boxes buffered",
+                     z, boxMipmapPyramid.getMaxBufferedBoxCount());
+        }
+
         if (iGridPaths != null) {
             final Path iGridDirectory = Paths.get(boxDirectory.getAbsolutePath(), "0", "iGrid");
             iGridPaths.saveToFile(iGridDirectory.toFile(), z, emptyImageFile);
@@ -256,7 +296,11 @@ public class BoxGenerator implements Serializable {
         }
 
         for (int level = 0; level < boxParameters.maxLevel; level++) {
-            boxMipmapGenerator = boxMipmapGenerator.generateNextLevel();
+            if (boxMipmapPyramid == null) {
+                boxMipmapGenerator = boxMipmapGenerator.generateNextLevel();
+            } else {
+                boxMipmapGenerator = boxMipmapPyramid.getLevelGenerator(level + 1);
+            }
             if (boxParameters.isOverviewNeeded() && (! isOverviewGenerated)) {
                 isOverviewGenerated = boxMipmapGenerator.generateOverview(boxParameters.maxOverviewWidthAndHeight,
                                                                           stackBounds,
@@ -270,8 +314,10 @@ public class BoxGenerator implements Serializable {
     private void generateLevelZero(final Double z,
                                    final SectionBoxBounds boxBounds,
                                    final int tileCount,
+                                   final LayerTiles layerTiles,
                                    final ImageProcessorCache imageProcessorCache,
                                    final BoxMipmapGenerator boxMipmapGenerator,
+                                   final BoxMipmapPyramid boxMipmapPyramid,
                                    final IGridPaths iGridPaths)
             throws IOException {
 
@@ -279,6 +325,15 @@ public class BoxGenerator implements Serializable {
 
         AlreadyGeneratedState lastAlreadyGeneratedBox = null;
 
+        // Streamed boxes are down-sampled as soon as they are added, so the last box generated by a prior run
+        // needs to be identified up front and regenerated in place instead of after the level 0 loop.
+        final AlreadyGeneratedState boxToRegenerate;
+        if (boxMipmapPyramid == null) {
+            boxToRegenerate = null;
+        } else {
+            boxToRegenerate = findLastAlreadyGeneratedBox(boxBounds);
+        }
+
         RenderParameters renderParameters;
         File levelZeroFile;
         int row = boxBounds.getFirstRow();
@@ -298,11 +353,14 @@ public class BoxGenerator implements Serializable {
                                                                     row,
                                                                     column);
 
-                    if (boxParameters.forceGeneration || (!levelZeroFile.exists())) {
+                    if (boxParameters.forceGeneration || (!levelZeroFile.exists()) ||
+                        ((boxToRegenerate != null) && boxToRegenerate.isAt(row, column))) {
 
                         renderParameters = generateLevelZeroBox(x, y, z,
+                                                                layerTiles,
                                                                 imageProcessorCache,
                                                                 boxMipmapGenerator,
+                                                                boxMipmapPyramid,
                                                                 iGridPaths,
                                                                 levelZeroFile,
                                                                 row,
@@ -311,12 +369,18 @@ public class BoxGenerator implements Serializable {
 
                         LOG.info("{} already generated", levelZeroFile.getAbsolutePath());
 
-                        lastAlreadyGeneratedBox = new AlreadyGeneratedState(x, y, row, column);
-
                         renderParameters = null;
 
                         boxMipmapGenerator.addSource(row, column, levelZeroFile);
 
+                        if (boxMipmapPyramid == null) {
+                            lastAlreadyGeneratedBox = new AlreadyGeneratedState(x, y, row, column);
+                        } else {
+                            boxMipmapPyramid.addLevelZeroBox(row,
+                                                             column,
+                                                             Utils.openImage(levelZeroFile.getAbsolutePath()));
+                        }
+
                         if (iGridPaths != null) {
                             iGridPaths.addImage(levelZeroFile, row, column);
                         }
@@ -329,6 +393,10 @@ public class BoxGenerator implements Serializable {
                 column++;
             }
 
+            if (boxMipmapPyramid != null) {
+                boxMipmapPyramid.completeLevelZeroRow(row);
+            }
+
             LOG.info("generateLevelZero: z={}, completed row {} of {}, {}, {}",
                      z, row, boxBounds.getLastRow(), progress, imageProcessorCache.getStats());
 
@@ -339,12 +407,13 @@ public class BoxGenerator implements Serializable {
         // was only partially written.  Note that we only bother with this for level 0 data since
         // other (derivative) level data is not as critical.
         if (lastAlreadyGeneratedBox != null) {
-            regenerateLevelZeroBox(z, imageProcessorCache, boxMipmapGenerator, lastAlreadyGeneratedBox);
+            regenerateLevelZeroBox(z, layerTiles, imageProcessorCache, boxMipmapGenerator, lastAlreadyGeneratedBox);
         }
 
     }
 
     private void regenerateLevelZeroBox(final Double z,
+                                        final LayerTiles layerTiles,
                                         final ImageProcessorCache imageProcessorCache,
                                         final BoxMipmapGenerator boxMipmapGenerator,
                                         final AlreadyGeneratedState lastAlreadyGeneratedBox)
@@ -363,8 +432,10 @@ public class BoxGenerator implements Serializable {
         generateLevelZeroBox(lastAlreadyGeneratedBox.x,
                              lastAlreadyGeneratedBox.y,
                              z,
+                             layerTiles,
                              imageProcessorCache,
                              boxMipmapGenerator,
+                             null, // regenerated boxes are never streamed
                              null, // always exclude iGridPaths since path was already added during generateLevelZero loop
                              levelZeroFile,
                              lastAlreadyGeneratedBox.row,
@@ -374,21 +445,21 @@ public class BoxGenerator implements Serializable {
     private RenderParameters generateLevelZeroBox(final int x,
                                                   final int y,
                                                   final Double z,
+                                                  final LayerTiles layerTiles,
                                                   final ImageProcessorCache imageProcessorCache,
                                                   final BoxMipmapGenerator boxMipmapGenerator,
+                                                  final BoxMipmapPyramid boxMipmapPyramid,
                                                   final IGridPaths iGridPaths,
                                                   final File levelZeroFile,
                                                   final int row,
                                                   final int column)
             throws IOException {
 
-        final String boxParametersUrl =
-                getRenderDataClient().getRenderParametersUrlString(stack, x, y, z, boxWidth, boxHeight, 1.0,
-                                                                   boxParameters.filterListName);
+        final RenderParameters renderParameters = layerTiles.buildRenderParameters(x, y);
 
-        LOG.info("generateLevelZeroBox: loading {}", boxParametersUrl);
+        LOG.info("generateLevelZeroBox: assembled parameters with {} tiles for box at ({}, {}), z={}",
+                 renderParameters.numberOfTileSpecs(), x, y, z);
 
-        final RenderParameters renderParameters = RenderParameters.loadFromUrl(boxParametersUrl);
         renderParameters.setDoFilter(boxParameters.doFilter);
         renderParameters.setSkipInterpolation(boxParameters.skipInterpolation);
         renderParameters.setBinaryMask(boxParameters.binaryMask);
@@ -418,6 +489,10 @@ public class BoxGenerator implements Serializable {
 
             boxMipmapGenerator.addSource(row, column, levelZeroFile);
 
+            if (boxMipmapPyramid != null) {
+                boxMipmapPyramid.addLevelZeroBox(row, column, levelZeroImage);
+            }
+
             if (iGridPaths != null) {
                 iGridPaths.addImage(levelZeroFile, row, column);
             }
@@ -428,6 +503,83 @@ public class BoxGenerator implements Serializable {
         return renderParameters;
     }
 
+    /**
+     * @return location of the last box image generated by a prior run or null if no boxes have been generated.
+     */
+    private AlreadyGeneratedState findLastAlreadyGeneratedBox(final SectionBoxBounds boxBounds) {
+
+        AlreadyGeneratedState lastAlreadyGeneratedBox = null;
+
+        if (! boxParameters.forceGeneration) {
+            int row = boxBounds.getFirstRow();
+            int column;
+            for (int y = boxBounds.getFirstY(); y <= boxBounds.getLastY(); y += boxHeight) {
+                column = boxBounds.getFirstColumn();
+                for (int x = boxBounds.getFirstX(); x <= boxBounds.getLastX(); x += boxWidth) {
+                    if (boxBounds.isInRenderGroup(row, column) &&
+                        BoxMipmapGenerator.getImageFile(format, boxDirectory, 0, boxBounds.getZ(), row, column).exists()) {
+                        lastAlreadyGeneratedBox = new AlreadyGeneratedState(x, y, row, column);
+                    }
+                    column++;
+                }
+                row++;
+            }
+        }
+
+        return lastAlreadyGeneratedBox;
+    }
+
+    /**
+     * Locally indexed resolved tiles for a layer that can be used to assemble box render parameters
+     * the same way the web service does (tiles intersecting the box, ordered by tileId, with stack defaults).
+     */
+    private class LayerTiles {
+
+        private final Map<String, TileSpec> tileIdToSpecMap;
+        private final TileBoundsRTree tree;
+        private final List<FilterSpec> filterSpecs;
+
+        LayerTiles(final Double z,
+                   final Collection<TileSpec> tileSpecs,
+                   final List<FilterSpec> filterSpecs) {
+
+            this.tileIdToSpecMap = new HashMap<>(tileSpecs.size() * 2);
+            final List<TileBounds> tileBoundsList = new ArrayList<>(tileSpecs.size());
+            for (final TileSpec tileSpec : tileSpecs) {
+                // tiles without bounds are never returned by spatial service queries
+                if (tileSpec.getMinX() != null) {
+                    tileIdToSpecMap.put(tileSpec.getTileId(), tileSpec);
+                    tileBoundsList.add(tileSpec.toTileBounds());
+                }
+            }
+
+            this.tree = new TileBoundsRTree(z, tileBoundsList);
+            this.filterSpecs = filterSpecs;
+        }
+
+        RenderParameters buildRenderParameters(final int x,
+                                               final int y) {
+
+            final RenderParameters renderParameters = new RenderParameters(null, x, y, boxWidth, boxHeight, 1.0);
+
+            for (final TileBounds tileBounds : tree.findTilesIntersectingBox(x, y, x + boxWidth, y + boxHeight)) {
+                renderParameters.addTileSpec(tileIdToSpecMap.get(tileBounds.getTileId()));
+            }
+
+            renderParameters.setFilterSpecs(filterSpecs);
+            renderParameters.setMipmapPathBuilder(stackMetaData.getCurrentMipmapPathBuilder());
+
+            final String defaultChannel = stackMetaData.getCurrentDefaultChannel();
+            if (defaultChannel != null) {
+                renderParameters.setChannels(defaultChannel);
+            }
+
+            renderParameters.initializeDerivedValues();
+
+            return renderParameters;
+        }
+    }
+
     /**
      * Wrapper for capturing location of the last already generated box image.
      */
@@ -447,6 +599,11 @@ public class BoxGenerator implements Serializable {
             this.row = row;
             this.column = column;
         }
+
+        boolean isAt(final int row,
+                     final int column) {
+            return (this.row == row) && (this.column == column);
+        }
     }
 
     /**
@@ -0,0 +1,259 @@
+package org.janelia.render.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mpicbg.models.ErrorStatistic;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.Tile;
+import mpicbg.models.TileConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multi-threaded alternative to {@link TileConfiguration#optimize(double, int, int)}.
+ *
+ * Tiles are greedily colored so that no two connected tiles share a color.
+ * Each iteration then fits and applies the models for one color group at a time,
+ * concurrently processing all tiles within the group.  Since tiles in the same group never share
+ * point matches, each sweep is a race free block Gauss-Seidel update that converges like the
+ * sequential optimizer (just with a different tile order).  Termination criteria
+ * (max allowed error, max iterations, and error plateau detection) match the sequential optimizer.
+ *
+ * @author Eric Trautman
+ */
+public class ConcurrentTileOptimizer {
+
+    private final List<Tile<?>> tiles;
+    private final List<List<Tile<?>>> colorGroups;
+    private final int numberOfThreads;
+
+    private double error;
+    private double minError;
+    private double maxError;
+
+    /**
+     * @param  tiles            connected tiles to optimize (order determines coloring).
+     * @param  numberOfThreads  number of threads to use for each concurrent step.
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1.
+     */
+    public ConcurrentTileOptimizer(final Collection<? extends Tile<?>> tiles,
+                                   final int numberOfThreads)
+            throws IllegalArgumentException {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+
+        this.tiles = new ArrayList<>(tiles);
+        this.colorGroups = buildColorGroups(this.tiles);
+        this.numberOfThreads = numberOfThreads;
+        this.error = Double.MAX_VALUE;
+        this.minError = Double.MAX_VALUE;
+        this.maxError = 0.0;
+
+        LOG.info("ConcurrentTileOptimizer: split {} tiles into {} color groups",
+                 this.tiles.size(), this.colorGroups.size());
+    }
+
+    public int getNumberOfColorGroups() {
+        return colorGroups.size();
+    }
+
+    public double getError() {
+        return error;
+    }
+
+    public double getMinError() {
+        return minError;
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Optimizes the tile models until the error is small enough or stops improving.
+     *
+     * @param  maxAllowedError  error below which optimization stops.
+     * @param  maxIterations    maximum number of iterations.
+     * @param  maxPlateauWidth  number of iterations used to detect an error plateau.
+     *
+     * @throws NotEnoughDataPointsException
+     *   if a tile does not have enough matches to fit its model.
+     *
+     * @throws IllDefinedDataPointsException
+     *   if a tile's matches are ill defined.
+     *
+     * @throws InterruptedException
+     *   if optimization is interrupted.
+     */
+    public void optimize(final double maxAllowedError,
+                         final int maxIterations,
+                         final int maxPlateauWidth)
+            throws NotEnoughDataPointsException, IllDefinedDataPointsException, InterruptedException {
+
+        LOG.info("optimize: entry, optimizing {} tiles with {} threads", tiles.size(), numberOfThreads);
+
+        final long startTime = System.currentTimeMillis();
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+
+        try {
+
+            final ErrorStatistic observer = new ErrorStatistic(maxPlateauWidth + 1);
+
+            // initialize the configuration with the current model of each tile
+            runConcurrently(executorService, tiles, Tile::apply);
+
+            int i = 0;
+            boolean proceed = i < maxIterations;
+
+            while (proceed) {
+
+                for (final List<Tile<?>> colorGroup : colorGroups) {
+                    runConcurrently(executorService, colorGroup, tile -> {
+                        tile.fitModel();
+                        tile.apply();
+                    });
+                }
+
+                updateErrors(executorService);
+                observer.add(error);
+
+                if (i > maxPlateauWidth) {
+                    proceed = error > maxAllowedError;
+                    int d = maxPlateauWidth;
+                    while (! proceed && (d >= 1)) {
+                        try {
+                            proceed = Math.abs(observer.getWideSlope(d)) > 0.0001;
+                        } catch (final Exception e) {
+                            LOG.warn("optimize: ignoring failure to derive error slope", e);
+                        }
+                        d /= 2;
+                    }
+                }
+
+                proceed &= ++i < maxIterations;
+            }
+
+            LOG.info("optimize: exit, {} iterations took {}ms, error={}, minError={}, maxError={}",
+                     i, (System.currentTimeMillis() - startTime), error, minError, maxError);
+
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private void updateErrors(final ExecutorService executorService)
+            throws NotEnoughDataPointsException, IllDefinedDataPointsException, InterruptedException {
+
+        runConcurrently(executorService, tiles, Tile::updateCost);
+
+        double totalDistance = 0.0;
+        minError = Double.MAX_VALUE;
+        maxError = 0.0;
+        for (final Tile<?> tile : tiles) {
+            final double distance = tile.getDistance();
+            if (distance < minError) {
+                minError = distance;
+            }
+            if (distance > maxError) {
+                maxError = distance;
+            }
+            totalDistance += distance;
+        }
+
+        error = tiles.size() > 0 ? totalDistance / tiles.size() : 0.0;
+    }
+
+    private void runConcurrently(final ExecutorService executorService,
+                                 final List<Tile<?>> tileList,
+                                 final TileTask task)
+            throws NotEnoughDataPointsException, IllDefinedDataPointsException, InterruptedException {
+
+        final int batchSize = (tileList.size() + numberOfThreads - 1) / numberOfThreads;
+        final List<Future<Void>> futures = new ArrayList<>(numberOfThreads);
+
+        for (int fromIndex = 0; fromIndex < tileList.size(); fromIndex += batchSize) {
+            final List<Tile<?>> batch = tileList.subList(fromIndex, Math.min(fromIndex + batchSize, tileList.size()));
+            futures.add(executorService.submit(() -> {
+                for (final Tile<?> tile : batch) {
+                    task.run(tile);
+                }
+                return null;
+            }));
+        }
+
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof NotEnoughDataPointsException) {
+                    throw (NotEnoughDataPointsException) cause;
+                } else if (cause instanceof IllDefinedDataPointsException) {
+                    throw (IllDefinedDataPointsException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IllegalStateException("tile task failed", cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return tiles grouped so that no two tiles within a group are connected.
+     */
+    static List<List<Tile<?>>> buildColorGroups(final List<Tile<?>> tiles) {
+
+        final List<List<Tile<?>>> colorGroups = new ArrayList<>();
+        final Map<Tile<?>, Integer> tileToColor = new HashMap<>(tiles.size() * 2);
+        final Set<Integer> neighborColors = new HashSet<>();
+
+        for (final Tile<?> tile : tiles) {
+
+            neighborColors.clear();
+            for (final Tile<?> connectedTile : tile.getConnectedTiles()) {
+                final Integer connectedColor = tileToColor.get(connectedTile);
+                if (connectedColor != null) {
+                    neighborColors.add(connectedColor);
+                }
+            }
+
+            int color = 0;
+            while (neighborColors.contains(color)) {
+                color++;
+            }
+
+            tileToColor.put(tile, color);
+
+            if (color == colorGroups.size()) {
+                colorGroups.add(new ArrayList<>());
+            }
+            colorGroups.get(color).add(tile);
+        }
+
+        return colorGroups;
+    }
+
+    private interface TileTask {
+        void run(final Tile<?> tile)
+                throws NotEnoughDataPointsException, IllDefinedDataPointsException;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentTileOptimizer.class);
+}
@@ -56,10 +56,16 @@ public class FeatureClient
 
         @Parameter(
                 names = "--rootFeatureDirectory",
-                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz)",
+                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz or .features.bin)",
                 required = true)
         public String rootFeatureDirectory;
 
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for saved feature lists (BINARY files are smaller and faster to load)",
+                required = false)
+        public CanvasFeatureList.StorageFormat featureStorageFormat = CanvasFeatureList.StorageFormat.JSON;
+
         @Parameter(
                 names = "--pairJson",
                 description = "JSON file where tile pairs are stored (.json, .gz, or .zip)",
@@ -148,7 +154,8 @@ public class FeatureClient
                                         parameters.featureRender,
                                         parameters.featureRenderClip,
                                         parameters.featureExtraction,
-                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile());
+                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile(),
+                                        parameters.featureStorageFormat);
     }
 
     private static void generateFeatureListsForCanvases(final String renderParametersUrlTemplate,
@@ -156,7 +163,8 @@ public class FeatureClient
                                                         final FeatureRenderParameters featureRenderParameters,
                                                         final FeatureRenderClipParameters featureRenderClipParameters,
                                                         final FeatureExtractionParameters featureExtractionParameters,
-                                                        final File rootDirectory)
+                                                        final File rootDirectory,
+                                                        final CanvasFeatureList.StorageFormat storageFormat)
             throws IOException, URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
@@ -203,7 +211,7 @@ public class FeatureClient
                                           urlTemplateForRun.getClipHeight(),
                                           featureList);
 
-            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList);
+            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, storageFormat);
         }
 
 
@@ -11,6 +11,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -20,7 +21,9 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.filter.FilterFactory;
 import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.MatchCollectionMetaData;
@@ -40,8 +43,10 @@ import org.janelia.alignment.transform.ConsensusWarpFieldBuilder;
 import org.janelia.alignment.util.RenderWebServiceUrls;
 import org.janelia.alignment.util.ZFilter;
 import org.janelia.render.client.request.WaitingRetryHandler;
+import org.janelia.render.client.response.CanvasMatchesResponseHandler;
 import org.janelia.render.client.response.EmptyResponseHandler;
 import org.janelia.render.client.response.JsonResponseHandler;
+import org.janelia.render.client.response.ResolvedTilesResponseHandler;
 import org.janelia.render.client.response.ResourceCreatedResponseHandler;
 import org.janelia.render.client.response.TextResponseHandler;
 import org.slf4j.Logger;
@@ -70,9 +75,34 @@ public class RenderDataClient {
     public RenderDataClient(final String baseDataUrl,
                             final String owner,
                             final String project) {
+        this(baseDataUrl, owner, project, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * Creates a new client for the specified owner and project that can be shared by multiple threads.
+     *
+     * @param  baseDataUrl             the base URL string for all requests (e.g. 'http://tem-services:8080/render-ws/v1')
+     * @param  owner                   the owner name for all requests.
+     * @param  project                 the project name for all requests.
+     * @param  maxConnectionsPerRoute  maximum number of concurrent requests to the web service
+     *                                 (should be at least the number of threads using this client).
+     */
+    public RenderDataClient(final String baseDataUrl,
+                            final String owner,
+                            final String project,
+                            final int maxConnectionsPerRoute) {
         this.project = project;
         this.urls = new RenderWebServiceUrls(baseDataUrl, owner, project);
-        this.httpClient = HttpClientBuilder.create().setRetryHandler(new WaitingRetryHandler()).build();
+
+        final int maxPerRoute = Math.max(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, maxConnectionsPerRoute);
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(Math.max(DEFAULT_MAX_TOTAL_CONNECTIONS, maxPerRoute));
+
+        this.httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setRetryHandler(new WaitingRetryHandler())
+                .build();
     }
 
     public RenderWebServiceUrls getUrls() {
@@ -104,6 +134,26 @@ public class RenderDataClient {
         return httpClient.execute(httpGet, responseHandler);
     }
 
+    /**
+     * @return the named filter lists configured for the server.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public FilterFactory getNamedFilterSpecLists()
+            throws IOException {
+
+        final URI uri = getUri(urls.getNamedFilterSpecListsUrlString());
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final JsonUtils.Helper<FilterFactory> helper = new JsonUtils.Helper<>(FilterFactory.class);
+        final JsonResponseHandler<FilterFactory> responseHandler = new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getNamedFilterSpecLists: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
     /**
      * @param  stack  name of stack.
      *
@@ -946,10 +996,7 @@ public class RenderDataClient {
         final URI uri = getResolvedTilesUri(stack, z);
         final HttpGet httpGet = new HttpGet(uri);
         final String requestContext = "GET " + uri;
-        final JsonUtils.Helper<ResolvedTileSpecCollection> helper =
-                new JsonUtils.Helper<>(ResolvedTileSpecCollection.class);
-        final JsonResponseHandler<ResolvedTileSpecCollection> responseHandler =
-                new JsonResponseHandler<>(requestContext, helper);
+        final ResolvedTilesResponseHandler responseHandler = new ResolvedTilesResponseHandler(requestContext);
 
         LOG.info("getResolvedTiles: submitting {}", requestContext);
 
@@ -993,10 +1040,7 @@ public class RenderDataClient {
         final URI uri = getUri(uriBuilder);
         final HttpGet httpGet = new HttpGet(uri);
         final String requestContext = "GET " + uri;
-        final JsonUtils.Helper<ResolvedTileSpecCollection> helper =
-                new JsonUtils.Helper<>(ResolvedTileSpecCollection.class);
-        final JsonResponseHandler<ResolvedTileSpecCollection> responseHandler =
-                new JsonResponseHandler<>(requestContext, helper);
+        final ResolvedTilesResponseHandler responseHandler = new ResolvedTilesResponseHandler(requestContext);
 
         LOG.info("getResolvedTiles: submitting {}", requestContext);
 
@@ -1202,10 +1246,9 @@ public class RenderDataClient {
 
         final URI uri = getUri(urls.getMatchesWithPGroupIdUrlString(pGroupId));
         final HttpGet httpGet = new HttpGet(uri);
+        httpGet.setHeader(HttpHeaders.ACCEPT, CanvasMatchesResponseHandler.ACCEPT_HEADER_VALUE);
         final String requestContext = "GET " + uri;
-        final TypeReference<List<CanvasMatches>> typeReference = new TypeReference<List<CanvasMatches>>() {};
-        final JsonUtils.GenericHelper<List<CanvasMatches>> helper = new JsonUtils.GenericHelper<>(typeReference);
-        final JsonResponseHandler<List<CanvasMatches>> responseHandler = new JsonResponseHandler<>(requestContext, helper);
+        final CanvasMatchesResponseHandler responseHandler = new CanvasMatchesResponseHandler(requestContext);
 
         LOG.info("getMatchesWithPGroupId: submitting {}", requestContext);
 
@@ -1226,10 +1269,9 @@ public class RenderDataClient {
 
         final URI uri = getUri(urls.getMatchesOutsideGroupUrlString(groupId));
         final HttpGet httpGet = new HttpGet(uri);
+        httpGet.setHeader(HttpHeaders.ACCEPT, CanvasMatchesResponseHandler.ACCEPT_HEADER_VALUE);
         final String requestContext = "GET " + uri;
-        final TypeReference<List<CanvasMatches>> typeReference = new TypeReference<List<CanvasMatches>>() {};
-        final JsonUtils.GenericHelper<List<CanvasMatches>> helper = new JsonUtils.GenericHelper<>(typeReference);
-        final JsonResponseHandler<List<CanvasMatches>> responseHandler = new JsonResponseHandler<>(requestContext, helper);
+        final CanvasMatchesResponseHandler responseHandler = new CanvasMatchesResponseHandler(requestContext);
 
         LOG.info("getMatchesOutsideGroup: submitting {}", requestContext);
 
@@ -1250,10 +1292,9 @@ public class RenderDataClient {
 
         final URI uri = getUri(urls.getMatchesWithinGroupUrlString(groupId));
         final HttpGet httpGet = new HttpGet(uri);
+        httpGet.setHeader(HttpHeaders.ACCEPT, CanvasMatchesResponseHandler.ACCEPT_HEADER_VALUE);
         final String requestContext = "GET " + uri;
-        final TypeReference<List<CanvasMatches>> typeReference = new TypeReference<List<CanvasMatches>>() {};
-        final JsonUtils.GenericHelper<List<CanvasMatches>> helper = new JsonUtils.GenericHelper<>(typeReference);
-        final JsonResponseHandler<List<CanvasMatches>> responseHandler = new JsonResponseHandler<>(requestContext, helper);
+        final CanvasMatchesResponseHandler responseHandler = new CanvasMatchesResponseHandler(requestContext);
 
         LOG.info("getMatchesWithinGroup: submitting {}", requestContext);
 
@@ -1478,4 +1519,8 @@ public class RenderDataClient {
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDataClient.class);
+
+    // HttpClient connection pool defaults
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 2;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
 }
@@ -151,7 +151,8 @@ public class SIFTPointMatchClient
                         urlTemplateForRun,
                         getCanvasFeatureExtractor(featureExtractionParameters, featureRenderParameters),
                         featureStorageParameters.getRootFeatureDirectory(),
-                        featureStorageParameters.requireStoredFeatures);
+                        featureStorageParameters.requireStoredFeatures,
+                        featureStorageParameters.storageFormat);
 
         final CanvasDataCache dataCache = CanvasDataCache.getSharedCache(cacheMaxKilobytes, featureLoader);
         final CanvasFeatureMatcher featureMatcher = getCanvasFeatureMatcher(matchDerivationParameters);
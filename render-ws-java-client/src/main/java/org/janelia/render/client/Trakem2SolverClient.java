@@ -5,12 +5,19 @@ import com.beust.jcommander.ParametersDelegate;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import mpicbg.models.Affine2D;
@@ -154,6 +161,19 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
                 arity = 0)
         public boolean completeTargetStack = false;
 
+        @Parameter(
+                names = "--numberOfThreads",
+                description = "Number of threads to use for loading tiles and matches and for optimization " +
+                              "(values greater than 1 fetch all layers concurrently and use a concurrent optimizer)"
+        )
+        public int numberOfThreads = 1;
+
+        @Parameter(
+                names = "--maxTileCount",
+                description = "Maximum number of tiles that may be loaded"
+        )
+        public int maxTileCount = 100000;
+
         public Parameters() {
         }
 
@@ -230,10 +250,15 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
         parameters.initDefaultValues();
 
         this.parameters = parameters;
-        this.renderDataClient = parameters.renderWeb.getDataClient();
+        // allow one connection per thread so that concurrent tile and match loading is not throttled
+        this.renderDataClient = new RenderDataClient(parameters.renderWeb.baseDataUrl,
+                                                     parameters.renderWeb.owner,
+                                                     parameters.renderWeb.project,
+                                                     parameters.numberOfThreads);
         this.matchDataClient = new RenderDataClient(parameters.renderWeb.baseDataUrl,
                                                     parameters.matchOwner,
-                                                    parameters.matchCollection);
+                                                    parameters.matchCollection,
+                                                    parameters.numberOfThreads);
 
         this.sectionIdToZMap = new TreeMap<>();
         this.zToTileSpecsMap = new HashMap<>();
@@ -278,10 +303,73 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
     }
 
     private void run()
-            throws IOException, NotEnoughDataPointsException, IllDefinedDataPointsException {
+            throws IOException, NotEnoughDataPointsException, IllDefinedDataPointsException,
+                   InterruptedException, ExecutionException {
 
         LOG.info("run: entry");
 
+        final boolean isConcurrent = parameters.numberOfThreads > 1;
+
+        final HashMap<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> idToTileMap =
+                isConcurrent ? buildConnectedTilesConcurrently() : buildConnectedTiles();
+
+        final TileConfiguration tileConfig;
+        final ConcurrentTileOptimizer concurrentOptimizer;
+        if (isConcurrent) {
+            tileConfig = null;
+            // sort tiles by id so that coloring (and therefore results) are repeatable
+            concurrentOptimizer = new ConcurrentTileOptimizer(new TreeMap<>(idToTileMap).values(),
+                                                              parameters.numberOfThreads);
+        } else {
+            tileConfig = new TileConfiguration();
+            tileConfig.addTiles(idToTileMap.values());
+            concurrentOptimizer = null;
+        }
+
+        LOG.info("run: optimizing {} tiles", idToTileMap.size());
+
+        final double[] lambdaValues = new double[] { 1, 0.5, 0.1, 0.01 };
+
+        for (final double lambda : lambdaValues) {
+            if (lambda <= parameters.startLambda) {
+
+                for (final Tile tile : idToTileMap.values()) {
+                    ((InterpolatedAffineModel2D) tile.getModel()).setLambda(lambda);
+                }
+
+                if (isConcurrent) {
+                    concurrentOptimizer.optimize(parameters.maxAllowedError,
+                                                 parameters.maxIterations,
+                                                 parameters.maxPlateauWidth);
+                } else {
+                    tileConfig.optimize(parameters.maxAllowedError,
+                                        parameters.maxIterations,
+                                        parameters.maxPlateauWidth);
+                }
+
+            }
+        }
+
+        if (parameters.targetStack == null) {
+
+            for (final String tileId : idToTileMap.keySet()) {
+                final Tile<InterpolatedAffineModel2D<AffineModel2D, B>> tile = idToTileMap.get(tileId);
+                final InterpolatedAffineModel2D model = tile.getModel();
+                LOG.info("tile {} model is {}", tileId, model.createAffineModel2D());
+            }
+
+        } else {
+
+            saveTargetStackTiles(idToTileMap);
+
+        }
+
+        LOG.info("run: exit");
+    }
+
+    private HashMap<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> buildConnectedTiles()
+            throws IOException {
+
         final HashMap<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> idToTileMap = new HashMap<>();
 
         for (final String pGroupId : pGroupList) {
@@ -317,40 +405,119 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
             }
         }
 
-        final TileConfiguration tileConfig = new TileConfiguration();
-        tileConfig.addTiles(idToTileMap.values());
+        return idToTileMap;
+    }
 
-        LOG.info("run: optimizing {} tiles", idToTileMap.size());
+    /**
+     * Concurrently loads the tiles for all layers in range and the matches for all sections in range,
+     * then connects the tiles on the calling thread.
+     * Tile specs are not retained (they are reloaded one layer at a time when saving results),
+     * so only the compact optimizer tiles for connected tiles remain in memory.
+     */
+    private HashMap<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> buildConnectedTilesConcurrently()
+            throws InterruptedException, ExecutionException {
 
-        final double[] lambdaValues = new double[] { 1, 0.5, 0.1, 0.01 };
+        final Set<Double> zValues = new TreeSet<>();
+        sectionIdToZMap.values().forEach(zValues::addAll);
 
-        for (final double lambda : lambdaValues) {
-            if (lambda <= parameters.startLambda) {
+        LOG.info("buildConnectedTilesConcurrently: loading tiles for {} layers with {} threads",
+                 zValues.size(), parameters.numberOfThreads);
 
-                for (final Tile tile : idToTileMap.values()) {
-                    ((InterpolatedAffineModel2D) tile.getModel()).setLambda(lambda);
+        final Map<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> idToUnconnectedTileMap = new HashMap<>();
+        final HashMap<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> idToTileMap = new HashMap<>();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(parameters.numberOfThreads);
+
+        try {
+
+            // each layer task tracks the running tile count so that loading stops as soon as the limit is exceeded
+            final AtomicInteger loadedTileCount = new AtomicInteger(0);
+
+            final List<Future<Map<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>>>> tileFutures =
+                    new ArrayList<>(zValues.size());
+            for (final Double z : zValues) {
+                tileFutures.add(executorService.submit(() -> buildTilesForZ(z, loadedTileCount)));
+            }
+
+            try {
+                for (final Future<Map<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>>> future : tileFutures) {
+                    idToUnconnectedTileMap.putAll(future.get());
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                tileFutures.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    throw (IllegalArgumentException) e.getCause();
                 }
+                throw e;
+            }
 
-                tileConfig.optimize(parameters.maxAllowedError, parameters.maxIterations, parameters.maxPlateauWidth);
+            LOG.info("buildConnectedTilesConcurrently: loaded {} tiles, loading matches for {} sections",
+                     idToUnconnectedTileMap.size(), pGroupList.size());
 
+            final List<Future<List<CanvasMatches>>> matchFutures = new ArrayList<>(pGroupList.size());
+            for (final String pGroupId : pGroupList) {
+                matchFutures.add(executorService.submit(() -> matchDataClient.getMatchesWithPGroupId(pGroupId)));
             }
-        }
 
-        if (parameters.targetStack == null) {
+            for (final Future<List<CanvasMatches>> future : matchFutures) {
+                for (final CanvasMatches match : future.get()) {
 
-            for (final String tileId : idToTileMap.keySet()) {
-                final Tile<InterpolatedAffineModel2D<AffineModel2D, B>> tile = idToTileMap.get(tileId);
-                final InterpolatedAffineModel2D model = tile.getModel();
-                LOG.info("tile {} model is {}", tileId, model.createAffineModel2D());
+                    final String pId = match.getpId();
+                    final String qId = match.getqId();
+                    final Tile<InterpolatedAffineModel2D<AffineModel2D, B>> p = idToUnconnectedTileMap.get(pId);
+                    final Tile<InterpolatedAffineModel2D<AffineModel2D, B>> q = idToUnconnectedTileMap.get(qId);
+
+                    if ((p == null) || (q == null)) {
+                        LOG.info("buildConnectedTilesConcurrently: ignoring pair ({}, {}) because one or both tiles are missing from stack {}",
+                                 pId, qId, parameters.stack);
+                        continue;
+                    }
+
+                    idToTileMap.put(pId, p);
+                    idToTileMap.put(qId, q);
+
+                    p.connect(q,
+                              CanvasFeatureMatchResult.convertMatchesToPointMatchList(match.getMatches()));
+                }
             }
 
-        } else {
+        } finally {
+            executorService.shutdown();
+        }
 
-            saveTargetStackTiles(idToTileMap);
+        LOG.info("buildConnectedTilesConcurrently: connected {} of {} loaded tiles",
+                 idToTileMap.size(), idToUnconnectedTileMap.size());
+
+        return idToTileMap;
+    }
 
+    private Map<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> buildTilesForZ(final Double z,
+                                                                                         final AtomicInteger loadedTileCount)
+            throws IOException, IllegalArgumentException {
+
+        if (loadedTileCount.get() > parameters.maxTileCount) {
+            throw getMaxTileCountException();
         }
 
-        LOG.info("run: exit");
+        final ResolvedTileSpecCollection resolvedTiles = renderDataClient.getResolvedTiles(parameters.stack, z);
+
+        if (loadedTileCount.addAndGet(resolvedTiles.getTileCount()) > parameters.maxTileCount) {
+            throw getMaxTileCountException();
+        }
+
+        resolvedTiles.resolveTileSpecs();
+
+        final Map<String, Tile<InterpolatedAffineModel2D<AffineModel2D, B>>> idToTileMap = new HashMap<>();
+        for (final TileSpec tileSpec : resolvedTiles.getTileSpecs()) {
+            idToTileMap.put(tileSpec.getTileId(), buildTileFromSpec(tileSpec));
+        }
+
+        return idToTileMap;
+    }
+
+    private IllegalArgumentException getMaxTileCountException() {
+        return new IllegalArgumentException("More than " + parameters.maxTileCount +
+                                            " tiles need to be loaded - please reduce z values");
     }
 
     private Tile<InterpolatedAffineModel2D<AffineModel2D, B>> buildTileFromSpec(final TileSpec tileSpec) {
@@ -387,7 +554,24 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
 
         LOG.info("saveTargetStackTiles: entry");
 
-        for (final ResolvedTileSpecCollection resolvedTiles : zToTileSpecsMap.values()) {
+        // concurrent mode does not retain tile specs, so reload them one layer at a time
+        final Collection<Double> zValues;
+        if (zToTileSpecsMap.isEmpty()) {
+            zValues = new TreeSet<>();
+            sectionIdToZMap.values().forEach(zValues::addAll);
+        } else {
+            zValues = new ArrayList<>(zToTileSpecsMap.keySet());
+        }
+
+        for (final Double z : zValues) {
+
+            final ResolvedTileSpecCollection resolvedTiles;
+            if (zToTileSpecsMap.containsKey(z)) {
+                resolvedTiles = zToTileSpecsMap.remove(z);
+            } else {
+                resolvedTiles = renderDataClient.getResolvedTiles(parameters.stack, z);
+                resolvedTiles.resolveTileSpecs();
+            }
 
             final Set<String> tileIdsToRemove = new HashSet<>();
 
@@ -415,6 +599,11 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
                 resolvedTiles.removeTileSpecs(tileIdsToRemove);
             }
 
+            if (! resolvedTiles.hasTileSpecs()) {
+                LOG.info("saveTargetStackTiles: skipping z {} because it has no aligned tiles", z);
+                continue;
+            }
+
             targetDataClient.saveResolvedTiles(resolvedTiles, parameters.targetStack, null);
         }
 
@@ -444,8 +633,8 @@ public class Trakem2SolverClient<B extends Model< B > & Affine2D< B >> {
 
             if (! zToTileSpecsMap.containsKey(z)) {
 
-                if (totalTileCount > 100000) {
-                    throw new IllegalArgumentException("More than 100000 tiles need to be loaded - please reduce z values");
+                if (totalTileCount > parameters.maxTileCount) {
+                    throw getMaxTileCountException();
                 }
 
                 final ResolvedTileSpecCollection resolvedTiles = renderDataClient.getResolvedTiles(parameters.stack, z);
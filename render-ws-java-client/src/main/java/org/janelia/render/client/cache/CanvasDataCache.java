@@ -173,6 +173,36 @@ public class CanvasDataCache {
         return cachedCanvasData;
     }
 
+    /**
+     * Same as {@link #getData(CanvasId)} except that the specified listener is run
+     * (on the current thread of execution) when data for the canvas needs to be built.
+     * This allows callers to accurately count cache misses even when the same canvas
+     * is concurrently requested by other threads.
+     *
+     * @param  canvasId      canvas identifier.
+     * @param  loadListener  run before missing data is built.
+     *
+     * @return the cached data for the specified canvas.
+     *
+     * @throws IllegalStateException
+     *   if the data cannot be cached.
+     */
+    private CachedCanvasData getData(final CanvasId canvasId,
+                                     final Runnable loadListener)
+            throws IllegalStateException {
+
+        final CachedCanvasData cachedCanvasData;
+        try {
+            cachedCanvasData = canvasIdToDataCache.get(canvasId, () -> {
+                loadListener.run();
+                return canvasDataLoader.load(canvasId);
+            });
+        } catch (final Exception e) {
+            throw new IllegalStateException("failed to load data for " + canvasId, e);
+        }
+        return cachedCanvasData;
+    }
+
     /**
      * @return the rendered image file for the specified canvas.
      *
@@ -217,6 +247,25 @@ public class CanvasDataCache {
         return (CachedCanvasFeatures) getData(canvasId);
     }
 
+    /**
+     * @param  canvasId      canvas identifier.
+     * @param  loadListener  run (on the current thread of execution) only when the canvas features
+     *                       are not cached and need to be built for this request.
+     *
+     * @return the cached feature data for the specified canvas.
+     *
+     * @throws IllegalStateException
+     *   if the data cannot be cached locally.
+     *
+     * @throws ClassCastException
+     *   if this cache is not managing {@link CachedCanvasFeatures} data.
+     */
+    public CachedCanvasFeatures getCanvasFeatures(final CanvasId canvasId,
+                                                  final Runnable loadListener)
+            throws IllegalStateException, ClassCastException {
+        return (CachedCanvasFeatures) getData(canvasId, loadListener);
+    }
+
     @Override
     public String toString() {
         return "CanvasDataCache{" +
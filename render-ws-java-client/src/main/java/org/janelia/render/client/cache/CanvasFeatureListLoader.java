@@ -27,6 +27,7 @@ public class CanvasFeatureListLoader
     private final CanvasFeatureExtractor featureExtractor;
     private final File rootFeatureStorageDirectory;
     private final boolean requireStoredFeatures;
+    private final CanvasFeatureList.StorageFormat preferredStorageFormat;
 
     /**
      * @param  urlTemplate                  template for deriving render parameters URL for each canvas.
@@ -55,10 +56,40 @@ public class CanvasFeatureListLoader
                                    final CanvasFeatureExtractor featureExtractor,
                                    final File rootFeatureStorageDirectory,
                                    final boolean requireStoredFeatures) {
+        this(urlTemplate,
+             featureExtractor,
+             rootFeatureStorageDirectory,
+             requireStoredFeatures,
+             CanvasFeatureList.StorageFormat.JSON);
+    }
+
+    /**
+     * @param  urlTemplate                  template for deriving render parameters URL for each canvas.
+     *
+     * @param  featureExtractor             configured feature extractor.
+     *
+     * @param  rootFeatureStorageDirectory  root directory for persisted feature list data
+     *                                      (or null if features should always be extracted
+     *                                      from a dynamically rendered canvas).
+     *
+     * @param  requireStoredFeatures        if true, exception will be thrown when stored features
+     *                                      for a canvas cannot be found on disk;
+     *                                      if false, stored features will be loaded from disk
+     *                                      but missing features will be extracted from a dynamically rendered canvas.
+     *
+     * @param  preferredStorageFormat       format to load when features for a canvas have been stored
+     *                                      in more than one format (features stored in any format are loaded).
+     */
+    public CanvasFeatureListLoader(final CanvasRenderParametersUrlTemplate urlTemplate,
+                                   final CanvasFeatureExtractor featureExtractor,
+                                   final File rootFeatureStorageDirectory,
+                                   final boolean requireStoredFeatures,
+                                   final CanvasFeatureList.StorageFormat preferredStorageFormat) {
         super(urlTemplate, CachedCanvasFeatures.class);
         this.featureExtractor = featureExtractor;
         this.rootFeatureStorageDirectory =rootFeatureStorageDirectory;
         this.requireStoredFeatures = requireStoredFeatures;
+        this.preferredStorageFormat = preferredStorageFormat;
     }
 
     @Override
@@ -69,12 +100,16 @@ public class CanvasFeatureListLoader
 
         if (rootFeatureStorageDirectory != null) {
 
-            final Path storagePath = CanvasFeatureList.getStoragePath(rootFeatureStorageDirectory, canvasId);
+            final Path storagePath = CanvasFeatureList.findStoragePath(rootFeatureStorageDirectory,
+                                                                       canvasId,
+                                                                       preferredStorageFormat);
 
             CanvasFeatureList canvasFeatureList = null;
             try {
 
-                canvasFeatureList = CanvasFeatureList.readFromStorage(rootFeatureStorageDirectory, canvasId);
+                canvasFeatureList = CanvasFeatureList.readFromStorage(rootFeatureStorageDirectory,
+                                                                      canvasId,
+                                                                      preferredStorageFormat);
 
                 LOG.info("loaded {} features from {}", canvasFeatureList.size(), storagePath);
 
@@ -5,6 +5,8 @@ import com.beust.jcommander.Parameter;
 import java.io.File;
 import java.io.Serializable;
 
+import org.janelia.alignment.match.CanvasFeatureList;
+
 /**
  * Parameters for persisting or retrieving extracted feature data to/from disk.
  *
@@ -32,6 +34,12 @@ public class FeatureStorageParameters
             required = false)
     public Integer maxCacheGb = 2;
 
+    @Parameter(
+            names = "--featureStorageFormat",
+            description = "Format to load when saved features for a canvas exist in more than one format (features saved in any format are loaded)",
+            required = false)
+    public CanvasFeatureList.StorageFormat storageFormat = CanvasFeatureList.StorageFormat.JSON;
+
     public File getRootFeatureDirectory() {
         File directory = null;
         if (rootFeatureDirectory != null) {
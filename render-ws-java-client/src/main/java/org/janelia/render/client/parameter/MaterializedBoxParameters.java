@@ -99,6 +99,13 @@ public class MaterializedBoxParameters implements Serializable {
             arity = 0)
     public boolean forceGeneration = false;
 
+    @Parameter(
+            names = "--streamMipmaps",
+            description = "Keep rendered boxes in memory and reduce them to higher mipmap levels as soon as " +
+                          "all four children exist instead of re-reading each level from disk",
+            arity = 0)
+    public boolean streamMipmaps = false;
+
     @Parameter(
             names = "--renderGroup",
             description = "Index (1-n) that identifies portion of layer to render (omit if only one job is being used)"
@@ -137,6 +144,7 @@ public class MaterializedBoxParameters implements Serializable {
         p.label = this.label;
         p.createIGrid = this.createIGrid;
         p.forceGeneration = this.forceGeneration;
+        p.streamMipmaps = this.streamMipmaps;
 
         p.renderGroup = group;
         p.numberOfRenderGroups = numberOfGroups;
@@ -0,0 +1,70 @@
+package org.janelia.render.client.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.CanvasMatchesBinaryFormat;
+
+/**
+ * Reads a list of canvas matches from a response in either JSON or
+ * binary ({@link CanvasMatchesBinaryFormat}) format based upon the response content type.
+ *
+ * Binary responses are decoded incrementally as they are read from the content stream.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesResponseHandler
+        extends BaseResponseHandler
+        implements ResponseHandler<List<CanvasMatches>> {
+
+    /** Accept header value that prefers binary matches but still allows JSON from older servers. */
+    public static final String ACCEPT_HEADER_VALUE =
+            CanvasMatchesBinaryFormat.MEDIA_TYPE + ", " + JSON_MIME_TYPE + ";q=0.9";
+
+    /**
+     * @param  requestContext  context (e.g. "GET http://janelia.org") for use in error messages.
+     */
+    public CanvasMatchesResponseHandler(final String requestContext) {
+        super(requestContext);
+    }
+
+    @Override
+    public List<CanvasMatches> handleResponse(final HttpResponse response)
+            throws IOException {
+
+        final HttpEntity entity = getValidatedResponseEntity(response, OK);
+        final Header contentTypeHeader = entity.getContentType();
+
+        if (contentTypeHeader == null) {
+            throw new ClientProtocolException("content type header missing for\n\n  " + getRequestContext() + "\n");
+        }
+
+        final String contentType = contentTypeHeader.getValue();
+        final List<CanvasMatches> list;
+
+        try (final InputStream inputStream = entity.getContent()) {
+            if (contentType.startsWith(CanvasMatchesBinaryFormat.MEDIA_TYPE)) {
+                list = CanvasMatchesBinaryFormat.readAll(inputStream);
+            } else if (contentType.startsWith(JSON_MIME_TYPE)) {
+                list = new ArrayList<>(Arrays.asList(JsonUtils.MAPPER.readValue(inputStream, CanvasMatches[].class)));
+            } else {
+                throw new ClientProtocolException("invalid mime type '" + contentType + "' for\n\n  " +
+                                                  getRequestContext() + "\n\n(expected '" + JSON_MIME_TYPE +
+                                                  "' or '" + CanvasMatchesBinaryFormat.MEDIA_TYPE + "')");
+            }
+        }
+
+        return list;
+    }
+
+}
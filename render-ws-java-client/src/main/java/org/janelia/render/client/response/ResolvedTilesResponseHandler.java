@@ -0,0 +1,126 @@
+package org.janelia.render.client.response;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+
+/**
+ * Incrementally reads a resolved tile spec collection from a JSON response content stream.
+ *
+ * Each tile and transform spec is bound individually as it is read from the stream,
+ * so the response document never needs to be fully buffered.
+ * Transform and tile specs may appear in either order (the render web service streams
+ * tile specs before the transform specs they reference).
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesResponseHandler
+        extends BaseResponseHandler
+        implements ResponseHandler<ResolvedTileSpecCollection> {
+
+    /**
+     * @param  requestContext  context (e.g. "GET http://janelia.org") for use in error messages.
+     */
+    public ResolvedTilesResponseHandler(final String requestContext) {
+        super(requestContext);
+    }
+
+    @Override
+    public ResolvedTileSpecCollection handleResponse(final HttpResponse response)
+            throws IOException {
+
+        final HttpEntity entity = getValidatedResponseEntity(response, OK);
+        final Header contentTypeHeader = entity.getContentType();
+
+        if (contentTypeHeader == null) {
+            throw new ClientProtocolException("content type header missing for\n\n  " + getRequestContext() + "\n");
+        } else if (! JSON_MIME_TYPE.equals(contentTypeHeader.getValue())) {
+            throw new ClientProtocolException("invalid mime type '" + contentTypeHeader.getValue() + "' for\n\n  " +
+                                              getRequestContext() + "\n\n(expected '" + JSON_MIME_TYPE + "')");
+        }
+
+        try (final InputStream inputStream = entity.getContent()) {
+            return readResolvedTiles(inputStream);
+        }
+    }
+
+    /**
+     * @param  inputStream  stream containing a JSON resolved tile spec collection.
+     *
+     * @return collection read from the specified stream.
+     *
+     * @throws IOException
+     *   if the stream cannot be read or parsed.
+     */
+    public static ResolvedTileSpecCollection readResolvedTiles(final InputStream inputStream)
+            throws IOException {
+
+        final ObjectMapper mapper = JsonUtils.MAPPER;
+        final ResolvedTileSpecCollection resolvedTiles = new ResolvedTileSpecCollection();
+
+        // tile specs can only be added to the collection once the transforms they reference are known
+        final List<TileSpec> tileSpecsReadBeforeTransforms = new ArrayList<>();
+        boolean hasReadTransforms = false;
+
+        try (final JsonParser parser = mapper.getFactory().createParser(inputStream)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("resolved tile data must start with an object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+
+                if (TRANSFORM_MAP_NAME.equals(fieldName) && (valueToken == JsonToken.START_OBJECT)) {
+
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                        resolvedTiles.addTransformSpecToCollection(mapper.readValue(parser, TransformSpec.class));
+                    }
+                    hasReadTransforms = true;
+
+                } else if (TILE_MAP_NAME.equals(fieldName) && (valueToken == JsonToken.START_OBJECT)) {
+
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                        final TileSpec tileSpec = mapper.readValue(parser, TileSpec.class);
+                        if (hasReadTransforms) {
+                            resolvedTiles.addTileSpecToCollection(tileSpec);
+                        } else {
+                            tileSpecsReadBeforeTransforms.add(tileSpec);
+                        }
+                    }
+
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        for (final TileSpec tileSpec : tileSpecsReadBeforeTransforms) {
+            resolvedTiles.addTileSpecToCollection(tileSpec);
+        }
+
+        return resolvedTiles;
+    }
+
+    private static final String TRANSFORM_MAP_NAME = "transformIdToSpecMap";
+    private static final String TILE_MAP_NAME = "tileIdToSpecMap";
+}
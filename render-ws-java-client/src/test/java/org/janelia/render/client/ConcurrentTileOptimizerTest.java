@@ -0,0 +1,126 @@
+package org.janelia.render.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+import mpicbg.models.Tile;
+import mpicbg.models.TranslationModel2D;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ConcurrentTileOptimizer} class.
+ *
+ * @author Eric Trautman
+ */
+public class ConcurrentTileOptimizerTest {
+
+    private static final int ROWS = 4;
+    private static final int COLUMNS = 5;
+
+    @Test
+    public void testBuildColorGroups() throws Exception {
+
+        final List<Tile<?>> tiles = new ArrayList<>(buildConnectedGrid());
+        final List<List<Tile<?>>> colorGroups = ConcurrentTileOptimizer.buildColorGroups(tiles);
+
+        Assert.assertEquals("grid without diagonal connections should only need two colors",
+                            2, colorGroups.size());
+
+        int tileCount = 0;
+        for (final List<Tile<?>> colorGroup : colorGroups) {
+            for (final Tile<?> tile : colorGroup) {
+                for (final Tile<?> connectedTile : tile.getConnectedTiles()) {
+                    Assert.assertFalse("connected tiles share a color group",
+                                       colorGroup.contains(connectedTile));
+                }
+            }
+            tileCount += colorGroup.size();
+        }
+
+        Assert.assertEquals("invalid number of grouped tiles", tiles.size(), tileCount);
+    }
+
+    @Test
+    public void testOptimize() throws Exception {
+
+        final List<Tile<TranslationModel2D>> tiles = buildConnectedGrid();
+
+        final ConcurrentTileOptimizer optimizer = new ConcurrentTileOptimizer(tiles, 3);
+        optimizer.optimize(0.001, 2000, 200);
+
+        Assert.assertTrue("error " + optimizer.getError() + " is too large", optimizer.getError() < 0.01);
+
+        final double[] origin = getTranslation(tiles.get(0));
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                final double[] translation = getTranslation(tiles.get(row * COLUMNS + column));
+                Assert.assertEquals("invalid x for row " + row + " column " + column,
+                                    getExpectedX(row, column), translation[0] - origin[0], 0.01);
+                Assert.assertEquals("invalid y for row " + row + " column " + column,
+                                    getExpectedY(row, column), translation[1] - origin[1], 0.01);
+            }
+        }
+    }
+
+    private static double getExpectedX(final int row,
+                                       final int column) {
+        return column * 90.0 + row * 3.0;
+    }
+
+    private static double getExpectedY(final int row,
+                                       final int column) {
+        return row * 90.0 - column * 2.0;
+    }
+
+    private static double[] getTranslation(final Tile<TranslationModel2D> tile) {
+        final double[] location = { 0.0, 0.0 };
+        tile.getModel().applyInPlace(location);
+        return location;
+    }
+
+    private static List<Tile<TranslationModel2D>> buildConnectedGrid() {
+
+        final List<Tile<TranslationModel2D>> tiles = new ArrayList<>();
+        for (int i = 0; i < ROWS * COLUMNS; i++) {
+            tiles.add(new Tile<>(new TranslationModel2D()));
+        }
+
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (column + 1 < COLUMNS) {
+                    connect(tiles, row, column, row, column + 1);
+                }
+                if (row + 1 < ROWS) {
+                    connect(tiles, row, column, row + 1, column);
+                }
+            }
+        }
+
+        return tiles;
+    }
+
+    private static void connect(final List<Tile<TranslationModel2D>> tiles,
+                                final int pRow,
+                                final int pColumn,
+                                final int qRow,
+                                final int qColumn) {
+
+        final double dx = getExpectedX(pRow, pColumn) - getExpectedX(qRow, qColumn);
+        final double dy = getExpectedY(pRow, pColumn) - getExpectedY(qRow, qColumn);
+
+        final List<PointMatch> matches = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final double x = 50.0 + (i % 2) * 30.0;
+            final double y = 50.0 + (i / 2) * 30.0;
+            matches.add(new PointMatch(new Point(new double[] { x, y }),
+                                       new Point(new double[] { x + dx, y + dy })));
+        }
+
+        tiles.get(pRow * COLUMNS + pColumn).connect(tiles.get(qRow * COLUMNS + qColumn), matches);
+    }
+
+}
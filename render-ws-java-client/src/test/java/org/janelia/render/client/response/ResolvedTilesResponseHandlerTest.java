@@ -0,0 +1,80 @@
+package org.janelia.render.client.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResolvedTilesResponseHandler} class.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesResponseHandlerTest {
+
+    @Test
+    public void testReadTransformsBeforeTiles() throws Exception {
+
+        final ResolvedTileSpecCollection resolvedTiles = buildResolvedTiles();
+
+        validateResolvedTiles("transforms before tiles", read(resolvedTiles.toJson()));
+    }
+
+    @Test
+    public void testReadTilesBeforeTransforms() throws Exception {
+
+        final ResolvedTileSpecCollection resolvedTiles = buildResolvedTiles();
+        final TileSpec tileSpec = resolvedTiles.getTileSpec(TILE_ID);
+        final TransformSpec transformSpec = resolvedTiles.getTransformIdToSpecMap().get(TRANSFORM_ID);
+
+        // mimic the streamed format produced by the render web service
+        final String json = "{\"tileIdToSpecMap\":{\n\"" + TILE_ID + "\":" + tileSpec.toJson() + "},\n" +
+                            "\"transformIdToSpecMap\":{\n\"" + TRANSFORM_ID + "\":" + transformSpec.toJson() + "}}";
+
+        validateResolvedTiles("tiles before transforms", read(json));
+    }
+
+    private static ResolvedTileSpecCollection read(final String json)
+            throws IOException {
+        return ResolvedTilesResponseHandler.readResolvedTiles(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ResolvedTileSpecCollection buildResolvedTiles() {
+
+        final LeafTransformSpec transformSpec = new LeafTransformSpec(TRANSFORM_ID,
+                                                                      null,
+                                                                      "mpicbg.trakem2.transform.AffineModel2D",
+                                                                      "1  0  0  1  0  0");
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId(TILE_ID);
+        tileSpec.setZ(1.0);
+        tileSpec.addTransformSpecs(Collections.singletonList(new ReferenceTransformSpec(TRANSFORM_ID)));
+
+        return new ResolvedTileSpecCollection(Collections.singletonList(transformSpec),
+                                              Collections.singletonList(tileSpec));
+    }
+
+    private static void validateResolvedTiles(final String context,
+                                              final ResolvedTileSpecCollection resolvedTiles) {
+
+        Assert.assertEquals(context + ": invalid number of transform specs", 1, resolvedTiles.getTransformCount());
+        Assert.assertEquals(context + ": invalid number of tile specs", 1, resolvedTiles.getTileCount());
+
+        final TileSpec tileSpec = resolvedTiles.getTileSpec(TILE_ID);
+        Assert.assertNotNull(context + ": missing tile spec", tileSpec);
+        Assert.assertTrue(context + ": tile spec transforms should be resolved",
+                          tileSpec.getTransforms().isFullyResolved());
+    }
+
+    private static final String TILE_ID = "tile-a";
+    private static final String TRANSFORM_ID = "transform-a";
+}
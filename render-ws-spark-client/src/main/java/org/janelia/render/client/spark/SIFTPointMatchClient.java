@@ -6,18 +6,26 @@ import com.beust.jcommander.ParametersDelegate;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.util.LongAccumulator;
 import org.janelia.alignment.match.CanvasFeatureMatchResult;
 import org.janelia.alignment.match.CanvasFeatureMatcher;
 import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.CanvasIdPairLocalityHelper;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
 import org.janelia.alignment.match.OrderedCanvasIdPair;
@@ -79,6 +87,13 @@ public class SIFTPointMatchClient
                 description = "Fail immediately if Spark Context parallelism does not match this value")
         public Integer expectedParallelism;
 
+        @Parameter(
+                names = "--matchThreadsPerExecutor",
+                description = "Number of threads each executor uses to load features and derive matches " +
+                              "(threads are shared by all partitions running on the executor, " +
+                              "1 processes pairs sequentially on each partition's task thread)")
+        public int matchThreadsPerExecutor = 1;
+
     }
 
     public static void main(final String[] args) {
@@ -151,7 +166,8 @@ public class SIFTPointMatchClient
                                 parameters.featureExtraction,
                                 parameters.featureStorage,
                                 parameters.matchDerivation,
-                                matchStorageFunction);
+                                matchStorageFunction,
+                                parameters.matchThreadsPerExecutor);
     }
 
     static long generateMatchesForPairs(final JavaSparkContext sparkContext,
@@ -164,6 +180,29 @@ public class SIFTPointMatchClient
                                         final MatchDerivationParameters matchDerivationParameters,
                                         final MatchStorageFunction matchStorageFunction)
             throws URISyntaxException {
+        return generateMatchesForPairs(sparkContext,
+                                       renderableCanvasIdPairs,
+                                       baseDataUrl,
+                                       featureRenderParameters,
+                                       featureRenderClipParameters,
+                                       featureExtractionParameters,
+                                       featureStorageParameters,
+                                       matchDerivationParameters,
+                                       matchStorageFunction,
+                                       1);
+    }
+
+    static long generateMatchesForPairs(final JavaSparkContext sparkContext,
+                                        final RenderableCanvasIdPairs renderableCanvasIdPairs,
+                                        final String baseDataUrl,
+                                        final FeatureRenderParameters featureRenderParameters,
+                                        final FeatureRenderClipParameters featureRenderClipParameters,
+                                        final FeatureExtractionParameters featureExtractionParameters,
+                                        final FeatureStorageParameters featureStorageParameters,
+                                        final MatchDerivationParameters matchDerivationParameters,
+                                        final MatchStorageFunction matchStorageFunction,
+                                        final int matchThreadsPerExecutor)
+            throws URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
                 CanvasRenderParametersUrlTemplate.getTemplateForRun(
@@ -183,7 +222,8 @@ public class SIFTPointMatchClient
                         urlTemplateForRun,
                         getCanvasFeatureExtractor(featureExtractionParameters, featureRenderParameters),
                         featureStorageParameters.getRootFeatureDirectory(),
-                        featureStorageParameters.requireStoredFeatures);
+                        featureStorageParameters.requireStoredFeatures,
+                        featureStorageParameters.storageFormat);
 
         final double renderScale = featureRenderParameters.renderScale;
         final Double pairMaxDeltaStandardDeviation = matchDerivationParameters.pairMaxDeltaStandardDeviation;
@@ -194,8 +234,21 @@ public class SIFTPointMatchClient
         final Broadcast<CanvasFeatureMatcher> broadcastFeatureMatcher =
                 sparkContext.broadcast(getCanvasFeatureMatcher(matchDerivationParameters));
 
-        final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs =
-                sparkContext.parallelize(renderableCanvasIdPairs.getNeighborPairs());
+        final LongAccumulator canvasCacheHits = sparkContext.sc().longAccumulator("canvasCacheHits");
+        final LongAccumulator canvasCacheMisses = sparkContext.sc().longAccumulator("canvasCacheMisses");
+
+        // order pairs so that contiguous slices (partitions) share as few canvases as possible,
+        // minimizing the number of times features for each canvas need to be extracted
+        final int numberOfSlices = sparkContext.defaultParallelism();
+        final List<OrderedCanvasIdPair> neighborPairs = renderableCanvasIdPairs.getNeighborPairs();
+        final List<OrderedCanvasIdPair> orderedPairs = CanvasIdPairLocalityHelper.orderForLocality(neighborPairs);
+
+        LOG.info("generateMatchesForPairs: ordered {} pairs for {} slices, average slices per canvas is {} ({} before ordering)",
+                 orderedPairs.size(), numberOfSlices,
+                 CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(orderedPairs, numberOfSlices),
+                 CanvasIdPairLocalityHelper.getAverageSlicesPerCanvas(neighborPairs, numberOfSlices));
+
+        final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs = sparkContext.parallelize(orderedPairs, numberOfSlices);
 
         final JavaRDD<CanvasMatches> rddMatches = rddCanvasIdPairs.mapPartitionsWithIndex(
                 (Function2<Integer, Iterator<OrderedCanvasIdPair>, Iterator<CanvasMatches>>) (partitionIndex, pairIterator) -> {
@@ -212,40 +265,64 @@ public class SIFTPointMatchClient
                     final List<CanvasMatches> matchList = new ArrayList<>();
                     int pairCount = 0;
 
-                    OrderedCanvasIdPair pair;
-                    CanvasId p;
-                    CanvasId q;
-                    CachedCanvasFeatures pFeatures;
-                    CachedCanvasFeatures qFeatures;
-                    CanvasFeatureMatchResult matchResult;
-                    while (pairIterator.hasNext()) {
+                    if (matchThreadsPerExecutor > 1) {
+
+                        // Keep a bounded window of pairs in flight on the executor's shared pool so that
+                        // features for upcoming canvases are loaded while ready pairs are being matched.
+                        final ExecutorService pairExecutor = getSharedPairExecutor(matchThreadsPerExecutor);
+                        final Deque<Future<List<CanvasMatches>>> pendingResults = new ArrayDeque<>();
+                        final int maxPendingPairs = matchThreadsPerExecutor * 2;
+
+                        try {
+
+                            while (pairIterator.hasNext() || (! pendingResults.isEmpty())) {
+
+                                while (pairIterator.hasNext() && (pendingResults.size() < maxPendingPairs)) {
+                                    final OrderedCanvasIdPair pair = pairIterator.next();
+                                    pairCount++;
+                                    pendingResults.add(pairExecutor.submit(
+                                            () -> deriveMatchesForPair(pair,
+                                                                       dataCache,
+                                                                       featureMatcher,
+                                                                       renderScale,
+                                                                       pairMaxDeltaStandardDeviation,
+                                                                       canvasCacheHits,
+                                                                       canvasCacheMisses,
+                                                                       log)));
+                                }
+
+                                matchList.addAll(pendingResults.remove().get());
+                            }
+
+                        } catch (final ExecutionException e) {
+                            // surface the real failure in the Spark log instead of the wrapper
+                            final Throwable cause = e.getCause();
+                            if (cause instanceof Exception) {
+                                throw (Exception) cause;
+                            } else if (cause instanceof Error) {
+                                throw (Error) cause;
+                            }
+                            throw e;
+                        } finally {
+                            // pending pairs are empty after normal completion, but when a pair fails
+                            // (or this task is interrupted) the rest must not keep occupying the shared pool
+                            pendingResults.forEach(future -> future.cancel(true));
+                        }
+
+                    } else {
+
+                        while (pairIterator.hasNext()) {
+                            matchList.addAll(deriveMatchesForPair(pairIterator.next(),
+                                                                  dataCache,
+                                                                  featureMatcher,
+                                                                  renderScale,
+                                                                  pairMaxDeltaStandardDeviation,
+                                                                  canvasCacheHits,
+                                                                  canvasCacheMisses,
+                                                                  log));
+                            pairCount++;
+                        }
 
-                        pair = pairIterator.next();
-                        pairCount++;
-
-                        p = pair.getP();
-                        q = pair.getQ();
-
-                        pFeatures = dataCache.getCanvasFeatures(p);
-                        qFeatures = dataCache.getCanvasFeatures(q);
-
-                        log.info("derive matches between {} and {}", p, q);
-
-                        matchResult = featureMatcher.deriveMatchResult(pFeatures.getFeatureList(),
-                                                                       qFeatures.getFeatureList());
-
-                        final double[] pClipOffsets = pFeatures.getClipOffsets();
-                        final double[] qClipOffsets = qFeatures.getClipOffsets();
-
-                        matchResult.addInlierMatchesToList(p.getGroupId(),
-                                                           p.getId(),
-                                                           q.getGroupId(),
-                                                           q.getId(),
-                                                           renderScale,
-                                                           pClipOffsets,
-                                                           qClipOffsets,
-                                                           pairMaxDeltaStandardDeviation,
-                                                           matchList);
                     }
 
                     log.info("derived matches for {} out of {} pairs, cache stats are {}",
@@ -278,8 +355,86 @@ public class SIFTPointMatchClient
         LOG.info("generateMatchesForPairs: saved matches for {} out of {} pairs ({}%) on {} partitions",
                  totalSaved, totalProcessed, percentSaved, matchPairCountList.size());
 
+        // note: accumulator values may include retried tasks
+        final long cacheRequests = canvasCacheHits.value() + canvasCacheMisses.value();
+        final int percentCacheHits = cacheRequests == 0 ? 0 :
+                                     (int) ((canvasCacheHits.value() / (double) cacheRequests) * 100);
+
+        LOG.info("generateMatchesForPairs: canvas feature cache hit rate was {}% ({} hits, {} misses)",
+                 percentCacheHits, canvasCacheHits.value(), canvasCacheMisses.value());
+
         return totalSaved;
     }
 
+    private static List<CanvasMatches> deriveMatchesForPair(final OrderedCanvasIdPair pair,
+                                                            final CanvasDataCache dataCache,
+                                                            final CanvasFeatureMatcher featureMatcher,
+                                                            final double renderScale,
+                                                            final Double pairMaxDeltaStandardDeviation,
+                                                            final LongAccumulator canvasCacheHits,
+                                                            final LongAccumulator canvasCacheMisses,
+                                                            final Logger log) {
+
+        final CanvasId p = pair.getP();
+        final CanvasId q = pair.getQ();
+
+        // misses are counted by the thread that actually builds the features,
+        // so concurrent requests for the same canvas are not double counted
+        final CachedCanvasFeatures pFeatures = getCanvasFeatures(p, dataCache, canvasCacheHits, canvasCacheMisses);
+        final CachedCanvasFeatures qFeatures = getCanvasFeatures(q, dataCache, canvasCacheHits, canvasCacheMisses);
+
+        log.info("derive matches between {} and {}", p, q);
+
+        final CanvasFeatureMatchResult matchResult =
+                featureMatcher.deriveMatchResult(pFeatures.getFeatureList(),
+                                                 qFeatures.getFeatureList());
+
+        final double[] pClipOffsets = pFeatures.getClipOffsets();
+        final double[] qClipOffsets = qFeatures.getClipOffsets();
+
+        final List<CanvasMatches> matchList = new ArrayList<>();
+        matchResult.addInlierMatchesToList(p.getGroupId(),
+                                           p.getId(),
+                                           q.getGroupId(),
+                                           q.getId(),
+                                           renderScale,
+                                           pClipOffsets,
+                                           qClipOffsets,
+                                           pairMaxDeltaStandardDeviation,
+                                           matchList);
+        return matchList;
+    }
+
+    private static CachedCanvasFeatures getCanvasFeatures(final CanvasId canvasId,
+                                                          final CanvasDataCache dataCache,
+                                                          final LongAccumulator canvasCacheHits,
+                                                          final LongAccumulator canvasCacheMisses) {
+        final boolean[] wasLoaded = { false };
+        final CachedCanvasFeatures features = dataCache.getCanvasFeatures(canvasId, () -> wasLoaded[0] = true);
+        if (wasLoaded[0]) {
+            canvasCacheMisses.add(1);
+        } else {
+            canvasCacheHits.add(1);
+        }
+        return features;
+    }
+
+    private static ExecutorService sharedPairExecutor;
+
+    /**
+     * @return the pair processing thread pool shared by all partitions running in the current (executor) JVM.
+     */
+    private static synchronized ExecutorService getSharedPairExecutor(final int numberOfThreads) {
+        if (sharedPairExecutor == null) {
+            // daemon threads keep the pool from blocking executor shutdown
+            sharedPairExecutor = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+                final Thread thread = new Thread(runnable, "pair-matcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedPairExecutor;
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(SIFTPointMatchClient.class);
 }
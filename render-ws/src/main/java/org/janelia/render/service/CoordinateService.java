@@ -3,7 +3,18 @@ package org.janelia.render.service;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -16,10 +27,18 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.models.CoordinateTransformMesh;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.util.RenderServerProperties;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -181,78 +200,166 @@ public class CoordinateService {
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    @ApiOperation(value = "Derive array of world coordinates for provided array of tile local coordinates")
+    @ApiOperation(
+            value = "Derive array of world coordinates for provided array of tile local coordinates",
+            notes = "Coordinates are grouped by tile so that each tile spec is retrieved and each tile's " +
+                    "transforms are built only once.  Tile groups are processed in parallel when " +
+                    "numberOfThreads is greater than 1.  Processing times are returned in a " +
+                    "Server-Timing response header.",
+            response = TileCoordinates.class,
+            responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "missing tile or coordinate data"),
             @ApiResponse(code = 404, message = "tile not found")
     })
-    public List<TileCoordinates> getWorldCoordinates(@PathParam("owner") final String owner,
-                                                     @PathParam("project") final String project,
-                                                     @PathParam("stack") final String stack,
-                                                     final List<TileCoordinates> localCoordinatesList) {
+    public Response getWorldCoordinates(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @QueryParam("numberOfThreads") final Integer numberOfThreads,
+                                        final List<TileCoordinates> localCoordinatesList) {
 
-        LOG.info("getWorldCoordinates: entry, owner={}, project={}, stack={}, localCoordinatesList.size()={}",
-                 owner, project, stack, localCoordinatesList.size());
+        LOG.info("getWorldCoordinates: entry, owner={}, project={}, stack={}, numberOfThreads={}, localCoordinatesList.size()={}",
+                 owner, project, stack, numberOfThreads, localCoordinatesList.size());
 
-        final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
-        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(localCoordinatesList.size());
-        final StackId stackId = new StackId(owner, project, stack);
-        TileSpec tileSpec;
-        TileCoordinates coordinates;
-        String tileId;
-        double[] local;
-        int errorCount = 0;
-        for (int i = 0; i < localCoordinatesList.size(); i++) {
+        Response response = null;
+        try {
 
-            coordinates = localCoordinatesList.get(i);
-            try {
+            final long startTime = System.currentTimeMillis();
 
-                if (coordinates == null) {
-                    throw new IllegalArgumentException("coordinates are missing");
-                }
+            final List<TileCoordinates> worldCoordinatesList =
+                    new ArrayList<>(Collections.nCopies(localCoordinatesList.size(), null));
+            final StackId stackId = new StackId(owner, project, stack);
 
-                tileId = coordinates.getTileId();
-                if (tileId == null) {
-                    throw new IllegalArgumentException("tileId is missing");
-                }
+            // validate coordinates and group them by tile so that each tile only needs to be loaded once
+            final Map<String, List<Integer>> tileIdToItemIndexes = new LinkedHashMap<>();
+            TileCoordinates coordinates;
+            String tileId;
+            double[] local;
+            int errorCount = 0;
+            for (int i = 0; i < localCoordinatesList.size(); i++) {
 
-                local = coordinates.getLocal();
-                if (local == null) {
-                    throw new IllegalArgumentException("local values are missing");
-                } else if (local.length < 2) {
-                    throw new IllegalArgumentException("local values must include both x and y");
-                }
+                coordinates = localCoordinatesList.get(i);
+                try {
 
-                tileSpec = renderDao.getTileSpec(stackId, tileId, true);
-                worldCoordinatesList.add(TileCoordinates.getWorldCoordinates(tileSpec, local[0], local[1]));
+                    if (coordinates == null) {
+                        throw new IllegalArgumentException("coordinates are missing");
+                    }
 
-            } catch (final Throwable t) {
+                    tileId = coordinates.getTileId();
+                    if (tileId == null) {
+                        throw new IllegalArgumentException("tileId is missing");
+                    }
 
-                LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
+                    local = coordinates.getLocal();
+                    if (local == null) {
+                        throw new IllegalArgumentException("local values are missing");
+                    } else if (local.length < 2) {
+                        throw new IllegalArgumentException("local values must include both x and y");
+                    }
 
-                errorCount++;
+                    tileIdToItemIndexes.computeIfAbsent(tileId, k -> new ArrayList<>()).add(i);
 
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildLocalInstance(null, null);
+                } catch (final Throwable t) {
+                    errorCount += addWorldCoordinatesError(i, coordinates, t, worldCoordinatesList);
                 }
-                coordinates.setError(t.getMessage());
+            }
 
-                worldCoordinatesList.add(coordinates);
+            final List<String> tileIdList = new ArrayList<>(tileIdToItemIndexes.keySet());
+            final Map<String, TileSpec> tileIdToSpec = new HashMap<>(tileIdList.size() * 2);
+            for (int fromIndex = 0; fromIndex < tileIdList.size(); fromIndex += MAX_TILE_IDS_PER_QUERY) {
+                final int toIndex = Math.min(tileIdList.size(), fromIndex + MAX_TILE_IDS_PER_QUERY);
+                for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId, tileIdList.subList(fromIndex, toIndex))) {
+                    tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                }
             }
 
-            if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
-                lastStatusTime = System.currentTimeMillis();
-                LOG.info("getWorldCoordinates: transformed {} out of {} points",
-                         worldCoordinatesList.size(), localCoordinatesList.size());
+            final long tileSpecLoadStopTime = System.currentTimeMillis();
+
+            final int threadCount = numberOfThreads == null ? 1 :
+                                    Math.min(Math.min(numberOfThreads, tileIdList.size()),
+                                             Runtime.getRuntime().availableProcessors());
+
+            if (threadCount > 1) {
+
+                // split tiles into one task per requested thread so that a single request
+                // cannot occupy more than threadCount threads in the shared pool
+                final ExecutorService executorService = getSharedExecutor();
+                final int tilesPerTask = (tileIdList.size() + threadCount - 1) / threadCount;
+                final List<Future<Integer>> futures = new ArrayList<>(threadCount);
+                for (int fromIndex = 0; fromIndex < tileIdList.size(); fromIndex += tilesPerTask) {
+                    final List<String> taskTileIds =
+                            tileIdList.subList(fromIndex, Math.min(tileIdList.size(), fromIndex + tilesPerTask));
+                    futures.add(executorService.submit(() -> {
+                        int taskErrorCount = 0;
+                        for (final String groupTileId : taskTileIds) {
+                            taskErrorCount += addWorldCoordinatesForTile(stackId,
+                                                                         groupTileId,
+                                                                         tileIdToSpec.get(groupTileId),
+                                                                         tileIdToItemIndexes.get(groupTileId),
+                                                                         localCoordinatesList,
+                                                                         worldCoordinatesList);
+                        }
+                        return taskErrorCount;
+                    }));
+                }
+
+                try {
+                    for (final Future<Integer> future : futures) {
+                        errorCount += future.get();
+                    }
+                } catch (final InterruptedException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw e;
+                } catch (final ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw e;
+                }
+
+            } else {
+
+                long lastStatusTime = tileSpecLoadStopTime;
+                int processedCount = 0;
+                for (final String groupTileId : tileIdList) {
+
+                    final List<Integer> itemIndexes = tileIdToItemIndexes.get(groupTileId);
+                    errorCount += addWorldCoordinatesForTile(stackId,
+                                                             groupTileId,
+                                                             tileIdToSpec.get(groupTileId),
+                                                             itemIndexes,
+                                                             localCoordinatesList,
+                                                             worldCoordinatesList);
+                    processedCount += itemIndexes.size();
+
+                    if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
+                        lastStatusTime = System.currentTimeMillis();
+                        LOG.info("getWorldCoordinates: transformed {} out of {} points",
+                                 processedCount, localCoordinatesList.size());
+                    }
+                }
+
             }
 
-        }
+            final long stopTime = System.currentTimeMillis();
+            final long tileSpecLoadTime = tileSpecLoadStopTime - startTime;
+            final long transformTime = stopTime - tileSpecLoadStopTime;
+            final long totalTime = stopTime - startTime;
+
+            LOG.info("getWorldCoordinates: exit, transformed {} points in {} tiles with {} errors in {} ms ({} ms to load tile specs, {} ms to transform)",
+                     worldCoordinatesList.size(), tileIdList.size(), errorCount, totalTime, tileSpecLoadTime, transformTime);
 
-        LOG.info("getWorldCoordinates: exit, transformed {} points with {} errors in {} ms",
-                 worldCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+            response = Response.ok(worldCoordinatesList)
+                    .header(SERVER_TIMING_HEADER,
+                            "tileSpecs;dur=" + tileSpecLoadTime +
+                            ", transform;dur=" + transformTime +
+                            ", total;dur=" + totalTime)
+                    .build();
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
 
-        return worldCoordinatesList;
+        return response;
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/local-to-world-coordinates")
@@ -261,18 +368,20 @@ public class CoordinateService {
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             value = "Derive array of world coordinates for provided array of tile local coordinates",
-            notes = "The z path parameter is not used or checked."
-    )
+            notes = "The z path parameter is not used or checked.",
+            response = TileCoordinates.class,
+            responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "missing tile or coordinate data"),
             @ApiResponse(code = 404, message = "tile not found")
     })
-    public List<TileCoordinates> getWorldCoordinates(@PathParam("owner") final String owner,
-                                                     @PathParam("project") final String project,
-                                                     @PathParam("stack") final String stack,
-                                                     @PathParam("z") final Double z,
-                                                     final List<TileCoordinates> localCoordinatesList) {
-        return getWorldCoordinates(owner, project, stack, localCoordinatesList);
+    public Response getWorldCoordinates(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @PathParam("z") final Double z,
+                                        @QueryParam("numberOfThreads") final Integer numberOfThreads,
+                                        final List<TileCoordinates> localCoordinatesList) {
+        return getWorldCoordinates(owner, project, stack, numberOfThreads, localCoordinatesList);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/world-to-local-coordinates/{x},{y}")
@@ -402,18 +511,16 @@ public class CoordinateService {
                  owner, project, stack, z, worldCoordinatesList.size());
 
         final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
-
-        double currentZ = -1;
-        if (z != null) {
-            currentZ = z;
-        }
 
-        final List<List<TileCoordinates>> localCoordinatesList = new ArrayList<>(worldCoordinatesList.size());
+        final List<List<TileCoordinates>> localCoordinatesList =
+                new ArrayList<>(Collections.nCopies(worldCoordinatesList.size(), null));
         final StackId stackId = new StackId(owner, project, stack);
-        List<TileSpec> tileSpecList;
+
+        // validate coordinates and group them by layer so that each layer's tiles only need to be queried once
+        final Map<Double, List<Integer>> zToItemIndexes = new TreeMap<>();
         TileCoordinates coordinates;
         double[] world;
+        Double currentZ = z;
         int errorCount = 0;
         for (int i = 0; i < worldCoordinatesList.size(); i++) {
 
@@ -440,40 +547,276 @@ public class CoordinateService {
                     throw new IllegalArgumentException("world values must include both x and y");
                 }
 
-                tileSpecList = renderDao.getTileSpecs(stackId, world[0], world[1], currentZ);
-                localCoordinatesList.add(TileCoordinates.getLocalCoordinates(tileSpecList,
-                                                                             world[0],
-                                                                             world[1]));
+                zToItemIndexes.computeIfAbsent(currentZ, k -> new ArrayList<>()).add(i);
 
             } catch (final Throwable t) {
+                errorCount += addLocalCoordinatesError(i, coordinates, t, localCoordinatesList);
+            }
+        }
 
-                LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
+        for (final Double layerZ : zToItemIndexes.keySet()) {
+            errorCount += addLocalCoordinatesForLayer(stackId,
+                                                      layerZ,
+                                                      zToItemIndexes.get(layerZ),
+                                                      worldCoordinatesList,
+                                                      localCoordinatesList);
+        }
 
-                errorCount++;
+        LOG.info("getLocalCoordinates: inversely transformed {} points in {} layers with {} errors in {} ms",
+                 localCoordinatesList.size(), zToItemIndexes.size(), errorCount,
+                 (System.currentTimeMillis() - startTime));
 
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildWorldInstance(null, null);
+        return localCoordinatesList;
+    }
+
+    /**
+     * Inversely transforms all of the specified coordinates within one layer.
+     * When a layer has enough coordinates relative to its tile count (see {@link RenderDao#useLayerLookup}),
+     * the layer's tile bounds are retrieved with a single query and searched in memory and
+     * tile specs for all containing tiles are retrieved with a single query.
+     * Coordinates in sparsely sampled layers are resolved with one spatial query per coordinate instead.
+     * In both cases, each tile's mesh is reused for all coordinates within the tile.
+     *
+     * @return number of coordinates that could not be transformed.
+     */
+    private int addLocalCoordinatesForLayer(final StackId stackId,
+                                            final Double z,
+                                            final List<Integer> itemIndexes,
+                                            final List<TileCoordinates> worldCoordinatesList,
+                                            final List<List<TileCoordinates>> localCoordinatesList) {
+
+        final long startTime = System.currentTimeMillis();
+        long lastStatusTime = startTime;
+
+        final Map<Integer, List<String>> itemIndexToTileIds = new HashMap<>();
+        final Map<String, TileSpec> tileIdToSpec = new HashMap<>();
+
+        int errorCount = 0;
+
+        try {
+
+            if (renderDao.useLayerLookup(stackId, z, itemIndexes.size())) {
+
+                final TileBoundsRTree tree = new TileBoundsRTree(z, renderDao.getTileBoundsForZ(stackId, z));
+
+                final Set<String> layerTileIds = new TreeSet<>();
+                for (final Integer itemIndex : itemIndexes) {
+                    final double[] world = worldCoordinatesList.get(itemIndex).getWorld();
+                    final List<String> tileIds = new ArrayList<>();
+                    for (final TileBounds tileBounds : tree.findTilesContainingPoint(world[0], world[1])) {
+                        tileIds.add(tileBounds.getTileId());
+                    }
+                    itemIndexToTileIds.put(itemIndex, tileIds);
+                    layerTileIds.addAll(tileIds);
+                }
+
+                final List<String> tileIdList = new ArrayList<>(layerTileIds);
+                for (int fromIndex = 0; fromIndex < tileIdList.size(); fromIndex += MAX_TILE_IDS_PER_QUERY) {
+                    final int toIndex = Math.min(tileIdList.size(), fromIndex + MAX_TILE_IDS_PER_QUERY);
+                    for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId,
+                                                                          tileIdList.subList(fromIndex, toIndex))) {
+                        tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                    }
+                }
+
+            } else {
+
+                for (final Integer itemIndex : itemIndexes) {
+                    final TileCoordinates coordinates = worldCoordinatesList.get(itemIndex);
+                    try {
+                        final double[] world = coordinates.getWorld();
+                        final List<String> tileIds = new ArrayList<>();
+                        for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId, world[0], world[1], z)) {
+                            tileIds.add(tileSpec.getTileId());
+                            tileIdToSpec.putIfAbsent(tileSpec.getTileId(), tileSpec);
+                        }
+                        itemIndexToTileIds.put(itemIndex, tileIds);
+                    } catch (final Throwable t) {
+                        errorCount += addLocalCoordinatesError(itemIndex, coordinates, t, localCoordinatesList);
+                    }
+                }
+
+            }
+
+        } catch (final Throwable t) {
+            for (final Integer itemIndex : itemIndexes) {
+                errorCount += addLocalCoordinatesError(itemIndex,
+                                                       worldCoordinatesList.get(itemIndex),
+                                                       t,
+                                                       localCoordinatesList);
+            }
+            return errorCount;
+        }
+
+        // process coordinates in tile order so that only a bounded number of recently used meshes need to be kept
+        // (coordinates that failed per coordinate queries have already been recorded as errors)
+        final List<Integer> sortedItemIndexes = new ArrayList<>(itemIndexToTileIds.keySet());
+        sortedItemIndexes.sort(Comparator.comparing(itemIndex -> {
+            final List<String> tileIds = itemIndexToTileIds.get(itemIndex);
+            return tileIds.size() == 0 ? "" : tileIds.get(tileIds.size() - 1);
+        }));
+
+        final Map<String, CoordinateTransformMesh> tileIdToMesh =
+                new LinkedHashMap<String, CoordinateTransformMesh>(MAX_CACHED_MESHES_PER_LAYER, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<String, CoordinateTransformMesh> eldest) {
+                        return size() > MAX_CACHED_MESHES_PER_LAYER;
+                    }
+                };
+
+        int transformedCount = 0;
+        for (final Integer itemIndex : sortedItemIndexes) {
+
+            final TileCoordinates coordinates = worldCoordinatesList.get(itemIndex);
+            try {
+
+                final double[] world = coordinates.getWorld();
+                final List<TileSpec> tileSpecList = new ArrayList<>();
+                for (final String tileId : itemIndexToTileIds.get(itemIndex)) {
+                    final TileSpec tileSpec = tileIdToSpec.get(tileId);
+                    if (tileSpec != null) {
+                        tileSpecList.add(tileSpec);
+                    }
+                }
+
+                if (tileSpecList.size() == 0) {
+                    throw new IllegalArgumentException("no tile specifications found in " + stackId +
+                                                       " for world coordinates x=" + world[0] +
+                                                       ", y=" + world[1] + ", z=" + z);
                 }
-                coordinates.setError(t.getMessage());
 
-                localCoordinatesList.add(Collections.singletonList(coordinates));
+                localCoordinatesList.set(itemIndex,
+                                         TileCoordinates.getLocalCoordinates(tileSpecList,
+                                                                             world[0],
+                                                                             world[1],
+                                                                             tileIdToMesh));
+                transformedCount++;
+
+            } catch (final Throwable t) {
+                errorCount += addLocalCoordinatesError(itemIndex, coordinates, t, localCoordinatesList);
             }
 
             if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
                 lastStatusTime = System.currentTimeMillis();
-                LOG.info("getLocalCoordinates: inversely transformed {} out of {} points",
-                         localCoordinatesList.size(), worldCoordinatesList.size());
+                LOG.info("addLocalCoordinatesForLayer: inversely transformed {} out of {} points for z {}",
+                         transformedCount, itemIndexes.size(), z);
+            }
+        }
+
+        LOG.debug("addLocalCoordinatesForLayer: inversely transformed {} points in {} tiles for z {} in {} ms",
+                  transformedCount, tileIdToSpec.size(), z, (System.currentTimeMillis() - startTime));
+
+        return errorCount;
+    }
+
+    /**
+     * Transforms all of the specified coordinates within one tile using a single transform list instance.
+     *
+     * @return number of coordinates that could not be transformed.
+     */
+    private int addWorldCoordinatesForTile(final StackId stackId,
+                                           final String tileId,
+                                           final TileSpec tileSpec,
+                                           final List<Integer> itemIndexes,
+                                           final List<TileCoordinates> localCoordinatesList,
+                                           final List<TileCoordinates> worldCoordinatesList) {
+
+        int errorCount = 0;
+
+        final CoordinateTransformList<CoordinateTransform> ctl;
+        try {
+            if (tileSpec == null) {
+                throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in " + stackId);
             }
+            ctl = tileSpec.hasTransforms() ? tileSpec.getTransformList() : null;
+        } catch (final Throwable t) {
+            for (final Integer itemIndex : itemIndexes) {
+                errorCount += addWorldCoordinatesError(itemIndex,
+                                                       localCoordinatesList.get(itemIndex),
+                                                       t,
+                                                       worldCoordinatesList);
+            }
+            return errorCount;
+        }
 
+        for (final Integer itemIndex : itemIndexes) {
+            final TileCoordinates coordinates = localCoordinatesList.get(itemIndex);
+            try {
+                final double[] local = coordinates.getLocal();
+                worldCoordinatesList.set(itemIndex,
+                                         TileCoordinates.getWorldCoordinates(tileSpec, ctl, local[0], local[1]));
+            } catch (final Throwable t) {
+                errorCount += addWorldCoordinatesError(itemIndex, coordinates, t, worldCoordinatesList);
+            }
         }
 
-        LOG.info("getLocalCoordinates: inversely transformed {} points with {} errors in {} ms",
-                 localCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        return errorCount;
+    }
 
-        return localCoordinatesList;
+    private int addWorldCoordinatesError(final int itemIndex,
+                                         final TileCoordinates coordinates,
+                                         final Throwable t,
+                                         final List<TileCoordinates> worldCoordinatesList) {
+
+        LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", itemIndex, t);
+
+        final TileCoordinates errorCoordinates =
+                coordinates == null ? TileCoordinates.buildLocalInstance(null, null) : coordinates;
+        errorCoordinates.setError(t.getMessage());
+
+        worldCoordinatesList.set(itemIndex, errorCoordinates);
+
+        return 1;
+    }
+
+    private int addLocalCoordinatesError(final int itemIndex,
+                                         final TileCoordinates coordinates,
+                                         final Throwable t,
+                                         final List<List<TileCoordinates>> localCoordinatesList) {
+
+        LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", itemIndex, t);
+
+        final TileCoordinates errorCoordinates =
+                coordinates == null ? TileCoordinates.buildWorldInstance(null, null) : coordinates;
+        errorCoordinates.setError(t.getMessage());
+
+        localCoordinatesList.set(itemIndex, Collections.singletonList(errorCoordinates));
+
+        return 1;
+    }
+
+    private static ExecutorService sharedExecutor;
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+
+            Integer numberOfThreads =
+                    RenderServerProperties.getProperties().getInteger("webService.coordinateThreads");
+            if (numberOfThreads == null) {
+                numberOfThreads = Runtime.getRuntime().availableProcessors();
+            }
+
+            sharedExecutor = Executors.newFixedThreadPool(Math.max(1, numberOfThreads), runnable -> {
+                final Thread thread = new Thread(runnable, "coordinate-mapper");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            LOG.info("getSharedExecutor: created pool with {} threads", numberOfThreads);
+        }
+        return sharedExecutor;
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(CoordinateService.class);
 
     private static final long COORDINATE_PROCESSING_LOG_INTERVAL = 5000;
+
+    /** Standard header for returning processing time metrics to clients. */
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    /** Maximum number of tile ids to include in each tile spec $in query. */
+    private static final int MAX_TILE_IDS_PER_QUERY = 5000;
+
+    /** Maximum number of tile meshes to keep for reuse while inversely transforming points in a layer. */
+    private static final int MAX_CACHED_MESHES_PER_LAYER = 100;
 }
@@ -28,6 +28,7 @@ import mpicbg.models.CoordinateTransform;
 import mpicbg.models.PointMatch;
 
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.match.CanvasIdUnionFind;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.CanvasNameToPointsMap;
 import org.janelia.alignment.match.MatchCollectionId;
@@ -560,13 +561,11 @@ public class HierarchicalDataService {
                 }
             });
 
-            final List<CanvasMatches> canvasMatchesList = new ArrayList<>();
+            final CanvasIdUnionFind unionFind = new CanvasIdUnionFind();
             distinctSectionIds.forEach(
-                    sectionId -> canvasMatchesList.addAll(matchDao.getMatchesWithinGroup(matchCollectionId,
-                                                                                         sectionId,
-                                                                                         true)));
+                    sectionId -> matchDao.addConnectionsWithinGroup(matchCollectionId, sectionId, unionFind));
 
-            final SortedConnectedCanvasIdClusters idClusters = new SortedConnectedCanvasIdClusters(canvasMatchesList);
+            final SortedConnectedCanvasIdClusters idClusters = new SortedConnectedCanvasIdClusters(unionFind);
 
             LOG.info("getClusteredTileBoundsForCollection: for z {}, found {} connected tile sets with sizes {}",
                      z, idClusters.size(), idClusters.getClusterSizes());
@@ -17,17 +17,20 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.CanvasMatchesBinaryFormat;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
 import org.janelia.alignment.match.MatchTrial;
 import org.janelia.alignment.match.parameters.MatchTrialParameters;
 import org.janelia.render.service.dao.MatchDao;
+import org.janelia.render.service.dao.PipelinedBulkWriter;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.slf4j.Logger;
@@ -197,7 +200,7 @@ public class MatchService {
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/pGroup/{pGroupId}/matches")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches with the specified pGroup",
             notes = "Find all matches where the first tile is in the specified layer.",
@@ -210,22 +213,24 @@ public class MatchService {
                                          @PathParam("matchCollection") final String matchCollection,
                                          @PathParam("pGroupId") final String pGroupId,
                                          @DefaultValue("false") @QueryParam("excludeMatchDetails") final boolean excludeMatchDetails,
-                                         @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                         @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                         @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesWithPGroup: entry, owner={}, matchCollection={}, pGroupId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesWithPGroup(collectionId, mergeCollectionIdList, pGroupId, excludeMatchDetails, output);
+                output -> matchDao.writeMatchesWithPGroup(collectionId, mergeCollectionIdList, pGroupId, excludeMatchDetails, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/matchesWithinGroup")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches within the specified group",
             notes = "Find all matches where both tiles are in the specified layer.",
@@ -238,22 +243,24 @@ public class MatchService {
                                           @PathParam("matchCollection") final String matchCollection,
                                           @PathParam("groupId") final String groupId,
                                           @DefaultValue("false") @QueryParam("excludeMatchDetails") final boolean excludeMatchDetails,
-                                          @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                          @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                          @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesWithinGroup: entry, owner={}, matchCollection={}, groupId={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, excludeMatchDetails, output);
+                output -> matchDao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, excludeMatchDetails, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/matchesOutsideGroup")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches outside the specified group",
             notes = "Find all matches with one tile in the specified layer and another tile outside that layer.",
@@ -266,22 +273,24 @@ public class MatchService {
                                            @PathParam("matchCollection") final String matchCollection,
                                            @PathParam("groupId") final String groupId,
                                            @DefaultValue("false") @QueryParam("excludeMatchDetails") final boolean excludeMatchDetails,
-                                           @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                           @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                           @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesOutsideGroup: entry, owner={}, matchCollection={}, groupId={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesOutsideGroup(collectionId, mergeCollectionIdList, groupId, excludeMatchDetails, output);
+                output -> matchDao.writeMatchesOutsideGroup(collectionId, mergeCollectionIdList, groupId, excludeMatchDetails, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/matchesWith/{qGroupId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches between the specified groups",
             notes = "Find all matches with one tile in the specified p layer and another tile in the specified q layer.",
@@ -295,22 +304,24 @@ public class MatchService {
                                             @PathParam("pGroupId") final String pGroupId,
                                             @PathParam("qGroupId") final String qGroupId,
                                             @DefaultValue("false") @QueryParam("excludeMatchDetails") final boolean excludeMatchDetails,
-                                            @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                            @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                            @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesBetweenGroups: entry, owner={}, matchCollection={}, pGroupId={}, qGroupId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, qGroupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesBetweenGroups(collectionId, mergeCollectionIdList, pGroupId, qGroupId, excludeMatchDetails, output);
+                output -> matchDao.writeMatchesBetweenGroups(collectionId, mergeCollectionIdList, pGroupId, qGroupId, excludeMatchDetails, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/id/{pId}/matchesWith/{qGroupId}/id/{qId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches between the specified objects",
             notes = "Find all matches between two specific tiles.",
@@ -325,21 +336,23 @@ public class MatchService {
                                              @PathParam("pId") final String pId,
                                              @PathParam("qGroupId") final String qGroupId,
                                              @PathParam("qId") final String qId,
-                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                             @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesBetweenObjects: entry, owner={}, matchCollection={}, pGroupId={}, pId={}, qGroupId={}, qId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, pId, qGroupId, qId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesBetweenObjects(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, qId, output);
+                output -> matchDao.writeMatchesBetweenObjects(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, qId, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/id/{pId}/matchesWith/{qGroupId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches from a specified object to a specified group",
             notes = "Find all matches between a specific tile and a specific section.",
@@ -354,22 +367,24 @@ public class MatchService {
                                                 @PathParam("pId") final String pId,
                                                 @PathParam("qGroupId") final String qGroupId,
                                                 @DefaultValue("false") @QueryParam("excludeMatchDetails") final boolean excludeMatchDetails,
-                                                @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                                @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                                @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesFromObjectToGroup: entry, owner={}, matchCollection={}, pGroupId={}, pId={}, qGroupId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, pId, qGroupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesBetweenObjectAndGroup(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, excludeMatchDetails, output);
+                output -> matchDao.writeMatchesBetweenObjectAndGroup(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, excludeMatchDetails, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/id/{id}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, CanvasMatchesBinaryFormat.MEDIA_TYPE})
     @ApiOperation(
             value = "Find matches from or to a specific object",
             notes = "Find all matches that either come from or to a specific tile.",
@@ -382,17 +397,19 @@ public class MatchService {
                                              @PathParam("matchCollection") final String matchCollection,
                                              @PathParam("groupId") final String groupId,
                                              @PathParam("id") final String id,
-                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                             @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesInvolvingObject: entry, owner={}, matchCollection={}, groupId={}, id={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, id, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MatchDao.OutputFormat outputFormat = getOutputFormat(httpHeaders);
         final StreamingOutput responseOutput =
-                output -> matchDao.writeMatchesInvolvingObject(collectionId, mergeCollectionIdList, groupId, id, output);
+                output -> matchDao.writeMatchesInvolvingObject(collectionId, mergeCollectionIdList, groupId, id, outputFormat, output);
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, outputFormat);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/id/{id}")
@@ -536,13 +553,17 @@ public class MatchService {
             throw new IllegalServiceArgumentException("no matches provided");
         }
 
+        PipelinedBulkWriter.Summary summary = null;
         try {
-            matchDao.saveMatches(collectionId, canvasMatchesList);
+            summary = matchDao.saveMatches(collectionId, canvasMatchesList);
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
         final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+        if (summary != null) {
+            responseBuilder.header(SERVER_TIMING_HEADER, summary.toServerTiming());
+        }
 
         LOG.info("saveMatches: exit");
 
@@ -563,7 +584,7 @@ public class MatchService {
                                             @PathParam("matchCollection") final String matchCollection,
                                             @PathParam("pGroupId") final String pGroupId) {
 
-        return getMatchesWithPGroup(owner, matchCollection, pGroupId,true, null);
+        return getMatchesWithPGroup(owner, matchCollection, pGroupId,true, null, null);
     }
 
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/pGroup/{pGroupId}/matchCounts")
@@ -735,11 +756,35 @@ public class MatchService {
         return collectionIdList;
     }
 
-    private Response streamResponse(final StreamingOutput responseOutput) {
+    /**
+     * @return the match list format preferred by the client
+     *         (JSON unless binary matches are explicitly accepted ahead of JSON).
+     */
+    private static MatchDao.OutputFormat getOutputFormat(final HttpHeaders httpHeaders) {
+        MatchDao.OutputFormat outputFormat = MatchDao.OutputFormat.JSON;
+        if (httpHeaders != null) {
+            // acceptable media types are sorted by quality, so the first explicitly supported type wins
+            for (final MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+                if (BINARY_MATCHES_TYPE.equals(mediaType.getType() + "/" + mediaType.getSubtype())) {
+                    outputFormat = MatchDao.OutputFormat.BINARY;
+                    break;
+                } else if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                    break;
+                }
+            }
+        }
+        return outputFormat;
+    }
+
+    private Response streamResponse(final StreamingOutput responseOutput,
+                                    final MatchDao.OutputFormat outputFormat) {
+
+        final String mediaType = MatchDao.OutputFormat.BINARY.equals(outputFormat) ?
+                                 BINARY_MATCHES_TYPE : MediaType.APPLICATION_JSON;
 
         Response response = null;
         try {
-            response = Response.ok(responseOutput).build();
+            response = Response.ok(responseOutput, mediaType).build();
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -749,4 +794,8 @@ public class MatchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MatchService.class);
 
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private static final String BINARY_MATCHES_TYPE = CanvasMatchesBinaryFormat.MEDIA_TYPE;
+
 }
@@ -37,6 +37,7 @@ import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.util.ProcessTimer;
+import org.janelia.render.service.dao.PipelinedBulkWriter;
 import org.janelia.render.service.dao.RenderDao;
 import org.janelia.render.service.dao.TileSpecLayout;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
@@ -496,27 +497,31 @@ public class RenderDataService {
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             tags = "Section Data APIs",
-            value = "Get raw tile and transform specs for section with specified z")
+            value = "Get raw tile and transform specs for section with specified z",
+            notes = "Specs are streamed directly from the database, so the number of tiles is not limited.",
+            response = ResolvedTileSpecCollection.class)
     @ApiResponses(value = {
-            @ApiResponse(code = 400, message = "too many (> 50,000) tiles in section"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @PathParam("z") final Double z) {
+    public Response getResolvedTiles(@PathParam("owner") final String owner,
+                                     @PathParam("project") final String project,
+                                     @PathParam("stack") final String stack,
+                                     @PathParam("z") final Double z) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
-        ResolvedTileSpecCollection resolvedTiles = null;
+        Response response = null;
         try {
             final StackId stackId = new StackId(owner, project, stack);
-            resolvedTiles = renderDao.getResolvedTiles(stackId, z);
+            renderDao.throwExceptionIfNoTilesExist(stackId, z);
+            final StreamingOutput responseOutput =
+                    output -> renderDao.writeResolvedTiles(stackId, z, output);
+            response = Response.ok(responseOutput).build();
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
-        return resolvedTiles;
+        return response;
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/resolvedTiles")
@@ -524,33 +529,38 @@ public class RenderDataService {
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             tags = "Stack Data APIs",
-            value = "Get raw tile and transform specs for specified group or bounding box")
+            value = "Get raw tile and transform specs for specified group or bounding box",
+            notes = "Specs are streamed directly from the database, so the number of tiles is not limited.",
+            response = ResolvedTileSpecCollection.class)
     @ApiResponses(value = {
-            @ApiResponse(code = 400, message = "too many (> 50,000) matching tiles found"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @QueryParam("minZ") final Double minZ,
-                                                       @QueryParam("maxZ") final Double maxZ,
-                                                       @QueryParam("groupId") final String groupId,
-                                                       @QueryParam("minX") final Double minX,
-                                                       @QueryParam("maxX") final Double maxX,
-                                                       @QueryParam("minY") final Double minY,
-                                                       @QueryParam("maxY") final Double maxY) {
+    public Response getResolvedTiles(@PathParam("owner") final String owner,
+                                     @PathParam("project") final String project,
+                                     @PathParam("stack") final String stack,
+                                     @QueryParam("minZ") final Double minZ,
+                                     @QueryParam("maxZ") final Double maxZ,
+                                     @QueryParam("groupId") final String groupId,
+                                     @QueryParam("minX") final Double minX,
+                                     @QueryParam("maxX") final Double maxX,
+                                     @QueryParam("minY") final Double minY,
+                                     @QueryParam("maxY") final Double maxY) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, groupId={}, minX={}, maxX={}, minY={}, maxY={}",
                  owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY);
 
-        ResolvedTileSpecCollection resolvedTiles = null;
+        Response response = null;
         try {
             final StackId stackId = new StackId(owner, project, stack);
-            resolvedTiles = renderDao.getResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+            renderDao.throwExceptionIfNoTilesExist(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+            final StreamingOutput responseOutput =
+                    output -> renderDao.writeResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                                           output);
+            response = Response.ok(responseOutput).build();
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
-        return resolvedTiles;
+        return response;
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/resolvedTiles")
@@ -593,6 +603,7 @@ public class RenderDataService {
         LOG.info("saveResolvedTilesForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
+        PipelinedBulkWriter.Summary summary = null;
         try {
             if (resolvedTiles == null) {
                 throw new IllegalServiceArgumentException("no resolved tiles provided");
@@ -627,13 +638,16 @@ public class RenderDataService {
 
             resolvedTiles.validateCollection(z);
 
-            renderDao.saveResolvedTiles(stackId, resolvedTiles);
+            summary = renderDao.saveResolvedTiles(stackId, resolvedTiles);
 
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
         final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+        if (summary != null) {
+            responseBuilder.header(SERVER_TIMING_HEADER, summary.toServerTiming());
+        }
 
         LOG.info("saveResolvedTilesForZ: exit");
 
@@ -1087,6 +1101,27 @@ public class RenderDataService {
         return StackMetaDataService.getStackMetaData(stackId, renderDao);
     }
 
+    /**
+     * Only use this for read-only requests that can tolerate meta data changed by other servers being
+     * a few seconds out of date (e.g. image entity tag derivation).
+     * Anything that validates or changes stack state must use {@link #getStackMetaData} instead.
+     *
+     * @return cached meta data for the specified stack (the returned instance is shared and must not be modified).
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack does not exist.
+     */
+    public StackMetaData getCachedStackMetaData(final StackId stackId)
+            throws ObjectNotFoundException {
+        final StackMetaData stackMetaData = renderDao.getCachedStackMetaData(stackId);
+        if (stackMetaData == null) {
+            throw StackMetaDataService.getStackNotFoundException(stackId.getOwner(),
+                                                                 stackId.getProject(),
+                                                                 stackId.getStack());
+        }
+        return stackMetaData;
+    }
+
     public void setFilterSpecs(final String filterListName,
                                final RenderParameters renderParameters) {
         if (filterListName != null) {
@@ -1104,4 +1139,6 @@ public class RenderDataService {
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDataService.class);
+
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
 }
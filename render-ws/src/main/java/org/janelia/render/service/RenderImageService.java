@@ -49,7 +49,7 @@ public class RenderImageService {
         this(new RenderDataService());
     }
 
-    private RenderImageService(final RenderDataService renderDataService) {
+    RenderImageService(final RenderDataService renderDataService) {
         this.renderDataService = renderDataService;
     }
 
@@ -212,16 +212,10 @@ public class RenderImageService {
 
         LOG.info("renderJpegImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, null,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.JPEG_FORMAT, RenderServiceUtil.IMAGE_JPEG_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/jpg")
@@ -266,16 +260,10 @@ public class RenderImageService {
 
         LOG.info("renderPngImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, null,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.PNG_FORMAT, RenderServiceUtil.IMAGE_PNG_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/png")
@@ -320,16 +308,10 @@ public class RenderImageService {
 
         LOG.info("renderTiffImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, null,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.TIFF_FORMAT, RenderServiceUtil.IMAGE_TIFF_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/box/{x},{y},{width},{height},{scale}/tiff16-image")
@@ -353,16 +335,10 @@ public class RenderImageService {
 
         LOG.info("renderTiffImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, true);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, null,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.TIFF_FORMAT, RenderServiceUtil.IMAGE_TIFF_MIME_TYPE, true);
     }
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/tif")
     @GET
@@ -407,16 +383,10 @@ public class RenderImageService {
 
         LOG.info("renderJpegImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, groupId,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.JPEG_FORMAT, RenderServiceUtil.IMAGE_JPEG_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/jpg")
@@ -463,16 +433,10 @@ public class RenderImageService {
 
         LOG.info("renderPngImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, groupId,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.PNG_FORMAT, RenderServiceUtil.IMAGE_PNG_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/png")
@@ -519,16 +483,10 @@ public class RenderImageService {
 
         LOG.info("renderTiffImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForGroupBox(owner, project, stack, groupId,
+                                      x, y, z, width, height, scale,
+                                      renderQueryParameters, maxTileSpecsToRender, request,
+                                      Utils.TIFF_FORMAT, RenderServiceUtil.IMAGE_TIFF_MIME_TYPE, false);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/tif")
@@ -848,6 +806,67 @@ public class RenderImageService {
                  file);
     }
 
+    /**
+     * Renders (or retrieves the previously rendered and cached) image for the specified box.
+     * Cached images are keyed by all request parameters along with the stack's entity tag
+     * so that changes to the stack implicitly invalidate them.
+     * Tiles in LOADING stacks can change without changing the stack's entity tag,
+     * so images for those stacks are never cached.
+     */
+    private Response renderImageForGroupBox(final String owner,
+                                            final String project,
+                                            final String stack,
+                                            final String groupId,
+                                            final Double x,
+                                            final Double y,
+                                            final Double z,
+                                            final Integer width,
+                                            final Integer height,
+                                            final Double scale,
+                                            final RenderQueryParameters renderQueryParameters,
+                                            final Integer maxTileSpecsToRender,
+                                            final Request request,
+                                            final String format,
+                                            final String mimeType,
+                                            final boolean render16bit) {
+
+        final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData);
+        if (responseHelper.isModified()) {
+
+            String cacheKey = null;
+            Response response = null;
+
+            if (! stackMetaData.isLoading()) {
+                cacheKey = owner + '|' + project + '|' + stack + '|' + groupId + '|' +
+                           x + ',' + y + ',' + z + ',' + width + ',' + height + ',' + scale + '|' +
+                           format + '|' + render16bit + '|' + maxTileSpecsToRender + '|' +
+                           renderQueryParameters.buildCacheKey() + '|' +
+                           responseHelper.getStackTag().getValue();
+                response = RenderServiceUtil.getCachedImageResponse(cacheKey, mimeType, responseHelper);
+            }
+
+            if (response == null) {
+                final RenderParameters renderParameters =
+                        getRenderParametersForGroupBox(owner, project, stack, groupId,
+                                                       x, y, z, width, height, scale,
+                                                       renderQueryParameters);
+                response = RenderServiceUtil.renderImageStream(renderParameters,
+                                                               format,
+                                                               mimeType,
+                                                               maxTileSpecsToRender,
+                                                               responseHelper,
+                                                               render16bit,
+                                                               cacheKey);
+            }
+
+            return response;
+
+        } else {
+            return responseHelper.getNotModifiedResponse();
+        }
+    }
+
     private RenderParameters getRenderParametersForGroupBox(final String owner,
                                                             final String project,
                                                             final String stack,
@@ -876,7 +895,7 @@ public class RenderImageService {
                                            final String project,
                                            final String stack) {
         final StackId stackId = new StackId(owner, project, stack);
-        return renderDataService.getStackMetaData(stackId);
+        return renderDataService.getCachedStackMetaData(stackId);
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderImageService.class);
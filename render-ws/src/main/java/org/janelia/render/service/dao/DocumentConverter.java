@@ -0,0 +1,100 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Converts retrieved Mongo {@link Document} instances directly into model objects.
+ *
+ * The standard approach of serializing a document to a JSON string with {@link Document#toJson()}
+ * and then parsing that string with Jackson formats and re-parses every number in the document.
+ * For large tile spec or match queries, that roughly doubles the CPU and garbage produced for each read.
+ * This converter instead streams the document's (already decoded) values as Jackson tokens into a
+ * {@link TokenBuffer} and binds the model object from the buffer with the same {@link ObjectMapper}
+ * configuration used for JSON strings, so the resulting objects are identical.
+ *
+ * @author Eric Trautman
+ */
+public class DocumentConverter {
+
+    /**
+     * @param  document   document to convert.
+     * @param  valueType  type of object to create.
+     *
+     * @return object bound from the specified document.
+     *
+     * @throws IllegalArgumentException
+     *   if the document cannot be bound to the specified type.
+     */
+    public static <T> T toObject(final Document document,
+                                 final Class<T> valueType)
+            throws IllegalArgumentException {
+
+        final ObjectMapper mapper = JsonUtils.MAPPER;
+        final TokenBuffer buffer = new TokenBuffer(mapper, false);
+
+        try {
+            writeValue(document, buffer);
+            try (final JsonParser parser = buffer.asParser(mapper)) {
+                return mapper.readValue(parser, valueType);
+            }
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to convert document to " + valueType.getName(), e);
+        }
+    }
+
+    private static void writeValue(final Object value,
+                                   final JsonGenerator generator)
+            throws IOException {
+
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue(), generator);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (final Object element : (Collection<?>) value) {
+                writeValue(element, generator);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof ObjectId) {
+            generator.writeString(((ObjectId) value).toHexString());
+        } else if (value instanceof Date) {
+            generator.writeNumber(((Date) value).getTime());
+        } else if (value instanceof Decimal128) {
+            generator.writeNumber(((Decimal128) value).bigDecimalValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else {
+            throw new IOException("unsupported document value type " + value.getClass().getName());
+        }
+    }
+
+}
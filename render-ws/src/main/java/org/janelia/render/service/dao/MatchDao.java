@@ -22,10 +22,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.janelia.alignment.match.CanvasIdUnionFind;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.CanvasMatchesBinaryFormat;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
 import org.janelia.alignment.match.MatchTrial;
@@ -47,13 +50,22 @@ public class MatchDao {
     public static MatchDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new MatchDao(mongoClient);
+        return new MatchDao(mongoClient, SHARED_INDEXED_COLLECTION_NAMES);
     }
 
     private final MongoDatabase matchDatabase;
 
+    /** Names of collections that have already been indexed (so index checks can be skipped when saving). */
+    private final Set<String> indexedCollectionNames;
+
     MatchDao(final MongoClient client) {
-        matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        this(client, ConcurrentHashMap.newKeySet());
+    }
+
+    private MatchDao(final MongoClient client,
+                     final Set<String> indexedCollectionNames) {
+        this.matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        this.indexedCollectionNames = indexedCollectionNames;
     }
 
     /**
@@ -129,6 +141,7 @@ public class MatchDao {
                                        final List<MatchCollectionId> mergeCollectionIdList,
                                        final String pGroupId,
                                        final boolean excludeMatchDetails,
+                                       final OutputFormat outputFormat,
                                        final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -141,13 +154,14 @@ public class MatchDao {
 
         final Document query = new Document("pGroupId", pGroupId);
 
-        writeMatches(collectionList, query, excludeMatchDetails, outputStream);
+        writeMatches(collectionList, query, excludeMatchDetails, outputFormat, outputStream);
     }
 
     public void writeMatchesWithinGroup(final MatchCollectionId collectionId,
                                         final List<MatchCollectionId> mergeCollectionIdList,
                                         final String groupId,
                                         final boolean excludeMatchDetails,
+                                        final OutputFormat outputFormat,
                                         final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -160,13 +174,14 @@ public class MatchDao {
 
         final Document query = new Document("pGroupId", groupId).append("qGroupId", groupId);
 
-        writeMatches(collectionList, query, excludeMatchDetails, outputStream);
+        writeMatches(collectionList, query, excludeMatchDetails, outputFormat, outputStream);
     }
 
     public void writeMatchesOutsideGroup(final MatchCollectionId collectionId,
                                          final List<MatchCollectionId> mergeCollectionIdList,
                                          final String groupId,
                                          final boolean excludeMatchDetails,
+                                         final OutputFormat outputFormat,
                                          final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -179,7 +194,7 @@ public class MatchDao {
 
         final Document query = getOutsideGroupQuery(groupId);
 
-        writeMatches(collectionList, query, excludeMatchDetails, outputStream);
+        writeMatches(collectionList, query, excludeMatchDetails, outputFormat, outputStream);
     }
 
     public List<CanvasMatches> getMatchesWithinGroup(final MatchCollectionId collectionId,
@@ -199,6 +214,51 @@ public class MatchDao {
         return getMatches(collection, query, excludeMatchDetails);
     }
 
+    /**
+     * Adds connections for all canvas pairs within the specified group to the specified union-find.
+     * Only canvas id fields are retrieved, so match point data is never loaded.
+     *
+     * @param  collectionId  identifies the match collection.
+     * @param  groupId       identifies the group.
+     * @param  unionFind     union-find to update.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if the match collection does not exist.
+     */
+    public void addConnectionsWithinGroup(final MatchCollectionId collectionId,
+                                          final String groupId,
+                                          final CanvasIdUnionFind unionFind)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        LOG.debug("addConnectionsWithinGroup: entry, collectionId={}, groupId={}",
+                  collectionId, groupId);
+
+        final MongoCollection<Document> collection = getExistingCollection(collectionId);
+
+        MongoUtil.validateRequiredParameter("groupId", groupId);
+
+        final Document query = new Document("pGroupId", groupId).append("qGroupId", groupId);
+
+        int count = 0;
+        try (final MongoCursor<Document> cursor =
+                     collection.find(query).projection(CANVAS_IDS_ONLY).batchSize(10_000).iterator()) {
+            while (cursor.hasNext()) {
+                final Document document = cursor.next();
+                unionFind.addConnection(document.getString("pGroupId"),
+                                        document.getString("pId"),
+                                        document.getString("qGroupId"),
+                                        document.getString("qId"));
+                count++;
+            }
+        }
+
+        LOG.debug("addConnectionsWithinGroup: added {} connections from {}.find({},{})",
+                  count, MongoUtil.fullName(collection), query.toJson(), CANVAS_IDS_ONLY.toJson());
+    }
+
     public List<CanvasMatches> getMatchesOutsideGroup(final MatchCollectionId collectionId,
                                                       final String groupId,
                                                       final boolean excludeMatchDetails)
@@ -221,6 +281,7 @@ public class MatchDao {
                                           final String pGroupId,
                                           final String qGroupId,
                                           final boolean excludeMatchDetails,
+                                          final OutputFormat outputFormat,
                                           final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -233,7 +294,7 @@ public class MatchDao {
                                                                                          mergeCollectionIdList);
         final Document query = getNormalizedGroupIdQuery(pGroupId, qGroupId);
 
-        writeMatches(collectionList, query, excludeMatchDetails, outputStream);
+        writeMatches(collectionList, query, excludeMatchDetails, outputFormat, outputStream);
     }
 
     public void writeMatchesBetweenObjectAndGroup(final MatchCollectionId collectionId,
@@ -242,6 +303,7 @@ public class MatchDao {
                                                   final String pId,
                                                   final String qGroupId,
                                                   final boolean excludeMatchDetails,
+                                                  final OutputFormat outputFormat,
                                                   final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -256,7 +318,7 @@ public class MatchDao {
 
         final Document query = getInvolvingObjectAndGroupQuery(pGroupId, pId, qGroupId);
 
-        writeMatches(collectionList, query, excludeMatchDetails, outputStream);
+        writeMatches(collectionList, query, excludeMatchDetails, outputFormat, outputStream);
     }
 
     public CanvasMatches getMatchesBetweenObjects(final MatchCollectionId collectionId,
@@ -276,7 +338,7 @@ public class MatchDao {
         CanvasMatches canvasMatches = null;
         try (final MongoCursor<Document> cursor = collection.find(query).iterator()) {
             if (cursor.hasNext()) {
-                canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+                canvasMatches = DocumentConverter.toObject(cursor.next(), CanvasMatches.class);
                 matchCount = canvasMatches.size();
             }
         }
@@ -298,6 +360,7 @@ public class MatchDao {
                                            final String pId,
                                            final String qGroupId,
                                            final String qId,
+                                           final OutputFormat outputFormat,
                                            final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -311,13 +374,14 @@ public class MatchDao {
 
         final Document query = getNormalizedIdQuery(pGroupId, pId, qGroupId, qId);
 
-        writeMatches(collectionList, query, false, outputStream);
+        writeMatches(collectionList, query, false, outputFormat, outputStream);
     }
 
     public void writeMatchesInvolvingObject(final MatchCollectionId collectionId,
                                             final List<MatchCollectionId> mergeCollectionIdList,
                                             final String groupId,
                                             final String id,
+                                            final OutputFormat outputFormat,
                                             final OutputStream outputStream)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
@@ -329,7 +393,7 @@ public class MatchDao {
                                                                                          mergeCollectionIdList);
         final Document query = getInvolvingObjectQuery(groupId, id);
 
-        writeMatches(collectionList, query, false, outputStream);
+        writeMatches(collectionList, query, false, outputFormat, outputStream);
     }
 
     public void removeMatchesInvolvingObject(final MatchCollectionId collectionId,
@@ -402,8 +466,19 @@ public class MatchDao {
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
     }
 
-    public void saveMatches(final MatchCollectionId collectionId,
-                            final List<CanvasMatches> matchesList)
+    /**
+     * Saves the specified matches to the database, replacing any existing matches for the same canvas pairs.
+     *
+     * @param  collectionId  identifies the target collection.
+     * @param  matchesList   matches to save.
+     *
+     * @return summary of the save (including throughput).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public PipelinedBulkWriter.Summary saveMatches(final MatchCollectionId collectionId,
+                                                   final List<CanvasMatches> matchesList)
             throws IllegalArgumentException {
 
         MongoUtil.validateRequiredParameter("matchesList", matchesList);
@@ -411,37 +486,42 @@ public class MatchDao {
         LOG.debug("saveMatches: entry, collectionId={}, matchesList.size()={}",
                   collectionId, matchesList.size());
 
-        if (matchesList.size() > 0) {
+        final MongoCollection<Document> collection =
+                matchDatabase.getCollection(collectionId.getDbCollectionName());
 
-            final MongoCollection<Document> collection =
-                    matchDatabase.getCollection(collectionId.getDbCollectionName());
-
-            ensureMatchIndexes(collection);
-
-            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
-
-            final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
-            Document filter;
-            Document matchesObject;
-            for (final CanvasMatches canvasMatches : matchesList) {
-                canvasMatches.normalize();
-                filter = new Document(
-                        "pGroupId", canvasMatches.getpGroupId()).append(
-                        "pId", canvasMatches.getpId()).append(
-                        "qGroupId", canvasMatches.getqGroupId()).append(
-                        "qId", canvasMatches.getqId());
-                matchesObject = Document.parse(canvasMatches.toJson());
-                modelList.add(new ReplaceOneModel<>(filter, matchesObject, upsertOption));
+        if (matchesList.size() > 0) {
+            // Index creation checks are skipped for collections this server has already indexed,
+            // but a collection dropped elsewhere (e.g. through another server) is recreated by
+            // this save without indexes, so always ensure indexes for collections that don't exist yet.
+            final String collectionName = collectionId.getDbCollectionName();
+            if ((! indexedCollectionNames.contains(collectionName)) || (! collectionExists(collectionName))) {
+                ensureMatchIndexes(collection);
+                indexedCollectionNames.add(collectionName);
             }
+        }
 
-            final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
+
+        final PipelinedBulkWriter.Summary summary =
+                PipelinedBulkWriter.write(collection,
+                                          matchesList,
+                                          canvasMatches -> {
+                                              canvasMatches.normalize();
+                                              final Document filter = new Document(
+                                                      "pGroupId", canvasMatches.getpGroupId()).append(
+                                                      "pId", canvasMatches.getpId()).append(
+                                                      "qGroupId", canvasMatches.getqGroupId()).append(
+                                                      "qId", canvasMatches.getqId());
+                                              final Document matchesObject = Document.parse(canvasMatches.toJson());
+                                              return new ReplaceOneModel<>(filter, matchesObject, upsertOption);
+                                          },
+                                          BULK_WRITE_BATCH_SIZE);
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("matches", result, matchesList.size());
-                LOG.debug("saveMatches: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(collection));
-            }
+        if (matchesList.size() > 0) {
+            LOG.info("saveMatches: {} in {}", summary.toMessage("matches"), MongoUtil.fullName(collection));
         }
+
+        return summary;
     }
 
     public void removeAllMatches(final MatchCollectionId collectionId)
@@ -452,6 +532,8 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
 
         collection.drop();
+
+        indexedCollectionNames.remove(collectionId.getDbCollectionName());
     }
 
     /**
@@ -484,6 +566,8 @@ public class MatchDao {
         }
 
         MongoUtil.renameCollection(matchDatabase, fromCollectionName, toCollectionName);
+
+        indexedCollectionNames.remove(fromCollectionName);
     }
 
     public MatchTrial getMatchTrial(final String trialId)
@@ -667,7 +751,7 @@ public class MatchDao {
 
         try (final MongoCursor<Document> cursor = collection.find(query).projection(projection).iterator()) {
             while (cursor.hasNext()) {
-                canvasMatchesList.add(CanvasMatches.fromJson(cursor.next().toJson()));
+                canvasMatchesList.add(DocumentConverter.toObject(cursor.next(), CanvasMatches.class));
             }
         }
 
@@ -682,14 +766,16 @@ public class MatchDao {
     private void writeMatches(final List<MongoCollection<Document>> collectionList,
                               final Document query,
                               final boolean excludeMatchDetails,
+                              final OutputFormat outputFormat,
                               final OutputStream outputStream)
             throws IOException {
 
         final Document projection = excludeMatchDetails ? EXCLUDE_MONGO_ID_KEY_AND_MATCHES : EXCLUDE_MONGO_ID_KEY;
+        final MatchesOutput matchesOutput = new MatchesOutput(outputFormat, outputStream);
 
         if (collectionList.size() > 1) {
 
-            writeMergedMatches(collectionList, query, projection, outputStream);
+            writeMergedMatches(collectionList, query, projection, matchesOutput);
 
         } else {
 
@@ -697,33 +783,24 @@ public class MatchDao {
 
             final ProcessTimer timer = new ProcessTimer();
 
-            outputStream.write(OPEN_BRACKET);
-
-            int count = 0;
             try (final MongoCursor<Document> cursor = collection.find(query).projection(projection).sort(MATCH_ORDER_BY).iterator()) {
 
-                Document document;
                 while (cursor.hasNext()) {
 
-                    if (count > 0) {
-                        outputStream.write(COMMA_WITH_NEW_LINE);
-                    }
-
-                    document = cursor.next();
-                    outputStream.write(document.toJson().getBytes());
-                    count++;
+                    matchesOutput.write(cursor.next());
 
                     if (timer.hasIntervalPassed()) {
-                        LOG.debug("writeMatches: data written for {} matches", count);
+                        LOG.debug("writeMatches: data written for {} matches", matchesOutput.getCount());
                     }
                 }
             }
 
-            outputStream.write(CLOSE_BRACKET);
+            matchesOutput.finish();
 
             if (LOG.isDebugEnabled()) {
-                LOG.debug("writeMatches: wrote data for {} matches returned by {}.find({},{}), elapsedSeconds={}",
-                          count, MongoUtil.fullName(collection), query.toJson(), projection.toJson(), timer.getElapsedSeconds());
+                LOG.debug("writeMatches: wrote {} data for {} matches returned by {}.find({},{}), elapsedSeconds={}",
+                          outputFormat, matchesOutput.getCount(), MongoUtil.fullName(collection), query.toJson(),
+                          projection.toJson(), timer.getElapsedSeconds());
             }
         }
     }
@@ -731,16 +808,12 @@ public class MatchDao {
     private void writeMergedMatches(final List<MongoCollection<Document>> collectionList,
                                     final Document query,
                                     final Document projection,
-                                    final OutputStream outputStream)
+                                    final MatchesOutput matchesOutput)
             throws IOException {
 
         // exclude mongo id from results
         final ProcessTimer timer = new ProcessTimer();
 
-        outputStream.write(OPEN_BRACKET);
-
-        int count = 0;
-
         final int numberOfCollections = collectionList.size();
         final List<MongoCursor<Document>> cursorList = new ArrayList<>(numberOfCollections);
         final List<CanvasMatches> matchesList = new ArrayList<>(numberOfCollections);
@@ -762,17 +835,13 @@ public class MatchDao {
 
             CanvasMatches mergedMatches;
             while (matchesList.size() > 0) {
-                if (count > 0) {
-                    outputStream.write(COMMA_WITH_NEW_LINE);
-                }
 
                 mergedMatches = getNextMergedMatches(cursorList, matchesList);
 
-                outputStream.write(mergedMatches.toJson().getBytes());
-                count++;
+                matchesOutput.write(mergedMatches);
 
                 if (timer.hasIntervalPassed()) {
-                    LOG.debug("writeMergedMatches: data written for {} matches", count);
+                    LOG.debug("writeMergedMatches: data written for {} matches", matchesOutput.getCount());
                 }
             }
 
@@ -790,7 +859,7 @@ public class MatchDao {
 
         }
 
-        outputStream.write(CLOSE_BRACKET);
+        matchesOutput.finish();
 
         if (LOG.isDebugEnabled()) {
             final StringBuilder collectionNames = new StringBuilder(512);
@@ -801,7 +870,8 @@ public class MatchDao {
                 collectionNames.append(MongoUtil.fullName(collectionList.get(i)));
             }
             LOG.debug("writeMergedMatches: wrote data for {} matches returned by {}.find({},{}).sort({}), elapsedSeconds={}",
-                      count, collectionNames, query.toJson(), projection.toJson(), MATCH_ORDER_BY_JSON, timer.getElapsedSeconds());
+                      matchesOutput.getCount(), collectionNames, query.toJson(), projection.toJson(), MATCH_ORDER_BY_JSON,
+                      timer.getElapsedSeconds());
         }
     }
 
@@ -852,7 +922,7 @@ public class MatchDao {
         CanvasMatches canvasMatches = null;
         final MongoCursor<Document> cursor = cursorList.get(index);
         if (cursor.hasNext()) {
-            canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+            canvasMatches = DocumentConverter.toObject(cursor.next(), CanvasMatches.class);
         }
         matchesList.set(index, canvasMatches);
         return (canvasMatches == null ? 1 : 0);
@@ -949,6 +1019,13 @@ public class MatchDao {
         return new Document(QueryOperators.OR, queryList);
     }
 
+    /**
+     * @return true if the specified collection exists (only requests information for that collection).
+     */
+    private boolean collectionExists(final String collectionName) {
+        return matchDatabase.listCollections().filter(new Document("name", collectionName)).first() != null;
+    }
+
     private void ensureMatchIndexes(final MongoCollection<Document> collection) {
         MongoUtil.createIndex(collection,
                               new Document("pGroupId", 1).append(
@@ -983,6 +1060,83 @@ public class MatchDao {
         MongoUtil.validateRequiredParameter("qId", qId);
     }
 
+    /**
+     * Supported formats for written match lists.
+     */
+    public enum OutputFormat {
+        /** JSON array of {@link CanvasMatches}. */
+        JSON,
+        /** Packed binary stream (see {@link CanvasMatchesBinaryFormat}). */
+        BINARY
+    }
+
+    /**
+     * Writes retrieved match documents (or merged matches) to a stream in the requested format.
+     */
+    private static class MatchesOutput {
+
+        private final OutputStream outputStream;
+        private final CanvasMatchesBinaryFormat.Writer binaryWriter;
+        private int count;
+
+        MatchesOutput(final OutputFormat outputFormat,
+                      final OutputStream outputStream)
+                throws IOException {
+
+            this.outputStream = outputStream;
+            this.count = 0;
+
+            if (OutputFormat.BINARY.equals(outputFormat)) {
+                this.binaryWriter = new CanvasMatchesBinaryFormat.Writer(outputStream);
+            } else {
+                this.binaryWriter = null;
+                outputStream.write(OPEN_BRACKET);
+            }
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        void write(final Document document)
+                throws IOException {
+            if (binaryWriter == null) {
+                writeJsonSeparatorIfNecessary();
+                outputStream.write(document.toJson().getBytes());
+            } else {
+                binaryWriter.write(DocumentConverter.toObject(document, CanvasMatches.class));
+            }
+            count++;
+        }
+
+        void write(final CanvasMatches canvasMatches)
+                throws IOException {
+            if (binaryWriter == null) {
+                writeJsonSeparatorIfNecessary();
+                outputStream.write(canvasMatches.toJson().getBytes());
+            } else {
+                binaryWriter.write(canvasMatches);
+            }
+            count++;
+        }
+
+        void finish()
+                throws IOException {
+            if (binaryWriter == null) {
+                outputStream.write(CLOSE_BRACKET);
+            } else {
+                binaryWriter.finish();
+            }
+        }
+
+        private void writeJsonSeparatorIfNecessary()
+                throws IOException {
+            if (count > 0) {
+                outputStream.write(COMMA_WITH_NEW_LINE);
+            }
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(MatchDao.class);
 
     private static final Document MATCH_ORDER_BY =
@@ -990,6 +1144,8 @@ public class MatchDao {
     private static final String MATCH_ORDER_BY_JSON = MATCH_ORDER_BY.toJson();
     private static final Document EXCLUDE_MONGO_ID_KEY = new Document("_id", 0);
     private static final Document EXCLUDE_MONGO_ID_KEY_AND_MATCHES = new Document("_id", 0).append("matches", 0);
+    private static final Document CANVAS_IDS_ONLY =
+            new Document("_id", 0).append("pGroupId", 1).append("pId", 1).append("qGroupId", 1).append("qId", 1);
     private static final byte[] OPEN_BRACKET = "[".getBytes();
     private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
     private static final byte[] CLOSE_BRACKET = "]".getBytes();
@@ -997,4 +1153,7 @@ public class MatchDao {
     private static final IndexOptions MATCH_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions MATCH_B_OPTIONS = new IndexOptions().background(true).name("B");
 
+    private static final Set<String> SHARED_INDEXED_COLLECTION_NAMES = ConcurrentHashMap.newKeySet();
+    private static final int BULK_WRITE_BATCH_SIZE = 1000;
+
 }
@@ -0,0 +1,203 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.WriteModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.janelia.render.service.util.RenderServerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes large lists of objects to a collection as a pipeline of bounded size unordered bulk writes.
+ *
+ * Each batch converts its own objects to write models, so conversion for one batch runs in parallel with
+ * database writes for other batches and only a bounded number of converted documents are held in memory.
+ * Batches are processed by a shared pool (sized by the webService.bulkWriteThreads property) so that
+ * concurrent ingest requests cannot overwhelm the database connection pool.
+ *
+ * @author Eric Trautman
+ */
+public class PipelinedBulkWriter {
+
+    /**
+     * Summary of a pipelined write.
+     */
+    public static class Summary {
+
+        private final int documentCount;
+        private final int matchedCount;
+        private final boolean acknowledged;
+        private final long elapsedMilliseconds;
+
+        public Summary(final int documentCount,
+                       final int matchedCount,
+                       final boolean acknowledged,
+                       final long elapsedMilliseconds) {
+            this.documentCount = documentCount;
+            this.matchedCount = matchedCount;
+            this.acknowledged = acknowledged;
+            this.elapsedMilliseconds = elapsedMilliseconds;
+        }
+
+        public int getDocumentCount() {
+            return documentCount;
+        }
+
+        public long getElapsedMilliseconds() {
+            return elapsedMilliseconds;
+        }
+
+        public long getDocumentsPerSecond() {
+            return elapsedMilliseconds > 0 ? (documentCount * 1000L) / elapsedMilliseconds : documentCount;
+        }
+
+        /**
+         * @return Server-Timing response header value describing this summary.
+         */
+        public String toServerTiming() {
+            return "write;dur=" + elapsedMilliseconds +
+                   ";desc=\"" + documentCount + " documents at " + getDocumentsPerSecond() + " docs/s\"";
+        }
+
+        /**
+         * @return log message describing this summary.
+         */
+        public String toMessage(final String context) {
+            final StringBuilder message = new StringBuilder(128);
+            message.append("processed ").append(documentCount).append(" ").append(context);
+            if (acknowledged) {
+                message.append(" with ").append(documentCount - matchedCount).append(" inserts and ");
+                message.append(matchedCount).append(" updates");
+            } else {
+                message.append(" (result NOT acknowledged)");
+            }
+            message.append(" in ").append(elapsedMilliseconds).append(" ms (");
+            message.append(getDocumentsPerSecond()).append(" docs/s)");
+            return message.toString();
+        }
+    }
+
+    /**
+     * Converts and writes the specified objects.
+     *
+     * @param  collection  target collection.
+     * @param  objects     objects to write.
+     * @param  toModel     function for converting each object to a write model.
+     * @param  batchSize   maximum number of documents to include in each bulk write.
+     *
+     * @return summary of the completed write.
+     *
+     * @throws IllegalStateException
+     *   if the write is interrupted.
+     */
+    public static <T> Summary write(final MongoCollection<Document> collection,
+                                    final List<T> objects,
+                                    final Function<T, WriteModel<Document>> toModel,
+                                    final int batchSize)
+            throws IllegalStateException {
+
+        final long startTime = System.currentTimeMillis();
+
+        final AtomicInteger matchedCount = new AtomicInteger(0);
+        final AtomicInteger unacknowledgedCount = new AtomicInteger(0);
+
+        final List<List<T>> batches = new ArrayList<>();
+        for (int fromIndex = 0; fromIndex < objects.size(); fromIndex += batchSize) {
+            batches.add(objects.subList(fromIndex, Math.min(fromIndex + batchSize, objects.size())));
+        }
+
+        if (batches.size() == 1) {
+
+            // no need to pipeline a single batch
+            writeBatch(collection, batches.get(0), toModel, matchedCount, unacknowledgedCount);
+
+        } else if (batches.size() > 1) {
+
+            final ExecutorService executorService = getSharedExecutor();
+            final List<Future<?>> futures = new ArrayList<>(batches.size());
+            for (final List<T> batch : batches) {
+                futures.add(executorService.submit(
+                        () -> writeBatch(collection, batch, toModel, matchedCount, unacknowledgedCount)));
+            }
+
+            try {
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while writing to " + MongoUtil.fullName(collection), e);
+            } catch (final ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("failed to write to " + MongoUtil.fullName(collection), cause);
+            }
+
+        }
+
+        return new Summary(objects.size(),
+                           matchedCount.get(),
+                           unacknowledgedCount.get() == 0,
+                           System.currentTimeMillis() - startTime);
+    }
+
+    private static <T> void writeBatch(final MongoCollection<Document> collection,
+                                       final List<T> batch,
+                                       final Function<T, WriteModel<Document>> toModel,
+                                       final AtomicInteger matchedCount,
+                                       final AtomicInteger unacknowledgedCount) {
+
+        final List<WriteModel<Document>> modelList = new ArrayList<>(batch.size());
+        for (final T object : batch) {
+            modelList.add(toModel.apply(object));
+        }
+
+        final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+
+        if (result.wasAcknowledged()) {
+            matchedCount.addAndGet(result.getMatchedCount());
+        } else {
+            unacknowledgedCount.incrementAndGet();
+        }
+    }
+
+    private static ExecutorService sharedExecutor;
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+
+            Integer numberOfThreads = RenderServerProperties.getProperties().getInteger("webService.bulkWriteThreads");
+            if (numberOfThreads == null) {
+                numberOfThreads = DEFAULT_NUMBER_OF_THREADS;
+            }
+
+            sharedExecutor = Executors.newFixedThreadPool(Math.max(1, numberOfThreads), runnable -> {
+                final Thread thread = new Thread(runnable, "bulk-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            LOG.info("getSharedExecutor: created pool with {} threads", numberOfThreads);
+        }
+        return sharedExecutor;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipelinedBulkWriter.class);
+
+    private static final int DEFAULT_NUMBER_OF_THREADS = 4;
+}
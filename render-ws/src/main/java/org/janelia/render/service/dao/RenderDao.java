@@ -33,11 +33,14 @@ import java.util.TreeSet;
 
 import org.bson.Document;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.TransformSpec;
@@ -62,13 +65,25 @@ public class RenderDao {
     public static RenderDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new RenderDao(mongoClient);
+        return new RenderDao(mongoClient, StackMetaDataCache.getSharedInstance());
     }
 
     private final MongoDatabase renderDatabase;
+    private final StackMetaDataCache stackMetaDataCache;
 
     public RenderDao(final MongoClient client) {
-        renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this(client, new StackMetaDataCache(0));
+    }
+
+    /**
+     * @param  client              client for the render database.
+     * @param  stackMetaDataCache  cache for {@link #getCachedStackMetaData} lookups
+     *                             (should be shared by all DAO instances using the same database).
+     */
+    public RenderDao(final MongoClient client,
+                     final StackMetaDataCache stackMetaDataCache) {
+        this.renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this.stackMetaDataCache = stackMetaDataCache;
     }
 
     /**
@@ -215,7 +230,7 @@ public class RenderDao {
                                               MongoUtil.fullName(tileCollection) + " collection");
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
+        final TileSpec tileSpec = DocumentConverter.toObject(document, TileSpec.class);
 
         if (resolveTransformReferences) {
             resolveTransformReferencesForTiles(stackId, Collections.singletonList(tileSpec));
@@ -325,6 +340,12 @@ public class RenderDao {
         return tileSpecs;
     }
 
+    /**
+     * Writes the specified world coordinates with the ids of all tiles that contain them.
+     * Layers with enough coordinates relative to their tile count (see {@link #useLayerLookup}) are resolved
+     * with one tile bounds query per layer and an in-memory spatial search.  Coordinates in other layers are
+     * resolved with one spatial query per coordinate.
+     */
     public void writeCoordinatesWithTileIds(final StackId stackId,
                                             final Double z,
                                             final List<TileCoordinates> worldCoordinatesList,
@@ -347,15 +368,63 @@ public class RenderDao {
         final byte[] comma = ",".getBytes();
         final byte[] closeBracket = "]".getBytes();
 
+        // validate all coordinates and group them by layer before writing anything
+        final double[] coordinateZValues = new double[worldCoordinatesList.size()];
+        final Map<Double, List<Integer>> zToIndexes = new HashMap<>();
+        double[] world;
+        for (int i = 0; i < worldCoordinatesList.size(); i++) {
+
+            world = worldCoordinatesList.get(i).getWorld();
+
+            if (world == null) {
+                throw new IllegalArgumentException("world values are missing for element " + i);
+            } else if (z == null) {
+                if (world.length < 3) {
+                    throw new IllegalArgumentException("world values must include x, y, and z for element " + i);
+                }
+                coordinateZValues[i] = world[2];
+            } else {
+                if (world.length < 2) {
+                    throw new IllegalArgumentException("world values must include both x and y for element " + i);
+                }
+                coordinateZValues[i] = z;
+            }
+
+            zToIndexes.computeIfAbsent(coordinateZValues[i], k -> new ArrayList<>()).add(i);
+        }
+
+        // resolve tile ids for densely sampled layers one layer at a time
+        final List<List<String>> layerLookupTileIds = new ArrayList<>(Collections.nCopies(worldCoordinatesList.size(),
+                                                                                          null));
+        for (final Double layerZ : zToIndexes.keySet()) {
+            final List<Integer> layerIndexes = zToIndexes.get(layerZ);
+            if (useLayerLookup(tileCollection, layerZ, layerIndexes.size())) {
+                List<TileBounds> layerTileBounds;
+                try {
+                    layerTileBounds = getTileBounds(stackId, new Document("z", layerZ));
+                } catch (final ObjectNotFoundException e) {
+                    // missing stacks simply have no tiles for the coordinates (consistent with per coordinate queries)
+                    layerTileBounds = Collections.emptyList();
+                }
+                final TileBoundsRTree tree = new TileBoundsRTree(layerZ, layerTileBounds);
+                for (final Integer i : layerIndexes) {
+                    world = worldCoordinatesList.get(i).getWorld();
+                    final List<String> tileIds = new ArrayList<>();
+                    for (final TileBounds tileBounds : tree.findTilesContainingPoint(world[0], world[1])) {
+                        tileIds.add(tileBounds.getTileId());
+                    }
+                    layerLookupTileIds.set(i, tileIds);
+                }
+            }
+        }
+
         int coordinateCount = 0;
 
-        double[] world;
-        double coordinateZ = z == null ? -1 : z;
         Document tileQuery = new Document();
         MongoCursor<Document> cursor = null;
         Document document;
         Object tileId;
-        String coordinatesJson;
+        List<String> tileIds;
         try {
 
             outputStream.write(openBracket);
@@ -366,61 +435,49 @@ public class RenderDao {
                 worldCoordinates = worldCoordinatesList.get(i);
                 world = worldCoordinates.getWorld();
 
-                if (world == null) {
-                    throw new IllegalArgumentException("world values are missing for element " + i);
-                } else if (z == null) {
-                    if (world.length < 3) {
-                        throw new IllegalArgumentException("world values must include x, y, and z for element " + i);
-                    }
-                    coordinateZ = world[2];
-                } else {
-                    if (world.length < 2) {
-                        throw new IllegalArgumentException("world values must include both x and y for element " + i);
-                    }
-                }
+                tileIds = layerLookupTileIds.get(i);
+
+                if (tileIds == null) {
 
-                tileQuery = getIntersectsBoxQuery(coordinateZ, world[0], world[1], world[0], world[1]);
+                    tileQuery = getIntersectsBoxQuery(coordinateZValues[i], world[0], world[1], world[0], world[1]);
 
-                // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
-                // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
-                cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
+                    // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
+                    // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
+                    cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
+
+                    tileIds = new ArrayList<>();
+                    while (cursor.hasNext()) {
+                        document = cursor.next();
+                        tileId = document.get("tileId");
+                        tileIds.add(tileId == null ? null : tileId.toString());
+                    }
+
+                    cursor.close();
+                }
 
                 if (i > 0) {
                     outputStream.write(comma);
                 }
                 outputStream.write(openBracket);
 
-                if (cursor.hasNext()) {
-
-                    document = cursor.next();
-                    tileId = document.get("tileId");
-                    if (tileId != null) {
-                        worldCoordinates.setTileId(tileId.toString());
-                    }
-                    coordinatesJson = worldCoordinates.toJson();
-                    outputStream.write(coordinatesJson.getBytes());
+                if (tileIds.size() > 0) {
 
-                    while (cursor.hasNext()) {
-                        document = cursor.next();
-                        tileId = document.get("tileId");
-                        if (tileId != null) {
-                            worldCoordinates.setTileId(tileId.toString());
+                    for (int j = 0; j < tileIds.size(); j++) {
+                        if (tileIds.get(j) != null) {
+                            worldCoordinates.setTileId(tileIds.get(j));
                         }
-                        coordinatesJson = worldCoordinates.toJson();
-
-                        outputStream.write(comma);
-                        outputStream.write(coordinatesJson.getBytes());
+                        if (j > 0) {
+                            outputStream.write(comma);
+                        }
+                        outputStream.write(worldCoordinates.toJson().getBytes());
                     }
 
                 } else {
 
-                    coordinatesJson = worldCoordinates.toJson();
-                    outputStream.write(coordinatesJson.getBytes());
+                    outputStream.write(worldCoordinates.toJson().getBytes());
 
                 }
 
-                cursor.close();
-
                 outputStream.write(closeBracket);
 
                 coordinateCount++;
@@ -438,8 +495,8 @@ public class RenderDao {
             }
         }
 
-        LOG.debug("writeCoordinatesWithTileIds: wrote data for {} coordinates returned by queries like {}.find({},{}).sort({}), elapsedSeconds={}",
-                  coordinateCount, MongoUtil.fullName(tileCollection),
+        LOG.debug("writeCoordinatesWithTileIds: wrote data for {} coordinates in {} layers (last per coordinate query was {}.find({},{}).sort({})), elapsedSeconds={}",
+                  coordinateCount, zToIndexes.size(), MongoUtil.fullName(tileCollection),
                   tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
     }
 
@@ -534,17 +591,120 @@ public class RenderDao {
                                               renderParameters.getTileSpecs());
     }
 
+    /**
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack cannot be found or if no tile exists in the specified layer.
+     */
+    public void throwExceptionIfNoTilesExist(final StackId stackId,
+                                             final Double z)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        if (! hasMatchingTile(stackId, new Document("z", z))) {
+            throwExceptionIfStackIsMissing(stackId);
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId +" for z=" + z);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if no tile can be found for the specified criteria.
+     */
+    public void throwExceptionIfNoTilesExist(final StackId stackId,
+                                             final Double minZ,
+                                             final Double maxZ,
+                                             final String groupId,
+                                             final Double minX,
+                                             final Double maxX,
+                                             final Double minY,
+                                             final Double maxY)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+        if (! hasMatchingTile(stackId, query)) {
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId +" for " + query);
+        }
+    }
+
+    /**
+     * Writes the resolved tile spec collection (JSON) for all tiles in the specified layer
+     * directly from database cursors to the specified stream.
+     * Unlike {@link #getResolvedTiles(StackId, Double)}, tile specs are never all held in memory
+     * and the number of tiles is not limited.
+     *
+     * Tile specs are written before the transform specs they reference.
+     * Use {@link #throwExceptionIfNoTilesExist(StackId, Double)} to check for missing data
+     * before writing begins.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double z,
+                                   final OutputStream outputStream)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        writeResolvedTiles(stackId, new Document("z", z), outputStream);
+    }
+
+    /**
+     * Writes the resolved tile spec collection (JSON) for all tiles that match the specified criteria
+     * directly from database cursors to the specified stream.
+     * Unlike {@link #getResolvedTiles(StackId, Double, Double, String, Double, Double, Double, Double)},
+     * tile specs are never all held in memory and the number of tiles is not limited.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double minZ,
+                                   final Double maxZ,
+                                   final String groupId,
+                                   final Double minX,
+                                   final Double maxX,
+                                   final Double minY,
+                                   final Double maxY,
+                                   final OutputStream outputStream)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+        writeResolvedTiles(stackId, query, outputStream);
+    }
+
     /**
      * Saves the specified tile spec to the database.
      *
      * @param  stackId            stack identifier.
      * @param  resolvedTileSpecs  collection of resolved tile specs (with referenced transforms).
      *
+     * @return summary of the tile spec save (including throughput).
+     *
      * @throws IllegalArgumentException
      *   if any required parameters or transform spec references are missing.
      */
-    public void saveResolvedTiles(final StackId stackId,
-                                  final ResolvedTileSpecCollection resolvedTileSpecs)
+    public PipelinedBulkWriter.Summary saveResolvedTiles(final StackId stackId,
+                                                         final ResolvedTileSpecCollection resolvedTileSpecs)
             throws IllegalArgumentException {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
@@ -557,28 +717,27 @@ public class RenderDao {
             saveResolvedTransforms(stackId, transformSpecs);
         }
 
+        final PipelinedBulkWriter.Summary summary;
         if (tileSpecs.size() > 0) {
 
             final MongoCollection<Document> tileCollection = getTileCollection(stackId);
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(tileSpecs.size());
-            Document query = new Document();
-            Document tileSpecObject;
-            for (final TileSpec tileSpec : tileSpecs) {
-                query = new Document("tileId", tileSpec.getTileId());
-                tileSpecObject = Document.parse(tileSpec.toJson());
-                modelList.add(new ReplaceOneModel<>(query, tileSpecObject, MongoUtil.UPSERT_OPTION));
-            }
+            summary = PipelinedBulkWriter.write(tileCollection,
+                                                new ArrayList<>(tileSpecs),
+                                                tileSpec -> new ReplaceOneModel<>(
+                                                        new Document("tileId", tileSpec.getTileId()),
+                                                        Document.parse(tileSpec.toJson()),
+                                                        MongoUtil.UPSERT_OPTION),
+                                                BULK_WRITE_BATCH_SIZE);
 
-            final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            LOG.info("saveResolvedTiles: {} in {}",
+                     summary.toMessage("tile specs"), MongoUtil.fullName(tileCollection));
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("tile specs", result, tileSpecs.size());
-                LOG.debug("saveResolvedTiles: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(tileCollection), query.toJson());
-            }
+        } else {
+            summary = new PipelinedBulkWriter.Summary(0, 0, true, 0);
         }
 
+        return summary;
     }
 
     /**
@@ -649,7 +808,7 @@ public class RenderDao {
                                               stackId);
         }
 
-        return TransformSpec.fromJson(document.toJson());
+        return DocumentConverter.toObject(document, TransformSpec.class);
     }
 
     /**
@@ -760,7 +919,7 @@ public class RenderDao {
             throw new ObjectNotFoundException("sectionId '" + sectionId + "' does not exist in the " + stackId);
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
+        final TileSpec tileSpec = DocumentConverter.toObject(document, TileSpec.class);
 
         return tileSpec.getZ();
     }
@@ -992,6 +1151,21 @@ public class RenderDao {
         return stackMetaData;
     }
 
+    /**
+     * @return cached meta data for the specified stack or null if the stack cannot be found.
+     *         The returned instance is shared and must not be modified.
+     *
+     * @throws IllegalArgumentException
+     *   if required parameters are not specified.
+     */
+    public StackMetaData getCachedStackMetaData(final StackId stackId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        return stackMetaDataCache.get(stackId, this::getStackMetaData);
+    }
+
     public void saveStackMetaData(final StackMetaData stackMetaData) {
 
         LOG.debug("saveStackMetaData: entry, stackMetaData={}", stackMetaData);
@@ -1006,6 +1180,7 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(stackId);
 
         final String action;
         if (result.getMatchedCount() > 0) {
@@ -1176,6 +1351,7 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(stackId);
 
         LOG.debug("ensureIndexesAndDeriveStats: {}.{}({})",
                   MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), query.toJson());
@@ -1272,6 +1448,7 @@ public class RenderDao {
             final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
             final Document stackIdQuery = getStackIdQuery(stackId);
             final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+            stackMetaDataCache.invalidate(stackId);
 
             LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
                       MongoUtil.fullName(stackMetaDataCollection),
@@ -1531,6 +1708,8 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(fromStackId);
+        stackMetaDataCache.invalidate(toStackId);
 
         LOG.debug("renameStack: ran {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(stackMetaDataCollection),
@@ -1613,7 +1792,7 @@ public class RenderDao {
             String layoutText;
             while (cursor.hasNext()) {
                 document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = DocumentConverter.toObject(document, TileSpec.class);
                 layoutText = format.formatTileSpec(tileSpec, stackRequestUri);
                 outputStream.write(layoutText.getBytes());
                 tileSpecCount++;
@@ -1776,7 +1955,7 @@ public class RenderDao {
                 TransformSpec transformSpec;
                 while (cursor.hasNext()) {
                     document = cursor.next();
-                    transformSpec = TransformSpec.fromJson(document.toJson());
+                    transformSpec = DocumentConverter.toObject(document, TransformSpec.class);
                     transformSpecList.add(transformSpec);
                 }
             }
@@ -1846,7 +2025,7 @@ public class RenderDao {
                     throw new IllegalArgumentException("query too broad, over " + count + " tiles match " + tileQuery);
                 }
                 document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = DocumentConverter.toObject(document, TileSpec.class);
                 renderParameters.addTileSpec(tileSpec);
                 count++;
             }
@@ -1865,6 +2044,146 @@ public class RenderDao {
         return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs());
     }
 
+    private boolean hasMatchingTile(final StackId stackId,
+                                    final Document tileQuery) {
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileKeys = new Document("tileId", 1).append("_id", 0);
+        return tileCollection.find(tileQuery).projection(tileKeys).first() != null;
+    }
+
+    private void writeResolvedTiles(final StackId stackId,
+                                    final Document tileQuery,
+                                    final OutputStream outputStream)
+            throws IOException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileProjection = new Document("_id", 0);
+
+        // order tile specs by tileId to ensure consistent coordinate mapping
+        final Document orderBy = new Document("tileId", 1);
+
+        final ProcessTimer timer = new ProcessTimer();
+        final Set<String> unresolvedTransformIds = new HashSet<>();
+
+        outputStream.write(RESOLVED_TILES_START_BYTES);
+
+        int tileCount = 0;
+        try (final MongoCursor<Document> cursor =
+                     tileCollection.find(tileQuery).projection(tileProjection).sort(orderBy).iterator()) {
+
+            // tile documents are written as-is, so reference ids are read directly from each document
+            // instead of converting it to a TileSpec
+            Document document;
+            while (cursor.hasNext()) {
+
+                document = cursor.next();
+                addTransformReferenceIds(document.get("transforms"), unresolvedTransformIds);
+
+                if (tileCount > 0) {
+                    outputStream.write(COMMA_WITH_NEW_LINE_BYTES);
+                }
+                outputStream.write(JsonUtils.FAST_MAPPER.writeValueAsBytes(document.getString("tileId")));
+                outputStream.write(COLON_BYTES);
+                outputStream.write(document.toJson().getBytes());
+                tileCount++;
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("writeResolvedTiles: data written for {} tiles", tileCount);
+                }
+            }
+        }
+
+        outputStream.write(RESOLVED_TILES_TRANSFORMS_START_BYTES);
+
+        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
+        if (unresolvedTransformIds.size() > 0) {
+            getDataForTransformSpecReferences(getTransformCollection(stackId),
+                                              unresolvedTransformIds,
+                                              resolvedIdToSpecMap,
+                                              1);
+        }
+
+        int transformCount = 0;
+        for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
+            if (transformCount > 0) {
+                outputStream.write(COMMA_WITH_NEW_LINE_BYTES);
+            }
+            outputStream.write(JsonUtils.FAST_MAPPER.writeValueAsBytes(transformSpec.getId()));
+            outputStream.write(COLON_BYTES);
+            outputStream.write(JsonUtils.FAST_MAPPER.writeValueAsBytes(transformSpec));
+            transformCount++;
+        }
+
+        outputStream.write(RESOLVED_TILES_END_BYTES);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("writeResolvedTiles: wrote data for {} tiles and {} transforms returned by {}.find({}).sort({}), elapsedSeconds={}",
+                      tileCount, transformCount, MongoUtil.fullName(tileCollection),
+                      tileQuery.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+        }
+    }
+
+    /**
+     * @param  stackId               stack containing the layer.
+     * @param  layerZ                z value for the layer.
+     * @param  layerCoordinateCount  number of coordinates to be resolved within the layer.
+     *
+     * @return true if it should be cheaper to load the bounds for all tiles in the specified layer
+     *         than to run an indexed point query for each of the layer's coordinates.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public boolean useLayerLookup(final StackId stackId,
+                                  final Double layerZ,
+                                  final int layerCoordinateCount)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", layerZ);
+
+        return useLayerLookup(getTileCollection(stackId), layerZ, layerCoordinateCount);
+    }
+
+    /**
+     * @return true if it should be cheaper to load the bounds for all tiles in the specified layer
+     *         than to run an indexed point query for each of the layer's coordinates.
+     */
+    private boolean useLayerLookup(final MongoCollection<Document> tileCollection,
+                                   final Double layerZ,
+                                   final int layerCoordinateCount) {
+        boolean useLayerLookup = false;
+        if (layerCoordinateCount >= MIN_COORDINATES_FOR_LAYER_LOOKUP) {
+            final long layerTileCount = tileCollection.count(new Document("z", layerZ));
+            useLayerLookup = (layerCoordinateCount * TILES_PER_POINT_QUERY) >= layerTileCount;
+            LOG.debug("useLayerLookup: returning {} for {} coordinates and {} tiles in layer {}",
+                      useLayerLookup, layerCoordinateCount, layerTileCount, layerZ);
+        }
+        return useLayerLookup;
+    }
+
+    /**
+     * Adds the ids of all reference transform specs nested within the specified transform spec document
+     * (or list of documents) to the specified set.
+     */
+    private static void addTransformReferenceIds(final Object transformSpecData,
+                                                 final Set<String> referenceIds) {
+        if (transformSpecData instanceof Document) {
+            final Document transformSpecDocument = (Document) transformSpecData;
+            if (ReferenceTransformSpec.TYPE.equals(transformSpecDocument.get("type"))) {
+                referenceIds.add(transformSpecDocument.getString("refId"));
+            } else {
+                for (final Object value : transformSpecDocument.values()) {
+                    addTransformReferenceIds(value, referenceIds);
+                }
+            }
+        } else if (transformSpecData instanceof List) {
+            for (final Object value : (List<?>) transformSpecData) {
+                addTransformReferenceIds(value, referenceIds);
+            }
+        }
+    }
+
     private Document lte(final double value) {
         return new Document(QueryOperators.LTE, value);
     }
@@ -2203,6 +2522,27 @@ public class RenderDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDao.class);
 
+    // resolved tile collection JSON fragments (property names match ResolvedTileSpecCollection fields)
+    private static final byte[] RESOLVED_TILES_START_BYTES = "{\"tileIdToSpecMap\":{\n".getBytes();
+    private static final byte[] RESOLVED_TILES_TRANSFORMS_START_BYTES = "},\n\"transformIdToSpecMap\":{\n".getBytes();
+    private static final byte[] RESOLVED_TILES_END_BYTES = "}}".getBytes();
+    private static final byte[] COMMA_WITH_NEW_LINE_BYTES = ",\n".getBytes();
+    private static final byte[] COLON_BYTES = ":".getBytes();
+
+    /**
+     * Layers with fewer coordinates than this are always resolved with per coordinate queries,
+     * so small requests never pay for the extra layer tile count query.
+     */
+    private static final int MIN_COORDINATES_FOR_LAYER_LOOKUP = 100;
+
+    /**
+     * Approximate number of tile bounds that can be loaded in the time it takes to run one indexed point query.
+     * Each point query is a separate server round trip while tile bounds are small projected documents
+     * streamed in large batches, so a layer lookup only pays off once a layer has at least one coordinate
+     * for every 50 tiles (e.g. 400 coordinates for a 20,000 tile layer).
+     */
+    private static final int TILES_PER_POINT_QUERY = 50;
+
     /** Explicitly named index options allow a little more namespace room for stack id components. */
     private static final IndexOptions TRANSFORM_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions TILE_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
@@ -2215,4 +2555,6 @@ public class RenderDao {
     private static final IndexOptions TILE_H_OPTIONS = new IndexOptions().background(true).name("H");
     private static final IndexOptions TILE_I_OPTIONS = new IndexOptions().background(true).name("I");
     private static final IndexOptions TILE_J_OPTIONS = new IndexOptions().background(true).name("J");
+
+    private static final int BULK_WRITE_BATCH_SIZE = 1000;
 }
@@ -0,0 +1,118 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.render.service.util.RenderServerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache of stack meta data for read-only lookups (e.g. entity tag derivation for image requests).
+ *
+ * Entries are invalidated by {@link RenderDao} whenever it changes stack meta data.
+ * Changes made by other server nodes are picked up when entries expire.
+ *
+ * Cached instances are shared, so callers must not modify them.
+ *
+ * @author Eric Trautman
+ */
+public class StackMetaDataCache {
+
+    private static volatile StackMetaDataCache sharedInstance;
+
+    /**
+     * @return the cache to be shared across all render web service requests.
+     */
+    public static StackMetaDataCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private final long expirationSeconds;
+    private final Cache<StackId, StackMetaData> cache;
+    private final AtomicLong invalidationCount;
+
+    /**
+     * @param  expirationSeconds  number of seconds after which cached meta data is reloaded
+     *                            (specify 0 to disable caching).
+     */
+    public StackMetaDataCache(final long expirationSeconds) {
+        this.expirationSeconds = expirationSeconds;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_STACKS)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .build();
+        this.invalidationCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param  stackId  identifies the stack.
+     * @param  loader   function for loading meta data that has not been cached.
+     *
+     * @return cached meta data for the specified stack or the loaded meta data if it has not been cached
+     *         (null if the stack does not exist).
+     */
+    public StackMetaData get(final StackId stackId,
+                             final Function<StackId, StackMetaData> loader) {
+
+        StackMetaData stackMetaData = cache.getIfPresent(stackId);
+
+        if (stackMetaData == null) {
+
+            final long invalidationCountBeforeLoad = invalidationCount.get();
+
+            stackMetaData = loader.apply(stackId);
+
+            // don't cache missing stacks or data that may have been loaded before a concurrent change
+            if ((stackMetaData != null) && (invalidationCount.get() == invalidationCountBeforeLoad)) {
+                cache.put(stackId, stackMetaData);
+            }
+        }
+
+        return stackMetaData;
+    }
+
+    /**
+     * Removes any cached meta data for the specified stack.
+     *
+     * @param  stackId  identifies the stack.
+     */
+    public void invalidate(final StackId stackId) {
+        invalidationCount.incrementAndGet();
+        cache.invalidate(stackId);
+    }
+
+    @Override
+    public String toString() {
+        return "{expirationSeconds: " + expirationSeconds + '}';
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+
+            Integer expirationSeconds =
+                    RenderServerProperties.getProperties().getInteger("webService.stackMetaDataCacheSeconds");
+            if (expirationSeconds == null) {
+                expirationSeconds = DEFAULT_EXPIRATION_SECONDS;
+            }
+
+            sharedInstance = new StackMetaDataCache(expirationSeconds);
+
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackMetaDataCache.class);
+
+    private static final int DEFAULT_EXPIRATION_SECONDS = 10;
+    private static final long MAX_CACHED_STACKS = 10_000;
+}
@@ -135,6 +135,15 @@ public class RenderQueryParameters
         return scale;
     }
 
+    /**
+     * @return string containing all query parameter values, suitable for use in rendered image cache keys.
+     */
+    public String buildCacheKey() {
+        return binaryMask + "," + channels + "," + convertToGray + "," + excludeMask + "," +
+               fillWithNoise + "," + filter + "," + filterListName + "," +
+               minIntensity + "," + maxIntensity + "," + scale;
+    }
+
     public void setDefaultScale(final Double defaultScale) {
         if (this.scale == null) {
             this.scale = defaultScale;
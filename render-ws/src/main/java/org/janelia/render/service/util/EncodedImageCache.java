@@ -0,0 +1,285 @@
+package org.janelia.render.service.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size bounded cache of encoded (e.g. JPEG or PNG) image bytes for render web service responses.
+ *
+ * Rendered images are immutable for a given request and stack version, so cache keys must include
+ * all request parameters that affect rendering along with the stack's entity tag
+ * (see {@link ResponseHelper#getStackTag()}).  Keys for stale stack versions are never requested again
+ * and are simply evicted as newer images are cached.
+ *
+ * When a spill directory is configured, images evicted from memory because of size constraints
+ * are written to the directory and are moved back into memory when they are requested again.
+ * The directory is bounded by its own least recently used limit, so spilled files for keys that are
+ * never requested again are eventually deleted.
+ *
+ * @author Eric Trautman
+ */
+public class EncodedImageCache {
+
+    private static EncodedImageCache sharedCache;
+    private static volatile boolean sharedCacheInitialized = false;
+
+    /**
+     * @return the encoded image cache to be shared across all render web service requests
+     *         (or null if caching has been disabled).
+     */
+    public static EncodedImageCache getInstance() {
+        if (! sharedCacheInitialized) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private final long maxMemoryBytes;
+    private final Cache<String, byte[]> memoryCache;
+    private final File spillDirectory;
+    private final long maxSpillBytes;
+    private final Cache<String, Integer> spilledImageSizes;
+
+    /**
+     * @param  maxMemoryBytes  maximum number of encoded bytes to keep in memory.
+     * @param  spillDirectory  directory for images evicted from memory (or null to simply drop them).
+     * @param  maxSpillBytes   maximum number of encoded bytes to keep in the spill directory.
+     *
+     * @throws IllegalArgumentException
+     *   if the spill directory cannot be created or cleaned up.
+     */
+    public EncodedImageCache(final long maxMemoryBytes,
+                             final File spillDirectory,
+                             final long maxSpillBytes)
+            throws IllegalArgumentException {
+
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.spillDirectory = spillDirectory;
+        this.maxSpillBytes = maxSpillBytes;
+
+        final Weigher<String, byte[]> weigher = (key, value) -> value.length;
+
+        CacheBuilder<String, byte[]> cacheBuilder =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxMemoryBytes)
+                        .weigher(weigher);
+
+        if (spillDirectory == null) {
+
+            this.spilledImageSizes = null;
+
+        } else {
+
+            removeSpilledFiles();
+
+            // spilled files are tracked in their own LRU cache so that files for
+            // keys that are never requested again (e.g. for stale stack versions) are eventually removed
+            // (a single segment is used so that the whole directory limit applies to every key,
+            //  contention is not a concern since each access also involves disk I/O)
+            final Weigher<String, Integer> spillWeigher = (key, size) -> size;
+            final RemovalListener<String, Integer> spillRemovalListener = this::removeEvictedSpillFile;
+            this.spilledImageSizes = CacheBuilder.newBuilder()
+                    .concurrencyLevel(1)
+                    .maximumWeight(maxSpillBytes)
+                    .weigher(spillWeigher)
+                    .removalListener(spillRemovalListener)
+                    .build();
+
+            final RemovalListener<String, byte[]> spillListener = this::spill;
+            cacheBuilder = cacheBuilder.removalListener(spillListener);
+        }
+
+        this.memoryCache = cacheBuilder.build();
+    }
+
+    /**
+     * @param  key  identifies the image.
+     *
+     * @return cached bytes for the specified image or null if the image has not been cached.
+     */
+    public byte[] get(final String key) {
+
+        byte[] bytes = memoryCache.getIfPresent(key);
+
+        if ((bytes == null) && (spilledImageSizes != null)) {
+            bytes = restoreSpilledImage(key);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Adds the specified image to this cache.
+     *
+     * @param  key    identifies the image.
+     * @param  bytes  encoded image bytes.
+     */
+    public void put(final String key,
+                    final byte[] bytes) {
+        memoryCache.put(key, bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "{maxMemoryBytes: " + maxMemoryBytes +
+               ", spillDirectory: " + spillDirectory +
+               ", maxSpillBytes: " + maxSpillBytes + '}';
+    }
+
+    private Path getSpillPath(final String key) {
+        final String hash = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+        return new File(spillDirectory, hash + SPILL_FILE_SUFFIX).toPath();
+    }
+
+    private void spill(final RemovalNotification<String, byte[]> notification) {
+
+        final String key = notification.getKey();
+        final byte[] bytes = notification.getValue();
+
+        if (RemovalCause.SIZE.equals(notification.getCause()) && (key != null) && (bytes != null)) {
+
+            final Path path = getSpillPath(key);
+            Path tmpPath = null;
+            try {
+                tmpPath = Files.createTempFile(spillDirectory.toPath(), "spill", ".tmp");
+                Files.write(tmpPath, bytes);
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                spilledImageSizes.put(key, bytes.length);
+            } catch (final IOException e) {
+                LOG.warn("spill: failed to write " + path, e);
+            } finally {
+                // untracked temporary files would otherwise remain until the next restart (e.g. when the disk is full)
+                if (tmpPath != null) {
+                    deleteSpillFile(tmpPath);
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Only the caller that removes a key from the spilled image map reads (and deletes) its file,
+     * so concurrent requests for the same image do not need to be serialized.
+     * Other concurrent callers simply see a cache miss.
+     */
+    private byte[] restoreSpilledImage(final String key) {
+
+        byte[] bytes = null;
+
+        if (spilledImageSizes.asMap().remove(key) != null) {
+            final Path path = getSpillPath(key);
+            try {
+                bytes = Files.readAllBytes(path);
+                memoryCache.put(key, bytes);
+            } catch (final IOException e) {
+                LOG.warn("restoreSpilledImage: failed to read " + path, e);
+            }
+            deleteSpillFile(path);
+        }
+
+        return bytes;
+    }
+
+    private void removeEvictedSpillFile(final RemovalNotification<String, Integer> notification) {
+        // explicitly removed files are deleted by restoreSpilledImage after they have been read and
+        // replaced files have simply been overwritten, so only delete files for evicted keys
+        final String key = notification.getKey();
+        if (notification.wasEvicted() && (key != null)) {
+            deleteSpillFile(getSpillPath(key));
+        }
+    }
+
+    private void deleteSpillFile(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            LOG.warn("deleteSpillFile: failed to remove " + path, e);
+        }
+    }
+
+    /**
+     * Removes any files left in the spill directory by a previous process since they cannot be accounted for.
+     */
+    private void removeSpilledFiles()
+            throws IllegalArgumentException {
+
+        if (! spillDirectory.exists()) {
+            if (! spillDirectory.mkdirs()) {
+                throw new IllegalArgumentException("failed to create " + spillDirectory.getAbsolutePath());
+            }
+        }
+
+        final File[] spilledFiles = spillDirectory.listFiles((dir, name) -> name.endsWith(SPILL_FILE_SUFFIX) ||
+                                                                            name.endsWith(".tmp"));
+        if (spilledFiles == null) {
+            throw new IllegalArgumentException("failed to list files in " + spillDirectory.getAbsolutePath());
+        }
+
+        for (final File file : spilledFiles) {
+            if (! file.delete()) {
+                throw new IllegalArgumentException("failed to remove " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static synchronized void setSharedCache() {
+        if (! sharedCacheInitialized) {
+
+            final RenderServerProperties properties = RenderServerProperties.getProperties();
+
+            Integer maxMb = properties.getInteger("webService.maxEncodedImageCacheMb");
+            if (maxMb == null) {
+                maxMb = DEFAULT_MAX_MEMORY_MB;
+            }
+
+            if (maxMb > 0) {
+
+                final String spillDirectoryName = properties.get("webService.encodedImageCacheDirectory");
+                File spillDirectory = null;
+                if ((spillDirectoryName != null) && (spillDirectoryName.trim().length() > 0)) {
+                    spillDirectory = new File(spillDirectoryName.trim()).getAbsoluteFile();
+                }
+
+                Integer maxSpillGb = properties.getInteger("webService.maxEncodedImageCacheDirectoryGb");
+                if (maxSpillGb == null) {
+                    maxSpillGb = DEFAULT_MAX_SPILL_GB;
+                }
+
+                try {
+                    sharedCache = new EncodedImageCache(maxMb * 1_000_000L,
+                                                        spillDirectory,
+                                                        maxSpillGb * 1_000_000_000L);
+                    LOG.info("setSharedCache: created {}", sharedCache);
+                } catch (final IllegalArgumentException e) {
+                    LOG.warn("setSharedCache: encoded image caching disabled", e);
+                }
+
+            } else {
+                LOG.info("setSharedCache: encoded image caching disabled");
+            }
+
+            sharedCacheInitialized = true;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(EncodedImageCache.class);
+
+    private static final int DEFAULT_MAX_MEMORY_MB = 256;
+    private static final int DEFAULT_MAX_SPILL_GB = 10;
+    private static final String SPILL_FILE_SUFFIX = ".image";
+}
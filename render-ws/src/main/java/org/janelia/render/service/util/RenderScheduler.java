@@ -0,0 +1,314 @@
+package org.janelia.render.service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.janelia.alignment.RenderParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for concurrent render web service requests.
+ *
+ * Each request is admitted based upon its target pixel count (the memory it needs for rendering)
+ * and is prioritized by its estimated cost (number of tiles x target pixels):
+ * <ul>
+ *     <li>the total number of target pixels being rendered at any time is capped
+ *         (a request that exceeds the cap on its own is only admitted when nothing else is rendering),</li>
+ *     <li>waiting requests are admitted in order of increasing cost so that small interactive requests
+ *         are not stuck behind large ones,</li>
+ *     <li>requests that have waited longer than a configured time are admitted first (in arrival order)
+ *         so that large requests cannot be starved by a steady stream of small ones, and</li>
+ *     <li>a request admitted while no other requests are rendering or waiting may use multiple
+ *         mapping threads.</li>
+ * </ul>
+ *
+ * @author Eric Trautman
+ */
+public class RenderScheduler {
+
+    private static volatile RenderScheduler sharedScheduler;
+
+    /**
+     * @return the scheduler to be shared across all render web service requests.
+     */
+    public static RenderScheduler getInstance() {
+        if (sharedScheduler == null) {
+            setSharedScheduler();
+        }
+        return sharedScheduler;
+    }
+
+    private final long maxConcurrentPixels;
+    private final int maxThreadsForIdleRender;
+    private final long maxPrioritizedWaitMillis;
+
+    private final ReentrantLock lock;
+    private final Condition admissionCondition;
+    private final List<Permit> waitingPermits;
+    private long admittedPixels;
+    private int admittedCount;
+    private long arrivalSequence;
+
+    /**
+     * @param  maxConcurrentPixels       maximum number of target pixels that may be rendered concurrently.
+     * @param  maxThreadsForIdleRender   number of mapping threads for requests admitted when the server is idle.
+     * @param  maxPrioritizedWaitMillis  maximum time a request can wait before it is admitted ahead of
+     *                                   lower cost requests.
+     */
+    public RenderScheduler(final long maxConcurrentPixels,
+                           final int maxThreadsForIdleRender,
+                           final long maxPrioritizedWaitMillis) {
+        this.maxConcurrentPixels = maxConcurrentPixels;
+        this.maxThreadsForIdleRender = maxThreadsForIdleRender;
+        this.maxPrioritizedWaitMillis = maxPrioritizedWaitMillis;
+        this.lock = new ReentrantLock();
+        this.admissionCondition = lock.newCondition();
+        this.waitingPermits = new ArrayList<>();
+        this.admittedPixels = 0;
+        this.admittedCount = 0;
+        this.arrivalSequence = 0;
+    }
+
+    /**
+     * Waits until the specified render request can be admitted.
+     * The returned permit must be released (see {@link Permit#close()}) once rendering is complete.
+     *
+     * @param  renderParameters  parameters for the request (derived values must already be initialized).
+     *
+     * @return admission permit for the request.
+     *
+     * @throws InterruptedException
+     *   if the current thread is interrupted while waiting for admission.
+     */
+    public Permit acquire(final RenderParameters renderParameters)
+            throws InterruptedException {
+
+        final double scale = renderParameters.getScale();
+        final long targetPixels = Math.max(1, (long) (scale * renderParameters.getWidth()) *
+                                              (long) (scale * renderParameters.getHeight()));
+        final long cost = Math.max(1, renderParameters.numberOfTileSpecs()) * targetPixels;
+
+        return acquire(targetPixels, cost);
+    }
+
+    /**
+     * Waits until a request with the specified pixel count and cost can be admitted.
+     *
+     * @param  targetPixels  number of pixels rendered by the request.
+     * @param  cost          estimated cost of the request.
+     *
+     * @return admission permit for the request.
+     *
+     * @throws InterruptedException
+     *   if the current thread is interrupted while waiting for admission.
+     */
+    public Permit acquire(final long targetPixels,
+                          final long cost)
+            throws InterruptedException {
+
+        lock.lock();
+        try {
+
+            final Permit permit = new Permit(targetPixels, cost, arrivalSequence++, System.currentTimeMillis());
+            waitingPermits.add(permit);
+            admitWaitingPermits();
+
+            try {
+                while (! permit.isAdmitted) {
+                    admissionCondition.await(ADMISSION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    if (! permit.isAdmitted) {
+                        // re-check in case this permit now qualifies for starvation priority
+                        admitWaitingPermits();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                if (permit.isAdmitted) {
+                    releasePermit(permit);
+                } else {
+                    waitingPermits.remove(permit);
+                    admitWaitingPermits();
+                }
+                throw e;
+            }
+
+            final long waitMillis = System.currentTimeMillis() - permit.arrivalMillis;
+            if (waitMillis > SLOW_ADMISSION_LOG_MILLIS) {
+                LOG.info("acquire: admitted request with {} pixels and cost {} using {} thread(s) after waiting {} ms",
+                         targetPixels, cost, permit.numberOfThreads, waitMillis);
+            } else if (waitMillis > 0) {
+                LOG.debug("acquire: admitted request with {} pixels and cost {} using {} thread(s) after waiting {} ms",
+                          targetPixels, cost, permit.numberOfThreads, waitMillis);
+            }
+
+            return permit;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{maxConcurrentPixels: " + maxConcurrentPixels +
+               ", maxThreadsForIdleRender: " + maxThreadsForIdleRender +
+               ", maxPrioritizedWaitMillis: " + maxPrioritizedWaitMillis + '}';
+    }
+
+    /**
+     * Admits as many waiting permits as possible (must be called while holding the lock).
+     */
+    private void admitWaitingPermits() {
+
+        boolean admittedAny = false;
+
+        while (waitingPermits.size() > 0) {
+
+            final Permit next = getNextWaitingPermit();
+
+            if ((admittedCount == 0) || (admittedPixels + next.targetPixels <= maxConcurrentPixels)) {
+
+                waitingPermits.remove(next);
+
+                // only use multiple threads when no other requests are rendering or waiting
+                next.numberOfThreads = ((admittedCount == 0) && (waitingPermits.size() == 0)) ?
+                                       maxThreadsForIdleRender : 1;
+                next.isAdmitted = true;
+
+                admittedPixels += next.targetPixels;
+                admittedCount++;
+                admittedAny = true;
+
+            } else {
+                // hold remaining requests until capacity is available for the next one
+                break;
+            }
+        }
+
+        if (admittedAny) {
+            admissionCondition.signalAll();
+        }
+    }
+
+    /**
+     * @return the oldest waiting permit if it has waited too long, otherwise the lowest cost waiting permit.
+     */
+    private Permit getNextWaitingPermit() {
+
+        Permit oldest = null;
+        Permit cheapest = null;
+
+        for (final Permit permit : waitingPermits) {
+            if ((oldest == null) || (permit.sequence < oldest.sequence)) {
+                oldest = permit;
+            }
+            if ((cheapest == null) ||
+                (permit.cost < cheapest.cost) ||
+                ((permit.cost == cheapest.cost) && (permit.sequence < cheapest.sequence))) {
+                cheapest = permit;
+            }
+        }
+
+        final long oldestWaitMillis = System.currentTimeMillis() - oldest.arrivalMillis;
+        return oldestWaitMillis > maxPrioritizedWaitMillis ? oldest : cheapest;
+    }
+
+    private void releasePermit(final Permit permit) {
+        lock.lock();
+        try {
+            if (permit.isAdmitted && (! permit.isReleased)) {
+                permit.isReleased = true;
+                admittedPixels -= permit.targetPixels;
+                admittedCount--;
+                admitWaitingPermits();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admission permit for one render request.
+     */
+    public class Permit
+            implements AutoCloseable {
+
+        private final long targetPixels;
+        private final long cost;
+        private final long sequence;
+        private final long arrivalMillis;
+        private int numberOfThreads;
+        private boolean isAdmitted;
+        private boolean isReleased;
+
+        private Permit(final long targetPixels,
+                       final long cost,
+                       final long sequence,
+                       final long arrivalMillis) {
+            this.targetPixels = targetPixels;
+            this.cost = cost;
+            this.sequence = sequence;
+            this.arrivalMillis = arrivalMillis;
+            this.numberOfThreads = 1;
+            this.isAdmitted = false;
+            this.isReleased = false;
+        }
+
+        /**
+         * @return number of mapping threads the admitted request may use.
+         */
+        public int getNumberOfThreads() {
+            return numberOfThreads;
+        }
+
+        /**
+         * Releases this permit so that other requests can be admitted.
+         */
+        @Override
+        public void close() {
+            releasePermit(this);
+        }
+    }
+
+    private static synchronized void setSharedScheduler() {
+        if (sharedScheduler == null) {
+
+            final RenderServerProperties properties = RenderServerProperties.getProperties();
+
+            final long maxConcurrentPixels;
+            final Integer maxMegapixels = properties.getInteger("webService.maxConcurrentRenderMegapixels");
+            if (maxMegapixels == null) {
+                // each ARGB target pixel needs 4 bytes, allow targets to use up to 1/4 of available memory
+                maxConcurrentPixels = Runtime.getRuntime().maxMemory() / 16;
+            } else {
+                maxConcurrentPixels = maxMegapixels * 1_000_000L;
+            }
+
+            Integer maxThreads = properties.getInteger("webService.maxThreadsForIdleRender");
+            if (maxThreads == null) {
+                maxThreads = Runtime.getRuntime().availableProcessors();
+            }
+
+            Integer maxWaitSeconds = properties.getInteger("webService.maxPrioritizedRenderWaitSeconds");
+            if (maxWaitSeconds == null) {
+                maxWaitSeconds = 30;
+            }
+
+            sharedScheduler = new RenderScheduler(maxConcurrentPixels,
+                                                  Math.max(1, maxThreads),
+                                                  maxWaitSeconds * 1000L);
+
+            LOG.info("setSharedScheduler: exit, created {}", sharedScheduler);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderScheduler.class);
+
+    private static final long ADMISSION_CHECK_MILLIS = 1000;
+
+    // short waits are routine under load, so only longer waits are logged at info level
+    private static final long SLOW_ADMISSION_LOG_MILLIS = 1000;
+}
@@ -2,6 +2,7 @@ package org.janelia.render.service.util;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 import javax.ws.rs.core.Response;
@@ -117,6 +118,24 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
                                              final Integer maxTileSpecsToRender,
                                              final ResponseHelper responseHelper,
                                              final boolean render16bit) {
+        return renderImageStream(renderParameters, format, mimeType, maxTileSpecsToRender, responseHelper,
+                                 render16bit, null);
+    }
+
+    /**
+     * Renders and streams an image.
+     *
+     * @param  cacheKey  if specified (and the {@link EncodedImageCache} is enabled), the encoded image
+     *                   is saved in the cache with this key so that it can be returned by subsequent
+     *                   {@link #getCachedImageResponse} calls.
+     */
+    public static Response renderImageStream(final RenderParameters renderParameters,
+                                             final String format,
+                                             final String mimeType,
+                                             final Integer maxTileSpecsToRender,
+                                             final ResponseHelper responseHelper,
+                                             final boolean render16bit,
+                                             final String cacheKey) {
 
         LOG.info("renderImageStream: entry, format={}, mimeType={}", format, mimeType);
 
@@ -153,7 +172,18 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
                                                      format,
                                                      renderParameters.isConvertToGray(),
                                                      renderParameters.getQuality());
-            response = responseHelper.getImageByteResponse(out, mimeType);
+
+            final EncodedImageCache encodedImageCache = cacheKey == null ? null : EncodedImageCache.getInstance();
+            if (encodedImageCache == null) {
+                response = responseHelper.getImageByteResponse(out, mimeType);
+            } else {
+                final ByteArrayOutputStream encodedImage = new ByteArrayOutputStream();
+                out.write(encodedImage);
+                final byte[] bytes = encodedImage.toByteArray();
+                encodedImageCache.put(cacheKey, bytes);
+                response = responseHelper.getImageByteResponse(outputStream -> outputStream.write(bytes),
+                                                               mimeType);
+            }
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -163,6 +193,32 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
         return response;
     }
 
+    /**
+     * @param  cacheKey        identifies the encoded image.
+     * @param  mimeType        mime type for the response.
+     * @param  responseHelper  helper for setting cache control headers.
+     *
+     * @return response containing the cached encoded image or null if the image has not been cached.
+     */
+    public static Response getCachedImageResponse(final String cacheKey,
+                                                  final String mimeType,
+                                                  final ResponseHelper responseHelper) {
+
+        Response response = null;
+
+        final EncodedImageCache encodedImageCache = EncodedImageCache.getInstance();
+        if (encodedImageCache != null) {
+            final byte[] bytes = encodedImageCache.get(cacheKey);
+            if (bytes != null) {
+                LOG.info("getCachedImageResponse: returning {} cached bytes", bytes.length);
+                response = responseHelper.getImageByteResponse(outputStream -> outputStream.write(bytes),
+                                                               mimeType);
+            }
+        }
+
+        return response;
+    }
+
     public static Response streamImageFile(final File imageFile,
                                            final String mimeType,
                                            final ResponseHelper responseHelper) {
@@ -195,7 +251,26 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         renderParameters.initializeDerivedValues();
         renderParameters.validate();
-        renderParameters.setNumberOfThreads(1); // service requests should always be single threaded
+
+        final BufferedImage targetImage;
+
+        // service requests are single threaded unless the scheduler admits them when the server is idle
+        try (final RenderScheduler.Permit permit = RenderScheduler.getInstance().acquire(renderParameters)) {
+            renderParameters.setNumberOfThreads(permit.getNumberOfThreads());
+            targetImage = renderImage(renderParameters, renderBoundingBoxesOnly, render16bit);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting to render image", e);
+        }
+
+        LOG.info("validateParametersAndRenderImage: exit");
+
+        return targetImage;
+    }
+
+    private static BufferedImage renderImage(final RenderParameters renderParameters,
+                                             final boolean renderBoundingBoxesOnly,
+                                             final boolean render16bit) {
 
         final BufferedImage targetImage;
 
@@ -223,8 +298,6 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         }
 
-        LOG.info("validateParametersAndRenderImage: exit");
-
         return targetImage;
     }
 
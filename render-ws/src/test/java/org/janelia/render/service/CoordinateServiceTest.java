@@ -4,6 +4,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.ws.rs.core.Response;
+
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.render.service.dao.RenderDao;
 import org.janelia.alignment.spec.stack.StackId;
@@ -143,33 +145,40 @@ public class CoordinateServiceTest {
             }
         }
 
-        final List<TileCoordinates> worldCoordinatesList =
-                service.getWorldCoordinates(stackId.getOwner(),
-                                            stackId.getProject(),
-                                            stackId.getStack(),
-                                            Z,
-                                            localCoordinatesList);
-
-
-
-        Assert.assertNotNull("null world list retrieved", worldCoordinatesList);
-        Assert.assertEquals("invalid world list size",
-                            localCoordinatesList.size(), worldCoordinatesList.size());
-
-        for (int i = 0; i < worldCoordinatesList.size(); i++) {
-            tileCoordinates = worldCoordinatesList.get(i);
-            if (i == errorPointIndex) {
-                Assert.assertTrue("world list [" + i + "] should have error", tileCoordinates.hasError());
-                Assert.assertNotNull("world list [" + i + "] with error should have world values",
-                                     tileCoordinates.getWorld());
-            } else {
-                validateCoordinates("world list [" + i + "]",
-                                    tileCoordinates,
-                                    ID_FOR_TILE_WITH_REAL_TRANSFORMS,
-                                    false,
-                                    points[i][0],
-                                    points[i][1],
-                                    Z);
+        for (final Integer numberOfThreads : new Integer[] { null, 4 }) {
+
+            final Response response = service.getWorldCoordinates(stackId.getOwner(),
+                                                                  stackId.getProject(),
+                                                                  stackId.getStack(),
+                                                                  Z,
+                                                                  numberOfThreads,
+                                                                  localCoordinatesList);
+
+            Assert.assertNotNull("missing timing header for numberOfThreads " + numberOfThreads,
+                                 response.getHeaderString("Server-Timing"));
+
+            @SuppressWarnings("unchecked")
+            final List<TileCoordinates> worldCoordinatesList = (List<TileCoordinates>) response.getEntity();
+
+            Assert.assertNotNull("null world list retrieved", worldCoordinatesList);
+            Assert.assertEquals("invalid world list size",
+                                localCoordinatesList.size(), worldCoordinatesList.size());
+
+            for (int i = 0; i < worldCoordinatesList.size(); i++) {
+                tileCoordinates = worldCoordinatesList.get(i);
+                if (i == errorPointIndex) {
+                    Assert.assertTrue("world list [" + i + "] should have error", tileCoordinates.hasError());
+                    Assert.assertNotNull("world list [" + i + "] with error should have world values",
+                                         tileCoordinates.getWorld());
+                } else {
+                    validateCoordinates("world list [" + i + "]",
+                                        tileCoordinates,
+                                        ID_FOR_TILE_WITH_REAL_TRANSFORMS,
+                                        false,
+                                        points[i][0],
+                                        points[i][1],
+                                        Z);
+                }
             }
         }
     }
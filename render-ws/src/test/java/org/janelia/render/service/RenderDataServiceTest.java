@@ -1,11 +1,15 @@
 package org.janelia.render.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
@@ -89,10 +93,7 @@ public class RenderDataServiceTest {
     @Test
     public void testGetAndSaveResolvedTiles() throws Exception {
 
-        final ResolvedTileSpecCollection resolvedTiles = service.getResolvedTiles(alignStackId.getOwner(),
-                                                                                  alignStackId.getProject(),
-                                                                                  alignStackId.getStack(),
-                                                                                  Z);
+        final ResolvedTileSpecCollection resolvedTiles = getResolvedTiles(alignStackId);
 
         validateResolvedTiles("before save", resolvedTiles, 1, 1);
 
@@ -116,10 +117,7 @@ public class RenderDataServiceTest {
                                       uriInfo,
                                       resolvedTiles);
 
-        final ResolvedTileSpecCollection resolvedTestTiles = service.getResolvedTiles(testStackId.getOwner(),
-                                                                                      testStackId.getProject(),
-                                                                                      testStackId.getStack(),
-                                                                                      Z);
+        final ResolvedTileSpecCollection resolvedTestTiles = getResolvedTiles(testStackId);
 
         validateResolvedTiles("after save", resolvedTestTiles, 1, 2);
 
@@ -145,10 +143,7 @@ public class RenderDataServiceTest {
                                       uriInfo,
                                       resolvedTestTiles);
 
-        final ResolvedTileSpecCollection resolvedTest2Tiles = service.getResolvedTiles(testStackId.getOwner(),
-                                                                                       testStackId.getProject(),
-                                                                                       testStackId.getStack(),
-                                                                                       Z);
+        final ResolvedTileSpecCollection resolvedTest2Tiles = getResolvedTiles(testStackId);
 
         validateResolvedTiles("after second save", resolvedTest2Tiles, 2, 2);
     }
@@ -170,6 +165,20 @@ public class RenderDataServiceTest {
                             LeafTransformSpec.class, firstEntry.getLastTransform().getClass());
     }
 
+    private ResolvedTileSpecCollection getResolvedTiles(final StackId stackId)
+            throws IOException {
+
+        final Response response = service.getResolvedTiles(stackId.getOwner(),
+                                                           stackId.getProject(),
+                                                           stackId.getStack(),
+                                                           Z);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+
+        return ResolvedTileSpecCollection.fromJson(outputStream.toString());
+    }
+
     private void validateResolvedTiles(final String context,
                                        final ResolvedTileSpecCollection resolvedTiles,
                                        final int expectedNumberOfTileSpecs,
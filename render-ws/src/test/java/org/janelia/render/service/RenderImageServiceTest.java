@@ -0,0 +1,173 @@
+package org.janelia.render.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
+
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.spec.ChannelSpec;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.model.RenderQueryParameters;
+import org.janelia.test.EmbeddedMongoDb;
+import org.jboss.resteasy.spi.ResteasyUriInfo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderImageService} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderImageServiceTest {
+
+    private static StackId loadingStackId;
+    private static EmbeddedMongoDb embeddedMongoDb;
+    private static RenderDataService dataService;
+    private static RenderImageService imageService;
+
+    @BeforeClass
+    public static void before() throws Exception {
+        loadingStackId = new StackId("flyTEM", "fly863", "test");
+        embeddedMongoDb = new EmbeddedMongoDb(RenderDao.RENDER_DB_NAME);
+        final RenderDao dao = new RenderDao(embeddedMongoDb.getMongoClient());
+        dataService = new RenderDataService(dao);
+        imageService = new RenderImageService(dataService);
+
+        embeddedMongoDb.importCollection(RenderDao.STACK_META_DATA_COLLECTION_NAME,
+                                         new File("src/test/resources/mongodb/admin__stack_meta_data.json"),
+                                         true,
+                                         false,
+                                         true);
+    }
+
+    @AfterClass
+    public static void after() {
+        embeddedMongoDb.stop();
+    }
+
+    @Test
+    public void testBoxImageForLoadingStackIsNotCached() throws Exception {
+
+        saveTile("tile_a", 0);
+
+        final byte[] firstImageBytes = renderBoxImage();
+
+        // saving tiles to a LOADING stack does not change the stack's entity tag
+        saveTile("tile_b", 50);
+
+        final byte[] secondImageBytes = renderBoxImage();
+
+        Assert.assertFalse("image rendered before second tile was saved should not be returned",
+                           Arrays.equals(firstImageBytes, secondImageBytes));
+    }
+
+    private void saveTile(final String tileId,
+                          final int offset) throws Exception {
+
+        final TransformSpec transformSpec = new LeafTransformSpec("mpicbg.trakem2.transform.AffineModel2D",
+                                                                  "1  0  0  1  " + offset + "  " + offset);
+
+        // image is never loaded because only tile bounding boxes are rendered
+        final ChannelSpec channelSpec = new ChannelSpec();
+        channelSpec.putMipmap(0, new ImageAndMask("http://test/" + tileId + ".png", null));
+
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId(tileId);
+        tileSpec.addChannel(channelSpec);
+        tileSpec.setZ(Z);
+        tileSpec.addTransformSpecs(Collections.singletonList(transformSpec));
+        tileSpec.setWidth(10.0);
+        tileSpec.setHeight(10.0);
+        tileSpec.deriveBoundingBox(tileSpec.getMeshCellSize(), false);
+
+        final ResolvedTileSpecCollection resolvedTiles =
+                new ResolvedTileSpecCollection(Collections.emptyList(), Collections.singletonList(tileSpec));
+
+        final UriInfo uriInfo = new ResteasyUriInfo(new URI("http://test/resolvedTiles"),
+                                                    new URI("http://test"));
+
+        dataService.saveResolvedTilesForZ(loadingStackId.getOwner(),
+                                          loadingStackId.getProject(),
+                                          loadingStackId.getStack(),
+                                          Z,
+                                          null,
+                                          uriInfo,
+                                          resolvedTiles);
+    }
+
+    private byte[] renderBoxImage() throws Exception {
+
+        // maxTileSpecsToRender of 0 renders tile bounding boxes, so no tile image files are needed
+        final Response response = imageService.renderPngImageForBox(loadingStackId.getOwner(),
+                                                                    loadingStackId.getProject(),
+                                                                    loadingStackId.getStack(),
+                                                                    0.0,
+                                                                    0.0,
+                                                                    Z,
+                                                                    100,
+                                                                    100,
+                                                                    1.0,
+                                                                    new RenderQueryParameters(),
+                                                                    0,
+                                                                    UNCONDITIONAL_REQUEST);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+
+        return outputStream.toByteArray();
+    }
+
+    /** Request without any preconditions (e.g. If-None-Match headers). */
+    private static final Request UNCONDITIONAL_REQUEST = new Request() {
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public Variant selectVariant(final List<Variant> variants) {
+            return null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(final EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(final Date lastModified) {
+            return null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(final Date lastModified,
+                                                              final EntityTag eTag) {
+            return null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions() {
+            return null;
+        }
+    };
+
+    private static final Double Z = 1.0;
+}
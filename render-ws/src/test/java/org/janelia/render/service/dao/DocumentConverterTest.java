@@ -0,0 +1,129 @@
+package org.janelia.render.service.dao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DocumentConverter} class.
+ *
+ * Includes a simple benchmark (disabled by default) that compares direct document conversion
+ * with the JSON string round trip previously used by the DAOs.
+ *
+ * @author Eric Trautman
+ */
+public class DocumentConverterTest {
+
+    public static void main(final String[] args) {
+        final DocumentConverterTest test = new DocumentConverterTest();
+        try {
+            test.enableBenchmark = true;
+            test.runBenchmark();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    private boolean enableBenchmark = false; // set this to true to run the benchmark
+
+    @Test
+    public void testTileSpecConversion() throws Exception {
+        for (final Document document : loadDocuments("elastic-3903.json")) {
+            final String expectedJson = TileSpec.fromJson(document.toJson()).toJson();
+            final String actualJson = DocumentConverter.toObject(document, TileSpec.class).toJson();
+            Assert.assertEquals("converted tile spec differs", expectedJson, actualJson);
+        }
+    }
+
+    @Test
+    public void testTransformSpecConversion() throws Exception {
+        for (final Document document : loadDocuments("elastic-transform.json")) {
+            final String expectedJson = TransformSpec.fromJson(document.toJson()).toJson();
+            final String actualJson = DocumentConverter.toObject(document, TransformSpec.class).toJson();
+            Assert.assertEquals("converted transform spec differs", expectedJson, actualJson);
+        }
+    }
+
+    @Test
+    public void testCanvasMatchesConversion() throws Exception {
+        for (final Document document : loadDocuments("match.json")) {
+            final String expectedJson = CanvasMatches.fromJson(document.toJson()).toJson();
+            final String actualJson = DocumentConverter.toObject(document, CanvasMatches.class).toJson();
+            Assert.assertEquals("converted canvas matches differ", expectedJson, actualJson);
+        }
+    }
+
+    @Test
+    public void runBenchmark() throws Exception {
+
+        if (enableBenchmark) {
+
+            final List<Document> documents = loadDocuments("elastic-3903.json");
+            final int numberOfPasses = 2000;
+
+            // warm up both paths before timing
+            benchmarkJsonRoundTrip(documents, numberOfPasses / 10);
+            benchmarkDirectConversion(documents, numberOfPasses / 10);
+
+            final long jsonTime = benchmarkJsonRoundTrip(documents, numberOfPasses);
+            final long directTime = benchmarkDirectConversion(documents, numberOfPasses);
+
+            System.out.println("converted " + documents.size() + " tile specs " + numberOfPasses + " times:");
+            System.out.println("  json round trip:   " + jsonTime + " ms");
+            System.out.println("  direct conversion: " + directTime + " ms");
+        }
+    }
+
+    private static long benchmarkJsonRoundTrip(final List<Document> documents,
+                                               final int numberOfPasses) {
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < numberOfPasses; i++) {
+            for (final Document document : documents) {
+                TileSpec.fromJson(document.toJson());
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private static long benchmarkDirectConversion(final List<Document> documents,
+                                                  final int numberOfPasses) {
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < numberOfPasses; i++) {
+            for (final Document document : documents) {
+                DocumentConverter.toObject(document, TileSpec.class);
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * @return documents parsed from the specified import file with object ids added
+     *         so that they resemble documents retrieved from the database.
+     */
+    private static List<Document> loadDocuments(final String fileName)
+            throws IOException {
+
+        final String json = new String(Files.readAllBytes(Paths.get("src/test/resources/mongodb", fileName)),
+                                       StandardCharsets.UTF_8);
+
+        @SuppressWarnings("unchecked")
+        final List<Document> documents = (List<Document>) Document.parse("{ \"list\": " + json + " }").get("list");
+
+        for (final Document document : documents) {
+            document.put("_id", new ObjectId());
+        }
+
+        return documents;
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.janelia.render.service.dao;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
@@ -10,6 +11,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.CanvasMatchesBinaryFormat;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
 import org.janelia.test.EmbeddedMongoDb;
@@ -148,7 +150,7 @@ public class MatchDaoReadOnlyTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithPGroup(collectionId, null, groupId, false, outputStream);
+        dao.writeMatchesWithPGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -166,7 +168,7 @@ public class MatchDaoReadOnlyTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithinGroup(collectionId, null, groupId, false, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -180,6 +182,26 @@ public class MatchDaoReadOnlyTest {
         }
     }
 
+    @Test
+    public void testWriteBinaryMatchesWithinGroup() throws Exception {
+
+        final ByteArrayOutputStream jsonOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.JSON, jsonOutputStream);
+        final List<CanvasMatches> jsonList = getListFromStream(jsonOutputStream);
+
+        final ByteArrayOutputStream binaryOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.BINARY, binaryOutputStream);
+        final List<CanvasMatches> binaryList =
+                CanvasMatchesBinaryFormat.readAll(new ByteArrayInputStream(binaryOutputStream.toByteArray()));
+
+        Assert.assertEquals("invalid number of binary matches returned", jsonList.size(), binaryList.size());
+
+        for (int i = 0; i < jsonList.size(); i++) {
+            Assert.assertEquals("binary matches differ from json matches",
+                                jsonList.get(i).toJson(), binaryList.get(i).toJson());
+        }
+    }
+
     @Test
     public void testWriteMergedMatchesWithinGroup() throws Exception {
 
@@ -206,7 +228,7 @@ public class MatchDaoReadOnlyTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, false, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -226,7 +248,7 @@ public class MatchDaoReadOnlyTest {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
         final String targetGroupId = "section2";
-        dao.writeMatchesBetweenGroups(collectionId, null, groupId, targetGroupId, false, outputStream);
+        dao.writeMatchesBetweenGroups(collectionId, null, groupId, targetGroupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -252,7 +274,7 @@ public class MatchDaoReadOnlyTest {
         final String targetGroupId = "section0";
         final String targetId = "tile0.1";
 
-        dao.writeMatchesBetweenObjects(collectionId, null, groupId, sourceId, targetGroupId, targetId, outputStream);
+        dao.writeMatchesBetweenObjects(collectionId, null, groupId, sourceId, targetGroupId, targetId, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -280,7 +302,7 @@ public class MatchDaoReadOnlyTest {
         // "pGroupId": "section0", "pId": "tile0.1", "qGroupId": "section1", "qId": "tile1.1",
         final String sourceId = "tile1.1";
 
-        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, outputStream);
+        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -307,7 +329,7 @@ public class MatchDaoReadOnlyTest {
         final String sourceId = "tile1.1";
         final String qGroupId = "section1";
 
-        dao.writeMatchesBetweenObjectAndGroup(collectionId, null, groupId, sourceId,qGroupId, false, outputStream);
+        dao.writeMatchesBetweenObjectAndGroup(collectionId, null, groupId, sourceId,qGroupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -341,7 +363,7 @@ public class MatchDaoReadOnlyTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, false, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
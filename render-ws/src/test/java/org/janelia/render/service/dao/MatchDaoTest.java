@@ -54,7 +54,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, outputStream);
+        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -69,7 +69,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, true, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, true, MatchDao.OutputFormat.JSON, outputStream);
 
         List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -78,7 +78,7 @@ public class MatchDaoTest {
 
         outputStream.reset();
 
-        dao.writeMatchesWithinGroup(collectionId, null, groupId, true, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, true, MatchDao.OutputFormat.JSON, outputStream);
 
         canvasMatchesList = getListFromStream(outputStream);
 
@@ -106,7 +106,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, false, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, false, MatchDao.OutputFormat.JSON, outputStream);
 
         canvasMatchesList = getListFromStream(outputStream);
 
@@ -162,7 +162,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, updateGroupA, false, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, updateGroupA, false, MatchDao.OutputFormat.JSON, outputStream);
 
         final List<CanvasMatches> retrievedList = getListFromStream(outputStream);
 
@@ -176,6 +176,36 @@ public class MatchDaoTest {
         }
     }
 
+    @Test
+    public void testSaveMatchesInMultipleBatches() throws Exception {
+
+        final MatchCollectionId batchCollectionId = new MatchCollectionId("testOwner", "batchCollection");
+
+        final List<CanvasMatches> insertList = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            insertList.add(new CanvasMatches("batchGroupA", "tile.p" + i,
+                                             "batchGroupB", "tile.q" + i,
+                                             new Matches(new double[][]{{1}, {4},},
+                                                         new double[][]{{11}, {14}},
+                                                         new double[]{7})));
+        }
+
+        PipelinedBulkWriter.Summary summary = dao.saveMatches(batchCollectionId, insertList);
+
+        Assert.assertEquals("invalid number of documents in insert summary",
+                            insertList.size(), summary.getDocumentCount());
+        Assert.assertEquals("invalid number of pairs after insert",
+                            insertList.size(), getCollectionMetaData(batchCollectionId).getPairCount(), 0);
+
+        // save the same pairs again to verify they are replaced rather than duplicated
+        summary = dao.saveMatches(batchCollectionId, insertList);
+
+        Assert.assertEquals("invalid number of documents in update summary",
+                            insertList.size(), summary.getDocumentCount());
+        Assert.assertEquals("invalid number of pairs after update",
+                            insertList.size(), getCollectionMetaData(batchCollectionId).getPairCount(), 0);
+    }
+
     @Test
     public void testRemoveMatches() {
 
@@ -0,0 +1,68 @@
+package org.janelia.render.service.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StackMetaDataCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class StackMetaDataCacheTest {
+
+    @Test
+    public void testGetAndInvalidate() throws Exception {
+
+        final StackId stackId = new StackId("testOwner", "testProject", "testStack");
+        final AtomicInteger loadCount = new AtomicInteger(0);
+
+        final StackMetaDataCache cache = new StackMetaDataCache(60);
+
+        final StackMetaData loaded = cache.get(stackId, id -> {
+            loadCount.incrementAndGet();
+            return new StackMetaData(id, null);
+        });
+        final StackMetaData cached = cache.get(stackId, id -> {
+            loadCount.incrementAndGet();
+            return new StackMetaData(id, null);
+        });
+
+        Assert.assertEquals("meta data should only be loaded once", 1, loadCount.get());
+        Assert.assertSame("cached meta data should be returned", loaded, cached);
+
+        cache.invalidate(stackId);
+
+        final StackMetaData reloaded = cache.get(stackId, id -> {
+            loadCount.incrementAndGet();
+            return new StackMetaData(id, null);
+        });
+
+        Assert.assertEquals("meta data should be reloaded after invalidation", 2, loadCount.get());
+        Assert.assertNotSame("reloaded meta data should be returned", loaded, reloaded);
+    }
+
+    @Test
+    public void testConcurrentInvalidation() throws Exception {
+
+        final StackId stackId = new StackId("testOwner", "testProject", "testStack");
+        final StackMetaDataCache cache = new StackMetaDataCache(60);
+
+        // simulate a change that is saved while (stale) meta data is being loaded
+        final StackMetaData stale = cache.get(stackId, id -> {
+            cache.invalidate(id);
+            return new StackMetaData(id, null);
+        });
+
+        final StackMetaData current = cache.get(stackId, id -> new StackMetaData(id, null));
+
+        Assert.assertNotSame("meta data loaded during invalidation should not be cached", stale, current);
+
+        Assert.assertNull("missing stack should return null",
+                          cache.get(new StackId("testOwner", "testProject", "missingStack"), id -> null));
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.janelia.render.service.util;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link EncodedImageCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class EncodedImageCacheTest {
+
+    private File spillDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        final File testDirectory = new File("src/test").getCanonicalFile();
+        final SimpleDateFormat sdf = new SimpleDateFormat("'test_'yyyyMMddhhmmssSSS");
+        spillDirectory = new File(testDirectory, sdf.format(new Date()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(spillDirectory);
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+
+        final int imageCount = 20;
+        final int imageSize = 100_000;
+
+        final EncodedImageCache cache = new EncodedImageCache(imageCount * imageSize / 2,
+                                                              spillDirectory,
+                                                              imageCount * imageSize);
+
+        Assert.assertNull("missing image should not be found", cache.get(getKey(0)));
+
+        for (int i = 0; i < imageCount; i++) {
+            cache.put(getKey(i), getImage(i, imageSize));
+        }
+
+        final String[] spilledFileNames = spillDirectory.list();
+        Assert.assertNotNull("spill directory not created", spilledFileNames);
+        Assert.assertTrue("images should have been spilled to disk", spilledFileNames.length > 0);
+
+        for (int i = 0; i < imageCount; i++) {
+            Assert.assertArrayEquals("invalid bytes returned for image " + i,
+                                     getImage(i, imageSize), cache.get(getKey(i)));
+        }
+    }
+
+    @Test
+    public void testSpillDirectoryIsBounded() throws Exception {
+
+        final int imageCount = 40;
+        final int imageSize = 100_000;
+        final int maxSpillBytes = 10 * imageSize;
+
+        final EncodedImageCache cache = new EncodedImageCache(10 * imageSize,
+                                                              spillDirectory,
+                                                              maxSpillBytes);
+
+        for (int i = 0; i < imageCount; i++) {
+            cache.put(getKey(i), getImage(i, imageSize));
+        }
+
+        final String[] spilledFileNames = spillDirectory.list();
+        Assert.assertNotNull("spill directory not created", spilledFileNames);
+        Assert.assertTrue("images should have been spilled to disk", spilledFileNames.length > 0);
+        Assert.assertTrue("spill directory has " + spilledFileNames.length + " files but should be bounded",
+                          spilledFileNames.length * imageSize <= maxSpillBytes);
+
+        Assert.assertNull("image evicted from memory and disk should not be found", cache.get(getKey(0)));
+    }
+
+    @Test
+    public void testWithoutSpill() throws Exception {
+
+        final int imageSize = 1_000;
+        final EncodedImageCache cache = new EncodedImageCache(1_000_000, null, 0);
+
+        cache.put(getKey(1), getImage(1, imageSize));
+
+        Assert.assertArrayEquals("invalid bytes returned",
+                                 getImage(1, imageSize), cache.get(getKey(1)));
+        Assert.assertNull("missing image should not be found", cache.get(getKey(2)));
+    }
+
+    private static String getKey(final int index) {
+        return "owner|project|stack|null|0.0,0.0,1.0,512,512,1.0|jpg|false|null|" + index;
+    }
+
+    private static byte[] getImage(final int index,
+                                   final int size) {
+        final byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) index);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.janelia.render.service.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderScheduler} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderSchedulerTest {
+
+    @Test
+    public void testIdleRenderThreads() throws Exception {
+
+        final RenderScheduler scheduler = new RenderScheduler(100, 4, 60_000);
+
+        try (final RenderScheduler.Permit idlePermit = scheduler.acquire(50, 50)) {
+            Assert.assertEquals("request admitted to idle scheduler should use all threads",
+                                4, idlePermit.getNumberOfThreads());
+
+            try (final RenderScheduler.Permit busyPermit = scheduler.acquire(50, 50)) {
+                Assert.assertEquals("request admitted to busy scheduler should use one thread",
+                                    1, busyPermit.getNumberOfThreads());
+            }
+        }
+
+        try (final RenderScheduler.Permit oversizedPermit = scheduler.acquire(500, 500)) {
+            Assert.assertEquals("oversized request should be admitted when scheduler is idle",
+                                4, oversizedPermit.getNumberOfThreads());
+        }
+    }
+
+    @Test
+    public void testPrioritizeLowCostRequests() throws Exception {
+
+        final RenderScheduler scheduler = new RenderScheduler(100, 1, 60_000);
+        final List<Long> admittedCosts = Collections.synchronizedList(new ArrayList<>());
+
+        final RenderScheduler.Permit blockingPermit = scheduler.acquire(100, 100);
+
+        final long[] costs = { 900, 300, 100 };
+        final CountDownLatch doneLatch = new CountDownLatch(costs.length);
+        for (final long cost : costs) {
+            final Thread thread = new Thread(() -> {
+                try (final RenderScheduler.Permit ignored = scheduler.acquire(100, cost)) {
+                    admittedCosts.add(cost);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+            thread.start();
+            // make sure all requests are waiting before capacity is released
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals("no requests should be admitted while capacity is used", 0, admittedCosts.size());
+
+        blockingPermit.close();
+
+        Assert.assertTrue("requests not admitted in time", doneLatch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("requests should be admitted in order of increasing cost",
+                            Long.valueOf(100), admittedCosts.get(0));
+        Assert.assertEquals("requests should be admitted in order of increasing cost",
+                            Long.valueOf(300), admittedCosts.get(1));
+        Assert.assertEquals("requests should be admitted in order of increasing cost",
+                            Long.valueOf(900), admittedCosts.get(2));
+    }
+
+}